@@ -8,18 +8,15 @@
 #http://www.apache.org/licenses/LICENSE-2.0
 
 
-ARG=""
-
-echo 'Starting eThalerClient'
+echo 'Starting eThalerClient' >&2
 START_DIR=`pwd`
 
 #change directory
 cd build/runeThalerClient
 
-if [ $# -eq 1 ]
+if [ $# -ge 1 ]
 then
-	ARG=$1
-	./eThalerClient $START_DIR $ARG
+	./eThalerClient $START_DIR "$@"
 else
      ./eThalerClient $START_DIR 
 fi
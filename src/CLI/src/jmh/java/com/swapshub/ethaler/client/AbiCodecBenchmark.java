@@ -0,0 +1,211 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.EventValues;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.Utils;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.tx.gas.DefaultGasProvider;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ABI encoding of the transfer and mint calls, as done for every submitted transaction, and decoding
+ * of TransferSingle logs, as done by the event listener for every transfer on the contract.
+ * The functions handled by {@link EThalerAbi} are measured both through the generated wrapper
+ * (no suffix) and through the codec (Codec suffix).
+ * Nothing is sent to a node : the contract wrapper is only used to build the calls. The calls run on the JMH
+ * thread, see {@link ServiceCallBenchmark} for them on the virtual threads of the client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AbiCodecBenchmark {
+    private static final String CONTRACT_ADDRESS = "0x620f34A905eB4937514B6C393B6c73c6B01e62Af";
+    private static final String OPERATOR = "0x1a21603d62d0718e5210634bad9e7fe711634215";
+    private static final String FROM = "0x627306090abab3a6e1400e9345bc60c78a8bef57";
+    private static final String TO = "0xf17f52151ebef6c7334fad080c5704d77216b732";
+
+    private Web3j web3j;
+    private EThaler contract;
+    private BigInteger tokenId;
+    private BigInteger amount;
+    private Log transferSingleLog;
+    private List<String> batchAccounts;
+    private List<AccountAddress> batchAddresses;
+    private AccountAddress toAddress;
+    private TokenAmount tokenAmount;
+    private List<BigInteger> batchTokenIds;
+    private String balanceResult;
+    private String balanceBatchResult;
+    private ByteBuffer callBuffer;
+
+    @Setup
+    public void setUp() {
+        //no request is made while the calls are only encoded
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:8545"));
+        Credentials credentials = Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+        contract = EThaler.load(CONTRACT_ADDRESS, web3j, credentials, new DefaultGasProvider());
+        tokenId = BigInteger.valueOf(3);
+        amount = BigInteger.valueOf(125000);
+        transferSingleLog = transferSingleLog(tokenId, amount);
+        toAddress = AccountAddress.of(TO);
+        tokenAmount = TokenAmount.of(amount);
+        batchAccounts = new ArrayList<>();
+        batchTokenIds = new ArrayList<>();
+        List<Uint256> balances = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batchAccounts.add(i % 2 == 0 ? FROM : TO);
+            batchTokenIds.add(BigInteger.valueOf(i + 1));
+            balances.add(new Uint256(amount.multiply(BigInteger.valueOf(i + 1))));
+        }
+        batchAddresses = new ArrayList<>();
+        for (String account : batchAccounts) {
+            batchAddresses.add(AccountAddress.of(account));
+        }
+        balanceResult = "0x" + TypeEncoder.encode(new Uint256(amount));
+        balanceBatchResult = "0x" + FunctionEncoder.encodeConstructor(
+                Collections.singletonList(new DynamicArray<>(Uint256.class, balances)));
+        callBuffer = ByteBuffer.allocate(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        web3j.shutdown();
+    }
+
+    @Benchmark
+    public String encodeTransfer() {
+        return contract.transfer(TO, tokenId, amount).encodeFunctionCall();
+    }
+
+    @Benchmark
+    public String encodeTransferCodec() {
+        return EThalerAbi.encodeTransfer(toAddress, tokenId, tokenAmount);
+    }
+
+    /**
+     * codec without the hex conversion, for callers signing the bytes themselves
+     */
+    @Benchmark
+    public ByteBuffer encodeTransferCodecBuffer() {
+        callBuffer.clear();
+        EThalerAbi.encodeTransfer(toAddress, tokenId, tokenAmount, callBuffer);
+        return callBuffer;
+    }
+
+    @Benchmark
+    public String encodeBalanceOf() {
+        return contract.balanceOf(tokenId).encodeFunctionCall();
+    }
+
+    @Benchmark
+    public String encodeBalanceOfCodec() {
+        return EThalerAbi.encodeBalanceOf(tokenId);
+    }
+
+    @Benchmark
+    public String encodeBalanceOfBatch() {
+        return contract.balanceOfBatch(batchAccounts, batchTokenIds).encodeFunctionCall();
+    }
+
+    @Benchmark
+    public String encodeBalanceOfBatchCodec() {
+        return EThalerAbi.encodeBalanceOfBatch(batchAddresses, batchTokenIds);
+    }
+
+    /**
+     * decoding of a balanceOf result as the wrapper does it
+     */
+    @Benchmark
+    public BigInteger decodeBalance() {
+        List<?> values = FunctionReturnDecoder.decode(balanceResult,
+                Utils.convert(Collections.<TypeReference<?>>singletonList(new TypeReference<Uint256>() {})));
+        return ((Uint256) values.get(0)).getValue();
+    }
+
+    @Benchmark
+    public BigInteger decodeBalanceCodec() {
+        return EThalerAbi.decodeUint256(balanceResult);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Uint256> decodeBalanceBatch() {
+        List<?> values = FunctionReturnDecoder.decode(balanceBatchResult,
+                Utils.convert(Collections.<TypeReference<?>>singletonList(new TypeReference<DynamicArray<Uint256>>() {})));
+        return ((DynamicArray<Uint256>) values.get(0)).getValue();
+    }
+
+    @Benchmark
+    public List<BigInteger> decodeBalanceBatchCodec() {
+        return EThalerAbi.decodeUint256Array(balanceBatchResult);
+    }
+
+    @Benchmark
+    public String encodeMint() {
+        return contract.mint(tokenId, amount, new byte[0]).encodeFunctionCall();
+    }
+
+    @Benchmark
+    public EventValues decodeTransferSingle() {
+        return EThaler.staticExtractEventParameters(EThaler.TRANSFERSINGLE_EVENT, transferSingleLog);
+    }
+
+    @Benchmark
+    public EThalerAbi.TransferSingle decodeTransferSingleCodec() {
+        return EThalerAbi.decodeTransferSingle(transferSingleLog);
+    }
+
+    /**
+     * @return log as returned by eth_getLogs for a transfer of the given token
+     */
+    static Log transferSingleLog(BigInteger tokenId, BigInteger amount) {
+        Log log = new Log();
+        log.setAddress(CONTRACT_ADDRESS);
+        log.setTopics(Arrays.asList(EventEncoder.encode(EThaler.TRANSFERSINGLE_EVENT),
+                "0x" + TypeEncoder.encode(new Address(OPERATOR)),
+                "0x" + TypeEncoder.encode(new Address(FROM)),
+                "0x" + TypeEncoder.encode(new Address(TO))));
+        log.setData("0x" + TypeEncoder.encode(new Uint256(tokenId)) + TypeEncoder.encode(new Uint256(amount)));
+        return log;
+    }
+}//end of class
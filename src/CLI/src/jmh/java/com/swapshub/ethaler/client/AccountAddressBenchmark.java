@@ -0,0 +1,76 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.Keys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account lookups as done for the gateway sessions and the event values, keyed by the hex text
+ * (lower cased first, as addresses come in any case) and by {@link AccountAddress}, and parsing of
+ * an address typed in checksum form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountAddressBenchmark {
+    private static final int ACCOUNTS = 64;
+
+    private final Map<String, Integer> byText = new HashMap<>();
+    private final Map<AccountAddress, Integer> byAddress = new HashMap<>();
+    private String checksumText;
+    private AccountAddress address;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<String> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add("0x" + Keys.getAddress(Keys.createEcKeyPair()));
+        }
+        for (int i = 0; i < ACCOUNTS; i++) {
+            byText.put(accounts.get(i), i);
+            byAddress.put(AccountAddress.of(accounts.get(i)), i);
+        }
+        checksumText = Keys.toChecksumAddress(accounts.get(ACCOUNTS / 2));
+        address = AccountAddress.of(checksumText);
+    }
+
+    @Benchmark
+    public Integer lookupByText() {
+        return byText.get(checksumText.toLowerCase());
+    }
+
+    @Benchmark
+    public Integer lookupByAddress() {
+        return byAddress.get(address);
+    }
+
+    @Benchmark
+    public AccountAddress parseChecksum() {
+        return AccountAddress.of(checksumText);
+    }
+}//end of class
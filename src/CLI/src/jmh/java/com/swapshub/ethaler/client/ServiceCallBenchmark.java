@@ -0,0 +1,99 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.devchain.DevChain;
+import com.swapshub.ethaler.devchain.SimulatedNode;
+import com.swapshub.ethaler.devchain.SimulationProfile;
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.tx.gas.StaticGasProvider;
+
+import java.math.BigInteger;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls as the client makes them : through {@link EThalerService}, each on a new virtual thread of the
+ * {@link ChainExecutor}, against an in-process {@link SimulatedNode}. Unlike the other benchmarks, which run
+ * on the JMH platform thread, nothing a thread keeps between calls is reused, so the allocated bytes
+ * (gc.alloc.rate.norm) are the ones of the application.
+ * balanceOf is the whole read path (encoding, JSON-RPC, decoding), the Codec benchmarks are the encoding and
+ * decoding alone on an executor thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceCallBenchmark {
+    private static final Credentials OWNER = Credentials.create("8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    private ChainExecutor executor;
+    private Web3j web3j;
+    private EThalerService service;
+    private AccountAddress owner;
+    private String balanceResult;
+
+    @Setup
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        SimulatedNode node = new SimulatedNode(DevChain.DEFAULT_CHAIN_ID, SimulationProfile.of(properties));
+        web3j = Web3j.build(node, 10, Executors.newSingleThreadScheduledExecutor());
+        EThalerTransactionManager deployer = new EThalerTransactionManager(web3j, OWNER, node.getChain().getChainId(),
+                500, 10, new ClientMetrics());
+        EThaler contract = EThaler.deploy(web3j, deployer, new StaticGasProvider(BigInteger.ZERO, BigInteger.valueOf(6_000_000))).send();
+        properties.setProperty("CHAIN_ID", String.valueOf(node.getChain().getChainId()));
+        properties.setProperty("ETHALER_CONTRACT_ADDR", contract.getContractAddress());
+        properties.setProperty("POLLING_INTERVAL", "10");
+        ClientConfig config = ClientConfig.of(properties);
+        executor = ChainExecutor.create(config);
+        service = EThalerSession.open(config, web3j, executor, new ClientMetrics(), OWNER).getService();
+        EThalerService.await(service.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        EThalerService.await(service.mint(GOLD, BigInteger.valueOf(125000)));
+        owner = AccountAddress.of(OWNER.getAddress());
+        balanceResult = "0x000000000000000000000000000000000000000000000000000000000001e848";
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        web3j.shutdown();
+    }
+
+    @Benchmark
+    public BigInteger balanceOf() throws Exception {
+        return EThalerService.await(service.balanceOf(owner, GOLD));
+    }
+
+    @Benchmark
+    public String encodeBalanceOfCodec() throws Exception {
+        return EThalerService.await(executor.submit(() -> EThalerAbi.encodeBalanceOf(owner, GOLD)));
+    }
+
+    @Benchmark
+    public BigInteger decodeBalanceCodec() throws Exception {
+        return EThalerService.await(executor.submit(() -> EThalerAbi.decodeUint256(balanceResult)));
+    }
+}//end of class
@@ -0,0 +1,89 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Amount conversion between display and network units and the token id check,
+ * both done for every command before anything is sent to the node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenRegistryBenchmark {
+    @Param({"4", "256"})
+    public int tokenCount;
+
+    private TokenRegistry tokens;
+    private BigInteger knownTokenId;
+    private BigInteger unknownTokenId;
+    private BigInteger displayAmount;
+    private BigInteger networkAmount;
+
+    @Setup
+    public void setUp() {
+        List<TokenInfo> definitions = new ArrayList<>(tokenCount);
+        for (int i = 1; i <= tokenCount; i++) {
+            definitions.add(new TokenInfo(BigInteger.valueOf(i), "Token" + i, 2, "https://ttf.example/" + i));
+        }
+        tokens = TokenRegistry.of(definitions);
+        knownTokenId = BigInteger.valueOf(tokenCount);
+        unknownTokenId = BigInteger.valueOf(tokenCount + 1);
+        displayAmount = BigInteger.valueOf(125000);
+        networkAmount = BigInteger.valueOf(12500000);
+    }
+
+    @Benchmark
+    public BigInteger toNetwork() {
+        return tokens.toNetwork(knownTokenId, displayAmount);
+    }
+
+    @Benchmark
+    public BigInteger toDisplay() {
+        return tokens.toDisplay(knownTokenId, networkAmount);
+    }
+
+    @Benchmark
+    public boolean containsKnown() {
+        return tokens.contains(knownTokenId);
+    }
+
+    @Benchmark
+    public boolean containsUnknown() {
+        return tokens.contains(unknownTokenId);
+    }
+
+    /**
+     * token id as typed by the user, parsed first as the menu and the commands do
+     * @return
+     */
+    @Benchmark
+    public boolean containsParsed() {
+        return tokens.contains(new BigInteger("3"));
+    }
+}//end of class
@@ -0,0 +1,84 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.CipherException;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.crypto.Wallet;
+import org.web3j.crypto.WalletFile;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keystore decryption, done once per wallet when a session is opened.
+ * The wallet is written the same way WalletInitUtil creates wallets (standard scrypt parameters),
+ * so each operation takes in the order of a second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class WalletDecryptBenchmark {
+    private static final String PASSWORD = "benchmark-password";
+
+    private File walletDirectory;
+    private File walletFile;
+    private WalletFile parsedWallet;
+
+    @Setup
+    public void setUp() throws Exception {
+        walletDirectory = Files.createTempDirectory("ethaler-wallets").toFile();
+        String walletName = WalletUtils.generateNewWalletFile(PASSWORD, walletDirectory);
+        walletFile = new File(walletDirectory, walletName);
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        parsedWallet = objectMapper.readValue(walletFile, WalletFile.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        walletFile.delete();
+        walletDirectory.delete();
+    }
+
+    /**
+     * what opening a wallet costs : file read, JSON parsing and decryption
+     */
+    @Benchmark
+    public Credentials loadCredentials() throws IOException, CipherException {
+        return WalletUtils.loadCredentials(PASSWORD, walletFile);
+    }
+
+    /**
+     * key derivation and decryption only
+     */
+    @Benchmark
+    public ECKeyPair decrypt() throws CipherException {
+        return Wallet.decrypt(PASSWORD, parsedWallet);
+    }
+}//end of class
@@ -0,0 +1,172 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.web3j.crypto.Hash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 20 byte account or contract address. The bytes are held in three primitives, so equality and hashing
+ * never look at text, and parsed addresses are interned : the same account read from the wallet, the
+ * user, a command or an event log is one shared instance.
+ * Parsing accepts the address with or without 0x, in lower, upper or mixed case; mixed case is the
+ * EIP-55 checksum and must be correct, so a mistyped address is refused instead of being sent to.
+ * toString gives the lower case 0x form, as returned by the node.
+ */
+final class AccountAddress {
+    static final int LENGTH = 20;
+    //interned addresses; past the limit new addresses are still returned, just not shared
+    private static final int MAX_INTERNED = 100_000;
+    private static final ConcurrentHashMap<AccountAddress, AccountAddress> INTERNED = new ConcurrentHashMap<>();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //bytes 0-7, 8-15 and 16-19 of the address, big endian
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    private AccountAddress(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /**
+     * @param address 40 hex digits, optionally 0x prefixed
+     * @return the interned address
+     * @throws IllegalArgumentException when the text is not an address or its checksum is wrong
+     */
+    static AccountAddress of(String address) {
+        if (address == null) {
+            throw new IllegalArgumentException("Missing address");
+        }
+        int start = address.startsWith("0x") || address.startsWith("0X") ? 2 : 0;
+        if (address.length() - start != 2 * LENGTH) {
+            throw new IllegalArgumentException("Invalid address [" + address + "] : 40 hex digits expected");
+        }
+        boolean lower = false;
+        boolean upper = false;
+        long high = 0;
+        long middle = 0;
+        int low = 0;
+        for (int i = 0; i < 2 * LENGTH; i++) {
+            char c = address.charAt(start + i);
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid address [" + address + "] : not hex");
+            }
+            lower |= c >= 'a' && c <= 'f';
+            upper |= c >= 'A' && c <= 'F';
+            if (i < 16) {
+                high = high << 4 | digit;
+            } else if (i < 32) {
+                middle = middle << 4 | digit;
+            } else {
+                low = low << 4 | digit;
+            }
+        }
+        AccountAddress parsed = new AccountAddress(high, middle, low);
+        if (lower && upper && !parsed.toChecksumString().regionMatches(2, address, start, 2 * LENGTH)) {
+            throw new IllegalArgumentException("Invalid address [" + address + "] : wrong checksum");
+        }
+        return intern(parsed);
+    }
+
+    /**
+     * @param in ABI encoded bytes
+     * @param offset start of the 32 byte word holding the address
+     * @return the interned address in the last 20 bytes of the word
+     */
+    static AccountAddress read(ByteBuffer in, int offset) {
+        return intern(new AccountAddress(in.getLong(offset + 12), in.getLong(offset + 20), in.getInt(offset + 28)));
+    }
+
+    private static AccountAddress intern(AccountAddress address) {
+        AccountAddress interned = INTERNED.get(address);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return address;
+        }
+        interned = INTERNED.putIfAbsent(address, address);
+        return interned == null ? address : interned;
+    }
+
+    /**
+     * writes the address as a 32 byte ABI word
+     * @param out
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(0).putLong(0).putLong(high).putLong(middle).putInt(low);
+    }
+
+    /**
+     * @return 0x prefixed EIP-55 mixed case form, for display to users
+     */
+    String toChecksumString() {
+        char[] chars = toChars();
+        byte[] hash = Hash.sha3(new String(chars, 2, 2 * LENGTH).getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < 2 * LENGTH; i++) {
+            int nibble = (i % 2 == 0 ? hash[i / 2] >>> 4 : hash[i / 2]) & 0x0f;
+            if (nibble >= 8) {
+                chars[2 + i] = Character.toUpperCase(chars[2 + i]);
+            }
+        }
+        return new String(chars);
+    }
+
+    private char[] toChars() {
+        char[] chars = new char[2 + 2 * LENGTH];
+        chars[0] = '0';
+        chars[1] = 'x';
+        putHex(chars, 2, high, 16);
+        putHex(chars, 18, middle, 16);
+        putHex(chars, 34, low, 8);
+        return chars;
+    }
+
+    private static void putHex(char[] chars, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[offset + i] = HEX_DIGITS[(int) (value & 0x0f)];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof AccountAddress)) {
+            return false;
+        }
+        AccountAddress address = (AccountAddress) other;
+        return high == address.high && middle == address.middle && low == address.low;
+    }
+
+    @Override
+    public int hashCode() {
+        //addresses are hashes, any of their bits is as good as any other
+        return (int) (high ^ high >>> 32) ^ low;
+    }
+
+    /**
+     * @return 0x prefixed lower case form
+     */
+    @JsonValue
+    @Override
+    public String toString() {
+        return new String(toChars());
+    }
+}//end of class
@@ -0,0 +1,163 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Numeric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bulk dealer registration : registers a list of accounts for a list of tokens with registerDealers,
+ * every account of a chunk for every token in one transaction, instead of one registerDealer transaction
+ * per (account, token) pair.
+ * The chunks are sized to fit in a share of the block gas limit, and each is sent with a gas limit sized to it.
+ * The gas per account is measured with eth_estimateGas on one and two new accounts, so an unregistered account is
+ * the worst case, with the margin of the {@link GasEstimator}; fixed upper bounds are used when the estimate fails.
+ * Up to --in-flight chunks are waiting for their receipt at the same time. Registrations already made are skipped by the contract,
+ * so the same file can be sent again after a failure.
+ */
+class BulkRegistration {
+    static final String USAGE = "bulkregister <owner wallet> <accounts file> --tokens 1,2,.. [--chunk accounts] [--in-flight n]";
+    //upper bounds from the contract code, when the estimate fails : a new role entry and its event, the approval and its event
+    private static final long REGISTRATION_GAS = 30000;
+    private static final long ACCOUNT_GAS = 35000;
+    //intrinsic transaction gas plus the fixed part of the call
+    private static final long BASE_GAS = 60000;
+    //share of the block gas limit a chunk may use, so other transactions still fit in the block
+    private static final double BLOCK_GAS_SHARE = 0.8;
+
+    private final EThalerSession session;
+    private final Map<String, String> options;
+
+    /**
+     * @param session owner session
+     * @param options parsed --name value options
+     */
+    BulkRegistration(EThalerSession session, Map<String, String> options) {
+        this.session = session;
+        this.options = options;
+    }
+
+    /**
+     * @param reader one account address per line, blank lines and lines starting with # are skipped
+     * @return number of chunks that failed
+     * @throws Exception when the input is invalid or the block gas limit cannot be read
+     */
+    int run(BufferedReader reader) throws Exception {
+        if (!session.isOwner()) {
+            throw new IllegalStateException("Only owner can register dealers");
+        }
+        List<BigInteger> tokenIds = readTokenIds();
+        List<AccountAddress> accounts = readAccounts(reader);
+        EThalerService service = session.getService();
+        long perAccount = ACCOUNT_GAS + REGISTRATION_GAS * tokenIds.size();
+        long base = BASE_GAS;
+        List<AccountAddress> probe = List.of(newAccount(), newAccount());
+        BigInteger one = EThalerService.await(service.estimateRegisterDealers(probe.subList(0, 1), tokenIds));
+        BigInteger two = EThalerService.await(service.estimateRegisterDealers(probe, tokenIds));
+        if (one != null && two != null && two.compareTo(one) > 0) {
+            perAccount = two.subtract(one).longValue();
+            base = Math.max(0, one.longValue() - perAccount);
+        } else {
+            GenUtil.printLog("Registration gas could not be estimated, using the upper bounds");
+        }
+        int chunkSize;
+        if (options.containsKey("chunk")) {
+            chunkSize = Integer.parseInt(options.get("chunk"));
+        } else {
+            long budget = (long) (EThalerService.await(service.getBlockGasLimit()).longValue() * BLOCK_GAS_SHARE);
+            chunkSize = (int) Math.max(1, (budget - base) / perAccount);
+        }
+        Semaphore inFlight = new Semaphore(Integer.parseInt(options.getOrDefault("in-flight", "4")));
+        GenUtil.printLog("Registering " + accounts.size() + " accounts for " + tokenIds.size() + " token(s) in chunks of "
+                + chunkSize + " accounts");
+        List<CompletableFuture<Boolean>> chunks = new ArrayList<>();
+        for (int from = 0; from < accounts.size(); from += chunkSize) {
+            List<AccountAddress> chunk = accounts.subList(from, Math.min(accounts.size(), from + chunkSize));
+            BigInteger gasLimit = BigInteger.valueOf(base + perAccount * chunk.size());
+            String range = "accounts " + (from + 1) + " to " + (from + chunk.size());
+            inFlight.acquire();
+            chunks.add(service.registerDealers(chunk, tokenIds, gasLimit).handle((receipt, error) -> {
+                inFlight.release();
+                return report(range, receipt, error);
+            }));
+        }
+        int failures = 0;
+        for (CompletableFuture<Boolean> chunk : chunks) {
+            failures += chunk.join() ? 0 : 1;
+        }
+        GenUtil.printLog("Bulk registration completed : " + chunks.size() + " transaction(s), " + failures + " failed");
+        return failures;
+    }
+
+    /**
+     * @return random account, not registered for any token
+     */
+    private static AccountAddress newAccount() {
+        byte[] address = new byte[20];
+        ThreadLocalRandom.current().nextBytes(address);
+        return AccountAddress.of(Numeric.toHexString(address));
+    }
+
+    private static boolean report(String range, TransactionReceipt receipt, Throwable error) {
+        if (error != null) {
+            GenUtil.printLog("Registration of " + range + " failed : " + EThalerService.unwrap(error).getMessage());
+            return false;
+        }
+        GenUtil.printLog("Registered " + range + " : transaction " + receipt.getTransactionHash() + " in block "
+                + receipt.getBlockNumber() + ", gas used " + receipt.getGasUsed());
+        return true;
+    }
+
+    private List<BigInteger> readTokenIds() {
+        if (!options.containsKey("tokens")) {
+            throw new IllegalArgumentException("Missing --tokens. Usage : " + USAGE);
+        }
+        List<BigInteger> tokenIds = new ArrayList<>();
+        for (String tokenId : options.get("tokens").split(",")) {
+            BigInteger id = new BigInteger(tokenId.trim());
+            if (!session.getTokens().contains(id)) {
+                throw new IllegalArgumentException("Token id [" + id + "] does not exist");
+            }
+            tokenIds.add(id);
+        }
+        return tokenIds;
+    }
+
+    private static List<AccountAddress> readAccounts(BufferedReader reader) throws IOException {
+        //an account listed twice is registered once
+        Set<AccountAddress> accounts = new LinkedHashSet<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                accounts.add(AccountAddress.of(line));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Line " + lineNumber + " : " + ex.getMessage());
+            }
+        }
+        return new ArrayList<>(accounts);
+    }
+}//end of class
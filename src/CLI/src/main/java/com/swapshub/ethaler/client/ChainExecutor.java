@@ -0,0 +1,108 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking chain operations (contract calls, nonce lookups, receipt polling) on virtual threads.
+ * A blocked operation only parks its virtual thread, so the number of operations in flight is not
+ * limited by a thread pool size. CHAIN_MAX_CONCURRENCY in config.properties optionally caps the
+ * operations submitted with {@link #submit} running at the same time to protect the node; 0 means no cap.
+ * One instance is shared by all the sessions of the process.
+ * The state shared by these operations is guarded with java.util.concurrent locks rather than synchronized :
+ * a virtual thread blocking inside a synchronized block, e.g. on a request to the node, pins its carrier thread,
+ * and a few of them would hold all the carriers.
+ */
+final class ChainExecutor implements Executor, AutoCloseable {
+    private final ExecutorService executor;
+    //null when the concurrency is not capped
+    private final Semaphore permits;
+
+    /**
+     * @param maxConcurrency maximum operations running at the same time, 0 for no cap
+     */
+    ChainExecutor(int maxConcurrency) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chain-", 0).factory());
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    /**
+     * @param config
+     * @return executor configured from CHAIN_MAX_CONCURRENCY
+     */
+    static ChainExecutor create(ClientConfig config) {
+        return new ChainExecutor(config.getInt("CHAIN_MAX_CONCURRENCY", 0));
+    }
+
+    /**
+     * runs the blocking operation on its own virtual thread, holding a permit while it runs
+     * @param operation
+     * @return completes with the result of the operation, or exceptionally with its failure
+     */
+    <T> CompletableFuture<T> submit(Callable<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call(operation);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * runs the task on its own virtual thread without taking a permit. Used for the work that
+     * orchestrates chain operations (script commands, gateway requests), so a capped executor
+     * cannot deadlock with operations waiting for the permits their callers hold.
+     * @param task
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * starts a long running background task on a named virtual thread. It does not take a permit,
+     * so it never holds back the chain operations.
+     * @param name thread name
+     * @param task
+     * @return the started thread
+     */
+    Thread startBackground(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).start(task);
+    }
+
+    private <T> T call(Callable<T> operation) throws Exception {
+        if (permits == null) {
+            return operation.call();
+        }
+        permits.acquire();
+        try {
+            return operation.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * stops accepting operations, already submitted operations still complete
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}//end of class
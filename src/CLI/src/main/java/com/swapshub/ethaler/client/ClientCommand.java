@@ -0,0 +1,195 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.math.BigInteger;
+
+/**
+ * A typed command for the non-interactive modes (script and gateway server). In a script, one command per line, for example
+ * <pre>
+ *   balance  &lt;tokenId&gt; [account]
+ *   transfer &lt;tokenId&gt; &lt;toAccount&gt; &lt;amount&gt;
+ *   mint     &lt;tokenId&gt; &lt;amount&gt;
+ *   burn     &lt;tokenId&gt; &lt;amount&gt;
+ *   register &lt;tokenId&gt; &lt;account&gt;
+ *   unregister &lt;tokenId&gt; &lt;account&gt;
+ *   pause    &lt;tokenId&gt;
+ *   resume   &lt;tokenId&gt;
+ *   dealers  &lt;tokenId&gt;
+ *   tokens
+ * </pre>
+ * Amounts are in display units, the same as in the interactive menu.
+ */
+class ClientCommand {
+    static final String BALANCE = "balance";
+    static final String TRANSFER = "transfer";
+    static final String MINT = "mint";
+    static final String BURN = "burn";
+    static final String REGISTER = "register";
+    static final String UNREGISTER = "unregister";
+    static final String PAUSE = "pause";
+    static final String RESUME = "resume";
+    static final String TOKENS = "tokens";
+    static final String DEALERS = "dealers";
+
+    final int lineNumber;
+    final String name;
+    final BigInteger tokenId;
+    final AccountAddress account;
+    final BigInteger amount;
+
+    ClientCommand(int lineNumber, String name, BigInteger tokenId, AccountAddress account, BigInteger amount) {
+        this.lineNumber = lineNumber;
+        this.name = name;
+        this.tokenId = tokenId;
+        this.account = account;
+        this.amount = amount;
+    }
+
+    /**
+     * @param lineNumber position of the command in the script, used in the result line
+     * @param line the command text
+     * @return parsed command
+     * @throws IllegalArgumentException for an unknown command or wrong arguments
+     */
+    static ClientCommand parse(int lineNumber, String line) {
+        String[] parts = line.trim().split("\\s+");
+        String name = parts[0].toLowerCase();
+        switch (name) {
+            case BALANCE:
+                checkArgCount(parts, 1, 2, name);
+                return create(lineNumber, name, parts[1], parts.length > 2 ? parts[2] : null, null);
+            case TRANSFER:
+                checkArgCount(parts, 3, 3, name);
+                return create(lineNumber, name, parts[1], parts[2], parts[3]);
+            case MINT:
+            case BURN:
+                checkArgCount(parts, 2, 2, name);
+                return create(lineNumber, name, parts[1], null, parts[2]);
+            case REGISTER:
+            case UNREGISTER:
+                checkArgCount(parts, 2, 2, name);
+                return create(lineNumber, name, parts[1], parts[2], null);
+            case PAUSE:
+            case RESUME:
+            case DEALERS:
+                checkArgCount(parts, 1, 1, name);
+                return create(lineNumber, name, parts[1], null, null);
+            case TOKENS:
+                checkArgCount(parts, 0, 0, name);
+                return create(lineNumber, name, null, null, null);
+            default:
+                throw new IllegalArgumentException("Unknown command [" + parts[0] + "]");
+        }
+    }
+
+    /**
+     * builds a command from named values, as received by the gateway server
+     * @param lineNumber request sequence number
+     * @param name command name
+     * @param tokenId
+     * @param account target account (transfer, register, unregister) or queried account (balance)
+     * @param amount
+     * @return validated command
+     * @throws IllegalArgumentException for an unknown command or a missing / invalid value
+     */
+    static ClientCommand create(int lineNumber, String name, String tokenId, String account, String amount) {
+        String cmd = name.toLowerCase();
+        switch (cmd) {
+            case BALANCE:
+                return new ClientCommand(lineNumber, cmd, toNumber(tokenId, "tokenId", cmd),
+                        account == null || account.trim().isEmpty() ? null : toAddress(account, cmd), null);
+            case TRANSFER:
+                return new ClientCommand(lineNumber, cmd, toNumber(tokenId, "tokenId", cmd), toAddress(account, cmd),
+                        toNumber(amount, "amount", cmd));
+            case MINT:
+            case BURN:
+                return new ClientCommand(lineNumber, cmd, toNumber(tokenId, "tokenId", cmd), null, toNumber(amount, "amount", cmd));
+            case REGISTER:
+            case UNREGISTER:
+                return new ClientCommand(lineNumber, cmd, toNumber(tokenId, "tokenId", cmd), toAddress(account, cmd), null);
+            case PAUSE:
+            case RESUME:
+            case DEALERS:
+                return new ClientCommand(lineNumber, cmd, toNumber(tokenId, "tokenId", cmd), null, null);
+            case TOKENS:
+                return new ClientCommand(lineNumber, cmd, null, null, null);
+            default:
+                throw new IllegalArgumentException("Unknown command [" + name + "]");
+        }
+    }
+
+    /**
+     * @return true for commands that send a transaction
+     */
+    boolean isTransaction() {
+        return !BALANCE.equals(name) && !TOKENS.equals(name) && !DEALERS.equals(name);
+    }
+
+    /**
+     * Commands on the same token depend on each other (mint before transfer, pause before resume)
+     * and keep their script order. Commands on different tokens are independent.
+     * @return ordering key of the command
+     */
+    String orderingKey() {
+        return tokenId == null ? "" : tokenId.toString();
+    }
+
+    private static void checkArgCount(String[] parts, int min, int max, String name) {
+        int count = parts.length - 1;
+        if (count < min || count > max) {
+            throw new IllegalArgumentException("Usage : " + usage(name));
+        }
+    }
+
+    private static String required(String value, String argName, String name) {
+        if (value == null || value.trim().length() == 0) {
+            throw new IllegalArgumentException("Missing " + argName + ". Usage : " + usage(name));
+        }
+        return value.trim();
+    }
+
+    private static AccountAddress toAddress(String value, String name) {
+        return AccountAddress.of(required(value, "account", name));
+    }
+
+    private static BigInteger toNumber(String value, String argName, String name) {
+        required(value, argName, name);
+        try {
+            return new BigInteger(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + argName + " [" + value + "]");
+        }
+    }
+
+    /**
+     * @param name
+     * @return usage text of the command
+     */
+    static String usage(String name) {
+        switch (name) {
+            case BALANCE:
+                return "balance <tokenId> [account]";
+            case TRANSFER:
+                return "transfer <tokenId> <toAccount> <amount>";
+            case MINT:
+            case BURN:
+                return name + " <tokenId> <amount>";
+            case REGISTER:
+            case UNREGISTER:
+                return name + " <tokenId> <account>";
+            case PAUSE:
+            case RESUME:
+            case DEALERS:
+                return name + " <tokenId>";
+            default:
+                return name;
+        }
+    }
+}//end of class
@@ -0,0 +1,153 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Immutable client settings read from config/config.properties.
+ * One instance is created at start up and handed to the components that need it.
+ */
+final class ClientConfig {
+    static final String CONFIG_FILE_NAME = "config.properties";
+
+    private final Properties properties;
+    private final String startDirectory;
+    private final String configDirectory;
+    private final String walletDirectory;
+    private final String logLevel;
+    private final String besuUrl;
+    private final String contractAddress;
+    private final int chainId;
+    private final long pollingInterval;
+    private final int pollingAttempts;
+
+    private ClientConfig(String startDirectory, Properties properties) {
+        this.properties = properties;
+        this.startDirectory = startDirectory;
+        this.configDirectory = resolve(startDirectory, "config");
+        this.walletDirectory = resolve(startDirectory, "wallets");
+        this.logLevel = getString("LOG_LEVEL", "INFO").toUpperCase();
+        this.besuUrl = getString("BESU_URL", "http://127.0.0.1:9545");
+        this.contractAddress = getString("ETHALER_CONTRACT_ADDR", "0x1a21603d62d0718e5210634BAD9e7Fe711634215");
+        this.chainId = getInt("CHAIN_ID", 2018);
+        this.pollingAttempts = getInt("POLLING_ATTEMPTS", 5);
+        this.pollingInterval = getLong("POLLING_INTERVAL", 2000);
+    }
+
+    /**
+     * reads the config file below the start directory. Missing file or values fall back to the defaults.
+     * @param startDirectory directory the client was started from, null for the working directory
+     * @return loaded configuration
+     */
+    static ClientConfig load(String startDirectory) {
+        Properties properties = new Properties();
+        File configDir = new File(resolve(startDirectory, "config"));
+        if (!configDir.exists()) {
+            configDir.mkdir();
+        }
+        try (FileReader reader = new FileReader(new File(configDir, CONFIG_FILE_NAME))) {
+            properties.load(reader);
+        } catch (IOException ex) {
+            GenUtil.printLog("Error in loading properties : " + ex.getMessage());
+        }
+        return new ClientConfig(startDirectory, properties);
+    }
+
+    /**
+     * @param properties
+     * @return configuration from the given values, for embedding and tools
+     */
+    static ClientConfig of(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return new ClientConfig(null, copy);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return copy of this configuration with the value set
+     */
+    ClientConfig with(String key, String value) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        copy.setProperty(key, value);
+        return new ClientConfig(startDirectory, copy);
+    }
+
+    private static String resolve(String startDirectory, String directory) {
+        return startDirectory == null ? directory : startDirectory + File.separator + directory;
+    }
+
+    String getStartDirectory() {
+        return startDirectory;
+    }
+
+    String getConfigDirectory() {
+        return configDirectory;
+    }
+
+    String getWalletDirectory() {
+        return walletDirectory;
+    }
+
+    String getLogLevel() {
+        return logLevel;
+    }
+
+    String getBesuUrl() {
+        return besuUrl;
+    }
+
+    String getContractAddress() {
+        return contractAddress;
+    }
+
+    int getChainId() {
+        return chainId;
+    }
+
+    long getPollingInterval() {
+        return pollingInterval;
+    }
+
+    int getPollingAttempts() {
+        return pollingAttempts;
+    }
+
+    /**
+     * @return copy of all the values
+     */
+    Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    /**
+     * @param key
+     * @param defaultVal
+     * @return value for the given key
+     */
+    String getString(String key, String defaultVal) {
+        return properties.getProperty(key, defaultVal).trim();
+    }
+
+    int getInt(String key, int defaultVal) {
+        return Integer.parseInt(getString(key, String.valueOf(defaultVal)));
+    }
+
+    long getLong(String key, long defaultVal) {
+        return Long.parseLong(getString(key, String.valueOf(defaultVal)));
+    }
+}//end of class
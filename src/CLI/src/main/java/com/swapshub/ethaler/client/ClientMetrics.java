@@ -0,0 +1,310 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters, gauges and timers of the client, one instance per process shared by all sessions.
+ * Metrics are created on first use and identified by name and an optional label, e.g. the JSON-RPC
+ * method. Recording is lock free, so it can be done on every call. The values are exposed in the
+ * Prometheus text format ({@link #toPrometheus()}) and as a periodic log summary ({@link #summary()}).
+ */
+final class ClientMetrics {
+    //upper bounds of the timer histogram buckets, in seconds
+    private static final double[] BUCKET_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+            1, 2.5, 5, 10, 30, 60};
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * 1e9);
+        }
+    }
+
+    //families by metric name, sorted so the output is stable
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    /**
+     * @param name metric name, ending with _total
+     * @param help description shown by the scrape endpoint
+     * @param label label name, null for none
+     * @param value label value
+     * @return counter, created on first use
+     */
+    Counter counter(String name, String help, String label, String value) {
+        return (Counter) family(name, help, "counter").child(labels(label, value), Counter::new);
+    }
+
+    Gauge gauge(String name, String help) {
+        return gauge(name, help, null, null);
+    }
+
+    /**
+     * @param name metric name
+     * @param help description shown by the scrape endpoint
+     * @param label label name, null for none
+     * @param value label value
+     * @return gauge, created on first use
+     */
+    Gauge gauge(String name, String help, String label, String value) {
+        return (Gauge) family(name, help, "gauge").child(labels(label, value), Gauge::new);
+    }
+
+    Timer timer(String name, String help) {
+        return timer(name, help, null, null);
+    }
+
+    /**
+     * @param name metric name, ending with _seconds
+     * @param help description shown by the scrape endpoint
+     * @param label label name, null for none
+     * @param value label value
+     * @return timer, created on first use
+     */
+    Timer timer(String name, String help, String label, String value) {
+        return (Timer) family(name, help, "histogram").child(labels(label, value), Timer::new);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labels(String label, String value) {
+        if (label == null) {
+            return "";
+        }
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return label + "=\"" + escaped + "\"";
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format (version 0.0.4)
+     */
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> child : family.children.entrySet()) {
+                child.getValue().write(out, name, child.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Summary for the log : counter and gauge values, and for the timers the calls and latency
+     * percentiles since the previous summary. Timers without calls in the interval are left out.
+     * @return one line per metric
+     */
+    List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            for (Map.Entry<String, Metric> child : entry.getValue().children.entrySet()) {
+                String line = child.getValue().summarize();
+                if (line != null) {
+                    String labels = child.getKey().isEmpty() ? "" : "{" + child.getKey() + "}";
+                    lines.add(entry.getKey() + labels + " " + line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> children = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        private Metric child(String labels, Supplier<Metric> factory) {
+            return children.computeIfAbsent(labels, key -> factory.get());
+        }
+    }
+
+    private interface Metric {
+        void write(StringBuilder out, String name, String labels);
+
+        String summarize();
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * monotonically increasing count
+     */
+    static final class Counter implements Metric {
+        private final LongAdder value = new LongAdder();
+
+        void inc() {
+            value.increment();
+        }
+
+        void add(long amount) {
+            value.add(amount);
+        }
+
+        long get() {
+            return value.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, Long.toString(get()));
+        }
+
+        @Override
+        public String summarize() {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * value that goes up and down, e.g. a block number
+     */
+    static final class Gauge implements Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        void set(long newValue) {
+            value.set(newValue);
+        }
+
+        /**
+         * @param candidate
+         * @return the new value, the larger of the current value and the candidate
+         */
+        long max(long candidate) {
+            return value.accumulateAndGet(candidate, Math::max);
+        }
+
+        long get() {
+            return value.get();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, Long.toString(get()));
+        }
+
+        @Override
+        public String summarize() {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * Latency histogram. The cumulative buckets are scraped, while an HdrHistogram recorder keeps
+     * the exact distribution of the current interval for the log summary.
+     */
+    static final class Timer implements Metric {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_NANOS.length];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final Recorder interval = new Recorder(3);
+        private Histogram intervalHistogram;
+
+        private Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param nanos duration of one call
+         */
+        void record(long nanos) {
+            long duration = Math.max(0, nanos);
+            for (int i = 0; i < BUCKET_NANOS.length; i++) {
+                if (duration <= BUCKET_NANOS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumNanos.add(duration);
+            interval.recordValue(duration);
+        }
+
+        /**
+         * @param startNanos System.nanoTime() at the start of the call
+         */
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+                cumulative += buckets[i].sum();
+                writeSample(out, name + "_bucket", labels + separator + "le=\"" + BUCKET_SECONDS[i] + "\"",
+                        Long.toString(cumulative));
+            }
+            //read the count once, so +Inf and _count agree
+            long total = count();
+            writeSample(out, name + "_bucket", labels + separator + "le=\"+Inf\"", Long.toString(Math.max(total, cumulative)));
+            writeSample(out, name + "_sum", labels, Double.toString(sumNanos.sum() / 1e9));
+            writeSample(out, name + "_count", labels, Long.toString(Math.max(total, cumulative)));
+        }
+
+        @Override
+        public synchronized String summarize() {
+            intervalHistogram = interval.getIntervalHistogram(intervalHistogram);
+            long calls = intervalHistogram.getTotalCount();
+            if (calls == 0) {
+                return null;
+            }
+            return "calls=" + calls
+                    + " p50=" + millis(intervalHistogram.getValueAtPercentile(50))
+                    + " p99=" + millis(intervalHistogram.getValueAtPercentile(99))
+                    + " max=" + millis(intervalHistogram.getMaxValue());
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}//end of class
@@ -0,0 +1,153 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes typed commands against the contract without any console interaction.
+ * Results are returned as ordered maps so they can be written out as JSON.
+ */
+class CommandProcessor extends GenUtil {
+    private final String referencePrefix;
+
+    CommandProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param referencePrefix followed by the line number, the business reference of the journaled transactions
+     */
+    CommandProcessor(String referencePrefix) {
+        this.referencePrefix = referencePrefix;
+    }
+
+    /**
+     * @param session wallet session the command runs as
+     * @param command
+     * @return completes with the result fields of the command. Fails with IllegalArgumentException for
+     * bad input, IllegalStateException when the command is not permitted, ContractStateMirror.Refusal when the
+     * pre-flight check refused it, or the failure of the contract call.
+     */
+    CompletableFuture<Map<String, Object>> execute(EThalerSession session, ClientCommand command) {
+        if (referencePrefix == null) {
+            return start(session, command);
+        }
+        return TransactionTrace.withReference(referencePrefix + command.lineNumber, () -> start(session, command));
+    }
+
+    private CompletableFuture<Map<String, Object>> start(EThalerSession session, ClientCommand command) {
+        TokenRegistry tokens = session.getTokens();
+        EThalerService service = session.getService();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (ClientCommand.TOKENS.equals(command.name)) {
+            result.put("tokens", tokenDetails(tokens));
+            return CompletableFuture.completedFuture(result);
+        }
+        if (!tokens.contains(command.tokenId)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Entered token id does not exist"));
+        }
+        if (command.isTransaction() && !ClientCommand.TRANSFER.equals(command.name) && !session.isOwner()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Only owner can " + command.name));
+        }
+        result.put("tokenId", command.tokenId);
+        CompletableFuture<TransactionReceipt> receipt;
+        switch (command.name) {
+            case ClientCommand.BALANCE:
+                return queryBalance(session, command).thenApply(balance -> {
+                    result.put("account", command.account == null ? session.getAccountAddress() : command.account);
+                    result.put("balance", tokens.toDisplay(command.tokenId, balance));
+                    return result;
+                });
+            case ClientCommand.TRANSFER:
+                receipt = service.transfer(command.account, command.tokenId, tokens.toNetwork(command.tokenId, command.amount));
+                result.put("to", command.account);
+                result.put("amount", command.amount);
+                break;
+            case ClientCommand.MINT:
+                receipt = service.mint(command.tokenId, tokens.toNetwork(command.tokenId, command.amount));
+                result.put("amount", command.amount);
+                break;
+            case ClientCommand.BURN:
+                receipt = service.burn(command.tokenId, tokens.toNetwork(command.tokenId, command.amount));
+                result.put("amount", command.amount);
+                break;
+            case ClientCommand.REGISTER:
+                receipt = service.registerDealer(command.account, command.tokenId);
+                result.put("account", command.account);
+                break;
+            case ClientCommand.UNREGISTER:
+                receipt = service.unregisterDealer(command.account, command.tokenId);
+                result.put("account", command.account);
+                break;
+            case ClientCommand.DEALERS:
+                if (!session.isOwner()) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("Only owner can list dealers"));
+                }
+                return session.getDealers().refresh(service, command.tokenId).thenApply(dealers -> {
+                    result.put("dealers", dealers);
+                    return result;
+                });
+            case ClientCommand.PAUSE:
+                receipt = service.pause(command.tokenId);
+                break;
+            case ClientCommand.RESUME:
+                receipt = service.resume(command.tokenId);
+                break;
+            default:
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown command [" + command.name + "]"));
+        }
+        return receipt.thenApply(mined -> {
+            result.put("txHash", mined.getTransactionHash());
+            result.put("blockNumber", mined.getBlockNumber());
+            return result;
+        });
+    }
+
+    /**
+     * Only the owner can query another account.
+     * @param session
+     * @param command
+     * @return balance in network units
+     */
+    private CompletableFuture<BigInteger> queryBalance(EThalerSession session, ClientCommand command) {
+        if (session.isOwner()) {
+            AccountAddress account = command.account == null ? session.getAccountAddress() : command.account;
+            return session.getService().balanceOf(account, command.tokenId);
+        }
+        if (command.account != null && !command.account.equals(session.getAccountAddress())) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Only owner can check balance of another account"));
+        }
+        return session.getService().balanceOf(command.tokenId);
+    }
+
+    /**
+     * @param tokens
+     * @return token definitions of the session
+     */
+    private List<Map<String, Object>> tokenDetails(TokenRegistry tokens) {
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (TokenInfo tokenInfo : tokens.getTokens()) {
+            Map<String, Object> token = new LinkedHashMap<>();
+            token.put("id", tokenInfo.getId());
+            token.put("name", tokenInfo.getName());
+            token.put("decimals", tokenInfo.getDecimals());
+            token.put("ttf", tokenInfo.getTtfUrl());
+            details.add(token);
+        }
+        return details;
+    }
+}//end of class
@@ -0,0 +1,73 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded contract event, as handed from the event listener to the output sinks.
+ */
+final class ContractEvent {
+    private final String name;
+    private final BigInteger blockNumber;
+    private final String transactionHash;
+    private final Map<String, Object> values;
+    private final String message;
+
+    /**
+     * @param name event name, e.g. TransferSingle
+     * @param blockNumber block of the log, null when pending
+     * @param transactionHash transaction that emitted the event
+     * @param values decoded event parameters by name, in declaration order; addresses are
+     *               {@link AccountAddress}, amounts {@link TokenAmount}
+     * @param message human readable description for the console
+     */
+    ContractEvent(String name, BigInteger blockNumber, String transactionHash, Map<String, Object> values, String message) {
+        this.name = name;
+        this.blockNumber = blockNumber;
+        this.transactionHash = transactionHash;
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.message = message;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    BigInteger getBlockNumber() {
+        return blockNumber;
+    }
+
+    String getTransactionHash() {
+        return transactionHash;
+    }
+
+    Map<String, Object> getValues() {
+        return values;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return event as one JSON object, for the JSON lines output
+     */
+    Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("event", name);
+        json.put("blockNumber", blockNumber);
+        json.put("txHash", transactionHash);
+        json.putAll(values);
+        return json;
+    }
+}//end of class
@@ -1,177 +1,230 @@
-/**
-Copyright 2020 Swapshub
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-http://www.apache.org/licenses/LICENSE-2.0
-*/
-
-package com.swapshub.ethaler.client;
-
-import com.swapshub.ethaler.w3generated.EThaler;
-import org.web3j.abi.EventValues;
-import org.web3j.abi.datatypes.Event;
-import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.request.EthFilter;
-import org.web3j.protocol.core.methods.response.Log;
-
-import java.math.BigInteger;
-import java.util.Hashtable;
-
-/**
-* This class listnes for the event messages broadcast by the network
-*/
-
-class ContractEventListener  {
-    EThaler contract;
-    static final int REGISTER_EVENT = 0;
-    static final int UNREGISTER_EVENT = 1;
-    static final int TRANSFER_EVENT = 2;
-    static final int TOKENDEFINED_EVENT = 3;
-
-    Hashtable<Integer, Event> eventHash = new Hashtable<Integer, Event>();
-
-    /**
-     * constructor -- initializes the events to be monitored.
-     * @param contract_
-     */
-    ContractEventListener(EThaler contract_) {
-        contract = contract_;
-        populateEventHash();
-    }
-
-    /**
-     * populates hashtable container with key and event
-     */
-    private void populateEventHash() {
-        eventHash.put(REGISTER_EVENT, EThaler.REGISTEREDDEALER_EVENT);
-        eventHash.put(UNREGISTER_EVENT, EThaler.UNREGISTEREDDEALER_EVENT);
-        eventHash.put(TRANSFER_EVENT, EThaler.TRANSFERSINGLE_EVENT);
-        eventHash.put(TOKENDEFINED_EVENT, EThaler.TOKENDEFINED_EVENT);
-    }
-
-    /**
-     * Susbribes to events
-     * @param web3j
-     */
-    public void startListeningEthEvents(Web3j web3j) {
-        final EthFilter ethFilter = new EthFilter(DefaultBlockParameterName.EARLIEST, DefaultBlockParameterName.LATEST,
-                contract.getContractAddress());
-
-        web3j.ethLogFlowable(ethFilter).subscribe(event -> {
-            try {
-                processEthEvent(event);
-            } catch (Exception ex) {
-                System.out.println("Error in ETH eventes listening : " + ex.getMessage());
-            }
-        }, onError ->
-        {
-            System.out.println("Error in subscribing t0 ETH events : " + onError.getMessage());
-        });
-    }
-
-    /**
-     * process the event log
-     * @param log
-     */
-    private void processEthEvent(Log log) {
-        int size = eventHash.size();
-        if (size == 0) {
-            System.out.println("No contract event registered for listening");
-            return;
-        }
-        for (int i = 0; i < size; i++) {
-            Event event = eventHash.get(i);
-            EventValues eventValues = EThaler.staticExtractEventParameters(event, log);
-            if (eventValues != null) {
-                printEventData(i, eventValues);
-            }
-        }
-    }
-
-    private void printEventData(int i, EventValues eventValues) {
-        switch (i) {
-            case REGISTER_EVENT: {
-                printRegisterEvent(eventValues);
-                GenUtil.printUserOptions();
-                break;
-            }
-            case UNREGISTER_EVENT: {
-                printUnregisterEvent(eventValues);
-                GenUtil.printUserOptions();
-                break;
-            }
-            case TRANSFER_EVENT: {
-                printTransferEvent(eventValues);
-                GenUtil.printUserOptions();
-                break;
-            }
-            case TOKENDEFINED_EVENT: {
-                printTokenDefinedEvent(eventValues);
-                GenUtil.printUserOptions();
-                break;
-            }
-            default:
-                System.out.println("Unknown event ");
-        }
-    }
-
-    /**
-     * prints the msg handed over
-     * @param msg
-     */
-    void printEventMsg(String msg) {
-        System.out.println();
-        System.out.println(GenUtil.SEPARATOR);
-        System.out.println(msg);
-    }
-
-    /**
-     * prints Register dealer event related values
-     * @param eventValues
-     */
-    private void printRegisterEvent(EventValues eventValues) {
-        String accountId = (String) eventValues.getIndexedValues().get(0).getValue();
-        BigInteger tokenId = (BigInteger) eventValues.getNonIndexedValues().get(0).getValue();
-        printEventMsg("Registering event for account [" + accountId + "] , token id [" + tokenId.intValue() + "] completed.");
-    }
-
-    /**
-     * prints Unregister a dealer event related values
-     * @param eventValues
-     */
-    private void printUnregisterEvent(EventValues eventValues) {
-        String accountId = (String) eventValues.getIndexedValues().get(0).getValue();
-        BigInteger tokenId = (BigInteger) eventValues.getNonIndexedValues().get(0).getValue();
-        printEventMsg("Unregistering event for account [" + accountId + "] , token id [" + tokenId.intValue() + "] completed.");
-    }
-
-    /**
-     * prints transfer event related values
-     * @param eventValues
-     */
-    private void printTransferEvent(EventValues eventValues) {
-        String operator = (String) eventValues.getIndexedValues().get(0).getValue();
-        String from = (String) eventValues.getIndexedValues().get(1).getValue();
-        String to = (String) eventValues.getIndexedValues().get(2).getValue();
-        BigInteger id = (BigInteger) eventValues.getNonIndexedValues().get(0).getValue();
-        BigInteger value = (BigInteger) eventValues.getNonIndexedValues().get(1).getValue();
-        printEventMsg("Transfer Event from account [" + from + "] to account [" + to + "] for token id [" + id
-                + "] for amount [" + value + "] completed.");
-    }
-
-    /**
-     * prints a new token created event related values
-     * @param eventValues
-     */
-    private void printTokenDefinedEvent(EventValues eventValues) {
-        BigInteger tokenId = (BigInteger) eventValues.getNonIndexedValues().get(0).getValue();
-        String tokenName = (String) eventValues.getNonIndexedValues().get(1).getValue();
-        String ttfURL = (String) eventValues.getNonIndexedValues().get(2).getValue();
-        printEventMsg("Token Defined event for token id [" + tokenId.intValue() + "] token name [" + tokenName
-                + "] TTF Url [" + ttfURL + "] completed.");
-    }
-
-}//end of class
-
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+* This class listnes for the event messages broadcast by the network.
+* The listener lag is the head block of the chain minus the block of the last processed event;
+* the head block is polled every POLLING_INTERVAL.
+* Decoded events are handed to the {@link EventPipeline}, which does all the output on its own thread.
+* Dealer registrations are also applied to the {@link DealerRegistry} of the session.
+*/
+
+class ContractEventListener  {
+    private static final String[] EVENT_NAMES = {"RegisteredDealer", "UnregisteredDealer", "TransferSingle", "TokenDefined"};
+    private final EThaler contract;
+    private final EventPipeline pipeline;
+    private final DealerRegistry dealers;
+    private final ChainExecutor executor;
+    private final long pollingInterval;
+    private final ClientMetrics metrics;
+    private final ClientMetrics.Gauge headBlock;
+    private final ClientMetrics.Gauge processedBlock;
+    private final ClientMetrics.Gauge lag;
+    static final int REGISTER_EVENT = 0;
+    static final int UNREGISTER_EVENT = 1;
+    static final int TRANSFER_EVENT = 2;
+    static final int TOKENDEFINED_EVENT = 3;
+
+    Hashtable<Integer, Event> eventHash = new Hashtable<Integer, Event>();
+    //event keys by signature topic, so each log is decoded only as the event it is
+    private final Map<String, Integer> eventKeysByTopic = new HashMap<>();
+
+    /**
+     * constructor -- initializes the events to be monitored.
+     * @param session
+     * @param pipeline receives the decoded events
+     */
+    ContractEventListener(EThalerSession session, EventPipeline pipeline) {
+        contract = session.getContract();
+        this.pipeline = pipeline;
+        dealers = session.getDealers();
+        executor = session.getExecutor();
+        pollingInterval = session.getConfig().getPollingInterval();
+        metrics = session.getMetrics();
+        headBlock = metrics.gauge("ethaler_listener_head_block", "Latest block number of the chain seen by the event listener");
+        processedBlock = metrics.gauge("ethaler_listener_processed_block", "Block number of the last event processed by the listener");
+        lag = metrics.gauge("ethaler_listener_lag_blocks", "Head block minus the block of the last processed event");
+        populateEventHash();
+    }
+
+    /**
+     * populates hashtable container with key and event
+     */
+    private void populateEventHash() {
+        eventHash.put(REGISTER_EVENT, EThaler.REGISTEREDDEALER_EVENT);
+        eventHash.put(UNREGISTER_EVENT, EThaler.UNREGISTEREDDEALER_EVENT);
+        eventHash.put(TRANSFER_EVENT, EThaler.TRANSFERSINGLE_EVENT);
+        eventHash.put(TOKENDEFINED_EVENT, EThaler.TOKENDEFINED_EVENT);
+        for (Map.Entry<Integer, Event> entry : eventHash.entrySet()) {
+            eventKeysByTopic.put(EventEncoder.encode(entry.getValue()), entry.getKey());
+        }
+    }
+
+    /**
+     * Susbribes to events
+     * @param web3j
+     */
+    public void startListeningEthEvents(Web3j web3j) {
+        final EthFilter ethFilter = new EthFilter(DefaultBlockParameterName.EARLIEST, DefaultBlockParameterName.LATEST,
+                contract.getContractAddress());
+        executor.startBackground("event-listener-head", () -> pollHeadBlock(web3j));
+
+        web3j.ethLogFlowable(ethFilter).subscribe(event -> {
+            try {
+                processEthEvent(event);
+                if (event.getBlockNumber() != null) {
+                    processedBlock.max(event.getBlockNumber().longValue());
+                    updateLag();
+                }
+            } catch (Exception ex) {
+                System.out.println("Error in ETH eventes listening : " + ex.getMessage());
+            }
+        }, onError ->
+        {
+            System.out.println("Error in subscribing t0 ETH events : " + onError.getMessage());
+        });
+    }
+
+    /**
+     * keeps the head block gauge current until the thread is interrupted
+     * @param web3j
+     */
+    private void pollHeadBlock(Web3j web3j) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                headBlock.set(web3j.ethBlockNumber().send().getBlockNumber().longValue());
+                updateLag();
+                Thread.sleep(pollingInterval);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                //the failure is counted by the JSON-RPC metrics, try again at the next interval
+                try {
+                    Thread.sleep(pollingInterval);
+                } catch (InterruptedException iex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void updateLag() {
+        long processed = processedBlock.get();
+        //no lag until the first event is processed
+        if (processed > 0) {
+            lag.set(Math.max(0, headBlock.get() - processed));
+        }
+    }
+
+    /**
+     * process the event log. The events are decoded with {@link EThalerAbi} : TransferSingle is by far the most
+     * frequent event, and the generated wrapper declares the token id of the others as data, not as a topic.
+     * @param log
+     */
+    private void processEthEvent(Log log) {
+        if (eventHash.isEmpty()) {
+            System.out.println("No contract event registered for listening");
+            return;
+        }
+        if (log.getTopics() == null || log.getTopics().isEmpty()) {
+            return;
+        }
+        Integer key = eventKeysByTopic.get(log.getTopics().get(0).toLowerCase());
+        if (key == null) {
+            return; //not listened to, e.g. ApprovalForAll
+        }
+        ContractEvent event;
+        try {
+            switch (key) {
+                case TRANSFER_EVENT:
+                    event = toTransferEvent(EThalerAbi.decodeTransferSingle(log), log);
+                    break;
+                case REGISTER_EVENT:
+                case UNREGISTER_EVENT:
+                    EThalerAbi.DealerRegistration registration = EThalerAbi.decodeDealerRegistration(log);
+                    dealers.apply(log, registration);
+                    event = toRegistrationEvent(registration, log);
+                    break;
+                default:
+                    event = toTokenDefinedEvent(EThalerAbi.decodeTokenDefined(log), log);
+            }
+        } catch (RuntimeException ex) {
+            metrics.counter("ethaler_listener_decode_errors_total", "Contract logs the listener could not decode",
+                    "event", EVENT_NAMES[key]).inc();
+            System.out.println("Error in decoding " + EVENT_NAMES[key] + " event : " + ex.getMessage());
+            return;
+        }
+        metrics.counter("ethaler_listener_events_total", "Contract events processed by the listener",
+                "event", EVENT_NAMES[key]).inc();
+        pipeline.offer(event);
+    }
+
+    /**
+     * @param transfer decoded TransferSingle event
+     * @param log the event log
+     * @return event for the output pipeline
+     */
+    private ContractEvent toTransferEvent(EThalerAbi.TransferSingle transfer, Log log) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("operator", transfer.operator);
+        values.put("from", transfer.from);
+        values.put("to", transfer.to);
+        values.put("tokenId", transfer.id);
+        values.put("value", transfer.value);
+        String message = "Transfer Event from account [" + transfer.from + "] to account [" + transfer.to
+                + "] for token id [" + transfer.id + "] for amount [" + transfer.value + "] completed.";
+        return new ContractEvent(EVENT_NAMES[TRANSFER_EVENT], log.getBlockNumber(), log.getTransactionHash(), values, message);
+    }
+
+    /**
+     * @param registration decoded RegisteredDealer or UnregisteredDealer event
+     * @param log the event log
+     * @return event for the output pipeline
+     */
+    private ContractEvent toRegistrationEvent(EThalerAbi.DealerRegistration registration, Log log) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("account", registration.account);
+        values.put("tokenId", registration.tokenId);
+        int key = registration.registered ? REGISTER_EVENT : UNREGISTER_EVENT;
+        String message = (registration.registered ? "Registering" : "Unregistering") + " event for account ["
+                + registration.account + "] , token id [" + registration.tokenId + "] completed.";
+        return new ContractEvent(EVENT_NAMES[key], log.getBlockNumber(), log.getTransactionHash(), values, message);
+    }
+
+    /**
+     * @param definition decoded TokenDefined event
+     * @param log the event log
+     * @return event for the output pipeline
+     */
+    private ContractEvent toTokenDefinedEvent(EThalerAbi.TokenDefined definition, Log log) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("tokenId", definition.tokenId);
+        values.put("name", definition.name);
+        values.put("ttfUrl", definition.ttfUrl);
+        String message = "Token Defined event for token id [" + definition.tokenId + "] token name [" + definition.name
+                + "] TTF Url [" + definition.ttfUrl + "] completed.";
+        return new ContractEvent(EVENT_NAMES[TOKENDEFINED_EVENT], log.getBlockNumber(), log.getTransactionHash(), values, message);
+    }
+
+}//end of class
+
@@ -0,0 +1,634 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pre-flight checks of the session transactions against a local copy of the state the requires of eThaler.sol
+ * read, so an operation bound to fail is refused before it is signed instead of being mined with status 0x0.
+ * Mirrored are the tokens and their pause flags, the balances of the session account and, in the session
+ * {@link DealerRegistry}, the dealers of the tokens transferred.
+ * The balances are read at a block with getTokenBalances, and the pause flag of a token at the same block the
+ * first time it is checked. From there the mirror follows the contract logs : TokenDefined, TokenPaused,
+ * TokenResumed, the dealer registrations and the transfers, read with eth_getLogs when a check finds the last
+ * read older than PREFLIGHT_MAX_AGE, plus the logs in the receipts of the session transactions, applied as soon
+ * as they are mined. Each log is applied once. The amounts of the transfers and burns checked but not mined
+ * yet are reserved, so concurrent transfers cannot spend the same balance; a debit read in the logs before
+ * the receipt of its transaction is fetched settles the oldest reservation of its token and amount.
+ * The mirror is confident when its logs were read within PREFLIGHT_MAX_AGE of the check, or during it; a check it is confident of costs no
+ * call, and an operation it sees failing is refused with the require message of the contract. When it is not
+ * confident (logs or pause flag not read, dealers not readable) the operation is dry run with eth_call on the
+ * latest block and refused with the revert reason when it reverts; a dry run that fails otherwise, as a read that
+ * fails, lets the operation through unchecked.
+ * With PREFLIGHT=call every operation is dry run, for a contract deployed before the pause events.
+ * Refusals are a {@link Refusal}. Following the logs assumes a chain with immediate finality : a
+ * reorganisation is only noticed when the head goes back below the block read, then the balances are read again.
+ */
+final class ContractStateMirror {
+    private final Web3j web3j;
+    private final AccountAddress account;
+    private final String contractAddress;
+    private final DealerRegistry dealers;
+    private final ChainExecutor executor;
+    private final ClientMetrics metrics;
+    //false with PREFLIGHT=call, every operation is then dry run
+    private final boolean mirrored;
+    private final long syncIntervalMillis;
+    //one sync at a time; held across the node reads, so a lock and not a monitor (see ChainExecutor)
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    //the state below is guarded by this
+    private final Map<BigInteger, TokenState> tokens = new HashMap<>();
+    //positions (block, log indices) of the receipt logs applied after the last block read, sync skips them
+    private final TreeMap<Long, Set<Long>> applied = new TreeMap<>();
+    //last block whose logs are applied, -1 until the balances are read
+    private long syncedBlock = -1;
+    private long syncedAt;
+    //time of the last failed read, the next one is tried PREFLIGHT_MAX_AGE later
+    private long failedAt;
+    private boolean reloadBalances;
+
+    /**
+     * @param web3j
+     * @param account the session account, signing the checked operations
+     * @param contractAddress
+     * @param dealers dealer registrations of the session
+     * @param executor runs the log reads and dry runs
+     * @param metrics
+     * @param mirrored false to dry run every operation instead of mirroring the state
+     * @param syncIntervalMillis age of the last log read after which the mirror is no more confident
+     */
+    ContractStateMirror(Web3j web3j, AccountAddress account, String contractAddress, DealerRegistry dealers,
+                        ChainExecutor executor, ClientMetrics metrics, boolean mirrored, long syncIntervalMillis) {
+        this.web3j = web3j;
+        this.account = account;
+        this.contractAddress = contractAddress;
+        this.dealers = dealers;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.mirrored = mirrored;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * @param config PREFLIGHT : mirror (default), call or off, and PREFLIGHT_MAX_AGE, by default POLLING_INTERVAL
+     * @param web3j
+     * @param account
+     * @param dealers
+     * @param executor
+     * @param metrics
+     * @return the mirror of the session, null with PREFLIGHT=off
+     */
+    static ContractStateMirror create(ClientConfig config, Web3j web3j, AccountAddress account, DealerRegistry dealers,
+                                      ChainExecutor executor, ClientMetrics metrics) {
+        String mode = config.getString("PREFLIGHT", "mirror");
+        if ("off".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        return new ContractStateMirror(web3j, account, config.getContractAddress(), dealers, executor, metrics,
+                !"call".equalsIgnoreCase(mode), config.getLong("PREFLIGHT_MAX_AGE", config.getPollingInterval()));
+    }
+
+    /* Checks */
+
+    /**
+     * @param service reads the dealers of the token
+     * @param to
+     * @param tokenId
+     * @param amount
+     * @param data encoded call, for the dry run
+     * @return the reservation of the amount, failed with a Refusal when the transfer would fail
+     */
+    CompletableFuture<Reservation> checkTransfer(EThalerService service, AccountAddress to, BigInteger tokenId,
+                                                 BigInteger amount, String data) {
+        //a failed read leaves the dealers unknown, the transfer is then dry run
+        CompletableFuture<Void> tokenDealers = mirrored
+                ? dealers.load(service, tokenId).exceptionally(error -> null) : CompletableFuture.completedFuture(null);
+        return ready(tokenId).thenCombine(tokenDealers, (started, loaded) -> started)
+                .thenCompose(started -> admit(started, tokenId, amount, data, () -> {
+                    TokenState token = tokens.get(tokenId);
+                    Boolean sender = dealers.isRegistered(tokenId, account);
+                    Boolean receiver = dealers.isRegistered(tokenId, to);
+                    if (sender == null || receiver == null) {
+                        return Verdict.UNKNOWN;
+                    }
+                    if (token.paused) {
+                        return Verdict.fail("eThaler: Token is paused. Transfer is not permitted");
+                    }
+                    if (!sender) {
+                        return Verdict.fail("eThaler: sender must be registered first");
+                    }
+                    if (!receiver) {
+                        return Verdict.fail("eThaler: receiver must be registered first");
+                    }
+                    if (account.equals(to)) {
+                        return Verdict.fail("eThaler: sender and receiver cannot be the same");
+                    }
+                    if (token.available().compareTo(amount) < 0) {
+                        return Verdict.fail("ERC1155: insufficient balance for transfer");
+                    }
+                    return Verdict.OK;
+                }));
+    }
+
+    /**
+     * @param tokenId
+     * @param data encoded call
+     * @return the admission of the mint, failed when it would fail
+     */
+    CompletableFuture<Reservation> checkMint(BigInteger tokenId, String data) {
+        return ready(tokenId).thenCompose(started -> admit(started, tokenId, BigInteger.ZERO, data, () -> tokens.get(tokenId).paused
+                ? Verdict.fail("eThaler: Token is paused. Minting is not permitted") : Verdict.OK));
+    }
+
+    /**
+     * @param tokenId
+     * @param amount
+     * @param data encoded call
+     * @return the reservation of the amount, failed when the burn would fail
+     */
+    CompletableFuture<Reservation> checkBurn(BigInteger tokenId, BigInteger amount, String data) {
+        return ready(tokenId).thenCompose(started -> admit(started, tokenId, amount, data, () -> {
+            TokenState token = tokens.get(tokenId);
+            if (token.paused) {
+                return Verdict.fail("eThaler: Token is paused. Burning is not permitted");
+            }
+            return token.available().compareTo(amount) < 0
+                    ? Verdict.fail("ERC1155: attempting to burn more than balance") : Verdict.OK;
+        }));
+    }
+
+    /**
+     * @param tokenId
+     * @param pause true for pause, false for resume
+     * @param data encoded call
+     * @return the admission, failed when the token is already in that state
+     */
+    CompletableFuture<Reservation> checkPause(BigInteger tokenId, boolean pause, String data) {
+        return ready(tokenId).thenCompose(started -> admit(started, tokenId, BigInteger.ZERO, data, () -> {
+            boolean paused = tokens.get(tokenId).paused;
+            if (pause && paused) {
+                return Verdict.fail("eThaler: token is already paused");
+            }
+            return !pause && !paused ? Verdict.fail("eThaler: token is not in paused state") : Verdict.OK;
+        }));
+    }
+
+    /**
+     * reads the logs when the last read is too old, and the pause flag of the token the first time
+     * @param tokenId
+     * @return time the check started, once the mirror is as current as it can be. Never completes exceptionally
+     */
+    private CompletableFuture<Long> ready(BigInteger tokenId) {
+        long started = System.currentTimeMillis();
+        if (!mirrored) {
+            return CompletableFuture.completedFuture(started);
+        }
+        synchronized (this) {
+            TokenState token = tokens.get(tokenId);
+            if ((isCurrent(started) && (token == null || token.pausedRead)) || started - failedAt < syncIntervalMillis) {
+                return CompletableFuture.completedFuture(started);
+            }
+        }
+        return executor.submit(() -> {
+            sync(tokenId);
+            return started;
+        }).exceptionally(error -> {
+            synchronized (this) {
+                failedAt = System.currentTimeMillis();
+            }
+            GenUtil.printLog("Pre-flight state not read, operations are dry run : " + EThalerService.unwrap(error).getMessage());
+            return started;
+        });
+    }
+
+    /**
+     * decides on the mirror when confident, with a dry run otherwise, and reserves the amount of an admitted operation
+     * @param started time the check started
+     * @param tokenId
+     * @param amount to reserve, zero for none
+     * @param data encoded call
+     * @param check verdict of the mirror, called holding the lock on a known token with its pause flag read
+     * @return the reservation, failed with the require message when the operation would fail
+     */
+    private CompletableFuture<Reservation> admit(long started, BigInteger tokenId, BigInteger amount, String data,
+                                                 CheckFunction check) {
+        if (mirrored) {
+            synchronized (this) {
+                TokenState token = tokens.get(tokenId);
+                Verdict verdict = Verdict.UNKNOWN;
+                if (isCurrent(started) && token == null) {
+                    verdict = Verdict.fail("eThaler: tokenId does not exist");
+                } else if (isCurrent(started) && token.pausedRead) {
+                    verdict = check.apply();
+                }
+                if (verdict.reason != null) {
+                    return reject(verdict.reason, "mirror");
+                }
+                if (verdict == Verdict.OK) {
+                    return CompletableFuture.completedFuture(reserve(tokenId, amount));
+                }
+            }
+        }
+        metrics.counter("ethaler_preflight_dry_runs_total", "Operations checked with an eth_call dry run").inc();
+        return executor.submit(() -> dryRun(data)).exceptionally(error -> {
+            //as a failed read, a failed dry run does not stop the operation
+            GenUtil.printLog("Pre-flight dry run failed, the operation is sent unchecked : " + EThalerService.unwrap(error).getMessage());
+            return null;
+        }).thenCompose(reason -> {
+            if (reason != null) {
+                return reject(reason, "call");
+            }
+            synchronized (this) {
+                return CompletableFuture.completedFuture(reserve(tokenId, amount));
+            }
+        });
+    }
+
+    private CompletableFuture<Reservation> reject(String reason, String source) {
+        metrics.counter("ethaler_preflight_rejections_total", "Operations refused before signing", "source", source).inc();
+        return CompletableFuture.failedFuture(new Refusal(reason));
+    }
+
+    private Reservation reserve(BigInteger tokenId, BigInteger amount) {
+        Reservation reservation = new Reservation(tokenId, amount);
+        TokenState token = tokens.get(tokenId);
+        if (token != null && amount.signum() > 0) {
+            token.pending.add(reservation);
+        }
+        return reservation;
+    }
+
+    /**
+     * only a revert refuses the operation : an error the node answers for another cause (rate limit, method not
+     * available, internal error) says nothing of the transaction, which is then sent unchecked
+     * @param data encoded call
+     * @return the revert reason, null when the call succeeds or fails without reverting
+     * @throws IOException
+     */
+    private String dryRun(String data) throws IOException {
+        EthCall result = web3j.ethCall(Transaction.createEthCallTransaction(account.toString(), contractAddress, data),
+                DefaultBlockParameterName.LATEST).send();
+        if (result.hasError()) {
+            String reason = EThalerAbi.decodeRevertReason(result.getError().getData());
+            if (reason != null) {
+                return reason;
+            }
+            //a revert without a reason, e.g. a require without a message
+            if (result.getError().getMessage() != null && result.getError().getMessage().toLowerCase().contains("revert")) {
+                return result.getError().getMessage();
+            }
+            GenUtil.printLog("Pre-flight dry run not answered, the operation is sent unchecked : " + result.getError().getMessage());
+            return null;
+        }
+        //a node answering a revert without an error returns the encoded Error(string) as the result
+        return EThalerAbi.decodeRevertReason(result.getValue());
+    }
+
+    /* State */
+
+    private boolean isFresh() {
+        return isCurrent(System.currentTimeMillis());
+    }
+
+    /**
+     * @param started time a check started
+     * @return true when the logs were read less than PREFLIGHT_MAX_AGE before, or since, the check started
+     */
+    private boolean isCurrent(long started) {
+        return syncedBlock >= 0 && (started - syncedAt < syncIntervalMillis || syncedAt >= started);
+    }
+
+    /**
+     * reads the balances the first time, the logs since the last block read, and the pause flag of the token
+     * when not read yet. One read at a time, the checks waiting for it use its result.
+     * @param tokenId
+     * @throws IOException when the node cannot be read
+     */
+    private void sync(BigInteger tokenId) throws IOException {
+        syncLock.lock();
+        try {
+            boolean stale;
+            boolean reload;
+            long from;
+            synchronized (this) {
+                stale = !isFresh();
+                from = syncedBlock + 1;
+            }
+            if (stale) {
+                long head = web3j.ethBlockNumber().send().getBlockNumber().longValue();
+                if (from == 0 || head < from - 1) {
+                    loadBalances(head);
+                } else {
+                    List<Log> logs = head >= from ? getLogs(from, head) : Collections.<Log>emptyList();
+                    synchronized (this) {
+                        for (Log log : logs) {
+                            Set<Long> indices = applied.get(log.getBlockNumber().longValue());
+                            if (indices == null || !indices.contains(log.getLogIndex().longValue())) {
+                                apply(log, true);
+                            }
+                        }
+                        syncedBlock = head;
+                        syncedAt = System.currentTimeMillis();
+                        applied.headMap(head, true).clear();
+                        reload = reloadBalances;
+                    }
+                    if (reload) {
+                        loadBalances(head);
+                    }
+                }
+            }
+            readPaused(tokenId);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * reads the balances of the account at the block, a page at a time, and forgets the state read at another block
+     * @param block
+     * @throws IOException
+     */
+    private void loadBalances(long block) throws IOException {
+        Map<BigInteger, BigInteger> balances = new LinkedHashMap<>();
+        EThalerAbi.BalancePage page;
+        do {
+            page = EThalerAbi.decodeTokenBalances(call(
+                    EThalerAbi.encodeGetTokenBalances(balances.size(), EThalerService.TOKEN_PAGE_SIZE), block));
+            balances.putAll(page.balances);
+        } while (!page.balances.isEmpty() && balances.size() < page.total);
+        synchronized (this) {
+            Map<BigInteger, TokenState> previous = new HashMap<>(tokens);
+            tokens.clear();
+            for (Map.Entry<BigInteger, BigInteger> balance : balances.entrySet()) {
+                TokenState token = new TokenState(balance.getValue());
+                TokenState known = previous.get(balance.getKey());
+                if (known != null) {
+                    token.pending.addAll(known.pending);
+                }
+                tokens.put(balance.getKey(), token);
+            }
+            //the receipt logs after the block are read again by the next sync
+            applied.clear();
+            syncedBlock = block;
+            syncedAt = System.currentTimeMillis();
+            reloadBalances = false;
+        }
+    }
+
+    private void readPaused(BigInteger tokenId) throws IOException {
+        long block;
+        synchronized (this) {
+            TokenState token = tokens.get(tokenId);
+            if (token == null || token.pausedRead) {
+                return;
+            }
+            block = syncedBlock;
+        }
+        boolean paused = EThalerAbi.decodeUint256(call(EThalerAbi.encodeIsPaused(tokenId), block)).signum() != 0;
+        synchronized (this) {
+            TokenState token = tokens.get(tokenId);
+            //a pause event applied meanwhile is newer than the flag read
+            if (token != null && !token.pausedRead) {
+                token.paused = paused;
+                token.pausedRead = true;
+            }
+        }
+    }
+
+    private String call(String data, long block) throws IOException {
+        EthCall result = web3j.ethCall(Transaction.createEthCallTransaction(account.toString(), contractAddress, data),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(block))).send();
+        if (result.hasError()) {
+            throw new IOException("Error reading the contract state : " + result.getError().getMessage());
+        }
+        return result.getValue();
+    }
+
+    private List<Log> getLogs(long from, long to) throws IOException {
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)), contractAddress);
+        filter.addOptionalTopics(EThalerAbi.TRANSFER_SINGLE_TOPIC, EThalerAbi.TRANSFER_BATCH_TOPIC, EThalerAbi.TOKEN_DEFINED_TOPIC,
+                EThalerAbi.TOKEN_PAUSED_TOPIC, EThalerAbi.TOKEN_RESUMED_TOPIC, EThalerAbi.REGISTERED_DEALER_TOPIC,
+                EThalerAbi.UNREGISTERED_DEALER_TOPIC);
+        EthLog result = web3j.ethGetLogs(filter).send();
+        if (result.hasError()) {
+            throw new IOException("Error reading the contract logs : " + result.getError().getMessage());
+        }
+        List<Log> logs = new ArrayList<>(result.getLogs().size());
+        for (EthLog.LogResult<?> log : result.getLogs()) {
+            logs.add((Log) log.get());
+        }
+        return logs;
+    }
+
+    /**
+     * applies the logs of a mined session transaction not read by a sync yet
+     * @param receipt
+     */
+    private synchronized void applyReceipt(TransactionReceipt receipt) {
+        if (syncedBlock < 0 || receipt.getLogs() == null) {
+            return;
+        }
+        for (Log log : receipt.getLogs()) {
+            if (log.getBlockNumber() == null || log.getLogIndex() == null || log.getBlockNumber().longValue() <= syncedBlock
+                    || !contractAddress.equalsIgnoreCase(log.getAddress())) {
+                continue;
+            }
+            //registrations are left to the sync, the dealer registry applies its logs in chain order
+            if (EThalerAbi.decodeDealerRegistration(log) == null && apply(log, false)) {
+                applied.computeIfAbsent(log.getBlockNumber().longValue(), block -> new HashSet<>())
+                        .add(log.getLogIndex().longValue());
+            }
+        }
+    }
+
+    /**
+     * @param log contract log
+     * @param synced true for a log read by a sync, false for a receipt log, whose reservation is settled by its release
+     * @return true when the log changed the mirrored state
+     */
+    private boolean apply(Log log, boolean synced) {
+        List<String> topics = log.getTopics();
+        if (log.isRemoved() || topics == null || topics.isEmpty()) {
+            return false;
+        }
+        String topic = topics.get(0);
+        EThalerAbi.TransferSingle transfer = EThalerAbi.decodeTransferSingle(log);
+        if (transfer != null) {
+            TokenState token = tokens.get(transfer.id);
+            if (token == null) {
+                return false;
+            }
+            BigInteger value = transfer.value.toBigInteger();
+            if (account.equals(transfer.from)) {
+                token.balance = token.balance.subtract(value);
+                if (synced) {
+                    token.settle(value);
+                }
+            }
+            if (account.equals(transfer.to)) {
+                token.balance = token.balance.add(value);
+            }
+            return true;
+        }
+        if (EThalerAbi.TRANSFER_BATCH_TOPIC.equalsIgnoreCase(topic)) {
+            //the batch amounts are not decoded, the balances are read again when the account is in the batch
+            String accountTopic = "0x000000000000000000000000" + account.toString().substring(2);
+            if (topics.size() == 4 && (accountTopic.equalsIgnoreCase(topics.get(2)) || accountTopic.equalsIgnoreCase(topics.get(3)))) {
+                reloadBalances = true;
+            }
+            return false;
+        }
+        EThalerAbi.DealerRegistration registration = EThalerAbi.decodeDealerRegistration(log);
+        if (registration != null) {
+            dealers.apply(log, registration);
+            return false;
+        }
+        BigInteger tokenId = EThalerAbi.decodeTokenIdTopic(log);
+        if (tokenId == null) {
+            return false;
+        }
+        if (EThalerAbi.TOKEN_DEFINED_TOPIC.equalsIgnoreCase(topic)) {
+            TokenState token = new TokenState(BigInteger.ZERO);
+            token.pausedRead = true;
+            tokens.putIfAbsent(tokenId, token);
+            return true;
+        }
+        boolean paused = EThalerAbi.TOKEN_PAUSED_TOPIC.equalsIgnoreCase(topic);
+        TokenState token = tokens.get(tokenId);
+        if (token == null || (!paused && !EThalerAbi.TOKEN_RESUMED_TOPIC.equalsIgnoreCase(topic))) {
+            return false;
+        }
+        token.paused = paused;
+        token.pausedRead = true;
+        return true;
+    }
+
+    /**
+     * state of one token
+     */
+    private static final class TokenState {
+        private BigInteger balance;
+        //admitted operations not mined yet, oldest first
+        private final List<Reservation> pending = new ArrayList<>();
+        private boolean paused;
+        //false until the flag is read or set by an event
+        private boolean pausedRead;
+
+        private TokenState(BigInteger balance) {
+            this.balance = balance;
+        }
+
+        private BigInteger available() {
+            BigInteger available = balance;
+            for (Reservation reservation : pending) {
+                available = available.subtract(reservation.amount);
+            }
+            return available;
+        }
+
+        /**
+         * @param value debit read in the logs, its reservation no more holds the amount
+         */
+        private void settle(BigInteger value) {
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i).amount.equals(value)) {
+                    pending.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * operation the contract would revert, refused before signing : the state does not allow it now, as opposed to
+     * a command not permitted for the wallet
+     */
+    static final class Refusal extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        Refusal(String reason) {
+            super(reason);
+        }
+    }
+
+    /**
+     * an admitted operation, released once it is mined or has failed
+     */
+    final class Reservation {
+        private final BigInteger tokenId;
+        private final BigInteger amount;
+
+        private Reservation(BigInteger tokenId, BigInteger amount) {
+            this.tokenId = tokenId;
+            this.amount = amount;
+        }
+
+        /**
+         * applies the logs of the receipt and frees the reserved amount
+         * @param receipt of the transaction, null when it was not mined
+         */
+        void release(TransactionReceipt receipt) {
+            if (receipt != null) {
+                applyReceipt(receipt);
+            }
+            synchronized (ContractStateMirror.this) {
+                TokenState token = tokens.get(tokenId);
+                if (token != null) {
+                    token.pending.remove(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * result of a check on the mirror : admitted, refused with the reason, or unknown
+     */
+    private static final class Verdict {
+        static final Verdict OK = new Verdict(null);
+        static final Verdict UNKNOWN = new Verdict(null);
+        final String reason;
+
+        private Verdict(String reason) {
+            this.reason = reason;
+        }
+
+        static Verdict fail(String reason) {
+            return new Verdict(reason);
+        }
+    }
+
+    private interface CheckFunction {
+        Verdict apply();
+    }
+}//end of class
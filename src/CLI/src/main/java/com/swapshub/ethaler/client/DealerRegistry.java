@@ -0,0 +1,145 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registered dealers of each token, built from the RegisteredDealer and UnregisteredDealer events.
+ * The events carry the token id as an indexed topic, so the first {@link #refresh} of a token asks the node
+ * for the registrations of that token only, and the next ones only for the blocks after the last one read.
+ * The event listener applies the registrations as they arrive to the tokens already read; a log it delivers
+ * while a token is read is picked up by the next refresh. Each log is applied once, in chain order.
+ */
+final class DealerRegistry {
+    private final ConcurrentHashMap<BigInteger, TokenDealers> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * reads the registrations of the token made since the last refresh
+     * @param service reads the logs
+     * @param tokenId
+     * @return the registered dealers of the token, in registration order
+     */
+    CompletableFuture<Set<AccountAddress>> refresh(EThalerService service, BigInteger tokenId) {
+        TokenDealers dealers = tokens.computeIfAbsent(tokenId, id -> new TokenDealers());
+        return service.getDealerRegistrationLogs(tokenId, dealers.nextBlock()).thenApply(dealers::load);
+    }
+
+    /**
+     * reads the registrations of the token the first time only, the tokens read are then kept current by the
+     * logs applied to them
+     * @param service reads the logs
+     * @param tokenId
+     * @return completes once the dealers of the token are read
+     */
+    CompletableFuture<Void> load(EThalerService service, BigInteger tokenId) {
+        TokenDealers dealers = tokens.get(tokenId);
+        if (dealers != null && dealers.isLoaded()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return refresh(service, tokenId).thenApply(ignored -> null);
+    }
+
+    /**
+     * @param tokenId
+     * @param account
+     * @return true when the account is a registered dealer of the token, null when the token was not read yet
+     */
+    Boolean isRegistered(BigInteger tokenId, AccountAddress account) {
+        TokenDealers dealers = tokens.get(tokenId);
+        return dealers == null ? null : dealers.contains(account);
+    }
+
+    /**
+     * applies a registration received by the event listener or the state mirror; tokens not read yet are left to their refresh
+     * @param log the event log
+     * @param registration decoded event
+     */
+    void apply(Log log, EThalerAbi.DealerRegistration registration) {
+        TokenDealers dealers = tokens.get(registration.tokenId);
+        if (dealers != null) {
+            dealers.applyLive(log, registration);
+        }
+    }
+
+    /**
+     * dealers of one token and the position of the last log applied to them
+     */
+    private static final class TokenDealers {
+        private final Set<AccountAddress> dealers = new LinkedHashSet<>();
+        private long lastBlock = -1;
+        private long lastLogIndex = -1;
+        //set once the registrations up to a block have been read, live logs before that would hide the older ones
+        private boolean loaded;
+
+        /**
+         * @return block to read from, the last block read again as it may hold logs not returned yet
+         */
+        synchronized BigInteger nextBlock() {
+            return BigInteger.valueOf(Math.max(0, lastBlock));
+        }
+
+        /**
+         * @param logs registration logs read from the node, in chain order
+         * @return the registered dealers
+         */
+        synchronized Set<AccountAddress> load(List<Log> logs) {
+            for (Log log : logs) {
+                apply(log, EThalerAbi.decodeDealerRegistration(log));
+            }
+            loaded = true;
+            return get();
+        }
+
+        synchronized void applyLive(Log log, EThalerAbi.DealerRegistration registration) {
+            if (loaded) {
+                apply(log, registration);
+            }
+        }
+
+        private void apply(Log log, EThalerAbi.DealerRegistration registration) {
+            //pending logs have no position yet and removed logs were undone by a reorganisation
+            if (registration == null || log.getBlockNumber() == null || log.getLogIndex() == null || log.isRemoved()) {
+                return;
+            }
+            long block = log.getBlockNumber().longValue();
+            long logIndex = log.getLogIndex().longValue();
+            if (block < lastBlock || (block == lastBlock && logIndex <= lastLogIndex)) {
+                return;
+            }
+            lastBlock = block;
+            lastLogIndex = logIndex;
+            if (registration.registered) {
+                dealers.add(registration.account);
+            } else {
+                dealers.remove(registration.account);
+            }
+        }
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        synchronized Boolean contains(AccountAddress account) {
+            return loaded ? dealers.contains(account) : null;
+        }
+
+        synchronized Set<AccountAddress> get() {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(dealers));
+        }
+    }
+}//end of class
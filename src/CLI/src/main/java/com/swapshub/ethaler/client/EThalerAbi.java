@@ -0,0 +1,687 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.tx.exceptions.ContractCallException;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ABI codec for the hot contract functions : transfer, balanceOf, balanceOfBatch and the TransferSingle event,
+ * for mint, burn, pause and resume, whose call data the pre-flight dry run needs,
+ * for getTokenDefinitions, whose string[] results web3j 4.5 does not decode correctly, for registerDealers,
+ * which has the arguments of balanceOfBatch, and for the dealer registration and token definition events, whose
+ * token id is an indexed topic the older generated wrapper decodes as data.
+ * It also reads what {@link ContractStateMirror} mirrors : getTokenBalances, isPaused, the token events and
+ * the Error(string) reason of a reverted call.
+ * The generated wrapper builds boxed web3j types and encodes / decodes them by reflection; these functions
+ * are a fixed selector followed by 32 byte words, so they are written straight into, and read straight
+ * from, a byte buffer. The length of a call is known from its arguments, so encoding allocates a buffer of
+ * that length and the resulting string, and decoding the decoded bytes and the resulting values. Nothing is
+ * kept per thread : the calls run on the virtual threads of {@link ChainExecutor}, a new one for each call.
+ * Addresses and amounts are written and read as {@link AccountAddress} and {@link TokenAmount}, without
+ * going through their text.
+ * The other contract functions still go through the wrapper.
+ */
+final class EThalerAbi {
+    //signatures of the functions called and events read below, a build of eThaler.sol dispatches and emits them all
+    private static final Map<String, byte[]> FUNCTIONS = new LinkedHashMap<>();
+    private static final Map<String, String> EVENTS = new LinkedHashMap<>();
+    static final String TRANSFER_SINGLE_TOPIC = event("TransferSingle(address,address,address,uint256,uint256)");
+    static final String TRANSFER_BATCH_TOPIC = event("TransferBatch(address,address,address,uint256[],uint256[])");
+    static final String REGISTERED_DEALER_TOPIC = event("RegisteredDealer(address,uint256)");
+    static final String UNREGISTERED_DEALER_TOPIC = event("UnregisteredDealer(address,uint256)");
+    static final String TOKEN_DEFINED_TOPIC = event("TokenDefined(uint256,string,string)");
+    static final String TOKEN_PAUSED_TOPIC = event("TokenPaused(uint256)");
+    static final String TOKEN_RESUMED_TOPIC = event("TokenResumed(uint256)");
+    private static final byte[] TRANSFER = function("transfer(address,uint256,uint256)");
+    private static final byte[] BALANCE_OF = function("balanceOf(uint256)");
+    private static final byte[] BALANCE_OF_ACCOUNT = function("balanceOf(address,uint256)");
+    private static final byte[] BALANCE_OF_BATCH = function("balanceOfBatch(address[],uint256[])");
+    private static final byte[] GET_TOKEN_DEFINITIONS = function("getTokenDefinitions(uint256,uint256)");
+    private static final byte[] REGISTER_DEALERS = function("registerDealers(address[],uint256[])");
+    private static final byte[] IS_PAUSED = function("isPaused(uint256)");
+    private static final byte[] PAUSE = function("pause(uint256)");
+    private static final byte[] RESUME = function("resume(uint256)");
+    private static final byte[] MINT = function("mint(uint256,uint256,bytes)");
+    private static final byte[] BURN = function("burn(uint256,uint256)");
+    private static final byte[] GET_TOKEN_BALANCES = function("getTokenBalances(uint256,uint256)");
+    //selector of the Error(string) a require with a message reverts with
+    private static final byte[] ERROR = selector("Error(string)");
+    private static final int SELECTOR_LENGTH = 4;
+    private static final int WORD = 32;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private EThalerAbi() {
+    }
+
+    private static byte[] selector(String signature) {
+        byte[] selector = new byte[SELECTOR_LENGTH];
+        System.arraycopy(Hash.sha3(signature.getBytes()), 0, selector, 0, SELECTOR_LENGTH);
+        return selector;
+    }
+
+    private static byte[] function(String signature) {
+        byte[] selector = selector(signature);
+        FUNCTIONS.put(signature, selector);
+        return selector;
+    }
+
+    private static String event(String signature) {
+        String topic = Hash.sha3String(signature);
+        EVENTS.put(signature, topic);
+        return topic;
+    }
+
+    /**
+     * The dispatcher of a compiled contract pushes the selector of each function it has, and the contract pushes
+     * the topic of each event it emits, so a bytecode without one of them is an older build of eThaler.sol.
+     * @param bytecode 0x prefixed creation or runtime code of the contract
+     * @return the functions this class calls and the events it reads that the bytecode does not have
+     */
+    static List<String> missingFrom(String bytecode) {
+        String code = bytecode.toLowerCase();
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, byte[]> function : FUNCTIONS.entrySet()) {
+            if (!code.contains(push(function.getValue()))) {
+                missing.add(function.getKey());
+            }
+        }
+        for (Map.Entry<String, String> event : EVENTS.entrySet()) {
+            if (!code.contains(push(Numeric.hexStringToByteArray(event.getValue())))) {
+                missing.add(event.getKey());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @param value
+     * @return the PUSH instruction of the value as solc writes it, without its leading zero bytes
+     */
+    private static String push(byte[] value) {
+        int start = 0;
+        while (start < value.length - 1 && value[start] == 0) {
+            start++;
+        }
+        ByteBuffer out = ByteBuffer.allocate(1 + value.length - start);
+        out.put((byte) (0x5f + value.length - start));
+        out.put(value, start, value.length - start);
+        return toHex(out).substring(2);
+    }
+
+    /* Encoding */
+
+    /**
+     * writes the call of transfer(address,uint256,uint256)
+     * @param to
+     * @param tokenId
+     * @param amount
+     * @param out receives 100 bytes
+     */
+    static void encodeTransfer(AccountAddress to, BigInteger tokenId, TokenAmount amount, ByteBuffer out) {
+        out.put(TRANSFER);
+        to.writeTo(out);
+        putUint256(out, tokenId);
+        amount.writeTo(out);
+    }
+
+    /**
+     * @param to
+     * @param tokenId
+     * @param amount
+     * @return call data of transfer(address,uint256,uint256) as 0x prefixed hex
+     */
+    static String encodeTransfer(AccountAddress to, BigInteger tokenId, TokenAmount amount) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 3 * WORD);
+        encodeTransfer(to, tokenId, amount, out);
+        return toHex(out);
+    }
+
+    /**
+     * @param tokenId
+     * @return call data of balanceOf(uint256), the balance of the calling account
+     */
+    static String encodeBalanceOf(BigInteger tokenId) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + WORD);
+        out.put(BALANCE_OF);
+        putUint256(out, tokenId);
+        return toHex(out);
+    }
+
+    /**
+     * @param account
+     * @param tokenId
+     * @return call data of balanceOf(address,uint256)
+     */
+    static String encodeBalanceOf(AccountAddress account, BigInteger tokenId) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 2 * WORD);
+        out.put(BALANCE_OF_ACCOUNT);
+        account.writeTo(out);
+        putUint256(out, tokenId);
+        return toHex(out);
+    }
+
+    /**
+     * writes the call of balanceOfBatch(address[],uint256[])
+     * @param accounts
+     * @param tokenIds
+     * @param out receives 4 + 32 * (4 + accounts + token ids) bytes
+     */
+    static void encodeBalanceOfBatch(List<AccountAddress> accounts, List<BigInteger> tokenIds, ByteBuffer out) {
+        out.put(BALANCE_OF_BATCH);
+        putAccountsAndIds(accounts, tokenIds, out);
+    }
+
+    /**
+     * writes the arguments (address[], uint256[])
+     * @param accounts
+     * @param tokenIds
+     * @param out
+     */
+    private static void putAccountsAndIds(List<AccountAddress> accounts, List<BigInteger> tokenIds, ByteBuffer out) {
+        //heads : offsets of the two arrays from the start of the arguments
+        putUint256(out, 2 * WORD);
+        putUint256(out, (long) (3 + accounts.size()) * WORD);
+        putUint256(out, accounts.size());
+        for (AccountAddress account : accounts) {
+            account.writeTo(out);
+        }
+        putUint256(out, tokenIds.size());
+        for (BigInteger tokenId : tokenIds) {
+            putUint256(out, tokenId);
+        }
+    }
+
+    /**
+     * @param accounts
+     * @param tokenIds
+     * @return call data of balanceOfBatch(address[],uint256[])
+     */
+    static String encodeBalanceOfBatch(List<AccountAddress> accounts, List<BigInteger> tokenIds) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + (4 + accounts.size() + tokenIds.size()) * WORD);
+        encodeBalanceOfBatch(accounts, tokenIds, out);
+        return toHex(out);
+    }
+
+    /**
+     * @param accounts
+     * @param tokenIds
+     * @return call data of registerDealers(address[],uint256[])
+     */
+    static String encodeRegisterDealers(List<AccountAddress> accounts, List<BigInteger> tokenIds) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + (4 + accounts.size() + tokenIds.size()) * WORD);
+        out.put(REGISTER_DEALERS);
+        putAccountsAndIds(accounts, tokenIds, out);
+        return toHex(out);
+    }
+
+    /**
+     * @param tokenId
+     * @return call data of isPaused(uint256)
+     */
+    static String encodeIsPaused(BigInteger tokenId) {
+        return encodeTokenCall(IS_PAUSED, tokenId);
+    }
+
+    /**
+     * @param tokenId
+     * @return call data of pause(uint256)
+     */
+    static String encodePause(BigInteger tokenId) {
+        return encodeTokenCall(PAUSE, tokenId);
+    }
+
+    /**
+     * @param tokenId
+     * @return call data of resume(uint256)
+     */
+    static String encodeResume(BigInteger tokenId) {
+        return encodeTokenCall(RESUME, tokenId);
+    }
+
+    private static String encodeTokenCall(byte[] selector, BigInteger tokenId) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + WORD);
+        out.put(selector);
+        putUint256(out, tokenId);
+        return toHex(out);
+    }
+
+    /**
+     * @param tokenId
+     * @param amount
+     * @return call data of mint(uint256,uint256,bytes), without callback data
+     */
+    static String encodeMint(BigInteger tokenId, BigInteger amount) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 4 * WORD);
+        out.put(MINT);
+        putUint256(out, tokenId);
+        putUint256(out, amount);
+        //offset of the empty bytes, then their length
+        putUint256(out, 3 * WORD);
+        putUint256(out, 0);
+        return toHex(out);
+    }
+
+    /**
+     * @param tokenId
+     * @param amount
+     * @return call data of burn(uint256,uint256)
+     */
+    static String encodeBurn(BigInteger tokenId, BigInteger amount) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 2 * WORD);
+        out.put(BURN);
+        putUint256(out, tokenId);
+        putUint256(out, amount);
+        return toHex(out);
+    }
+
+    /**
+     * @param offset index of the first token
+     * @param limit most tokens to return
+     * @return call data of getTokenBalances(uint256,uint256)
+     */
+    static String encodeGetTokenBalances(long offset, long limit) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 2 * WORD);
+        out.put(GET_TOKEN_BALANCES);
+        putUint256(out, offset);
+        putUint256(out, limit);
+        return toHex(out);
+    }
+
+    /**
+     * @param offset index of the first definition
+     * @param limit most definitions to return
+     * @return call data of getTokenDefinitions(uint256,uint256)
+     */
+    static String encodeGetTokenDefinitions(long offset, long limit) {
+        ByteBuffer out = ByteBuffer.allocate(SELECTOR_LENGTH + 2 * WORD);
+        out.put(GET_TOKEN_DEFINITIONS);
+        putUint256(out, offset);
+        putUint256(out, limit);
+        return toHex(out);
+    }
+
+    private static void putUint256(ByteBuffer out, long value) {
+        for (int i = 0; i < WORD - Long.BYTES; i++) {
+            out.put((byte) 0);
+        }
+        out.putLong(value);
+    }
+
+    private static void putUint256(ByteBuffer out, BigInteger value) {
+        TokenAmount.of(value).writeTo(out);
+    }
+
+    /* Decoding */
+
+    /**
+     * @param hex result of a call returning a single uint256, as returned by eth_call
+     * @return the value
+     * @throws ContractCallException when the result is empty, e.g. the call reverted
+     */
+    static BigInteger decodeUint256(String hex) {
+        ByteBuffer in = fromHex(hex);
+        return getUint256(in, 0);
+    }
+
+    /**
+     * @param hex result of a call returning a single uint256[], as returned by eth_call
+     * @return the values
+     * @throws ContractCallException when the result is empty, e.g. the call reverted
+     */
+    static List<BigInteger> decodeUint256Array(String hex) {
+        ByteBuffer in = fromHex(hex);
+        int offset = getLength(in, 0);
+        int length = getLength(in, offset);
+        List<BigInteger> values = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            values.add(getUint256(in, offset + WORD * (i + 1)));
+        }
+        return values;
+    }
+
+    /**
+     * @param hex result of getTokenBalances, as returned by eth_call
+     * @return the page of balances of the caller, with the total number of tokens
+     * @throws ContractCallException when the result is empty
+     */
+    static BalancePage decodeTokenBalances(String hex) {
+        ByteBuffer in = fromHex(hex);
+        checkLength(in, 3 * WORD);
+        int total = getLength(in, 0);
+        int idsOffset = getLength(in, WORD);
+        int balancesOffset = getLength(in, 2 * WORD);
+        int count = getLength(in, idsOffset);
+        Map<BigInteger, BigInteger> balances = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            int element = WORD * (i + 1);
+            balances.put(getUint256(in, idsOffset + element), getUint256(in, balancesOffset + element));
+        }
+        return new BalancePage(total, balances);
+    }
+
+    /**
+     * @param hex data of a reverted call, as in the eth_call error or the revertReason of a receipt
+     * @return the require message, null when the data is not an Error(string)
+     */
+    static String decodeRevertReason(String hex) {
+        //web3j 4.5 keeps the error data as JSON, a string in quotes
+        if (hex != null && hex.length() > 1 && hex.startsWith("\"") && hex.endsWith("\"")) {
+            hex = hex.substring(1, hex.length() - 1);
+        }
+        if (hex == null || hex.length() < 2 + 2 * (SELECTOR_LENGTH + 2 * WORD)) {
+            return null;
+        }
+        ByteBuffer in = fromHex(hex);
+        for (int i = 0; i < SELECTOR_LENGTH; i++) {
+            if (in.get(i) != ERROR[i]) {
+                return null;
+            }
+        }
+        int stringOffset = SELECTOR_LENGTH + getLength(in, SELECTOR_LENGTH);
+        int length = getLength(in, stringOffset);
+        checkLength(in, stringOffset + WORD + length);
+        return new String(in.array(), in.arrayOffset() + stringOffset + WORD, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the calls of a bulk run differ by the amount, which does not change why they fail
+     * @param data call data
+     * @return call data without the amount of transfer, mint and burn, the full data of other calls
+     */
+    static String callShape(String data) {
+        if (data == null || data.length() < 2 + 2 * SELECTOR_LENGTH) {
+            return data;
+        }
+        String selector = data.substring(0, 2 + 2 * SELECTOR_LENGTH);
+        int amountWord;
+        if (selector.equals(Numeric.toHexString(TRANSFER))) {
+            amountWord = 2;
+        } else if (selector.equals(Numeric.toHexString(MINT)) || selector.equals(Numeric.toHexString(BURN))) {
+            amountWord = 1;
+        } else {
+            return data;
+        }
+        int start = 2 + 2 * (SELECTOR_LENGTH + amountWord * WORD);
+        if (data.length() < start + 2 * WORD) {
+            return data;
+        }
+        return data.substring(0, start) + data.substring(start + 2 * WORD);
+    }
+
+    /**
+     * @param hex result of getTokenDefinitions, as returned by eth_call
+     * @return the page of token definitions
+     * @throws ContractCallException when the result is empty, e.g. the contract has no getTokenDefinitions
+     */
+    static TokenPage decodeTokenDefinitions(String hex) {
+        ByteBuffer in = fromHex(hex);
+        checkLength(in, 5 * WORD);
+        int total = getLength(in, 0);
+        int idsOffset = getLength(in, WORD);
+        int namesOffset = getLength(in, 2 * WORD);
+        int decimalsOffset = getLength(in, 3 * WORD);
+        int urlsOffset = getLength(in, 4 * WORD);
+        int count = getLength(in, idsOffset);
+        List<TokenInfo> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int element = WORD * (i + 1);
+            tokens.add(new TokenInfo(getUint256(in, idsOffset + element), getString(in, namesOffset + WORD, i),
+                    getLength(in, decimalsOffset + element), getString(in, urlsOffset + WORD, i)));
+        }
+        return new TokenPage(total, tokens);
+    }
+
+    /**
+     * @param in ABI encoded bytes
+     * @param start start of the offsets of a list of strings, each offset counted from the start :
+     *              the elements of a string[] or the string parameters of an event
+     * @param index
+     * @return string at the index
+     */
+    private static String getString(ByteBuffer in, int start, int index) {
+        int stringOffset = start + getLength(in, start + WORD * index);
+        int length = getLength(in, stringOffset);
+        checkLength(in, stringOffset + WORD + length);
+        return new String(in.array(), in.arrayOffset() + stringOffset + WORD, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param log contract log
+     * @return decoded TransferSingle event, null when the log is another event
+     */
+    static TransferSingle decodeTransferSingle(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() != 4 || !TRANSFER_SINGLE_TOPIC.equalsIgnoreCase(topics.get(0))) {
+            return null;
+        }
+        AccountAddress operator = topicAddress(topics.get(1));
+        AccountAddress from = topicAddress(topics.get(2));
+        AccountAddress to = topicAddress(topics.get(3));
+        ByteBuffer data = fromHex(log.getData());
+        checkLength(data, 2 * WORD);
+        return new TransferSingle(operator, from, to, TokenAmount.read(data, 0).toBigInteger(), TokenAmount.read(data, WORD));
+    }
+
+    /**
+     * @param log contract log
+     * @return decoded RegisteredDealer or UnregisteredDealer event, null when the log is another event
+     */
+    static DealerRegistration decodeDealerRegistration(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() != 3) {
+            return null;
+        }
+        boolean registered = REGISTERED_DEALER_TOPIC.equalsIgnoreCase(topics.get(0));
+        if (!registered && !UNREGISTERED_DEALER_TOPIC.equalsIgnoreCase(topics.get(0))) {
+            return null;
+        }
+        AccountAddress account = topicAddress(topics.get(1));
+        ByteBuffer tokenId = fromHex(topics.get(2));
+        checkLength(tokenId, WORD);
+        return new DealerRegistration(registered, account, getUint256(tokenId, 0));
+    }
+
+    /**
+     * @param log contract log
+     * @return decoded TokenDefined event, null when the log is another event
+     */
+    static TokenDefined decodeTokenDefined(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() != 2 || !TOKEN_DEFINED_TOPIC.equalsIgnoreCase(topics.get(0))) {
+            return null;
+        }
+        ByteBuffer data = fromHex(log.getData());
+        checkLength(data, 2 * WORD);
+        return new TokenDefined(decodeTokenIdTopic(log), getString(data, 0, 0), getString(data, 0, 1));
+    }
+
+    /**
+     * @param log contract log
+     * @return token id of a TokenDefined, TokenPaused or TokenResumed event, whose first topic is checked by the caller
+     */
+    static BigInteger decodeTokenIdTopic(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() != 2) {
+            return null;
+        }
+        ByteBuffer tokenId = fromHex(topics.get(1));
+        checkLength(tokenId, WORD);
+        return getUint256(tokenId, 0);
+    }
+
+    /**
+     * @param value
+     * @return the value as an indexed event topic, for eth_getLogs filters
+     */
+    static String uint256Topic(BigInteger value) {
+        ByteBuffer out = ByteBuffer.allocate(WORD);
+        putUint256(out, value);
+        return toHex(out);
+    }
+
+    private static AccountAddress topicAddress(String topic) {
+        ByteBuffer word = fromHex(topic);
+        checkLength(word, WORD);
+        return AccountAddress.read(word, 0);
+    }
+
+    private static BigInteger getUint256(ByteBuffer in, int offset) {
+        checkLength(in, offset + WORD);
+        return TokenAmount.read(in, offset).toBigInteger();
+    }
+
+    private static void checkLength(ByteBuffer in, int length) {
+        if (in.limit() < length) {
+            throw new ContractCallException("Result too short : " + in.limit() + " bytes instead of " + length);
+        }
+    }
+
+    private static int getLength(ByteBuffer in, int offset) {
+        BigInteger value = getUint256(in, offset);
+        if (value.bitLength() > 24) {
+            throw new ContractCallException("Invalid offset or length [" + value + "] in result");
+        }
+        return value.intValue();
+    }
+
+    private static int hexValue(String hex, int index) {
+        int value = Character.digit(hex.charAt(index), 16);
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid hex character in [" + hex + "]");
+        }
+        return value;
+    }
+
+    /**
+     * @param out buffer written up to its capacity, the exact length of the encoded call
+     * @return its content as 0x prefixed hex
+     */
+    private static String toHex(ByteBuffer out) {
+        int length = out.position();
+        byte[] array = out.array();
+        //latin-1 characters, copied as they are into the string
+        byte[] hex = new byte[2 + 2 * length];
+        hex[0] = '0';
+        hex[1] = 'x';
+        for (int i = 0; i < length; i++) {
+            int value = array[i] & 0xff;
+            hex[2 + 2 * i] = HEX_DIGITS[value >>> 4];
+            hex[3 + 2 * i] = HEX_DIGITS[value & 0x0f];
+        }
+        return new String(hex, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param hex 0x prefixed hex
+     * @return buffer of the decoded bytes, from position 0 to the limit
+     * @throws ContractCallException when there are no bytes
+     */
+    private static ByteBuffer fromHex(String hex) {
+        int start = Numeric.containsHexPrefix(hex) ? 2 : 0;
+        if (hex == null || hex.length() - start < 2) {
+            throw new ContractCallException("Empty value (0x) returned from contract");
+        }
+        byte[] bytes = new byte[(hex.length() - start) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int index = start + 2 * i;
+            bytes[i] = (byte) ((hexValue(hex, index) << 4) | hexValue(hex, index + 1));
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * one page of getTokenDefinitions
+     */
+    static final class TokenPage {
+        //definitions in the contract, not only in this page
+        final int total;
+        final List<TokenInfo> tokens;
+
+        TokenPage(int total, List<TokenInfo> tokens) {
+            this.total = total;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * one page of getTokenBalances
+     */
+    static final class BalancePage {
+        //tokens in the contract, not only in this page
+        final int total;
+        //balance of the caller by token id, in definition order
+        final Map<BigInteger, BigInteger> balances;
+
+        BalancePage(int total, Map<BigInteger, BigInteger> balances) {
+            this.total = total;
+            this.balances = balances;
+        }
+    }
+
+    /**
+     * RegisteredDealer(account, tokenId) or UnregisteredDealer(account, tokenId) event
+     */
+    static final class DealerRegistration {
+        //false for UnregisteredDealer
+        final boolean registered;
+        final AccountAddress account;
+        final BigInteger tokenId;
+
+        DealerRegistration(boolean registered, AccountAddress account, BigInteger tokenId) {
+            this.registered = registered;
+            this.account = account;
+            this.tokenId = tokenId;
+        }
+    }
+
+    /**
+     * TokenDefined(tokenId, tokenName, ttfURL) event
+     */
+    static final class TokenDefined {
+        final BigInteger tokenId;
+        final String name;
+        final String ttfUrl;
+
+        TokenDefined(BigInteger tokenId, String name, String ttfUrl) {
+            this.tokenId = tokenId;
+            this.name = name;
+            this.ttfUrl = ttfUrl;
+        }
+    }
+
+    /**
+     * TransferSingle(operator, from, to, id, value) event
+     */
+    static final class TransferSingle {
+        final AccountAddress operator;
+        final AccountAddress from;
+        final AccountAddress to;
+        final BigInteger id;
+        final TokenAmount value;
+
+        TransferSingle(AccountAddress operator, AccountAddress from, AccountAddress to, BigInteger id, TokenAmount value) {
+            this.operator = operator;
+            this.from = from;
+            this.to = to;
+            this.id = id;
+            this.value = value;
+        }
+    }
+}//end of class
@@ -1,81 +1,374 @@
-/**
-Copyright 2020 Swapshub
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-http://www.apache.org/licenses/LICENSE-2.0
-*/
-
-package com.swapshub.ethaler.client;
-
-import ch.qos.logback.classic.Level;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.slf4j.LoggerFactory;
-
-import java.io.File;
-import java.security.Security;
-import java.util.ArrayList;
-import java.util.Scanner;
-
-/**
-* This class is the main class for the CLI application.
-*
-*/
-public class EThalerApplication {
-    static final String CREATE_WALLET = "CreateWallet";
-    static String LOG_LEVEL = "INFO";
-    static String BESU_URL = "";
-    static String ETHALER_CONTRACT_ADDR = "";
-    static int CHAIN_ID = 2018;
-    static long POLLING_INTERVAL = 2000;
-    static int  POLLING_ATTEMPTS = 5;
-    static String configDirectory = "config";
-    static String walletDirectory = "wallets";
-    static Scanner scanner = new Scanner(System.in);
-    static boolean isOwner = false;
-    static ArrayList tokenIdList = new ArrayList();
-    static ArrayList tokenNameList = new ArrayList();
-    static ArrayList tokenDecimalList = new ArrayList();
-    static ArrayList tokenTTFList = new ArrayList();
-
-    /**
-     * Entry point for the command line interface application
-     * @param args
-     */
-    public static void main(String[] args) {
-        Security.addProvider(new BouncyCastleProvider());
-        ch.qos.logback.classic.Logger rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
-        Level lvl = Level.toLevel(LOG_LEVEL);
-        rootLogger.setLevel(lvl);
-
-        //for wallet creation
-        if (args.length > 0) {
-            if (args[0].trim().length() > 0) //one argument is expected
-            {
-                configDirectory = args[0] + File.separator + configDirectory;
-                walletDirectory = args[0] + File.separator + walletDirectory;
-            }
-            try { //second argument is optional
-                if (args[1] != null && args[1].trim().length() > 0 && args[1].trim().equalsIgnoreCase(CREATE_WALLET)) {
-                    WalletInitUtil wInitUtil = new WalletInitUtil();
-                    wInitUtil.createWalletWithPvtKey();
-                    wInitUtil.shutdownApp("Wallet created successfully. Ensure a backup of wallet json file is taken.");
-                }
-            } catch (Exception ex) {
-
-            }
-        }
-        NetWorkUtil netUtil = new NetWorkUtil();
-        WalletInitUtil wInitUtil = new WalletInitUtil();
-        netUtil.connectToNetwork();
-
-        //for running either as Central banker or dealer
-        if (netUtil.getWeb3j() != null) {
-            wInitUtil.getUserWalletOptions();
-            ContractAccountUtil contractAccountUtil = new ContractAccountUtil();
-            contractAccountUtil.startApplication(netUtil.getWeb3j());
-        } else {
-            netUtil.shutdownApp("Not connected to network. Exiting.");
-        }
-    }
-}//end of class
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import ch.qos.logback.classic.Level;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.LoggerFactory;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+* This class is the main class for the CLI application.
+*
+*/
+public class EThalerApplication {
+    static final String CREATE_WALLET = "CreateWallet";
+    static final String SCRIPT_MODE = "script";
+    static final String SERVER_MODE = "server";
+    static final String LOADGEN_MODE = "loadgen";
+    static final String GASBENCH_MODE = "gasbench";
+    static final String BULKREGISTER_MODE = "bulkregister";
+    static final String REPLAYBENCH_MODE = "replaybench";
+    /**
+     * Entry point for the command line interface application
+     * @param args start directory, optionally followed by "CreateWallet", by
+     *             "script &lt;wallet name&gt; [command file | -]" for the headless mode or by
+     *             "server &lt;wallet name&gt;[,&lt;wallet name&gt;...]" for the gateway server or by
+     *             "loadgen &lt;owner wallet name&gt; [options]" for the load generator or by
+     *             "gasbench &lt;wallet name&gt; [options]" for the gas benchmark or by
+     *             "bulkregister &lt;owner wallet name&gt; &lt;accounts file | -&gt; [options]" for the bulk dealer registration or by
+     *             "replaybench &lt;wallet name&gt; [options]" for the JSON-RPC record and replay benchmark
+     */
+    public static void main(String[] args) {
+        Security.addProvider(new BouncyCastleProvider());
+        String startDirectory = null;
+        String mode = "";
+        if (args.length > 0) {
+            if (args[0].trim().length() > 0) //one argument is expected
+            {
+                startDirectory = args[0];
+            }
+            if (args.length > 1) { //second argument is optional
+                mode = args[1].trim();
+            }
+        }
+        ClientConfig config = ClientConfig.load(startDirectory);
+        ch.qos.logback.classic.Logger rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
+        Level lvl = Level.toLevel(config.getLogLevel());
+        rootLogger.setLevel(lvl);
+
+        //for wallet creation
+        try {
+            if (mode.equalsIgnoreCase(CREATE_WALLET)) {
+                WalletInitUtil wInitUtil = new WalletInitUtil(config, new Scanner(System.in));
+                wInitUtil.createWalletWithPvtKey();
+                wInitUtil.shutdownApp("Wallet created successfully. Ensure a backup of wallet json file is taken.");
+            }
+        } catch (Exception ex) {
+
+        }
+        if (mode.equalsIgnoreCase(SCRIPT_MODE)) {
+            runScript(config, args);
+            return;
+        }
+        if (mode.equalsIgnoreCase(SERVER_MODE)) {
+            runServer(config, args);
+            return;
+        }
+        if (mode.equalsIgnoreCase(LOADGEN_MODE)) {
+            runLoadGenerator(config, args);
+            return;
+        }
+        if (mode.equalsIgnoreCase(GASBENCH_MODE)) {
+            runGasBenchmark(config, args);
+            return;
+        }
+        if (mode.equalsIgnoreCase(BULKREGISTER_MODE)) {
+            runBulkRegistration(config, args);
+            return;
+        }
+        if (mode.equalsIgnoreCase(REPLAYBENCH_MODE)) {
+            runReplayBenchmark(config, args);
+            return;
+        }
+        //console input of the wallet menu and the contract menu
+        Scanner console = new Scanner(System.in);
+        NetWorkUtil netUtil = new NetWorkUtil();
+        WalletInitUtil wInitUtil = new WalletInitUtil(config, console);
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = netUtil.connectToNetwork(config, metrics);
+        ChainExecutor executor = ChainExecutor.create(config);
+
+        //for running either as Central banker or dealer
+        if (web3j != null) {
+            Credentials credentials = wInitUtil.getUserWalletOptions();
+            try {
+                //no periodic summary, the console belongs to the menu
+                MetricsReporter.start(config, metrics, executor, false);
+                ContractAccountUtil contractAccountUtil = new ContractAccountUtil(console);
+                contractAccountUtil.startApplication(EThalerSession.open(config, web3j, executor, metrics, credentials));
+            } catch (Exception ex) {
+                netUtil.shutdownApp("Could not load the contract : " + ex.getMessage());
+            }
+        } else {
+            netUtil.shutdownApp("Not connected to network. Exiting.");
+        }
+    }
+
+    /**
+     * Headless mode : runs the typed commands of a script file (or of stdin when the file is "-" or missing)
+     * and writes one JSON result line per command to stdout. Everything else is written to stderr.
+     * Exits with 0 when all commands succeeded, 1 when any command failed and 2 when the script could not start.
+     * @param config
+     * @param args start directory, "script", wallet name, optional command file
+     */
+    private static void runScript(ClientConfig config, String[] args) {
+        PrintStream resultStream = System.out;
+        System.setOut(System.err); //keep stdout for the result lines only
+        if (args.length < 3) {
+            GenUtil.printLog("Usage : script <wallet name> [command file | -]");
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = new NetWorkUtil().connectToNetwork(config, metrics);
+        Credentials credentials = new WalletInitUtil(config).openWalletForAutomation(args[2]);
+        if (web3j == null || credentials == null) {
+            GenUtil.printLog("Could not open network connection or wallet. Exiting.");
+            System.exit(2);
+        }
+        try {
+            ChainExecutor executor = ChainExecutor.create(config);
+            MetricsReporter.start(config, metrics, executor, true);
+            EThalerSession session = EThalerSession.open(config, web3j, executor, metrics, credentials);
+            String scriptName = args.length > 3 ? args[3] : "-";
+            ScriptRunner runner = new ScriptRunner(session, new CommandProcessor((scriptName.equals("-") ? "stdin" : scriptName) + " line "),
+                    config.getInt("SCRIPT_PARALLELISM", 1000), resultStream);
+            int failures;
+            try (BufferedReader reader = openScript(config, scriptName)) {
+                failures = runner.run(reader);
+            }
+            GenUtil.printLog("Script completed with " + failures + " failed command(s)");
+            System.exit(failures == 0 ? 0 : 1);
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in running script : " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Gateway mode : unlocks the wallets and loads the contract once, then serves the contract
+     * operations over the local HTTP API until the process is stopped.
+     * @param config
+     * @param args start directory, "server", comma separated wallet names
+     */
+    private static void runServer(ClientConfig config, String[] args) {
+        if (args.length < 3) {
+            GenUtil.printLog("Usage : server <wallet name>[,<wallet name>...]");
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = new NetWorkUtil().connectToNetwork(config, metrics);
+        if (web3j == null) {
+            GenUtil.printLog("Could not open network connection. Exiting.");
+            System.exit(2);
+        }
+        WalletInitUtil wInitUtil = new WalletInitUtil(config);
+        ChainExecutor executor = ChainExecutor.create(config);
+        List<EThalerSession> sessions = new ArrayList<>();
+        try {
+            MetricsReporter metricsReporter = MetricsReporter.start(config, metrics, executor, true);
+            for (String walletName : args[2].split(",")) {
+                Credentials credentials = wInitUtil.openWalletForAutomation(walletName.trim());
+                if (credentials == null) {
+                    GenUtil.printLog("Could not open wallet " + walletName + ". Exiting.");
+                    System.exit(2);
+                }
+                sessions.add(EThalerSession.open(config, web3j, executor, metrics, credentials));
+            }
+            GatewayServer gatewayServer = new GatewayServer(sessions, new CommandProcessor("gateway request "),
+                    config.getInt("GATEWAY_MAX_IN_FLIGHT", 20000));
+            gatewayServer.start(config.getString("GATEWAY_BIND_ADDRESS", "127.0.0.1"), config.getInt("GATEWAY_PORT", 8088));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gatewayServer.stop(5);
+                metricsReporter.close();
+                executor.close();
+            }));
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in starting gateway : " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Load generator : provisions dealer accounts with the owner wallet and drives transfer / balanceOf
+     * traffic against the configured (development) chain, then prints throughput and latency percentiles.
+     * @param config
+     * @param args start directory, "loadgen", owner wallet name, options
+     */
+    private static void runLoadGenerator(ClientConfig config, String[] args) {
+        if (args.length < 3) {
+            GenUtil.printLog("Usage : " + LoadGenerator.USAGE);
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = new NetWorkUtil().connectToNetwork(config, metrics);
+        Credentials credentials = new WalletInitUtil(config).openWalletForAutomation(args[2]);
+        if (web3j == null || credentials == null) {
+            GenUtil.printLog("Could not open network connection or wallet. Exiting.");
+            System.exit(2);
+        }
+        //System.exit skips the closing of the resources, so it is called after the try
+        int status;
+        try (ChainExecutor executor = ChainExecutor.create(config)) {
+            MetricsReporter metricsReporter = MetricsReporter.start(config, metrics, executor, true);
+            try {
+                LoadGenerator generator = new LoadGenerator(config, web3j, executor, metrics, LoadGenerator.parseOptions(args, 3, LoadGenerator.USAGE));
+                generator.run(credentials, System.out);
+            } finally {
+                metricsReporter.close();
+            }
+            status = 0;
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in running load : " + ex.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Gas benchmark : deploys a new contract and prints the gas used by transfer and mint as the
+     * number of token definitions grows.
+     * @param config
+     * @param args start directory, "gasbench", wallet name, options
+     */
+    private static void runGasBenchmark(ClientConfig config, String[] args) {
+        if (args.length < 3) {
+            GenUtil.printLog("Usage : " + GasBenchmark.USAGE);
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = new NetWorkUtil().connectToNetwork(config, metrics);
+        Credentials credentials = new WalletInitUtil(config).openWalletForAutomation(args[2]);
+        if (web3j == null || credentials == null) {
+            GenUtil.printLog("Could not open network connection or wallet. Exiting.");
+            System.exit(2);
+        }
+        int status;
+        try (ChainExecutor executor = ChainExecutor.create(config)) {
+            GasBenchmark benchmark = new GasBenchmark(config, web3j, executor, metrics, LoadGenerator.parseOptions(args, 3, GasBenchmark.USAGE));
+            benchmark.run(credentials, System.out);
+            status = 0;
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in running the gas benchmark : " + ex.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Bulk registration : registers the accounts of a file for the given tokens with registerDealers,
+     * in chunks sized to the block gas limit.
+     * Exits with 0 when all chunks were registered, 1 when any failed and 2 when the registration could not start.
+     * @param config
+     * @param args start directory, "bulkregister", owner wallet name, accounts file, options
+     */
+    private static void runBulkRegistration(ClientConfig config, String[] args) {
+        if (args.length < 4) {
+            GenUtil.printLog("Usage : " + BulkRegistration.USAGE);
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Web3j web3j = new NetWorkUtil().connectToNetwork(config, metrics);
+        Credentials credentials = new WalletInitUtil(config).openWalletForAutomation(args[2]);
+        if (web3j == null || credentials == null) {
+            GenUtil.printLog("Could not open network connection or wallet. Exiting.");
+            System.exit(2);
+        }
+        int status;
+        try (ChainExecutor executor = ChainExecutor.create(config);
+             BufferedReader reader = openScript(config, args[3])) {
+            EThalerSession session = EThalerSession.open(config, web3j, executor, metrics, credentials);
+            BulkRegistration registration = new BulkRegistration(session,
+                    LoadGenerator.parseOptions(args, 4, BulkRegistration.USAGE));
+            status = registration.run(reader) == 0 ? 0 : 1;
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in registering the dealers : " + ex.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Replay benchmark : records a client session against the node with --record, or runs it on a recording
+     * with --replay and prints the medians of its wall time, CPU time and allocations.
+     * @param config
+     * @param args start directory, "replaybench", wallet name, options
+     */
+    private static void runReplayBenchmark(ClientConfig config, String[] args) {
+        if (args.length < 3) {
+            GenUtil.printLog("Usage : " + ReplayBenchmark.USAGE);
+            System.exit(2);
+        }
+        Map<String, String> options = LoadGenerator.parseOptions(args, 3, ReplayBenchmark.USAGE);
+        if (options.containsKey("record") == options.containsKey("replay")) {
+            GenUtil.printLog("Usage : " + ReplayBenchmark.USAGE);
+            System.exit(2);
+        }
+        ClientMetrics metrics = new ClientMetrics();
+        Credentials credentials = new WalletInitUtil(config).openWalletForAutomation(args[2]);
+        if (credentials == null) {
+            GenUtil.printLog("Could not open wallet. Exiting.");
+            System.exit(2);
+        }
+        int status;
+        try (ChainExecutor executor = ChainExecutor.create(config)) {
+            ReplayBenchmark benchmark = new ReplayBenchmark(config, executor, metrics, options);
+            if (options.containsKey("replay")) {
+                benchmark.replay(credentials, System.out);
+            } else {
+                NetWorkUtil netUtil = new NetWorkUtil();
+                RpcRecording.Recorder recorder = netUtil.openRecorder(config, options.get("record"));
+                try {
+                    Web3j web3j = netUtil.connectToNetwork(config, metrics, recorder);
+                    if (web3j == null) {
+                        throw new IOException("could not open network connection");
+                    }
+                    benchmark.record(web3j, credentials, System.out);
+                } finally {
+                    netUtil.closeRecorder(recorder);
+                }
+            }
+            status = 0;
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in running the replay benchmark : " + ex.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * @param config
+     * @param scriptName file name relative to the start directory, or "-" for stdin
+     * @return reader for the commands
+     * @throws IOException
+     */
+    private static BufferedReader openScript(ClientConfig config, String scriptName) throws IOException {
+        if (scriptName.equals("-")) {
+            return new BufferedReader(new InputStreamReader(System.in));
+        }
+        File scriptFile = new File(scriptName);
+        if (!scriptFile.isAbsolute() && config.getStartDirectory() != null) {
+            scriptFile = new File(config.getStartDirectory(), scriptName);
+        }
+        return new BufferedReader(new FileReader(scriptFile));
+    }
+}//end of class
@@ -0,0 +1,532 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.RemoteCall;
+import org.web3j.protocol.core.RemoteFunctionCall;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.exceptions.ContractCallException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Asynchronous API over the EThaler contract wrapper, one method per contract function.
+ * Every call runs on the shared {@link ChainExecutor} (a virtual thread per call) and returns at once,
+ * so independent calls overlap and can be composed. Amounts are in network units.
+ * Accounts are {@link AccountAddress}, so they are validated before anything is sent.
+ * Transactions are signed by the account of the session the service belongs to, and each one is
+ * traced with its own correlation id (see {@link TransactionTrace}).
+ * transfer, mint, burn, pause, resume, balanceOf, balanceOfBatch, registerDealers and getTokenDefinitions are
+ * encoded and decoded with {@link EThalerAbi}, the other functions with the generated wrapper. All transactions are
+ * sent through the transaction manager directly, with the gas limit the {@link GasEstimator} gives for the call.
+ * With a {@link ContractStateMirror}, transfer, mint, burn, pause and resume are checked before they are signed,
+ * and refused with the require message of the contract when they would fail.
+ */
+final class EThalerService {
+    //tokens read per getTokenDefinitions or getTokenBalances call, the most the contract returns
+    static final int TOKEN_PAGE_SIZE = 100;
+    //function name of the transactions the wrapper has no FUNC_ constant for, it is generated from an older build
+    private static final String FUNC_REGISTERDEALERS = "registerDealers";
+    private final EThaler contract;
+    private final Web3j web3j;
+    private final EThalerTransactionManager transactionManager;
+    private final GasEstimator gasEstimator;
+    private final ChainExecutor executor;
+    //null without pre-flight checks
+    private final ContractStateMirror mirror;
+
+    /**
+     * @param contract wrapper loaded with the transaction manager and gas estimator below
+     * @param web3j reads the contract logs
+     * @param transactionManager signs as the account of the service
+     * @param gasEstimator gas limits of the account of the service
+     * @param executor runs the blocking calls
+     * @param mirror checks the transactions before they are signed, null for none
+     */
+    EThalerService(EThaler contract, Web3j web3j, EThalerTransactionManager transactionManager, GasEstimator gasEstimator,
+                   ChainExecutor executor, ContractStateMirror mirror) {
+        this.contract = contract;
+        this.web3j = web3j;
+        this.transactionManager = transactionManager;
+        this.gasEstimator = gasEstimator;
+        this.executor = executor;
+        this.mirror = mirror;
+    }
+
+    /**
+     * loads the contract wrapper and creates the service over it
+     * @param contractAddress
+     * @param web3j
+     * @param transactionManager
+     * @param gasEstimator
+     * @param executor
+     * @return service of the contract for the account of the transaction manager
+     */
+    static EThalerService load(String contractAddress, Web3j web3j, EThalerTransactionManager transactionManager,
+                               GasEstimator gasEstimator, ChainExecutor executor) {
+        return load(contractAddress, web3j, transactionManager, gasEstimator, executor, null);
+    }
+
+    /**
+     * @param contractAddress
+     * @param web3j
+     * @param transactionManager
+     * @param gasEstimator
+     * @param executor
+     * @param mirror pre-flight checks of the account of the transaction manager, null for none
+     * @return service of the contract for the account of the transaction manager
+     */
+    static EThalerService load(String contractAddress, Web3j web3j, EThalerTransactionManager transactionManager,
+                               GasEstimator gasEstimator, ChainExecutor executor, ContractStateMirror mirror) {
+        EThaler contract = EThaler.load(contractAddress, web3j, transactionManager, gasEstimator);
+        return new EThalerService(contract, web3j, transactionManager, gasEstimator, executor, mirror);
+    }
+
+    /**
+     * waits for the future and rethrows its failure unwrapped, for the synchronous callers
+     * @param future
+     * @return result of the future
+     * @throws Exception failure of the call
+     */
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    /**
+     * @param error failure as seen by a dependent stage or by get()
+     * @return the original failure of the call
+     */
+    static Exception unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
+    private <T> CompletableFuture<T> call(RemoteCall<T> remoteCall) {
+        return executor.submit(remoteCall::send);
+    }
+
+    /**
+     * @param function contract function, for the trace and the gas estimate
+     * @param remoteCall call encoded by the wrapper
+     * @return receipt of the transaction
+     */
+    private CompletableFuture<TransactionReceipt> transact(String function, RemoteFunctionCall<TransactionReceipt> remoteCall) {
+        String data = remoteCall.encodeFunctionCall();
+        return transact(function, () -> send(function, data));
+    }
+
+    private CompletableFuture<TransactionReceipt> transact(String function, Callable<TransactionReceipt> transaction) {
+        String reference = TransactionTrace.callerReference();
+        return executor.submit(() -> TransactionTrace.run(function, reference, transaction));
+    }
+
+    /**
+     * runs the transaction once the pre-flight check admits it
+     * @param function contract function, for the trace
+     * @param check completes when the transaction is admitted, null without a mirror
+     * @param transaction
+     * @return receipt of the transaction, failed with a ContractStateMirror.Refusal when it was refused
+     */
+    private CompletableFuture<TransactionReceipt> transact(String function, CompletableFuture<ContractStateMirror.Reservation> check,
+                                                           Callable<TransactionReceipt> transaction) {
+        if (check == null) {
+            return transact(function, transaction);
+        }
+        String reference = TransactionTrace.callerReference();
+        return check.thenCompose(reservation -> executor.submit(() -> {
+            TransactionReceipt receipt = null;
+            try {
+                receipt = TransactionTrace.run(function, reference, transaction);
+                return receipt;
+            } finally {
+                reservation.release(receipt);
+            }
+        }));
+    }
+
+    /**
+     * sends the encoded call and checks the receipt status, as the contract wrapper does
+     * @param function contract function, for the gas estimate
+     * @param data encoded call
+     * @return receipt of the successful transaction
+     * @throws IOException
+     * @throws TransactionException when the transaction is not mined in time or failed
+     */
+    private TransactionReceipt send(String function, String data) throws IOException, TransactionException {
+        return send(function, data, gasEstimator.getGasLimit(function, contract.getContractAddress(), data));
+    }
+
+    /**
+     * @param function contract function, for the gas estimate
+     * @param data encoded call
+     * @param gasLimit
+     * @return receipt of the successful transaction
+     * @throws IOException
+     * @throws TransactionException when the transaction is not mined in time or failed
+     */
+    private TransactionReceipt send(String function, String data, BigInteger gasLimit) throws IOException, TransactionException {
+        TransactionReceipt receipt = transactionManager.executeTransaction(contract.getContractAddress(), data,
+                gasEstimator.getGasPrice(function), gasLimit);
+        if (!receipt.isStatusOK()) {
+            gasEstimator.failed(function, data, receipt, gasLimit);
+            throw transactionManager.failure(receipt, contract.getContractAddress(), data, gasLimit);
+        }
+        return receipt;
+    }
+
+    /**
+     * @param data encoded call
+     * @return raw result of eth_call on the latest block
+     * @throws IOException
+     */
+    private String ethCall(String data) throws IOException {
+        return transactionManager.sendCall(contract.getContractAddress(), data, DefaultBlockParameterName.LATEST);
+    }
+
+    /* Token definitions */
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<List<BigInteger>> getAllTokenIds() {
+        return call(contract.getAllTokenIds()).thenApply(ids -> (List<BigInteger>) ids);
+    }
+
+    CompletableFuture<String> getTokenName(BigInteger tokenId) {
+        return call(contract.getTokenName(tokenId));
+    }
+
+    CompletableFuture<BigInteger> getDecimals(BigInteger tokenId) {
+        return call(contract.getDecimals(tokenId));
+    }
+
+    CompletableFuture<String> getTTF_URL(BigInteger tokenId) {
+        return call(contract.getTTF_URL(tokenId));
+    }
+
+    CompletableFuture<Boolean> isPaused(BigInteger tokenId) {
+        return call(contract.isPaused(tokenId));
+    }
+
+    /**
+     * reads the name, decimals and TTF url of a token concurrently
+     * @param tokenId
+     * @return token definition
+     */
+    CompletableFuture<TokenInfo> getTokenInfo(BigInteger tokenId) {
+        CompletableFuture<String> name = getTokenName(tokenId);
+        CompletableFuture<BigInteger> decimals = getDecimals(tokenId);
+        CompletableFuture<String> ttfUrl = getTTF_URL(tokenId);
+        return CompletableFuture.allOf(name, decimals, ttfUrl)
+                .thenApply(ignored -> new TokenInfo(tokenId, name.join(), decimals.join().intValue(), ttfUrl.join()));
+    }
+
+    /**
+     * @param offset index of the first definition
+     * @param limit most definitions to return
+     * @return the page of token definitions, with the total number of definitions
+     */
+    CompletableFuture<EThalerAbi.TokenPage> getTokenDefinitions(int offset, int limit) {
+        return executor.submit(() -> EThalerAbi.decodeTokenDefinitions(ethCall(EThalerAbi.encodeGetTokenDefinitions(offset, limit))));
+    }
+
+    /**
+     * reads all token definitions a page at a time : the first page gives the total, the other pages are
+     * read concurrently, so the calls are bounded by the number of tokens / TOKEN_PAGE_SIZE.
+     * A contract deployed before getTokenDefinitions is read one field of one token at a time.
+     * @return registry of the defined tokens, in definition order
+     */
+    CompletableFuture<TokenRegistry> loadTokens() {
+        return getTokenDefinitions(0, TOKEN_PAGE_SIZE).thenCompose(first -> {
+            //the contract may return less than asked, the next pages start where the first one ended
+            int pageSize = Math.max(1, first.tokens.size());
+            List<CompletableFuture<EThalerAbi.TokenPage>> pages = new ArrayList<>();
+            for (int offset = first.tokens.size(); offset < first.total; offset += pageSize) {
+                pages.add(getTokenDefinitions(offset, pageSize));
+            }
+            return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                List<TokenInfo> tokens = new ArrayList<>(first.total);
+                tokens.addAll(first.tokens);
+                for (CompletableFuture<EThalerAbi.TokenPage> page : pages) {
+                    tokens.addAll(page.join().tokens);
+                }
+                return TokenRegistry.of(tokens);
+            });
+        }).exceptionallyCompose(error -> unwrap(error) instanceof ContractCallException
+                ? loadTokensPerToken() : CompletableFuture.failedFuture(error));
+    }
+
+    /**
+     * reads all token definitions with getAllTokenIds and three calls per token, the tokens concurrently with each other
+     * @return registry of the defined tokens, in definition order
+     */
+    private CompletableFuture<TokenRegistry> loadTokensPerToken() {
+        return getAllTokenIds().thenCompose(tokenIds -> {
+            List<CompletableFuture<TokenInfo>> infos = new ArrayList<>(tokenIds.size());
+            for (BigInteger tokenId : tokenIds) {
+                infos.add(getTokenInfo(tokenId));
+            }
+            return CompletableFuture.allOf(infos.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                List<TokenInfo> tokens = new ArrayList<>(infos.size());
+                for (CompletableFuture<TokenInfo> info : infos) {
+                    tokens.add(info.join());
+                }
+                return TokenRegistry.of(tokens);
+            });
+        });
+    }
+
+    CompletableFuture<TransactionReceipt> addNewTokenDefinition(TokenInfo token) {
+        return transact(EThaler.FUNC_ADDNEWTOKENDEFINITION, contract.addNewTokenDefinition(token.getId(), token.getName(),
+                BigInteger.valueOf(token.getDecimals()), token.getTtfUrl()));
+    }
+
+    CompletableFuture<TransactionReceipt> pause(BigInteger tokenId) {
+        String data = EThalerAbi.encodePause(tokenId);
+        return transact(EThaler.FUNC_PAUSE, mirror == null ? null : mirror.checkPause(tokenId, true, data),
+                () -> send(EThaler.FUNC_PAUSE, data));
+    }
+
+    CompletableFuture<TransactionReceipt> resume(BigInteger tokenId) {
+        String data = EThalerAbi.encodeResume(tokenId);
+        return transact(EThaler.FUNC_RESUME, mirror == null ? null : mirror.checkPause(tokenId, false, data),
+                () -> send(EThaler.FUNC_RESUME, data));
+    }
+
+    /* Ownership */
+
+    CompletableFuture<String> owner() {
+        return call(contract.owner());
+    }
+
+    CompletableFuture<Boolean> isOwner() {
+        return call(contract.isOwner());
+    }
+
+    /* Balances */
+
+    /**
+     * @param account
+     * @param tokenId
+     * @return balance of any account, only permitted to the owner
+     */
+    CompletableFuture<BigInteger> balanceOf(AccountAddress account, BigInteger tokenId) {
+        return executor.submit(() -> EThalerAbi.decodeUint256(ethCall(EThalerAbi.encodeBalanceOf(account, tokenId))));
+    }
+
+    /**
+     * @param tokenId
+     * @return balance of the signing account
+     */
+    CompletableFuture<BigInteger> balanceOf(BigInteger tokenId) {
+        return executor.submit(() -> EThalerAbi.decodeUint256(ethCall(EThalerAbi.encodeBalanceOf(tokenId))));
+    }
+
+    /**
+     * @param offset index of the first token
+     * @param limit most tokens to return
+     * @return the page of balances of the wallet account, with the total number of tokens
+     */
+    CompletableFuture<EThalerAbi.BalancePage> getTokenBalances(int offset, int limit) {
+        return executor.submit(() -> EThalerAbi.decodeTokenBalances(ethCall(EThalerAbi.encodeGetTokenBalances(offset, limit))));
+    }
+
+    /**
+     * reads the balances a page at a time, the pages after the first one concurrently, as {@link #loadTokens()}
+     * @return balance of the wallet account for every defined token, by token id in definition order
+     */
+    CompletableFuture<Map<BigInteger, BigInteger>> getTokenBalances() {
+        return getTokenBalances(0, TOKEN_PAGE_SIZE).thenCompose(first -> {
+            int pageSize = Math.max(1, first.balances.size());
+            List<CompletableFuture<EThalerAbi.BalancePage>> pages = new ArrayList<>();
+            for (int offset = first.balances.size(); offset < first.total; offset += pageSize) {
+                pages.add(getTokenBalances(offset, pageSize));
+            }
+            return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                Map<BigInteger, BigInteger> balances = new LinkedHashMap<>(first.balances);
+                for (CompletableFuture<EThalerAbi.BalancePage> page : pages) {
+                    balances.putAll(page.join().balances);
+                }
+                return balances;
+            });
+        });
+    }
+
+    CompletableFuture<List<BigInteger>> balanceOfBatch(List<AccountAddress> accounts, List<BigInteger> ids) {
+        return executor.submit(() -> EThalerAbi.decodeUint256Array(ethCall(EThalerAbi.encodeBalanceOfBatch(accounts, ids))));
+    }
+
+    CompletableFuture<TransactionReceipt> mint(BigInteger tokenId, BigInteger amount) {
+        String data = EThalerAbi.encodeMint(tokenId, amount);
+        return transact(EThaler.FUNC_MINT, mirror == null ? null : mirror.checkMint(tokenId, data),
+                () -> send(EThaler.FUNC_MINT, data));
+    }
+
+    CompletableFuture<TransactionReceipt> burn(BigInteger tokenId, BigInteger amount) {
+        String data = EThalerAbi.encodeBurn(tokenId, amount);
+        return transact(EThaler.FUNC_BURN, mirror == null ? null : mirror.checkBurn(tokenId, amount, data),
+                () -> send(EThaler.FUNC_BURN, data));
+    }
+
+    CompletableFuture<TransactionReceipt> transfer(AccountAddress to, BigInteger tokenId, BigInteger amount) {
+        TokenAmount value = TokenAmount.of(amount);
+        if (mirror == null) {
+            return transact(EThaler.FUNC_TRANSFER, () -> send(EThaler.FUNC_TRANSFER, EThalerAbi.encodeTransfer(to, tokenId, value)));
+        }
+        String data = EThalerAbi.encodeTransfer(to, tokenId, value);
+        return transact(EThaler.FUNC_TRANSFER, mirror.checkTransfer(this, to, tokenId, amount, data),
+                () -> send(EThaler.FUNC_TRANSFER, data));
+    }
+
+    CompletableFuture<TransactionReceipt> safeTransferFrom(AccountAddress from, AccountAddress to, BigInteger tokenId,
+                                                           BigInteger amount, byte[] data) {
+        return transact(EThaler.FUNC_SAFETRANSFERFROM, contract.safeTransferFrom(from.toString(), to.toString(), tokenId, amount, data));
+    }
+
+    CompletableFuture<TransactionReceipt> safeBatchTransferFrom(AccountAddress from, AccountAddress to, List<BigInteger> ids,
+                                                                List<BigInteger> amounts, byte[] data) {
+        return transact(EThaler.FUNC_SAFEBATCHTRANSFERFROM,
+                contract.safeBatchTransferFrom(from.toString(), to.toString(), ids, amounts, data));
+    }
+
+    /* Dealers */
+
+    CompletableFuture<Boolean> isDealerRegistered(AccountAddress account, BigInteger tokenId) {
+        return call(contract.isDealerRegistered(account.toString(), tokenId));
+    }
+
+    CompletableFuture<TransactionReceipt> registerDealer(AccountAddress account, BigInteger tokenId) {
+        return transact(EThaler.FUNC_REGISTERDEALER, contract.registerDealer(account.toString(), tokenId));
+    }
+
+    CompletableFuture<TransactionReceipt> unregisterDealer(AccountAddress account, BigInteger tokenId) {
+        return transact(EThaler.FUNC_UNREGISTERDEALER, contract.unregisterDealer(account.toString(), tokenId));
+    }
+
+    /**
+     * registers every account for every token in one transaction
+     * @param accounts
+     * @param tokenIds
+     * @param gasLimit sized to the batch, see {@link #estimateRegisterDealers}
+     * @return receipt of the transaction
+     */
+    CompletableFuture<TransactionReceipt> registerDealers(List<AccountAddress> accounts, List<BigInteger> tokenIds,
+                                                          BigInteger gasLimit) {
+        String data = EThalerAbi.encodeRegisterDealers(accounts, tokenIds);
+        return transact(FUNC_REGISTERDEALERS, () -> send(FUNC_REGISTERDEALERS, data, gasLimit));
+    }
+
+    /**
+     * @param accounts
+     * @param tokenIds
+     * @return gas registerDealers would use on the latest state, with the safety margin, null when it would fail
+     */
+    CompletableFuture<BigInteger> estimateRegisterDealers(List<AccountAddress> accounts, List<BigInteger> tokenIds) {
+        String data = EThalerAbi.encodeRegisterDealers(accounts, tokenIds);
+        return executor.submit(() -> {
+            BigInteger gas = gasEstimator.estimate(contract.getContractAddress(), data);
+            return gas == null ? null : gasEstimator.withMargin(gas);
+        });
+    }
+
+    /**
+     * @return gas limit of the latest block, the most a transaction can use
+     */
+    CompletableFuture<BigInteger> getBlockGasLimit() {
+        return executor.submit(gasEstimator::blockGasLimit);
+    }
+
+    /**
+     * @param tokenId
+     * @param fromBlock first block to read
+     * @return RegisteredDealer and UnregisteredDealer logs of the token up to the latest block, in chain order.
+     * The node selects them on the event and token id topics, no other log is downloaded.
+     */
+    CompletableFuture<List<Log>> getDealerRegistrationLogs(BigInteger tokenId, BigInteger fromBlock) {
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(fromBlock), DefaultBlockParameterName.LATEST,
+                contract.getContractAddress());
+        filter.addOptionalTopics(EThalerAbi.REGISTERED_DEALER_TOPIC, EThalerAbi.UNREGISTERED_DEALER_TOPIC);
+        filter.addNullTopic();
+        filter.addSingleTopic(EThalerAbi.uint256Topic(tokenId));
+        return getLogs(filter, "dealer registrations");
+    }
+
+    /**
+     * @param fromBlock first block to read
+     * @return TransferSingle logs of all the tokens up to the latest block, in chain order
+     */
+    CompletableFuture<List<Log>> getTransferLogs(BigInteger fromBlock) {
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(fromBlock), DefaultBlockParameterName.LATEST,
+                contract.getContractAddress());
+        filter.addSingleTopic(EThalerAbi.TRANSFER_SINGLE_TOPIC);
+        return getLogs(filter, "transfers");
+    }
+
+    private CompletableFuture<List<Log>> getLogs(EthFilter filter, String description) {
+        return executor.submit(() -> {
+            EthLog result = web3j.ethGetLogs(filter).send();
+            if (result.hasError()) {
+                throw new IOException("Error reading " + description + " : " + result.getError().getMessage());
+            }
+            List<Log> logs = new ArrayList<>(result.getLogs().size());
+            for (EthLog.LogResult<?> log : result.getLogs()) {
+                logs.add((Log) log.get());
+            }
+            return logs;
+        });
+    }
+
+    CompletableFuture<Boolean> isApprovedForAll(AccountAddress account, AccountAddress operator) {
+        return call(contract.isApprovedForAll(account.toString(), operator.toString()));
+    }
+
+    CompletableFuture<TransactionReceipt> setApprovalForAll(AccountAddress operator, boolean approved) {
+        return transact(EThaler.FUNC_SETAPPROVALFORALL, contract.setApprovalForAll(operator.toString(), approved));
+    }
+
+    CompletableFuture<Boolean> supportsInterface(byte[] interfaceId) {
+        return call(contract.supportsInterface(interfaceId));
+    }
+
+    /**
+     * @return generated wrapper of the contract
+     */
+    EThaler getContract() {
+        return contract;
+    }
+
+    /**
+     * @return address of the deployed contract
+     */
+    AccountAddress getContractAddress() {
+        return AccountAddress.of(contract.getContractAddress());
+    }
+}//end of class
@@ -0,0 +1,182 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Immutable context of one unlocked account working with one contract :
+ * credentials, contract handle, owner flag and token definitions, plus the dealer registrations read so far,
+ * shared by the copies of the session.
+ * The operations take the session as a parameter, so any number of sessions
+ * (accounts or contracts) can be used concurrently in one process.
+ */
+final class EThalerSession {
+    private final ClientConfig config;
+    private final Web3j web3j;
+    private final ChainExecutor executor;
+    private final ClientMetrics metrics;
+    private final Credentials credentials;
+    private final AccountAddress accountAddress;
+    private final EThaler contract;
+    private final EThalerService service;
+    private final boolean owner;
+    private final TokenRegistry tokens;
+    private final DealerRegistry dealers;
+
+    private EThalerSession(ClientConfig config, Web3j web3j, ChainExecutor executor, ClientMetrics metrics, Credentials credentials,
+                           EThaler contract, EThalerService service, boolean owner, TokenRegistry tokens, DealerRegistry dealers) {
+        this.config = config;
+        this.web3j = web3j;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.credentials = credentials;
+        this.accountAddress = AccountAddress.of(credentials.getAddress());
+        this.contract = contract;
+        this.service = service;
+        this.owner = owner;
+        this.tokens = tokens;
+        this.dealers = dealers;
+    }
+
+    /**
+     * loads the contract for the account, then the owner flag and the token definitions concurrently.
+     * With TX_JOURNAL_DIR set, the transactions are journaled and the ones a previous run left without
+     * outcome are reconciled first, see {@link TransactionReconciler}.
+     * Unless PREFLIGHT is off, the transactions are checked before they are signed, see {@link ContractStateMirror}.
+     * Unless TX_WINDOW_MAX is 0, the transactions in flight are limited by a {@link SubmissionWindow}.
+     * @param config
+     * @param web3j
+     * @param executor runs the blocking chain operations
+     * @param metrics process wide metrics
+     * @param credentials unlocked wallet
+     * @return ready to use session
+     * @throws Exception
+     */
+    static EThalerSession open(ClientConfig config, Web3j web3j, ChainExecutor executor, ClientMetrics metrics,
+                               Credentials credentials) throws Exception {
+        TransactionJournal journal = TransactionJournal.open(config, AccountAddress.of(credentials.getAddress()));
+        if (journal != null && journal.startReconciliation()) {
+            reconcile(config, web3j, metrics, credentials, journal);
+        }
+        EThalerTransactionManager rawTransMgr = new EThalerTransactionManager(web3j, credentials, config.getChainId(),
+                config.getPollingAttempts(), config.getPollingInterval(), metrics, journal,
+                SubmissionWindow.create(config, metrics, AccountAddress.of(credentials.getAddress())));
+        DealerRegistry dealers = new DealerRegistry();
+        ContractStateMirror mirror = ContractStateMirror.create(config, web3j, AccountAddress.of(credentials.getAddress()),
+                dealers, executor, metrics);
+        EThalerService service = EThalerService.load(config.getContractAddress(), web3j, rawTransMgr,
+                new GasEstimator(config, web3j, AccountAddress.of(credentials.getAddress()), metrics), executor, mirror);
+        EThaler contract = service.getContract();
+        CompletableFuture<Boolean> ownerFuture = service.isOwner();
+        CompletableFuture<TokenRegistry> tokensFuture = service.loadTokens();
+        boolean owner = false;
+        try {
+            owner = EThalerService.await(ownerFuture);
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in getting isOwner : " + ex.getMessage());
+        }
+        TokenRegistry tokens = TokenRegistry.EMPTY;
+        try {
+            tokens = EThalerService.await(tokensFuture);
+        } catch (Exception ex) {
+            GenUtil.printLog("Error in populating token ids : " + ex.getMessage());
+        }
+        return new EThalerSession(config, web3j, executor, metrics, credentials, contract, service, owner, tokens, dealers);
+    }
+
+    /**
+     * settles the journaled transactions of the account left without outcome, before new ones get nonces
+     * @param config
+     * @param web3j
+     * @param metrics
+     * @param credentials
+     * @param journal
+     * @throws IOException when the node cannot be reached
+     */
+    private static void reconcile(ClientConfig config, Web3j web3j, ClientMetrics metrics, Credentials credentials,
+                                  TransactionJournal journal) throws IOException {
+        TransactionReconciler reconciler = new TransactionReconciler(web3j, AccountAddress.of(credentials.getAddress()), journal,
+                new MeteredReceiptProcessor(web3j, config.getPollingAttempts(), config.getPollingInterval(), metrics));
+        List<String> report = reconciler.reconcile();
+        if (!report.isEmpty()) {
+            GenUtil.printLog("Transactions of the previous run, from " + journal.getFile() + " :");
+            for (String line : report) {
+                GenUtil.printLog("  " + line);
+            }
+        }
+    }
+
+    /**
+     * @param tokens
+     * @return copy of this session with the given token definitions
+     */
+    EThalerSession withTokens(TokenRegistry tokens) {
+        return new EThalerSession(config, web3j, executor, metrics, credentials, contract, service, owner, tokens, dealers);
+    }
+
+    ClientConfig getConfig() {
+        return config;
+    }
+
+    Web3j getWeb3j() {
+        return web3j;
+    }
+
+    /**
+     * @return executor for the blocking chain operations, shared by all sessions
+     */
+    ChainExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return metrics of the process, shared by all sessions
+     */
+    ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    Credentials getCredentials() {
+        return credentials;
+    }
+
+    AccountAddress getAccountAddress() {
+        return accountAddress;
+    }
+
+    EThaler getContract() {
+        return contract;
+    }
+
+    /**
+     * @return asynchronous contract API, signing as the session account
+     */
+    EThalerService getService() {
+        return service;
+    }
+
+    boolean isOwner() {
+        return owner;
+    }
+
+    TokenRegistry getTokens() {
+        return tokens;
+    }
+
+    DealerRegistry getDealers() {
+        return dealers;
+    }
+}//end of class
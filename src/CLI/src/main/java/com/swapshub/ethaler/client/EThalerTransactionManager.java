@@ -0,0 +1,289 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.RawTransactionManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Raw transaction manager for the wallet account.
+ * RawTransactionManager reads the pending nonce from the node for every transaction, so two
+ * transactions signed at the same time by one account would get the same nonce.
+ * Submission (nonce assignment, signing and broadcast) is serialized per signer here, while waiting
+ * for the receipts still happens concurrently in the calling threads.
+ * The nonce is read from the node once and then counted locally. When the node rejects a transaction
+ * or cannot be reached, the nonce is read again (a resync) before the next transaction, and a
+ * transaction rejected for its nonce, e.g. because another client used the account, is sent once more.
+ * The encode, sign and send stages are reported to the {@link TransactionTrace} of the calling thread.
+ * With a {@link TransactionJournal}, every signed transaction is on disk before it is broadcast, and its
+ * rejection or receipt is recorded after.
+ * A failed receipt of a contract call is explained by the {@link RevertDiagnosis}.
+ * With a {@link SubmissionWindow}, a transaction waits for a slot in the window of the account before it is signed,
+ * and its confirmation latency, receipt timeout, pool rejection or nonce error tunes the window.
+ */
+class EThalerTransactionManager extends RawTransactionManager {
+    private final ReentrantLock submitLock = new ReentrantLock();
+    private final ClientMetrics metrics;
+    private final TransactionJournal journal;
+    private final RevertDiagnosis diagnosis;
+    //null for no window
+    private final SubmissionWindow window;
+    //next nonce of the account, null until read from the node. Guarded by submitLock
+    private BigInteger nextNonce;
+    //hash of the transaction being sent. Guarded by submitLock
+    private String signedHash;
+
+    EThalerTransactionManager(Web3j web3j, Credentials credentials, long chainId, int attempts, long sleepDuration,
+                              ClientMetrics metrics) {
+        this(web3j, credentials, chainId, attempts, sleepDuration, metrics, null);
+    }
+
+    /**
+     * @param web3j
+     * @param credentials
+     * @param chainId
+     * @param attempts receipt requests per transaction
+     * @param sleepDuration milliseconds between two receipt requests
+     * @param metrics
+     * @param journal records the transactions, null for none
+     */
+    EThalerTransactionManager(Web3j web3j, Credentials credentials, long chainId, int attempts, long sleepDuration,
+                              ClientMetrics metrics, TransactionJournal journal) {
+        this(web3j, credentials, chainId, attempts, sleepDuration, metrics, journal, null);
+    }
+
+    /**
+     * @param web3j
+     * @param credentials
+     * @param chainId
+     * @param attempts receipt requests per transaction
+     * @param sleepDuration milliseconds between two receipt requests
+     * @param metrics
+     * @param journal records the transactions, null for none
+     * @param window in-flight window of the account, null for none
+     */
+    EThalerTransactionManager(Web3j web3j, Credentials credentials, long chainId, int attempts, long sleepDuration,
+                              ClientMetrics metrics, TransactionJournal journal, SubmissionWindow window) {
+        super(web3j, credentials, chainId, new MeteredReceiptProcessor(web3j, attempts, sleepDuration, metrics));
+        this.metrics = metrics;
+        this.journal = journal;
+        this.window = window;
+        this.diagnosis = new RevertDiagnosis(web3j, metrics);
+    }
+
+    /**
+     * called by the contract wrapper with the encoded call, which ends the encode stage
+     * @throws TransactionException with the reason of the failure when a contract call fails
+     */
+    @Override
+    protected TransactionReceipt executeTransaction(BigInteger gasPrice, BigInteger gasLimit, String to, String data,
+                                                    BigInteger value, boolean constructor)
+            throws IOException, TransactionException {
+        TransactionReceipt receipt = execute(gasPrice, gasLimit, to, data, value, constructor);
+        if (!constructor && !receipt.isStatusOK()) {
+            throw failure(receipt, to, data, gasLimit);
+        }
+        return receipt;
+    }
+
+    private TransactionReceipt execute(BigInteger gasPrice, BigInteger gasLimit, String to, String data,
+                                       BigInteger value, boolean constructor)
+            throws IOException, TransactionException {
+        TransactionTrace trace = TransactionTrace.current();
+        if (trace != null) {
+            trace.encoded();
+        }
+        TransactionReceipt receipt;
+        long started = window == null ? 0 : window.acquire();
+        boolean confirmed = false;
+        try {
+            receipt = super.executeTransaction(gasPrice, gasLimit, to, data, value, constructor);
+            confirmed = true;
+        } catch (TransactionException ex) {
+            //with a hash, the transaction was sent but had no receipt within the polling attempts : slower than any
+            //slow confirmation
+            if (window != null && ex.getTransactionHash().isPresent()) {
+                window.congested(SubmissionWindow.LATENCY);
+            }
+            throw ex;
+        } finally {
+            if (window != null) {
+                window.release(started, confirmed);
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.mined(receipt.getTransactionHash(), receipt.getBlockNumber(), receipt.getStatus());
+            } catch (IOException ex) {
+                //the reconciliation finds the receipt again
+                GenUtil.printLog("Error in journaling the receipt of " + receipt.getTransactionHash() + " : " + ex.getMessage());
+            }
+        }
+        return receipt;
+    }
+
+    /**
+     * sends a transaction with already encoded call data and waits for its receipt
+     * @param to contract address
+     * @param data encoded call
+     * @param gasPrice
+     * @param gasLimit
+     * @return receipt, whatever its status
+     * @throws IOException
+     * @throws TransactionException when the receipt is not available in time
+     */
+    TransactionReceipt executeTransaction(String to, String data, BigInteger gasPrice, BigInteger gasLimit)
+            throws IOException, TransactionException {
+        return execute(gasPrice, gasLimit, to, data, BigInteger.ZERO, false);
+    }
+
+    /**
+     * @param receipt failed receipt of a transaction of this account
+     * @param to contract address
+     * @param data encoded call
+     * @param gasLimit
+     * @return failure with the reason, to be thrown
+     */
+    TransactionException failure(TransactionReceipt receipt, String to, String data, BigInteger gasLimit) {
+        return diagnosis.failure(receipt, getFromAddress(), to, data, gasLimit);
+    }
+
+    /**
+     * Only one transaction of this account is between nonce assignment and broadcast at any time.
+     */
+    @Override
+    public EthSendTransaction sendTransaction(BigInteger gasPrice, BigInteger gasLimit, String to,
+                                              String data, BigInteger value, boolean constructor) throws IOException {
+        long start = System.nanoTime();
+        submitLock.lock();
+        try {
+            EthSendTransaction sent = send(gasPrice, gasLimit, to, data, value, constructor);
+            if (sent.hasError() && isNonceError(sent.getError().getMessage())) {
+                sent = send(gasPrice, gasLimit, to, data, value, constructor);
+            }
+            return sent;
+        } finally {
+            submitLock.unlock();
+            metrics.timer("ethaler_tx_submit_seconds", "Time to assign the nonce, sign and broadcast a transaction")
+                    .recordSince(start);
+        }
+    }
+
+    private EthSendTransaction send(BigInteger gasPrice, BigInteger gasLimit, String to,
+                                    String data, BigInteger value, boolean constructor) throws IOException {
+        EthSendTransaction sent;
+        try {
+            sent = super.sendTransaction(gasPrice, gasLimit, to, data, value, constructor);
+        } catch (IOException | RuntimeException ex) {
+            resyncNonce();
+            throw ex;
+        }
+        if (sent.hasError()) {
+            resyncNonce();
+            String reason = SubmissionWindow.reasonOf(sent.getError().getMessage());
+            if (window != null && reason != null) {
+                window.congested(reason);
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * called by signAndSend before the transaction is sent
+     * @param rawTransaction
+     * @return signed transaction
+     * @throws UncheckedIOException when the transaction could not be journaled, it is then not sent
+     */
+    @Override
+    public String sign(RawTransaction rawTransaction) {
+        TransactionTrace trace = TransactionTrace.current();
+        if (trace == null) {
+            return journal(rawTransaction, super.sign(rawTransaction), null);
+        }
+        TransactionTrace.StageEvent event = trace.begin(TransactionTrace.SIGN);
+        event.nonce = rawTransaction.getNonce().longValue();
+        String signed = super.sign(rawTransaction);
+        trace.end(event);
+        journal(rawTransaction, signed, trace);
+        trace.signed();
+        return signed;
+    }
+
+    private String journal(RawTransaction rawTransaction, String signed, TransactionTrace trace) {
+        signedHash = Hash.sha3(signed);
+        if (journal != null) {
+            try {
+                journal.signed(rawTransaction.getNonce(), signedHash, signed, trace == null ? null : trace.getFunction(),
+                        trace == null ? null : trace.getReference());
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Transaction not sent, it could not be journaled", ex);
+            }
+        }
+        return signed;
+    }
+
+    @Override
+    public EthSendTransaction signAndSend(RawTransaction rawTransaction) throws IOException {
+        TransactionTrace trace = TransactionTrace.current();
+        EthSendTransaction sent;
+        try {
+            sent = super.signAndSend(rawTransaction);
+        } catch (IOException | RuntimeException ex) {
+            if (trace != null) {
+                trace.sent(null, ex.getMessage());
+            }
+            throw ex;
+        }
+        if (trace != null) {
+            trace.sent(sent.getTransactionHash(), sent.hasError() ? sent.getError().getMessage() : null);
+        }
+        if (journal != null && sent.hasError() && !TransactionReconciler.isKnown(sent.getError().getMessage())) {
+            journal.rejected(signedHash, sent.getError().getMessage());
+        }
+        return sent;
+    }
+
+    /**
+     * called by RawTransactionManager while the submit lock is held
+     * @return nonce for the transaction being signed
+     * @throws IOException
+     */
+    @Override
+    protected BigInteger getNonce() throws IOException {
+        if (nextNonce == null) {
+            nextNonce = super.getNonce();
+        }
+        BigInteger nonce = nextNonce;
+        nextNonce = nonce.add(BigInteger.ONE);
+        return nonce;
+    }
+
+    /**
+     * the locally counted nonce may no longer match the node, it is read again for the next transaction
+     */
+    private void resyncNonce() {
+        nextNonce = null;
+        metrics.counter("ethaler_nonce_resyncs_total", "Nonce reads from the node after a failed submission").inc();
+    }
+
+    private boolean isNonceError(String message) {
+        return message != null && message.toLowerCase().contains("nonce");
+    }
+}//end of class
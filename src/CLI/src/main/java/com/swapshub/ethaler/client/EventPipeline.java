@@ -0,0 +1,309 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the decoded contract events from the listener to the outputs, so console and file I/O never
+ * run on the log subscriber thread. The listener offers each event to a bounded lock-free queue; one
+ * sink thread drains it in batches and writes each batch to the console, and optionally to a text
+ * file and a JSON lines file, flushing and redrawing the menu once per batch.
+ * When the queue is full the listener either waits for the sink (EVENT_QUEUE_FULL_POLICY=block, the
+ * default : no event is lost and the log polling slows down) or drops the event (drop).
+ * <pre>
+ *   EVENT_QUEUE_CAPACITY         events waiting for the sink (default 8192)
+ *   EVENT_QUEUE_FULL_POLICY      block or drop
+ *   EVENT_BATCH_SIZE             maximum events written at once (default 256)
+ *   EVENT_CONSOLE_MAX_PER_BATCH  events printed per batch, the rest is counted (default 20)
+ *   EVENT_LOG_FILE               text file receiving every event, none when empty
+ *   EVENT_JSONL_FILE             JSON lines file receiving every event, none when empty
+ * </pre>
+ */
+final class EventPipeline implements AutoCloseable {
+    private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrentLinkedQueue<ContractEvent> queue = new ConcurrentLinkedQueue<>();
+    //events in the queue, kept apart as the size of ConcurrentLinkedQueue is not constant time
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final boolean dropWhenFull;
+    private final int batchSize;
+    private final List<EventOutput> outputs;
+    private final ClientMetrics metrics;
+    private final ClientMetrics.Gauge depth;
+    private final ClientMetrics.Counter dropped;
+    private final ClientMetrics.Counter producerWaits;
+    private volatile Thread sink;
+    private volatile boolean closed;
+
+    private EventPipeline(int capacity, boolean dropWhenFull, int batchSize, List<EventOutput> outputs, ClientMetrics metrics) {
+        this.capacity = capacity;
+        this.dropWhenFull = dropWhenFull;
+        this.batchSize = batchSize;
+        this.outputs = outputs;
+        this.metrics = metrics;
+        this.depth = metrics.gauge("ethaler_event_queue_depth", "Contract events waiting for the output sink");
+        this.dropped = metrics.counter("ethaler_event_queue_dropped_total", "Contract events dropped because the output queue was full");
+        this.producerWaits = metrics.counter("ethaler_event_queue_full_total",
+                "Times the listener found the output queue full, the sink being slower than the events");
+    }
+
+    /**
+     * creates the configured outputs and starts the sink thread
+     * @param config
+     * @param metrics
+     * @param executor starts the sink thread
+     * @param owner decides which menu is printed again after the events
+     * @return running pipeline
+     * @throws IOException when an output file cannot be opened
+     */
+    static EventPipeline start(ClientConfig config, ClientMetrics metrics, ChainExecutor executor, boolean owner) throws IOException {
+        List<EventOutput> outputs = new ArrayList<>();
+        outputs.add(new ConsoleOutput(config.getInt("EVENT_CONSOLE_MAX_PER_BATCH", 20), owner));
+        String logFile = config.getString("EVENT_LOG_FILE", "");
+        if (!logFile.isEmpty()) {
+            outputs.add(new TextFileOutput(openAppend(config, logFile)));
+        }
+        String jsonlFile = config.getString("EVENT_JSONL_FILE", "");
+        if (!jsonlFile.isEmpty()) {
+            outputs.add(new JsonLinesOutput(openAppend(config, jsonlFile)));
+        }
+        EventPipeline pipeline = new EventPipeline(config.getInt("EVENT_QUEUE_CAPACITY", 8192),
+                "drop".equalsIgnoreCase(config.getString("EVENT_QUEUE_FULL_POLICY", "block")),
+                config.getInt("EVENT_BATCH_SIZE", 256), outputs, metrics);
+        pipeline.sink = executor.startBackground("event-sink", pipeline::drain);
+        return pipeline;
+    }
+
+    private static Writer openAppend(ClientConfig config, String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.isAbsolute() && config.getStartDirectory() != null) {
+            file = new File(config.getStartDirectory(), fileName);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * hands the event to the sink. Never does I/O; with the block policy it waits while the queue is full.
+     * @param event
+     * @return false when the event was dropped
+     */
+    boolean offer(ContractEvent event) {
+        boolean waited = false;
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    queue.offer(event);
+                    depth.set(current + 1);
+                    LockSupport.unpark(sink);
+                    return true;
+                }
+                continue;
+            }
+            if (dropWhenFull || closed) {
+                dropped.inc();
+                return false;
+            }
+            if (!waited) {
+                producerWaits.inc();
+                waited = true;
+            }
+            LockSupport.unpark(sink);
+            LockSupport.parkNanos(FULL_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * sink loop : writes the queued events in batches until the pipeline is closed and empty
+     */
+    private void drain() {
+        List<ContractEvent> batch = new ArrayList<>(batchSize);
+        while (true) {
+            ContractEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+            if (!batch.isEmpty()) {
+                depth.set(size.addAndGet(-batch.size()));
+                write(batch);
+                batch.clear();
+                continue;
+            }
+            if (closed && queue.isEmpty()) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void write(List<ContractEvent> batch) {
+        long start = System.nanoTime();
+        for (EventOutput output : outputs) {
+            try {
+                output.write(batch);
+            } catch (IOException ex) {
+                metrics.counter("ethaler_event_output_errors_total", "Failed writes of event batches by output",
+                        "output", output.name()).inc();
+                System.err.println("Error in writing events to " + output.name() + " : " + ex.getMessage());
+            }
+        }
+        metrics.timer("ethaler_event_sink_batch_seconds", "Time to write one batch of events to all outputs").recordSince(start);
+        metrics.counter("ethaler_event_sink_events_total", "Contract events written by the output sink").add(batch.size());
+    }
+
+    /**
+     * writes the queued events, then closes the outputs
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = sink;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (EventOutput output : outputs) {
+            try {
+                output.close();
+            } catch (IOException ex) {
+                System.err.println("Error in closing " + output.name() + " : " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * destination of the event batches, only called from the sink thread
+     */
+    private interface EventOutput {
+        String name();
+
+        void write(List<ContractEvent> batch) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    /**
+     * Prints the events of a batch, at most maxPerBatch of them with a count of the others, as one
+     * block followed by a single redraw of the menu.
+     */
+    private static final class ConsoleOutput implements EventOutput {
+        private final int maxPerBatch;
+        private final boolean owner;
+
+        private ConsoleOutput(int maxPerBatch, boolean owner) {
+            this.maxPerBatch = maxPerBatch;
+            this.owner = owner;
+        }
+
+        @Override
+        public String name() {
+            return "console";
+        }
+
+        @Override
+        public void write(List<ContractEvent> batch) {
+            StringBuilder text = new StringBuilder();
+            int shown = Math.min(batch.size(), maxPerBatch);
+            for (int i = 0; i < shown; i++) {
+                text.append(System.lineSeparator()).append(GenUtil.SEPARATOR).append(System.lineSeparator())
+                        .append(batch.get(i).getMessage()).append(System.lineSeparator());
+            }
+            if (batch.size() > shown) {
+                text.append(System.lineSeparator()).append("... and ").append(batch.size() - shown)
+                        .append(" more events").append(System.lineSeparator());
+            }
+            System.out.print(text);
+            GenUtil.printUserOptions(owner);
+        }
+
+        @Override
+        public void close() {
+            System.out.flush();
+        }
+    }
+
+    private static final class TextFileOutput implements EventOutput {
+        private final Writer writer;
+
+        private TextFileOutput(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public String name() {
+            return "file";
+        }
+
+        @Override
+        public void write(List<ContractEvent> batch) throws IOException {
+            String now = Instant.now().toString();
+            for (ContractEvent event : batch) {
+                writer.write(now + " block " + event.getBlockNumber() + " : " + event.getMessage());
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static final class JsonLinesOutput implements EventOutput {
+        private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        private final Writer writer;
+
+        private JsonLinesOutput(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public String name() {
+            return "jsonl";
+        }
+
+        @Override
+        public void write(List<ContractEvent> batch) throws IOException {
+            for (ContractEvent event : batch) {
+                writer.write(objectMapper.writeValueAsString(event.toJson()));
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}//end of class
@@ -0,0 +1,180 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gas benchmark : deploys a fresh contract on a development chain and measures the gas used by
+ * transfer and mint while the number of token definitions grows, e.g. 1, 10, 100 and 1000 tokens.
+ * At each step the transfer is measured on the first and on the last defined token, so a cost that
+ * depends on the position of the token among the definitions shows up as a difference between the two.
+ * Each measured token gets one transfer first, so the measured transfer does not pay for creating the
+ * receiver balance.
+ * The contract is deployed from the truffle artifact (--artifact, by default
+ * ../build/contracts/eThaler.json from the start directory, written by "truffle compile"), so the
+ * contract source is measured as compiled. An artifact without the functions and events the client uses
+ * (see {@link EThalerAbi#missingFrom}) is a build from before the token checks stopped depending on the number
+ * of tokens, and is refused rather than measured.
+ * The chain must accept zero gas price transactions, as for the load generator.
+ */
+class GasBenchmark {
+    static final String USAGE = "gasbench <owner wallet> [--tokens 1,10,100,1000] [--artifact truffle json] [--batch n]";
+    private static final BigInteger DEPLOY_GAS_LIMIT = BigInteger.valueOf(8000000);
+    private static final BigInteger MINT_AMOUNT = BigInteger.valueOf(1000000);
+
+    private final ClientConfig config;
+    private final Web3j web3j;
+    private final ChainExecutor executor;
+    private final ClientMetrics metrics;
+    private final Map<String, String> options;
+
+    /**
+     * @param config
+     * @param web3j
+     * @param executor runs the chain calls
+     * @param metrics
+     * @param options parsed --name value options
+     */
+    GasBenchmark(ClientConfig config, Web3j web3j, ChainExecutor executor, ClientMetrics metrics, Map<String, String> options) {
+        this.config = config;
+        this.web3j = web3j;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.options = options;
+    }
+
+    /**
+     * deploys the contract, defines the tokens step by step and writes the gas used at each step
+     * @param owner credentials of the account deploying the contract
+     * @param report receives the table
+     * @throws Exception when a transaction fails
+     */
+    void run(Credentials owner, PrintStream report) throws Exception {
+        List<Integer> steps = new ArrayList<>();
+        for (String step : options.getOrDefault("tokens", "1,10,100,1000").split(",")) {
+            steps.add(Integer.parseInt(step.trim()));
+        }
+        int batch = Integer.parseInt(options.getOrDefault("batch", "50"));
+        EThalerTransactionManager manager = new EThalerTransactionManager(web3j, owner, config.getChainId(),
+                config.getPollingAttempts(), config.getPollingInterval(), metrics);
+        EThalerService service = EThalerService.load(deploy(manager), web3j, manager,
+                new GasEstimator(config, web3j, AccountAddress.of(owner.getAddress()), metrics), executor);
+        AccountAddress ownerAddress = AccountAddress.of(owner.getAddress());
+        AccountAddress receiver = AccountAddress.of(Keys.getAddress(Keys.createEcKeyPair()));
+        //transfer() moves the tokens with this.safeTransferFrom, so the contract must be an approved operator
+        EThalerService.await(service.setApprovalForAll(service.getContractAddress(), true));
+
+        report.println(GenUtil.SEPARATOR);
+        report.printf("%10s %22s %22s %18s%n", "tokens", "transfer first token", "transfer last token", "mint last token");
+        int defined = 0;
+        long firstMintGas = 0;
+        for (int step : steps) {
+            List<CompletableFuture<?>> definitions = new ArrayList<>();
+            while (defined < step) {
+                defined++;
+                BigInteger tokenId = BigInteger.valueOf(defined);
+                definitions.add(service.addNewTokenDefinition(new TokenInfo(tokenId, "Gas" + defined, 0, "")));
+                if (definitions.size() == batch || defined == step) {
+                    awaitAll(definitions);
+                    definitions.clear();
+                    GenUtil.printLog("Defined " + defined + " tokens");
+                }
+            }
+            BigInteger first = BigInteger.ONE;
+            BigInteger last = BigInteger.valueOf(step);
+            if (firstMintGas == 0) {
+                firstMintGas = prepare(service, ownerAddress, receiver, first).longValue();
+            }
+            long mintGas = last.equals(first) ? firstMintGas : prepare(service, ownerAddress, receiver, last).longValue();
+            report.printf("%10d %22d %22d %18d%n", step, transferGas(service, receiver, first),
+                    transferGas(service, receiver, last), mintGas);
+        }
+        GenUtil.printLog("Gas benchmark finished for contract " + service.getContractAddress());
+    }
+
+    /**
+     * registers both accounts for the token, mints and makes the first transfer
+     * @return gas used by the mint
+     */
+    private BigInteger prepare(EThalerService service, AccountAddress ownerAddress, AccountAddress receiver, BigInteger tokenId)
+            throws Exception {
+        awaitAll(List.of(service.registerDealer(ownerAddress, tokenId), service.registerDealer(receiver, tokenId)));
+        BigInteger mintGas = EThalerService.await(service.mint(tokenId, MINT_AMOUNT)).getGasUsed();
+        transferGas(service, receiver, tokenId);
+        return mintGas;
+    }
+
+    private long transferGas(EThalerService service, AccountAddress receiver, BigInteger tokenId) throws Exception {
+        TransactionReceipt receipt = EThalerService.await(service.transfer(receiver, tokenId, BigInteger.ONE));
+        return receipt.getGasUsed().longValue();
+    }
+
+    /**
+     * @param manager signs as the owner
+     * @return address of the deployed contract
+     * @throws Exception when the deployment fails
+     */
+    private String deploy(EThalerTransactionManager manager) throws Exception {
+        File artifact = new File(options.getOrDefault("artifact", "../build/contracts/eThaler.json"));
+        if (!artifact.isAbsolute() && config.getStartDirectory() != null) {
+            artifact = new File(config.getStartDirectory(), artifact.getPath());
+        }
+        if (!artifact.isFile()) {
+            throw new IllegalArgumentException("No truffle artifact " + artifact + ". Run \"truffle compile\" first");
+        }
+        String binary = readBytecode(artifact);
+        GenUtil.printLog("Deploying the contract compiled in " + artifact);
+        TransactionReceipt receipt = manager.executeTransaction(BigInteger.ZERO, DEPLOY_GAS_LIMIT, null, binary,
+                BigInteger.ZERO, true);
+        if (!receipt.isStatusOK() || receipt.getContractAddress() == null) {
+            throw new IllegalStateException("Deployment failed with status " + receipt.getStatus());
+        }
+        GenUtil.printLog("Contract deployed at " + receipt.getContractAddress());
+        return receipt.getContractAddress();
+    }
+
+    /**
+     * @param artifact truffle artifact
+     * @return bytecode of the contract
+     * @throws IOException
+     * @throws IllegalArgumentException when there is no bytecode, or it lacks a function or event the client uses
+     */
+    private static String readBytecode(File artifact) throws IOException {
+        JsonNode json = ObjectMapperFactory.getObjectMapper().readTree(artifact);
+        JsonNode bytecode = json.get("bytecode");
+        if (bytecode == null || bytecode.asText().length() <= 2) {
+            throw new IllegalArgumentException("No bytecode in " + artifact);
+        }
+        List<String> missing = EThalerAbi.missingFrom(bytecode.asText());
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException(artifact + " is an older build of eThaler.sol without " + missing
+                    + ". Run \"truffle compile\" first");
+        }
+        return bytecode.asText();
+    }
+
+    private static void awaitAll(List<? extends CompletableFuture<?>> futures) throws Exception {
+        EThalerService.await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+    }
+}//end of class
@@ -0,0 +1,231 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthEstimateGas;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.gas.ContractGasProvider;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gas limits of the contract calls of one account, from eth_estimateGas instead of one fixed limit for all.
+ * The estimates are cached per function and argument size class, the number of 32 byte words of the call
+ * rounded up to a power of two, and a call longer than the one estimated in its class is scaled to its length.
+ * Concurrent calls of a class without estimate wait for a single eth_estimateGas.
+ * The limit is the estimate plus GAS_MARGIN_PERCENT, and at least GAS_MARGIN_MIN more, at most the block gas limit.
+ * The minimum covers a transfer creating the balance of its receiver (a new storage slot) estimated on one
+ * updating it. A call whose estimate fails, e.g. because it reverts, gets the fixed limit and is not cached;
+ * a transaction that runs out of gas drops the estimate of its class, so the next one is estimated again.
+ * With GAS_LIMIT set to a number, every function gets that limit, as before.
+ */
+final class GasEstimator implements ContractGasProvider {
+    //limit before any estimate, and of the calls that cannot be estimated
+    static final BigInteger DEFAULT_GAS_LIMIT = BigInteger.valueOf(430000);
+
+    private final Web3j web3j;
+    private final AccountAddress from;
+    private final ClientMetrics metrics;
+    //null when estimating
+    private final BigInteger fixedLimit;
+    private final BigInteger gasPrice;
+    private final int marginPercent;
+    private final BigInteger marginMin;
+    //completed with null when the estimate failed
+    private final Map<String, CompletableFuture<Estimate>> estimates = new ConcurrentHashMap<>();
+    //read once, null until then
+    private volatile BigInteger blockGasLimit;
+
+    /**
+     * @param config GAS_LIMIT (estimate or a number), GAS_MARGIN_PERCENT, GAS_MARGIN_MIN and GAS_PRICE
+     * @param web3j
+     * @param from account signing the transactions
+     * @param metrics
+     */
+    GasEstimator(ClientConfig config, Web3j web3j, AccountAddress from, ClientMetrics metrics) {
+        this.web3j = web3j;
+        this.from = from;
+        this.metrics = metrics;
+        String limit = config.getString("GAS_LIMIT", "estimate").trim();
+        this.fixedLimit = "estimate".equalsIgnoreCase(limit) ? null : new BigInteger(limit);
+        this.gasPrice = BigInteger.valueOf(config.getLong("GAS_PRICE", 0));
+        this.marginPercent = config.getInt("GAS_MARGIN_PERCENT", 20);
+        this.marginMin = BigInteger.valueOf(config.getLong("GAS_MARGIN_MIN", 20000));
+    }
+
+    @Override
+    public BigInteger getGasPrice(String function) {
+        return gasPrice;
+    }
+
+    @Override
+    @Deprecated
+    public BigInteger getGasPrice() {
+        return gasPrice;
+    }
+
+    /**
+     * used by the contract wrapper, which gives the function name only
+     * @param function
+     * @return highest limit cached for the function, the fixed limit when none
+     */
+    @Override
+    public BigInteger getGasLimit(String function) {
+        if (fixedLimit != null) {
+            return fixedLimit;
+        }
+        BigInteger limit = null;
+        for (Map.Entry<String, CompletableFuture<Estimate>> entry : estimates.entrySet()) {
+            Estimate estimate = entry.getValue().getNow(null);
+            if (entry.getKey().startsWith(function + "/") && estimate != null
+                    && (limit == null || estimate.limit.compareTo(limit) > 0)) {
+                limit = estimate.limit;
+            }
+        }
+        return limit != null ? limit : DEFAULT_GAS_LIMIT;
+    }
+
+    @Override
+    @Deprecated
+    public BigInteger getGasLimit() {
+        return fixedLimit != null ? fixedLimit : DEFAULT_GAS_LIMIT;
+    }
+
+    /**
+     * blocks on the node when the size class of the call has no estimate yet
+     * @param function contract function
+     * @param to contract address
+     * @param data encoded call
+     * @return gas limit for the call
+     * @throws IOException when the node cannot be reached
+     */
+    BigInteger getGasLimit(String function, String to, String data) throws IOException {
+        if (fixedLimit != null) {
+            return fixedLimit;
+        }
+        int words = words(data);
+        String key = key(function, words);
+        CompletableFuture<Estimate> estimated = new CompletableFuture<>();
+        CompletableFuture<Estimate> cached = estimates.putIfAbsent(key, estimated);
+        Estimate estimate;
+        if (cached != null) {
+            count("cache");
+            estimate = cached.join();
+        } else {
+            count("node");
+            try {
+                BigInteger gas = estimate(to, data);
+                estimate = gas == null ? null : new Estimate(withMargin(gas), words);
+            } catch (IOException | RuntimeException ex) {
+                estimates.remove(key, estimated);
+                estimated.completeExceptionally(ex);
+                throw ex;
+            }
+            if (estimate == null) {
+                //not cached, the next call of the class is estimated again
+                estimates.remove(key, estimated);
+            }
+            estimated.complete(estimate);
+        }
+        if (estimate == null) {
+            count("fallback");
+            return DEFAULT_GAS_LIMIT;
+        }
+        return estimate.limitFor(words, blockGasLimit());
+    }
+
+    /**
+     * drops the estimate of the call when the transaction ran out of gas
+     * @param function
+     * @param data encoded call
+     * @param receipt failed receipt
+     * @param gasLimit limit the transaction was sent with
+     */
+    void failed(String function, String data, TransactionReceipt receipt, BigInteger gasLimit) {
+        if (receipt.getGasUsedRaw() != null && receipt.getGasUsed().compareTo(gasLimit) >= 0
+                && estimates.remove(key(function, words(data))) != null) {
+            metrics.counter("ethaler_gas_estimate_refreshes_total", "Gas estimates dropped after an out of gas transaction").inc();
+        }
+    }
+
+    /**
+     * @param to contract address
+     * @param data encoded call
+     * @return gas used by the call on the latest state, without margin, null when it fails
+     * @throws IOException when the node cannot be reached
+     */
+    BigInteger estimate(String to, String data) throws IOException {
+        EthEstimateGas estimate = web3j.ethEstimateGas(Transaction.createEthCallTransaction(from.toString(), to, data)).send();
+        return estimate.hasError() ? null : estimate.getAmountUsed();
+    }
+
+    /**
+     * @param gas estimated gas
+     * @return the gas with the safety margin
+     */
+    BigInteger withMargin(BigInteger gas) {
+        return gas.add(gas.multiply(BigInteger.valueOf(marginPercent)).divide(BigInteger.valueOf(100)).max(marginMin));
+    }
+
+    /**
+     * @return gas limit of the latest block, the most a transaction can use
+     * @throws IOException when the node cannot be reached
+     */
+    BigInteger blockGasLimit() throws IOException {
+        BigInteger limit = blockGasLimit;
+        if (limit == null) {
+            limit = web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send().getBlock().getGasLimit();
+            blockGasLimit = limit;
+        }
+        return limit;
+    }
+
+    private static int words(String data) {
+        //selector first, then the arguments
+        return Math.max(0, (data.length() - 10) / 64);
+    }
+
+    /**
+     * @return function and size class, the word count rounded up to a power of two
+     */
+    private static String key(String function, int words) {
+        return function + "/" + (words <= 1 ? words : Integer.highestOneBit(words - 1) << 1);
+    }
+
+    private void count(String source) {
+        metrics.counter("ethaler_gas_estimates_total", "Gas limits of the transactions, by source (cache, node, fallback)",
+                "source", source).inc();
+    }
+
+    /**
+     * limit with margin, and the length of the call it was estimated for
+     */
+    private static final class Estimate {
+        final BigInteger limit;
+        final int words;
+
+        Estimate(BigInteger limit, int words) {
+            this.limit = limit;
+            this.words = words;
+        }
+
+        BigInteger limitFor(int callWords, BigInteger blockGasLimit) {
+            BigInteger scaled = callWords <= words ? limit
+                    : limit.multiply(BigInteger.valueOf(callWords)).divide(BigInteger.valueOf(words));
+            return scaled.min(blockGasLimit);
+        }
+    }
+}//end of class
@@ -0,0 +1,216 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long running gateway : keeps the network connection, the unlocked wallets and the token
+ * definitions loaded and exposes the contract operations as a local HTTP / JSON API.
+ * Every request runs as one of the unlocked wallets, chosen by the optional "from" value
+ * (account address); the first wallet is used when it is missing.
+ * <pre>
+ *   GET  /tokens
+ *   GET  /balance?tokenId=1[&amp;account=0x..][&amp;from=0x..]
+ *   GET  /dealers?tokenId=1
+ *   POST /transfer    {"tokenId":1,"to":"0x..","amount":10}
+ *   POST /mint        {"tokenId":1,"amount":10}
+ *   POST /burn        {"tokenId":1,"amount":10}
+ *   POST /register    {"tokenId":1,"account":"0x.."}
+ *   POST /unregister  {"tokenId":1,"account":"0x.."}
+ *   POST /pause       {"tokenId":1}
+ *   POST /resume      {"tokenId":1}
+ *   GET  /metrics     client metrics in the Prometheus text format
+ * </pre>
+ * Each request is handled on its own virtual thread, so a request waiting for a transaction receipt
+ * does not hold up the others and no handler pool has to be sized. Requests beyond
+ * GATEWAY_MAX_IN_FLIGHT are answered with 503.
+ * A body that is not a JSON object or bad values give 400, a command not permitted for the wallet 403 and an
+ * operation refused by the pre-flight check (balance too low, token paused, ...) 409.
+ */
+class GatewayServer {
+    //sessions by account address, in wallet order
+    private final Map<AccountAddress, EThalerSession> sessions = new LinkedHashMap<>();
+    private final EThalerSession defaultSession;
+    private final CommandProcessor processor;
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final Semaphore inFlight;
+    private final AtomicInteger requestCounter = new AtomicInteger();
+    private final ChainExecutor executor;
+    private HttpServer server;
+
+    /**
+     * @param sessions unlocked wallet sessions, the first one is the default
+     * @param processor executes the commands against the contract
+     * @param maxInFlight maximum requests accepted at the same time
+     */
+    GatewayServer(List<EThalerSession> sessions, CommandProcessor processor, int maxInFlight) {
+        for (EThalerSession session : sessions) {
+            this.sessions.put(session.getAccountAddress(), session);
+        }
+        this.defaultSession = sessions.get(0);
+        this.processor = processor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = defaultSession.getExecutor();
+    }
+
+    /**
+     * starts listening on the given local address
+     * @param bindAddress
+     * @param port
+     * @throws IOException
+     */
+    void start(String bindAddress, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        String[] commands = {ClientCommand.TOKENS, ClientCommand.BALANCE, ClientCommand.TRANSFER, ClientCommand.MINT,
+                ClientCommand.BURN, ClientCommand.REGISTER, ClientCommand.UNREGISTER, ClientCommand.PAUSE, ClientCommand.RESUME,
+                ClientCommand.DEALERS};
+        for (String command : commands) {
+            server.createContext("/" + command, exchange -> handle(command, exchange));
+        }
+        ClientMetrics metrics = defaultSession.getMetrics();
+        server.createContext("/metrics", exchange -> MetricsReporter.writeMetrics(exchange, metrics));
+        server.setExecutor(executor);
+        server.start();
+        GenUtil.printLog("Gateway listening on http://" + bindAddress + ":" + port);
+    }
+
+    /**
+     * stops accepting requests, waiting up to the given seconds for running requests
+     * @param delaySeconds
+     */
+    void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+        }
+    }
+
+    private void handle(String command, HttpExchange exchange) throws IOException {
+        if (!inFlight.tryAcquire()) {
+            writeResponse(exchange, 503, errorBody("Too many requests in flight"));
+            return;
+        }
+        try {
+            String expectedMethod = isQuery(command) ? "GET" : "POST";
+            if (!expectedMethod.equalsIgnoreCase(exchange.getRequestMethod())) {
+                writeResponse(exchange, 405, errorBody("Use " + expectedMethod + " for /" + command));
+                return;
+            }
+            Map<String, String> values = isQuery(command) ? queryValues(exchange) : bodyValues(exchange);
+            String account = values.containsKey("to") ? values.get("to") : values.get("account");
+            ClientCommand clientCommand = ClientCommand.create(requestCounter.incrementAndGet(), command,
+                    values.get("tokenId"), account, values.get("amount"));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("status", "ok");
+            result.putAll(EThalerService.await(processor.execute(session(values.get("from")), clientCommand)));
+            writeResponse(exchange, 200, result);
+        } catch (IllegalArgumentException ex) {
+            writeResponse(exchange, 400, errorBody(ex.getMessage()));
+        } catch (ContractStateMirror.Refusal ex) {
+            writeResponse(exchange, 409, errorBody(ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            writeResponse(exchange, 403, errorBody(ex.getMessage()));
+        } catch (Exception ex) {
+            writeResponse(exchange, 500, errorBody(ex.getMessage() == null ? ex.toString() : ex.getMessage()));
+        } finally {
+            inFlight.release();
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param from account address of the request, null for the default wallet
+     * @return session of the unlocked wallet
+     */
+    private EThalerSession session(String from) {
+        if (from == null) {
+            return defaultSession;
+        }
+        EThalerSession session = sessions.get(AccountAddress.of(from));
+        if (session == null) {
+            throw new IllegalArgumentException("No wallet unlocked for account [" + from + "]");
+        }
+        return session;
+    }
+
+    private boolean isQuery(String command) {
+        return ClientCommand.TOKENS.equals(command) || ClientCommand.BALANCE.equals(command)
+                || ClientCommand.DEALERS.equals(command);
+    }
+
+    private Map<String, String> queryValues(HttpExchange exchange) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int idx = pair.indexOf('=');
+            if (idx > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, idx), "UTF-8"), URLDecoder.decode(pair.substring(idx + 1), "UTF-8"));
+            }
+        }
+        return values;
+    }
+
+    private Map<String, String> bodyValues(HttpExchange exchange) {
+        Map<String, String> values = new HashMap<>();
+        JsonNode json;
+        try (InputStream body = exchange.getRequestBody()) {
+            json = objectMapper.readTree(body);
+        } catch (IOException ex) {
+            json = null;
+        }
+        //empty body, null, array or scalar
+        if (json == null || !json.isObject()) {
+            throw new IllegalArgumentException("Request body is not a JSON object");
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = json.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            values.put(field.getKey(), value.isNull() ? null : value.isValueNode() ? value.asText() : value.toString());
+        }
+        return values;
+    }
+
+    private Map<String, Object> errorBody(String error) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "error");
+        body.put("error", error);
+        return body;
+    }
+
+    private void writeResponse(HttpExchange exchange, int statusCode, Map<String, Object> body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}//end of class
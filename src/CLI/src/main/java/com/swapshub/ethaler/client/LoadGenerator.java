@@ -0,0 +1,428 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.gas.StaticGasProvider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator : provisions dealer accounts on a development chain and drives transfer and
+ * balanceOf traffic, either closed loop (a fixed number of concurrent workers) or open loop
+ * (a target rate). Latencies are recorded in HdrHistograms per stage :
+ * <ul>
+ *   <li>submit : eth_sendRawTransaction (nonce assignment, signing and broadcast) until the hash is returned</li>
+ *   <li>mine : start of the transfer until its receipt is available</li>
+ *   <li>confirm : start of the transfer until the receipt block has the requested confirmations</li>
+ *   <li>read : a balanceOf call</li>
+ * </ul>
+ * In open loop mode latencies are measured from the intended start of each operation, so a stalled
+ * node shows up in the percentiles instead of slowing down the request rate.
+ * The chain must accept zero gas price transactions (Besu dev network, Ganache with --gasPrice 0),
+ * the dealer accounts are generated fresh and hold no ether.
+ */
+class LoadGenerator {
+    static final String USAGE = "loadgen <owner wallet> [--dealers n] [--token id] [--concurrency n | --rate ops/s]"
+            + " [--duration s] [--warmup s] [--read-ratio 0..1] [--confirmations n] [--poll-ms ms] [--deploy] [--out dir]";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final BigInteger DEALER_FUNDING = BigInteger.valueOf(1000000000L);
+    private static final BigInteger DEPLOY_GAS_LIMIT = BigInteger.valueOf(8000000);
+
+    private final ClientConfig config;
+    private final Web3j web3j;
+    private final ChainExecutor executor;
+    private final ClientMetrics metrics;
+    private final Map<String, String> options;
+    private final double readRatio;
+    private final long pollMillis;
+    private final int confirmations;
+
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final AtomicLong transfersConfirmed = new AtomicLong();
+    private final AtomicLong transfersFailed = new AtomicLong();
+    private final AtomicLong readsCompleted = new AtomicLong();
+    private final AtomicLong readsFailed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private String contractAddress;
+    private BigInteger tokenId;
+    private List<Dealer> dealers;
+    private volatile long measureFromNanos;
+
+    /**
+     * @param config
+     * @param web3j
+     * @param executor runs the chain calls and the workers
+     * @param metrics
+     * @param options parsed --name value options
+     */
+    LoadGenerator(ClientConfig config, Web3j web3j, ChainExecutor executor, ClientMetrics metrics, Map<String, String> options) {
+        this.config = config;
+        this.web3j = web3j;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.options = options;
+        this.readRatio = Double.parseDouble(options.getOrDefault("read-ratio", "0.5"));
+        this.pollMillis = intOption("poll-ms", 100);
+        this.confirmations = intOption("confirmations", 1);
+        for (String stage : new String[]{"submit", "mine", "confirm", "read"}) {
+            histograms.put(stage, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+        }
+    }
+
+    /**
+     * @param args command line arguments
+     * @param from index of the first option, "--name value" pairs or "--flag"
+     * @param usage usage text of the mode, for the error message
+     * @return option values by name
+     */
+    static Map<String, String> parseOptions(String[] args, int from, String usage) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = from; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument [" + args[i] + "]. Usage : " + usage);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    /**
+     * provisions the accounts, runs the load and writes the report
+     * @param owner credentials of the contract owner
+     * @param report receives the summary
+     * @throws Exception when provisioning fails
+     */
+    void run(Credentials owner, PrintStream report) throws Exception {
+        EThalerService ownerService = provision(owner);
+        int durationSeconds = intOption("duration", 60);
+        int warmupSeconds = intOption("warmup", 10);
+        long start = System.nanoTime();
+        measureFromNanos = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFromNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        GenUtil.printLog("Running load for " + warmupSeconds + "s warm up and " + durationSeconds + "s measurement");
+        if (options.containsKey("rate")) {
+            runOpenLoop(Double.parseDouble(options.get("rate")), start, end);
+        } else {
+            runClosedLoop(intOption("concurrency", 64), end);
+        }
+        writeReport(report, (end - measureFromNanos) / 1e9);
+        GenUtil.printLog("Load finished for contract " + ownerService.getContractAddress());
+    }
+
+    /**
+     * The simulated node runs its model of eThaler.sol whatever the bytecode, a real node runs the wrapper bytecode
+     * @throws IllegalStateException when a real node would get a wrapper generated from an older build of eThaler.sol
+     */
+    private void checkWrapperBytecode() {
+        if (config.getBesuUrl().startsWith(NetWorkUtil.DEVCHAIN_URL)) {
+            return;
+        }
+        List<String> missing = EThalerAbi.missingFrom(EThaler.BINARY);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("The wrapper bytecode is an older build of eThaler.sol without " + missing
+                    + ". Run \"truffle compile\" and \"gradlew generateWrapper\" before deploying it");
+        }
+    }
+
+    /**
+     * deploys the contract when asked, defines the token when missing, registers and funds the dealers
+     * @param owner
+     * @return service signing as the owner
+     * @throws Exception
+     */
+    private EThalerService provision(Credentials owner) throws Exception {
+        EThalerTransactionManager ownerManager = transactionManager(owner);
+        contractAddress = config.getContractAddress();
+        if (options.containsKey("deploy")) {
+            checkWrapperBytecode();
+            GenUtil.printLog("Deploying contract");
+            contractAddress = EThaler.deploy(web3j, ownerManager, new StaticGasProvider(BigInteger.ZERO, DEPLOY_GAS_LIMIT))
+                    .send().getContractAddress();
+            GenUtil.printLog("Contract deployed at " + contractAddress);
+        }
+        EThalerService ownerService = EThalerService.load(contractAddress, web3j, ownerManager, gasEstimator(owner), executor);
+        if (!EThalerService.await(ownerService.isOwner())) {
+            throw new IllegalStateException("Wallet " + owner.getAddress() + " is not the owner of " + contractAddress);
+        }
+        tokenId = new BigInteger(options.getOrDefault("token", "1"));
+        if (!EThalerService.await(ownerService.getAllTokenIds()).contains(tokenId)) {
+            GenUtil.printLog("Defining token " + tokenId);
+            EThalerService.await(ownerService.addNewTokenDefinition(new TokenInfo(tokenId, "Load" + tokenId, 0, "")));
+        }
+        int dealerCount = intOption("dealers", 20);
+        GenUtil.printLog("Provisioning " + dealerCount + " dealer accounts");
+        dealers = new ArrayList<>(dealerCount);
+        for (int i = 0; i < dealerCount; i++) {
+            dealers.add(new Dealer(Credentials.create(Keys.createEcKeyPair())));
+        }
+        //the owner funds the dealers, so it has to be registered and approve the contract like a dealer
+        List<CompletableFuture<?>> setup = new ArrayList<>();
+        setup.add(ensureRegistered(ownerService, AccountAddress.of(owner.getAddress())));
+        setup.add(ensureApproved(ownerService, AccountAddress.of(owner.getAddress())));
+        for (Dealer dealer : dealers) {
+            setup.add(ownerService.registerDealer(dealer.address, tokenId));
+            //transfer() moves the tokens with this.safeTransferFrom, so the contract must be an approved operator
+            setup.add(dealer.service.setApprovalForAll(dealer.service.getContractAddress(), true));
+        }
+        awaitAll(setup);
+        EThalerService.await(ownerService.mint(tokenId, DEALER_FUNDING.multiply(BigInteger.valueOf(dealerCount))));
+        List<CompletableFuture<?>> funding = new ArrayList<>();
+        for (Dealer dealer : dealers) {
+            funding.add(ownerService.transfer(dealer.address, tokenId, DEALER_FUNDING));
+        }
+        awaitAll(funding);
+        GenUtil.printLog("Provisioning completed");
+        return ownerService;
+    }
+
+    private CompletableFuture<?> ensureRegistered(EThalerService ownerService, AccountAddress account) {
+        return ownerService.isDealerRegistered(account, tokenId).thenCompose(registered -> registered
+                ? CompletableFuture.completedFuture(null) : ownerService.registerDealer(account, tokenId));
+    }
+
+    private CompletableFuture<?> ensureApproved(EThalerService service, AccountAddress account) {
+        AccountAddress operator = service.getContractAddress();
+        return service.isApprovedForAll(account, operator).thenCompose(approved -> approved
+                ? CompletableFuture.completedFuture(null) : service.setApprovalForAll(operator, true));
+    }
+
+    private void awaitAll(List<CompletableFuture<?>> futures) throws Exception {
+        EThalerService.await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+    }
+
+    /**
+     * each worker runs one operation after the other until the end
+     * @param concurrency number of workers
+     * @param end
+     * @throws InterruptedException
+     */
+    private void runClosedLoop(int concurrency, long end) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        runOperation(System.nanoTime());
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+    }
+
+    /**
+     * starts operations at a fixed rate whatever the latency. Operations that would exceed
+     * the in-flight bound are counted as dropped.
+     * @param rate operations per second
+     * @param start
+     * @param end
+     * @throws InterruptedException
+     */
+    private void runOpenLoop(double rate, long start, long end) throws InterruptedException {
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        int maxInFlight = Math.max(1000, (int) (rate * 120));
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long intended = start;
+        while (intended < end) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (inFlight.tryAcquire()) {
+                long intendedStart = intended;
+                executor.execute(() -> {
+                    try {
+                        runOperation(intendedStart);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } else if (intended >= measureFromNanos) {
+                dropped.incrementAndGet();
+            }
+            intended += periodNanos;
+        }
+        inFlight.acquire(maxInFlight);
+    }
+
+    /**
+     * runs one randomly chosen operation, never throws
+     * @param startNanos start the latencies are measured from
+     */
+    private void runOperation(long startNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Dealer from = dealers.get(random.nextInt(dealers.size()));
+        boolean measured = startNanos >= measureFromNanos;
+        if (random.nextDouble() < readRatio) {
+            try {
+                EThalerService.await(from.service.balanceOf(tokenId));
+                if (measured) {
+                    record("read", startNanos);
+                    readsCompleted.incrementAndGet();
+                }
+            } catch (Exception ex) {
+                if (measured) {
+                    readsFailed.incrementAndGet();
+                }
+            }
+            return;
+        }
+        Dealer to = dealers.get(random.nextInt(dealers.size()));
+        while (dealers.size() > 1 && to == from) {
+            to = dealers.get(random.nextInt(dealers.size()));
+        }
+        try {
+            transfer(from, to, startNanos, measured);
+            if (measured) {
+                transfersConfirmed.incrementAndGet();
+            }
+        } catch (Exception ex) {
+            if (measured) {
+                transfersFailed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * sends the transfer below the contract wrapper, so submission, mining and confirmation can be timed apart
+     * @return receipt of the confirmed transfer
+     * @throws Exception when the transfer fails or reverts
+     */
+    private TransactionReceipt transfer(Dealer from, Dealer to, long startNanos, boolean measured) throws Exception {
+        String data = EThalerAbi.encodeTransfer(to.address, tokenId, TokenAmount.of(1));
+        EthSendTransaction sent = from.manager.sendTransaction(BigInteger.ZERO,
+                from.gas.getGasLimit(EThaler.FUNC_TRANSFER, contractAddress, data), contractAddress, data, BigInteger.ZERO);
+        if (measured) {
+            record("submit", startNanos);
+        }
+        if (sent.hasError()) {
+            throw new IllegalStateException(sent.getError().getMessage());
+        }
+        TransactionReceipt receipt = null;
+        while (receipt == null) {
+            TimeUnit.MILLISECONDS.sleep(pollMillis);
+            Optional<TransactionReceipt> found = web3j.ethGetTransactionReceipt(sent.getTransactionHash()).send().getTransactionReceipt();
+            receipt = found.orElse(null);
+        }
+        if (!receipt.isStatusOK()) {
+            throw new IllegalStateException("Transfer reverted : " + receipt.getTransactionHash());
+        }
+        if (measured) {
+            record("mine", startNanos);
+        }
+        BigInteger confirmedAt = receipt.getBlockNumber().add(BigInteger.valueOf(confirmations));
+        while (web3j.ethBlockNumber().send().getBlockNumber().compareTo(confirmedAt) < 0) {
+            TimeUnit.MILLISECONDS.sleep(pollMillis);
+        }
+        if (measured) {
+            record("confirm", startNanos);
+        }
+        return receipt;
+    }
+
+    private void record(String stage, long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        histograms.get(stage).recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+    }
+
+    /**
+     * prints throughput and percentiles, and writes the full percentile distribution of every stage
+     * as HdrHistogram .hgrm files (values in milliseconds)
+     * @param report
+     * @param seconds length of the measurement
+     * @throws IOException
+     */
+    private void writeReport(PrintStream report, double seconds) throws IOException {
+        report.println(GenUtil.SEPARATOR);
+        report.printf("transfers confirmed : %d (%.1f/s), failed : %d%n", transfersConfirmed.get(),
+                transfersConfirmed.get() / seconds, transfersFailed.get());
+        report.printf("reads completed     : %d (%.1f/s), failed : %d%n", readsCompleted.get(),
+                readsCompleted.get() / seconds, readsFailed.get());
+        if (dropped.get() > 0) {
+            report.printf("operations dropped  : %d (too many in flight)%n", dropped.get());
+        }
+        report.printf("%-10s %10s %10s %10s %10s %10s %10s %10s%n", "stage (ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+        File outDir = new File(options.getOrDefault("out", config.getStartDirectory() == null ? "." : config.getStartDirectory()));
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            report.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram.getTotalCount(),
+                    histogram.getMean() / 1000.0, millis(histogram, 50), millis(histogram, 90), millis(histogram, 99),
+                    millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+            try (PrintStream out = new PrintStream(new FileOutputStream(new File(outDir, "loadgen-" + entry.getKey() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        report.println("Percentile distributions written to " + outDir.getAbsolutePath() + File.separator + "loadgen-<stage>.hgrm");
+    }
+
+    private double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private int intOption(String name, int defaultVal) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultVal)));
+    }
+
+    private EThalerTransactionManager transactionManager(Credentials credentials) {
+        return new EThalerTransactionManager(web3j, credentials, config.getChainId(),
+                config.getPollingAttempts(), config.getPollingInterval(), metrics);
+    }
+
+    private GasEstimator gasEstimator(Credentials credentials) {
+        return new GasEstimator(config, web3j, AccountAddress.of(credentials.getAddress()), metrics);
+    }
+
+    /**
+     * generated dealer account with its own transaction manager, so the dealers submit independently
+     */
+    private final class Dealer {
+        final AccountAddress address;
+        final EThalerTransactionManager manager;
+        final GasEstimator gas;
+        final EThalerService service;
+
+        Dealer(Credentials credentials) {
+            this.address = AccountAddress.of(credentials.getAddress());
+            this.manager = transactionManager(credentials);
+            this.gas = gasEstimator(credentials);
+            this.service = EThalerService.load(contractAddress, web3j, manager, gas, executor);
+        }
+    }
+}//end of class
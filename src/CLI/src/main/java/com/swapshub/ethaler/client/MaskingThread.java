@@ -1,57 +1,57 @@
-/**
-Copyright 2020 Swapshub
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-http://www.apache.org/licenses/LICENSE-2.0
-*/
-
-package com.swapshub.ethaler.client;
-
-/**
- * This class attempts to erase and mask characters echoed to the console.
- */
-
-class MaskingThread extends Thread {
-    private volatile boolean stop;
-    private char echochar = '*';
-
-    /**
-     * @param prompt The prompt displayed to the user
-     */
-    public MaskingThread(String prompt) {
-        System.out.print(prompt);
-    }
-
-    /**
-     * Begin masking until asked to stop.
-     */
-    public void run() {
-
-        int priority = Thread.currentThread().getPriority();
-        Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-
-        try {
-            stop = true;
-            while (stop) {
-                System.out.print("\010" + echochar);
-                try {
-                    // attempt masking at this rate
-                    Thread.currentThread().sleep(1);
-                } catch (InterruptedException iex) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-        } finally { // restore the original priority
-            Thread.currentThread().setPriority(priority);
-        }
-    }
-
-    /**
-     * Instruct the thread to stop masking.
-     */
-    public void stopMasking() {
-        this.stop = false;
-    }
-}
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+/**
+ * This class attempts to erase and mask characters echoed to the console.
+ */
+
+class MaskingThread extends Thread {
+    private volatile boolean stop;
+    private char echochar = '*';
+
+    /**
+     * @param prompt The prompt displayed to the user
+     */
+    public MaskingThread(String prompt) {
+        System.out.print(prompt);
+    }
+
+    /**
+     * Begin masking until asked to stop.
+     */
+    public void run() {
+
+        int priority = Thread.currentThread().getPriority();
+        Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+
+        try {
+            stop = true;
+            while (stop) {
+                System.out.print("\010" + echochar);
+                try {
+                    // attempt masking at this rate
+                    Thread.currentThread().sleep(1);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally { // restore the original priority
+            Thread.currentThread().setPriority(priority);
+        }
+    }
+
+    /**
+     * Instruct the thread to stop masking.
+     */
+    public void stopMasking() {
+        this.stop = false;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+
+/**
+ * Polls for the receipt of a submitted transaction like web3j's PollingTransactionReceiptProcessor,
+ * recording the time from submission to receipt, the polling attempts and the timeouts.
+ * It is called as soon as the node has accepted the transaction, so the recorded time is the
+ * submit-to-receipt latency. The first-seen, mined and receipt-fetched stages are reported to the
+ * {@link TransactionTrace} of the calling thread.
+ */
+class MeteredReceiptProcessor extends TransactionReceiptProcessor {
+    private final Web3j web3j;
+    private final int attempts;
+    private final long sleepDuration;
+    private final ClientMetrics metrics;
+
+    /**
+     * @param web3j
+     * @param attempts maximum receipt requests per transaction
+     * @param sleepDuration milliseconds between two requests
+     * @param metrics
+     */
+    MeteredReceiptProcessor(Web3j web3j, int attempts, long sleepDuration, ClientMetrics metrics) {
+        super(web3j);
+        this.web3j = web3j;
+        this.attempts = attempts;
+        this.sleepDuration = sleepDuration;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public TransactionReceipt waitForTransactionReceipt(String transactionHash) throws IOException, TransactionException {
+        long start = System.nanoTime();
+        ClientMetrics.Counter polls = metrics.counter("ethaler_tx_receipt_polls_total",
+                "Receipt requests made while waiting for transactions");
+        TransactionTrace trace = TransactionTrace.current();
+        TransactionTrace.StageEvent mined = null;
+        TransactionTrace.StageEvent firstSeen = null;
+        if (trace != null && trace.isRecorded()) {
+            mined = trace.begin(TransactionTrace.MINED);
+            firstSeen = trace.begin(TransactionTrace.FIRST_SEEN);
+        }
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            polls.inc();
+            if (firstSeen != null && isKnown(transactionHash)) {
+                trace.end(firstSeen);
+                firstSeen = null;
+            }
+            TransactionTrace.StageEvent fetched = trace == null ? null : trace.begin(TransactionTrace.RECEIPT_FETCHED);
+            Optional<TransactionReceipt> receipt = requestReceipt(transactionHash);
+            if (receipt.isPresent()) {
+                metrics.timer("ethaler_tx_receipt_seconds", "Time from transaction submission to its receipt")
+                        .recordSince(start);
+                if (fetched != null) {
+                    fetched.attempts = attempt + 1;
+                    trace.end(fetched);
+                }
+                if (firstSeen != null) {
+                    //not seen pending, the transaction was mined between two polls
+                    trace.end(firstSeen);
+                }
+                if (mined != null) {
+                    endMined(trace, mined, receipt.get(), attempt + 1);
+                }
+                return receipt.get();
+            }
+            try {
+                Thread.sleep(sleepDuration);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for receipt of " + transactionHash);
+            }
+        }
+        metrics.counter("ethaler_tx_receipt_timeouts_total", "Transactions without receipt after all polling attempts").inc();
+        throw new TransactionException("Transaction receipt was not generated after " + ((sleepDuration * attempts) / 1000)
+                + " seconds for transaction: " + transactionHash, transactionHash);
+    }
+
+    /**
+     * @param transactionHash
+     * @return true when the node returns the transaction, pending or mined
+     */
+    private boolean isKnown(String transactionHash) {
+        try {
+            return web3j.ethGetTransactionByHash(transactionHash).send().getTransaction().isPresent();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * ends the mined stage with the receipt block, whose timestamp is read for the stage
+     */
+    private void endMined(TransactionTrace trace, TransactionTrace.StageEvent mined, TransactionReceipt receipt, int attempts) {
+        mined.end();
+        mined.attempts = attempts;
+        mined.blockNumber = receipt.getBlockNumber().longValue();
+        try {
+            EthBlock.Block block = web3j.ethGetBlockByHash(receipt.getBlockHash(), false).send().getBlock();
+            if (block != null) {
+                mined.blockTimestamp = block.getTimestamp().longValue() * 1000;
+            }
+        } catch (IOException ex) {
+            //the stage is still recorded, without block timestamp
+        }
+        trace.commit(mined);
+    }
+
+    private Optional<TransactionReceipt> requestReceipt(String transactionHash) throws IOException, TransactionException {
+        EthGetTransactionReceipt response = web3j.ethGetTransactionReceipt(transactionHash).send();
+        if (response.hasError()) {
+            throw new TransactionException("Error processing request: " + response.getError().getMessage());
+        }
+        return response.getTransactionReceipt();
+    }
+}//end of class
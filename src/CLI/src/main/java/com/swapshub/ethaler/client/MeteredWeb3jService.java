@@ -0,0 +1,81 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import io.reactivex.Flowable;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Web3jService decorator recording the latency and the failures of every JSON-RPC request by method.
+ * All calls of the client (contract calls, transactions, receipt and filter polling) go through it.
+ * A request fails when the transport throws or when the node answers with a JSON-RPC error.
+ */
+//the methods of Web3jService take a raw Request, which an implementation cannot parameterize
+@SuppressWarnings("rawtypes")
+class MeteredWeb3jService implements Web3jService {
+    private final Web3jService delegate;
+    private final ClientMetrics metrics;
+
+    /**
+     * @param delegate transport actually sending the requests
+     * @param metrics
+     */
+    MeteredWeb3jService(Web3jService delegate, ClientMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T response = delegate.send(request, responseType);
+            failed = response.hasError();
+            return response;
+        } finally {
+            record(request.getMethod(), start, failed);
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        long start = System.nanoTime();
+        return delegate.sendAsync(request, responseType).whenComplete((response, error) ->
+                record(request.getMethod(), start, error != null || response.hasError()));
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod,
+                                                             Class<T> responseType) {
+        metrics.counter("ethaler_rpc_subscriptions_total", "Subscriptions opened by JSON-RPC method",
+                "method", request.getMethod()).inc();
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private void record(String method, long startNanos, boolean failed) {
+        metrics.timer("ethaler_rpc_request_seconds", "JSON-RPC request latency by method", "method", method)
+                .recordSince(startNanos);
+        if (failed) {
+            metrics.counter("ethaler_rpc_errors_total", "JSON-RPC requests failed or answered with an error, by method",
+                    "method", method).inc();
+        }
+    }
+}//end of class
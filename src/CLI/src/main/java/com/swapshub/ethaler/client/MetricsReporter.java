@@ -0,0 +1,118 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the client metrics :
+ * <ul>
+ *   <li>GET /metrics in the Prometheus text format, on METRICS_BIND_ADDRESS:METRICS_PORT when METRICS_PORT
+ *   is set (the gateway also serves /metrics on its own port)</li>
+ *   <li>a summary logged every METRICS_LOG_INTERVAL seconds to the com.swapshub.ethaler.metrics logger,
+ *   0 to disable</li>
+ * </ul>
+ */
+final class MetricsReporter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger("com.swapshub.ethaler.metrics");
+    private final HttpServer server;
+    private final Thread summaryThread;
+
+    private MetricsReporter(HttpServer server, Thread summaryThread) {
+        this.server = server;
+        this.summaryThread = summaryThread;
+    }
+
+    /**
+     * starts the configured endpoint and summary
+     * @param config
+     * @param metrics
+     * @param executor runs the scrape requests and the summary
+     * @param logSummary false to never log the summary, e.g. while the interactive menu uses the console
+     * @return running reporter
+     * @throws IOException when the endpoint cannot listen on the configured port
+     */
+    static MetricsReporter start(ClientConfig config, ClientMetrics metrics, ChainExecutor executor,
+                                 boolean logSummary) throws IOException {
+        HttpServer server = null;
+        int port = config.getInt("METRICS_PORT", 0);
+        if (port > 0) {
+            String bindAddress = config.getString("METRICS_BIND_ADDRESS", "127.0.0.1");
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+            server.createContext("/metrics", exchange -> writeMetrics(exchange, metrics));
+            server.setExecutor(executor);
+            server.start();
+            GenUtil.printLog("Metrics available on http://" + bindAddress + ":" + port + "/metrics");
+        }
+        Thread summaryThread = null;
+        long intervalSeconds = config.getLong("METRICS_LOG_INTERVAL", 60);
+        if (logSummary && intervalSeconds > 0) {
+            summaryThread = executor.startBackground("metrics-summary", () -> logSummary(metrics, intervalSeconds));
+        }
+        return new MetricsReporter(server, summaryThread);
+    }
+
+    /**
+     * answers a scrape request with all metrics
+     * @param exchange
+     * @param metrics
+     * @throws IOException
+     */
+    static void writeMetrics(HttpExchange exchange, ClientMetrics metrics) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] bytes = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void logSummary(ClientMetrics metrics, long intervalSeconds) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.SECONDS.sleep(intervalSeconds);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            for (String line : metrics.summary()) {
+                LOG.info(line);
+            }
+        }
+    }
+
+    /**
+     * stops the endpoint and the summary
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (summaryThread != null) {
+            summaryThread.interrupt();
+        }
+    }
+}//end of class
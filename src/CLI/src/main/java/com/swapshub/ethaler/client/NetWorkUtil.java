@@ -1,61 +1,148 @@
-package com.swapshub.ethaler.client;
-
-import okhttp3.OkHttpClient;
-import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
-
-import java.util.concurrent.TimeUnit;
-
-public class NetWorkUtil extends GenUtil {
-    public NetWorkUtil() {
-        super();
-    }
-
-    /**
-     * Connects to Besu network
-     */
-    void connectToNetwork() {
-        try {
-            printLog(" BESU_URL got from config file " + EThalerApplication.BESU_URL);
-            printLog(" Please ensure correct contract address in config.properites file");
-            web3j = makeConnectionToNetwork(EThalerApplication.BESU_URL);
-        } catch (Exception ex) {
-            printLog("Error in connecting to network : " + ex.getMessage());
-        }
-    }
-
-    /**
-     * connects to given url
-     *
-     * @param networkURL
-     * @return
-     * @throws Exception
-     */
-    private Web3j makeConnectionToNetwork(String networkURL) throws Exception {
-        try {
-            return Web3j.build(new HttpService(networkURL, createOkHttpClient(), false));
-        } catch (Exception ex) {
-            printLog("Error in creating web3j object " + ex.getMessage());
-            throw ex;
-        }
-    }
-
-    /**
-     * helps in setting various connection related parameters
-     *
-     * @return
-     */
-    private OkHttpClient createOkHttpClient() {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
-        configureTimeouts(builder);
-        return builder.build();
-    }
-
-    private void configureTimeouts(OkHttpClient.Builder builder) {
-        Long tos = 3000L;
-        builder.connectTimeout(tos, TimeUnit.SECONDS);
-        builder.readTimeout(tos, TimeUnit.SECONDS);  // Sets the socket timeout too
-        builder.writeTimeout(tos, TimeUnit.SECONDS);
-    }
-
-}//end of class
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.devchain.SimulatedNode;
+import com.swapshub.ethaler.devchain.SimulationProfile;
+import okhttp3.OkHttpClient;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection to the node of BESU_URL. The url devchain: starts a {@link SimulatedNode} in the client instead,
+ * set up by the SIM_ values of the configuration.
+ * RPC_TIMEOUT is the connect, read and write timeout of the HTTP connection, in milliseconds.
+ * RPC_RECORD_FILE, relative to the start directory, records the JSON-RPC traffic of the HTTP connection
+ * for the replay benchmark; the file is complete once the client exited.
+ */
+public class NetWorkUtil extends GenUtil {
+    static final String DEVCHAIN_URL = "devchain:";
+    //the timeout used so far, 3000 seconds
+    private static final long DEFAULT_TIMEOUT = 3_000_000L;
+
+    public NetWorkUtil() {
+        super();
+    }
+
+    /**
+     * Connects to Besu network
+     * @param config
+     * @param metrics records every JSON-RPC request
+     * @return web3j object, null when the connection could not be created
+     */
+    Web3j connectToNetwork(ClientConfig config, ClientMetrics metrics) {
+        try {
+            printLog(" BESU_URL got from config file " + config.getBesuUrl());
+            printLog(" Please ensure correct contract address in config.properites file");
+            RpcRecording.Recorder recorder = null;
+            String recordFile = config.getString("RPC_RECORD_FILE", "");
+            if (!recordFile.isEmpty()) {
+                recorder = openRecorder(config, recordFile);
+                RpcRecording.Recorder closing = recorder;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> closeRecorder(closing)));
+            }
+            return makeConnectionToNetwork(config, metrics, recorder);
+        } catch (Exception ex) {
+            printLog("Error in connecting to network : " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Connects to Besu network, recording the JSON-RPC traffic
+     * @param config
+     * @param metrics records every JSON-RPC request
+     * @param recorder receives the traffic of the HTTP connection, closed by the caller
+     * @return web3j object, null when the connection could not be created
+     */
+    Web3j connectToNetwork(ClientConfig config, ClientMetrics metrics, RpcRecording.Recorder recorder) {
+        try {
+            printLog(" BESU_URL got from config file " + config.getBesuUrl());
+            return makeConnectionToNetwork(config, metrics, recorder);
+        } catch (Exception ex) {
+            printLog("Error in connecting to network : " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param config
+     * @param fileName relative to the start directory
+     * @return recorder writing the file
+     * @throws IOException when the file cannot be created
+     */
+    RpcRecording.Recorder openRecorder(ClientConfig config, String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.isAbsolute() && config.getStartDirectory() != null) {
+            file = new File(config.getStartDirectory(), fileName);
+        }
+        printLog(" Recording the JSON-RPC traffic to " + file);
+        return new RpcRecording.Recorder(file);
+    }
+
+    /**
+     * @param recorder
+     */
+    void closeRecorder(RpcRecording.Recorder recorder) {
+        try {
+            recorder.close();
+            printLog(" " + recorder.getRecorded() + " JSON-RPC requests recorded");
+        } catch (IOException ex) {
+            printLog("Error in closing the JSON-RPC recording : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * connects to the configured url
+     *
+     * @param config
+     * @param metrics
+     * @param recorder records the HTTP connection, may be null
+     * @return
+     * @throws Exception
+     */
+    private Web3j makeConnectionToNetwork(ClientConfig config, ClientMetrics metrics, RpcRecording.Recorder recorder) throws Exception {
+        try {
+            Web3jService service;
+            if (config.getBesuUrl().startsWith(DEVCHAIN_URL)) {
+                if (recorder != null) {
+                    printLog(" The simulated node is not recorded, only HTTP nodes are");
+                }
+                printLog(" Starting a simulated node, no contract is deployed on it");
+                service = new SimulatedNode(config.getChainId(), SimulationProfile.of(config.getProperties()));
+            } else {
+                service = new HttpService(config.getBesuUrl(), createOkHttpClient(config.getLong("RPC_TIMEOUT", DEFAULT_TIMEOUT), recorder), false);
+            }
+            return Web3j.build(new MeteredWeb3jService(service, metrics));
+        } catch (Exception ex) {
+            printLog("Error in creating web3j object " + ex.getMessage());
+            throw ex;
+        }
+    }
+
+    /**
+     * helps in setting various connection related parameters
+     *
+     * @param timeout milliseconds
+     * @param recorder may be null
+     * @return
+     */
+    private OkHttpClient createOkHttpClient(long timeout, RpcRecording.Recorder recorder) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        configureTimeouts(builder, timeout);
+        if (recorder != null) {
+            builder.addInterceptor(recorder);
+        }
+        return builder.build();
+    }
+
+    private void configureTimeouts(OkHttpClient.Builder builder, long tos) {
+        builder.connectTimeout(tos, TimeUnit.MILLISECONDS);
+        builder.readTimeout(tos, TimeUnit.MILLISECONDS);  // Sets the socket timeout too
+        builder.writeTimeout(tos, TimeUnit.MILLISECONDS);
+    }
+
+}//end of class
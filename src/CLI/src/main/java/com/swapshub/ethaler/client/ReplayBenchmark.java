@@ -0,0 +1,230 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Replay benchmark : runs a production-shaped client session on JSON-RPC traffic recorded from a node, so the
+ * CPU time, allocations and wall time of the client can be compared between builds without a network.
+ * The session is : startup (owner check and token definitions), token balances, event backfill (dealer
+ * registrations of every token and all the TransferSingle logs) and bulk transfers, --transfers of one unit
+ * of the first token the wallet holds enough of, to its registered dealers, all submitted at once.
+ * With --record the session runs once against BESU_URL and its traffic is written to the file. With --replay
+ * it runs --warmup then --iterations times on the recording, with the same wallet and configuration,
+ * and the medians are written to --out and compared with the --baseline results of another build.
+ * CPU time is the time of the whole process and allocations are those of all the threads, the JIT and GC
+ * included, so compare runs of the same JVM and settings only.
+ * The sessions run with PREFLIGHT=off : the pre-flight checks read the logs when the wall time says so, which
+ * would make the requests of a replay differ from the recording. They run with a fixed GAS_LIMIT too, as the gas
+ * estimate of the concurrent transfers depends on which receiver is estimated first.
+ */
+class ReplayBenchmark {
+    static final String USAGE = "replaybench <wallet> (--record file | --replay file [--iterations n] [--warmup n]"
+            + " [--latency] [--baseline results.json] [--out results.json]) [--transfers n]";
+    private static final String[] PHASES = {"startup", "balances", "backfill", "transfers"};
+
+    private final ClientConfig config;
+    private final ChainExecutor executor;
+    private final ClientMetrics metrics;
+    private final Map<String, String> options;
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * @param config
+     * @param executor runs the chain calls
+     * @param metrics
+     * @param options parsed --name value options
+     */
+    ReplayBenchmark(ClientConfig config, ChainExecutor executor, ClientMetrics metrics, Map<String, String> options) {
+        this.config = config.with("PREFLIGHT", "off").with("GAS_LIMIT", GasEstimator.DEFAULT_GAS_LIMIT.toString());
+        this.executor = executor;
+        this.metrics = metrics;
+        this.options = options;
+    }
+
+    /**
+     * runs the session once against the node, whose connection records it
+     * @param web3j connection to the node, recording
+     * @param credentials
+     * @param report receives the phase times
+     * @throws Exception when the session fails
+     */
+    void record(Web3j web3j, Credentials credentials, PrintStream report) throws Exception {
+        long[] phases = runSession(web3j, credentials);
+        report.println(GenUtil.SEPARATOR);
+        for (int i = 0; i < PHASES.length; i++) {
+            report.printf("%-10s %10.1f ms%n", PHASES[i], phases[i] / 1e6);
+        }
+    }
+
+    /**
+     * runs the session on the recording and reports the medians, compared with the baseline when given
+     * @param credentials the wallet of the recording
+     * @param report
+     * @throws Exception when the session fails or the recording does not answer it
+     */
+    void replay(Credentials credentials, PrintStream report) throws Exception {
+        List<RpcRecording.Exchange> recording = RpcRecording.read(file(options.get("replay")));
+        boolean latency = options.containsKey("latency");
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "10"));
+        GenUtil.printLog("Replaying " + recording.size() + " requests, " + warmup + " warm up and " + iterations + " measured sessions");
+        List<long[]> samples = new ArrayList<>();
+        long requests = 0;
+        for (int i = 0; i < warmup + iterations; i++) {
+            RpcReplayService service = new RpcReplayService(recording, latency);
+            Web3j web3j = Web3j.build(new MeteredWeb3jService(service, metrics));
+            long wall = System.nanoTime();
+            long cpu = os.getProcessCpuTime();
+            long allocated = threads.getTotalThreadAllocatedBytes();
+            long[] phases = runSession(web3j, credentials);
+            long[] sample = new long[3 + PHASES.length];
+            sample[0] = System.nanoTime() - wall;
+            sample[1] = os.getProcessCpuTime() - cpu;
+            sample[2] = threads.getTotalThreadAllocatedBytes() - allocated;
+            System.arraycopy(phases, 0, sample, 3, phases.length);
+            web3j.shutdown();
+            if (service.getUnmatched() > 0) {
+                GenUtil.printLog(service.getUnmatched() + " requests were not in the recording");
+            }
+            if (i >= warmup) {
+                samples.add(sample);
+                requests = service.getServed();
+            }
+        }
+        ObjectNode results = objectMapper.createObjectNode();
+        results.put("iterations", iterations);
+        results.put("requests", requests);
+        results.put("wallMillis", median(samples, 0) / 1e6);
+        results.put("cpuMillis", median(samples, 1) / 1e6);
+        results.put("allocatedMB", median(samples, 2) / 1e6);
+        ObjectNode phases = results.putObject("phasesMillis");
+        for (int i = 0; i < PHASES.length; i++) {
+            phases.put(PHASES[i], median(samples, 3 + i) / 1e6);
+        }
+        if (options.containsKey("out")) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file(options.get("out")), results);
+        }
+        JsonNode baseline = options.containsKey("baseline") ? objectMapper.readTree(file(options.get("baseline"))) : null;
+        report.println(GenUtil.SEPARATOR);
+        report.printf("%-22s %12s %12s %9s%n", "median of " + iterations, "this build", "baseline", "change");
+        for (String name : Arrays.asList("wallMillis", "cpuMillis", "allocatedMB")) {
+            printComparison(report, name, results.get(name).asDouble(), baseline == null ? null : baseline.get(name));
+        }
+        for (String name : PHASES) {
+            printComparison(report, name + " wall ms", phases.get(name).asDouble(),
+                    baseline == null ? null : baseline.path("phasesMillis").get(name));
+        }
+    }
+
+    private static void printComparison(PrintStream report, String name, double value, JsonNode baseline) {
+        if (baseline == null) {
+            report.printf("%-22s %12.1f%n", name, value);
+        } else {
+            double base = baseline.asDouble();
+            report.printf("%-22s %12.1f %12.1f %+8.1f%%%n", name, value, base, base == 0 ? 0 : (value - base) * 100 / base);
+        }
+    }
+
+    private static long median(List<long[]> samples, int index) {
+        long[] values = new long[samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i)[index];
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /**
+     * @param web3j
+     * @param credentials
+     * @return wall time of each phase, in nanoseconds
+     * @throws Exception when a call fails
+     */
+    long[] runSession(Web3j web3j, Credentials credentials) throws Exception {
+        long[] phases = new long[PHASES.length];
+        long start = System.nanoTime();
+        EThalerSession session = EThalerSession.open(config, web3j, executor, metrics, credentials);
+        EThalerService service = session.getService();
+        phases[0] = lap(start);
+
+        start = System.nanoTime();
+        Map<BigInteger, BigInteger> balances = EThalerService.await(service.getTokenBalances());
+        phases[1] = lap(start);
+
+        start = System.nanoTime();
+        List<CompletableFuture<Set<AccountAddress>>> dealers = new ArrayList<>();
+        for (TokenInfo token : session.getTokens().getTokens()) {
+            dealers.add(session.getDealers().refresh(service, token.getId()));
+        }
+        List<Log> transferLogs = EThalerService.await(service.getTransferLogs(BigInteger.ZERO));
+        for (Log log : transferLogs) {
+            EThalerAbi.decodeTransferSingle(log);
+        }
+        CompletableFuture.allOf(dealers.toArray(new CompletableFuture<?>[0])).get();
+        phases[2] = lap(start);
+
+        start = System.nanoTime();
+        int transfers = Integer.parseInt(options.getOrDefault("transfers", "100"));
+        List<TokenInfo> tokens = session.getTokens().getTokens();
+        for (int i = 0; i < tokens.size(); i++) {
+            List<AccountAddress> receivers = new ArrayList<>(dealers.get(i).get());
+            receivers.remove(session.getAccountAddress());
+            BigInteger balance = balances.getOrDefault(tokens.get(i).getId(), BigInteger.ZERO);
+            if (!receivers.isEmpty() && balance.compareTo(BigInteger.valueOf(transfers)) >= 0) {
+                List<CompletableFuture<?>> sent = new ArrayList<>();
+                for (int t = 0; t < transfers; t++) {
+                    sent.add(service.transfer(receivers.get(t % receivers.size()), tokens.get(i).getId(), BigInteger.ONE));
+                }
+                CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).get();
+                break;
+            }
+        }
+        phases[3] = lap(start);
+        return phases;
+    }
+
+    private static long lap(long startNanos) {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @param name relative to the start directory
+     * @return the file
+     */
+    File file(String name) {
+        File file = new File(name);
+        if (!file.isAbsolute() && config.getStartDirectory() != null) {
+            file = new File(config.getStartDirectory(), name);
+        }
+        return file;
+    }
+}//end of class
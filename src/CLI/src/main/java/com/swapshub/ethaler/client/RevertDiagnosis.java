@@ -0,0 +1,136 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tells why a mined transaction failed, for the error of the caller instead of a bare status 0x0.
+ * A transaction that used all its gas ran out of it. Otherwise the call is run again with eth_call, with the
+ * same sender, data and gas limit, on the state of the block it failed in, and the Error(string) of the revert
+ * is decoded : the require message of the contract.
+ * The reasons are cached per call shape, the sender, contract and call data without the amount
+ * (see {@link EThalerAbi#callShape}), for MAX_AGE_BLOCKS blocks, so the failures of a bulk run repeating
+ * the same call cost one eth_call. One instance per transaction manager.
+ */
+final class RevertDiagnosis {
+    //most call shapes kept, the least recently used are dropped
+    private static final int CACHE_SIZE = 1024;
+    //blocks after which a cached reason is found again, the state it came from may have changed
+    private static final long MAX_AGE_BLOCKS = 20;
+
+    private final Web3j web3j;
+    private final ClientMetrics metrics;
+    //guarded by itself
+    private final Map<String, Reason> reasons = new LinkedHashMap<String, Reason>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Reason> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    RevertDiagnosis(Web3j web3j, ClientMetrics metrics) {
+        this.web3j = web3j;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param receipt failed receipt
+     * @param from sender of the transaction
+     * @param to contract address
+     * @param data call data of the transaction
+     * @param gasLimit gas limit of the transaction
+     * @return the failure, with the reason when found
+     */
+    TransactionException failure(TransactionReceipt receipt, String from, String to, String data, BigInteger gasLimit) {
+        String reason;
+        try {
+            reason = diagnose(receipt, from, to, data, gasLimit);
+        } catch (IOException | RuntimeException ex) {
+            reason = "not found, " + ex.getMessage();
+        }
+        return new TransactionException(String.format("Transaction has failed with status: %s. Gas used: %s. Reason : %s",
+                receipt.getStatus(), receipt.getGasUsedRaw() != null ? receipt.getGasUsed().toString() : "unknown", reason),
+                receipt.getTransactionHash());
+    }
+
+    /**
+     * @param receipt failed receipt
+     * @param from
+     * @param to
+     * @param data
+     * @param gasLimit
+     * @return why the transaction failed
+     * @throws IOException when the call cannot be run again
+     */
+    String diagnose(TransactionReceipt receipt, String from, String to, String data, BigInteger gasLimit) throws IOException {
+        if (receipt.getGasUsedRaw() != null && gasLimit != null && receipt.getGasUsed().compareTo(gasLimit) >= 0) {
+            count("gas");
+            return "out of gas, the gas limit " + gasLimit + " was used up";
+        }
+        BigInteger block = receipt.getBlockNumber();
+        String shape = from + " " + to + " " + EThalerAbi.callShape(data);
+        synchronized (reasons) {
+            Reason cached = reasons.get(shape);
+            if (cached != null && block.longValue() - cached.block <= MAX_AGE_BLOCKS && block.longValue() >= cached.block) {
+                count("cache");
+                return cached.text;
+            }
+        }
+        count("call");
+        EthCall result = web3j.ethCall(Transaction.createFunctionCallTransaction(from, null, BigInteger.ZERO, gasLimit, to, data),
+                DefaultBlockParameter.valueOf(block)).send();
+        String reason;
+        if (result.hasError()) {
+            reason = EThalerAbi.decodeRevertReason(result.getError().getData());
+            if (reason == null) {
+                reason = result.getError().getMessage();
+            }
+        } else {
+            //some nodes answer a revert with the encoded Error(string) as the result
+            reason = EThalerAbi.decodeRevertReason(result.getValue());
+            if (reason == null) {
+                //the state changed within the block, e.g. by a transaction mined before in it
+                return "unknown, the call succeeds on the state of block " + block;
+            }
+        }
+        synchronized (reasons) {
+            reasons.put(shape, new Reason(reason, block.longValue()));
+        }
+        return reason;
+    }
+
+    private void count(String source) {
+        metrics.counter("ethaler_revert_diagnoses_total", "Reasons of failed transactions, by source (gas, cache or call)",
+                "source", source).inc();
+    }
+
+    /**
+     * reason found for a call shape, and the block of the failure it was found for
+     */
+    private static final class Reason {
+        final String text;
+        final long block;
+
+        Reason(String text, long block) {
+            this.text = text;
+            this.block = block;
+        }
+    }
+}//end of class
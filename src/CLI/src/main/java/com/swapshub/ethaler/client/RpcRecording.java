@@ -0,0 +1,165 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON-RPC traffic recorded by the HTTP connection to the node, for {@link RpcReplayService}.
+ * The file is gzipped text, a header line then one line per answered request : start time from the start of
+ * the recording and duration, in microseconds, then the request and response bodies as sent, tab separated.
+ * Line breaks and tabs can only be whitespace in JSON, they are replaced by spaces.
+ * Only requests answered with HTTP 200 are recorded; the other ones fail the same way in the client.
+ */
+final class RpcRecording {
+    private static final String HEADER = "#ethaler-rpc-recording 1";
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getObjectMapper();
+
+    private RpcRecording() {
+    }
+
+    /**
+     * @param file
+     * @return exchanges of the recording, in the order they were answered
+     * @throws IOException when the file cannot be read or is not a recording
+     */
+    static List<Exchange> read(File file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException(file + " is not a JSON-RPC recording");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    throw new IOException("Invalid recording line " + (exchanges.size() + 2) + " in " + file);
+                }
+                exchanges.add(new Exchange(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], fields[3]));
+            }
+        }
+        return exchanges;
+    }
+
+    /**
+     * @param payload JSON-RPC request
+     * @return method then parameters of the request, without its id
+     * @throws IOException when the request is not JSON
+     */
+    static String requestKey(String payload) throws IOException {
+        JsonNode request = OBJECT_MAPPER.readTree(payload);
+        return request.path("method").asText() + " " + request.path("params");
+    }
+
+    /**
+     * @param json
+     * @return the same JSON on one line, without tab
+     */
+    private static String oneLine(String json) {
+        return json.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * one request and its response
+     */
+    static final class Exchange {
+        final long startMicros;
+        final long durationMicros;
+        final String request;
+        final String response;
+
+        Exchange(long startMicros, long durationMicros, String request, String response) {
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    /**
+     * OkHttp interceptor writing every exchange of the node connection to the recording file
+     */
+    static final class Recorder implements Interceptor, Closeable {
+        private final Writer writer;
+        private final long origin = System.nanoTime();
+        private long recorded;
+
+        /**
+         * @param file recording to write, replaced when it exists
+         * @throws IOException
+         */
+        Recorder(File file) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)),
+                    StandardCharsets.UTF_8));
+            writer.write(HEADER);
+            writer.write('\n');
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Buffer body = new Buffer();
+            if (chain.request().body() != null) {
+                chain.request().body().writeTo(body);
+            }
+            String request = body.readUtf8();
+            long start = System.nanoTime();
+            Response response = chain.proceed(chain.request());
+            if (!response.isSuccessful() || response.body() == null) {
+                return response;
+            }
+            ResponseBody responseBody = response.body();
+            String content = responseBody.string();
+            long end = System.nanoTime();
+            write(TimeUnit.NANOSECONDS.toMicros(start - origin), TimeUnit.NANOSECONDS.toMicros(end - start), request, content);
+            return response.newBuilder().body(ResponseBody.create(responseBody.contentType(), content)).build();
+        }
+
+        private synchronized void write(long startMicros, long durationMicros, String request, String response)
+                throws IOException {
+            writer.write(startMicros + "\t" + durationMicros + "\t" + oneLine(request) + "\t" + oneLine(response) + "\n");
+            recorded++;
+        }
+
+        synchronized long getRecorded() {
+            return recorded;
+        }
+
+        /**
+         * ends the file, it cannot be read before
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}//end of class
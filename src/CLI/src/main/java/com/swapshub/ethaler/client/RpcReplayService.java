@@ -0,0 +1,107 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Web3jService answering from a {@link RpcRecording} instead of a node, to run the client on recorded traffic.
+ * Each request gets the next recorded response of the same method and parameters, in recorded order; once they
+ * are all served the last one is served again, as for the receipt and block number polling.
+ * eth_sendRawTransaction is matched on the method only : transactions signed concurrently may get other nonces
+ * than when recorded, so the recorded transaction hashes are served in order, and the receipts are then read
+ * for those hashes. The response ids are the recorded ones; web3j does not check them over HTTP either.
+ * With the recorded latency, each response waits for the time the node took when recorded.
+ */
+final class RpcReplayService extends Service {
+    private static final String SEND_RAW_TRANSACTION = "eth_sendRawTransaction";
+
+    private final Map<String, ArrayDeque<RpcRecording.Exchange>> responses = new HashMap<>();
+    private final Map<String, RpcRecording.Exchange> lastServed = new HashMap<>();
+    private final boolean recordedLatency;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+
+    /**
+     * @param exchanges recording to serve
+     * @param recordedLatency true to wait for the recorded durations
+     * @throws IOException when a recorded request cannot be read
+     */
+    RpcReplayService(List<RpcRecording.Exchange> exchanges, boolean recordedLatency) throws IOException {
+        super(false);
+        this.recordedLatency = recordedLatency;
+        for (RpcRecording.Exchange exchange : exchanges) {
+            responses.computeIfAbsent(key(exchange.request), k -> new ArrayDeque<>()).add(exchange);
+        }
+    }
+
+    private static String key(String payload) throws IOException {
+        String key = RpcRecording.requestKey(payload);
+        return key.startsWith(SEND_RAW_TRANSACTION + " ") ? SEND_RAW_TRANSACTION : key;
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        String key = key(payload);
+        RpcRecording.Exchange exchange;
+        synchronized (this) {
+            ArrayDeque<RpcRecording.Exchange> queue = responses.get(key);
+            exchange = queue == null ? null : queue.poll();
+            if (exchange != null) {
+                lastServed.put(key, exchange);
+            } else {
+                exchange = lastServed.get(key);
+            }
+        }
+        if (exchange == null) {
+            unmatched.incrementAndGet();
+            throw new IOException("No recorded response for " + key);
+        }
+        served.incrementAndGet();
+        if (recordedLatency) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(exchange.durationMicros);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted");
+            }
+        }
+        return new ByteArrayInputStream(exchange.response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return requests answered
+     */
+    long getServed() {
+        return served.get();
+    }
+
+    /**
+     * @return requests with no recorded response, which failed
+     */
+    long getUnmatched() {
+        return unmatched.get();
+    }
+
+    @Override
+    public void close() {
+    }
+}//end of class
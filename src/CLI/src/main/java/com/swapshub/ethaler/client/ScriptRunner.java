@@ -0,0 +1,151 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless mode : executes a stream of typed commands (see {@link ClientCommand}), one per line.
+ * Blank lines and lines starting with # are skipped.
+ * Commands for the same token run in script order, commands for different tokens run concurrently,
+ * each on its own virtual thread, with at most SCRIPT_PARALLELISM commands in flight.
+ * Each command produces one JSON result line.
+ */
+class ScriptRunner {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final EThalerSession session;
+    private final CommandProcessor processor;
+    private final PrintStream resultStream;
+    private final ChainExecutor executor;
+    private final Semaphore inFlight;
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final AtomicInteger failures = new AtomicInteger();
+    //last scheduled command per ordering key, only touched by the reading thread
+    private final Map<String, CompletableFuture<Void>> lanes = new HashMap<>();
+
+    /**
+     * @param session wallet session the commands run as
+     * @param processor executes the parsed commands
+     * @param parallelism maximum number of commands read ahead or executing at the same time
+     * @param resultStream receives the JSON result lines
+     */
+    ScriptRunner(EThalerSession session, CommandProcessor processor, int parallelism, PrintStream resultStream) {
+        this.session = session;
+        this.processor = processor;
+        this.resultStream = resultStream;
+        this.executor = session.getExecutor();
+        //bounds the commands read ahead of completion, so large scripts are not buffered in memory
+        this.inFlight = new Semaphore(parallelism);
+    }
+
+    /**
+     * Runs every command of the script and waits for all of them to finish.
+     * @param reader script source
+     * @return number of failed commands
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    int run(BufferedReader reader) throws IOException, InterruptedException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String text = line.trim();
+            if (text.length() == 0 || text.startsWith("#")) {
+                continue;
+            }
+            schedule(lineNumber, text);
+        }
+        CompletableFuture.allOf(lanes.values().toArray(new CompletableFuture<?>[0])).join();
+        return failures.get();
+    }
+
+    private void schedule(int lineNumber, String text) throws InterruptedException {
+        final ClientCommand command;
+        try {
+            command = ClientCommand.parse(lineNumber, text);
+        } catch (IllegalArgumentException ex) {
+            failures.incrementAndGet();
+            writeResult(errorResult(lineNumber, text, ex.getMessage(), 0));
+            return;
+        }
+        inFlight.acquire();
+        String key = command.orderingKey();
+        CompletableFuture<Void> previous = lanes.getOrDefault(key, DONE);
+        CompletableFuture<Void> next = previous.thenComposeAsync(ignored -> execute(command), executor);
+        next.whenComplete((ignored, error) -> inFlight.release());
+        lanes.put(key, next);
+    }
+
+    /**
+     * executes a single command and writes its result line. The returned stage never fails, so one
+     * failed command does not stop the commands queued after it.
+     * @param command
+     * @return completes when the result line is written
+     */
+    private CompletableFuture<Void> execute(ClientCommand command) {
+        long start = System.nanoTime();
+        return processor.execute(session, command).handle((fields, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+                Exception ex = EThalerService.unwrap(error);
+                String msg = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+                writeResult(errorResult(command.lineNumber, command.name, msg, elapsedMillis(start)));
+                return null;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("line", command.lineNumber);
+            result.put("command", command.name);
+            result.put("status", "ok");
+            result.putAll(fields);
+            result.put("elapsedMs", elapsedMillis(start));
+            writeResult(result);
+            return null;
+        });
+    }
+
+    private Map<String, Object> errorResult(int lineNumber, String command, String error, long elapsedMs) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("line", lineNumber);
+        result.put("command", command);
+        result.put("status", "error");
+        result.put("error", error);
+        result.put("elapsedMs", elapsedMs);
+        return result;
+    }
+
+    private long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+
+    private void writeResult(Map<String, Object> result) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(result);
+        } catch (IOException ex) {
+            json = "{\"line\":" + result.get("line") + ",\"status\":\"error\",\"error\":\"result not serializable\"}";
+        }
+        synchronized (resultStream) {
+            resultStream.println(json);
+            resultStream.flush();
+        }
+    }
+}//end of class
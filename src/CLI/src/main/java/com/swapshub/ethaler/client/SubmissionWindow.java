@@ -0,0 +1,240 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive in-flight window of the transactions of one account : how many may be between submission and
+ * confirmation at the same time, tuned AIMD style, as TCP does for its congestion window.
+ * Each confirmation within TX_WINDOW_LATENCY_FACTOR times the base latency grows the window by 1/window, so by
+ * one transaction per window confirmed. A slower confirmation or none within the receipt polling, a rejection by a
+ * full transaction pool or a nonce error halves it, at most once per base latency, so the transactions already in flight when the node fell behind
+ * do not halve it again. The base latency is the median confirmation latency of the last LATENCY_SAMPLES
+ * transactions rather than the lowest : a transaction sent just before a block is confirmed much sooner than one
+ * sent just after, so only a transaction waiting blocks longer than usual tells of a node falling behind.
+ * The window stays between TX_WINDOW_MIN and TX_WINDOW_MAX, from TX_WINDOW_INITIAL.
+ * The window and the transactions in flight are gauges labelled with the account, the changes are counted by
+ * reason (increase, latency, pool_rejection, nonce_error) and the reductions are logged.
+ */
+final class SubmissionWindow {
+    static final String INCREASE = "increase";
+    static final String LATENCY = "latency";
+    static final String POOL_REJECTION = "pool_rejection";
+    static final String NONCE_ERROR = "nonce_error";
+    //confirmations the base latency is the median of
+    private static final int LATENCY_SAMPLES = 64;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final int min;
+    private final int max;
+    private final double latencyFactor;
+    private final ClientMetrics metrics;
+    private final String account;
+    private final ClientMetrics.Gauge windowGauge;
+    private final ClientMetrics.Gauge inFlightGauge;
+    //guarded by lock
+    private double window;
+    private int inFlight;
+    //transactions wait for a slot in arrival order, by ticket
+    private long nextTicket;
+    private long servedTicket;
+    //tickets of the transactions interrupted while waiting, skipped when their turn comes
+    private final Set<Long> abandoned = new HashSet<>();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int samples;
+    private long lastDecrease;
+
+    /**
+     * @param initial window at start
+     * @param min smallest window
+     * @param max largest window
+     * @param latencyFactor confirmation latency, relative to the base latency, above which the window shrinks
+     * @param metrics
+     * @param account label of the metrics
+     */
+    SubmissionWindow(int initial, int min, int max, double latencyFactor, ClientMetrics metrics, AccountAddress account) {
+        if (min < 1 || max < min || initial < min || initial > max) {
+            throw new IllegalArgumentException("Invalid transaction window : initial " + initial + ", min " + min + ", max " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.latencyFactor = latencyFactor;
+        this.metrics = metrics;
+        this.account = account.toString();
+        this.window = initial;
+        this.windowGauge = metrics.gauge("ethaler_tx_window", "Transactions of the account allowed in flight", "account", this.account);
+        this.inFlightGauge = metrics.gauge("ethaler_tx_in_flight", "Transactions of the account between submission and confirmation",
+                "account", this.account);
+        windowGauge.set(initial);
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * @param config TX_WINDOW_MAX (0 for no window), TX_WINDOW_MIN, TX_WINDOW_INITIAL and TX_WINDOW_LATENCY_FACTOR
+     * @param metrics
+     * @param account
+     * @return window of the account, null when disabled
+     */
+    static SubmissionWindow create(ClientConfig config, ClientMetrics metrics, AccountAddress account) {
+        int max = config.getInt("TX_WINDOW_MAX", 256);
+        if (max <= 0) {
+            return null;
+        }
+        int min = config.getInt("TX_WINDOW_MIN", 1);
+        return new SubmissionWindow(Math.min(max, config.getInt("TX_WINDOW_INITIAL", 16)), min, max,
+                Double.parseDouble(config.getString("TX_WINDOW_LATENCY_FACTOR", "3")), metrics, account);
+    }
+
+    /**
+     * waits for a slot in the window, after the transactions already waiting
+     * @return start of the transaction, for {@link #release}
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    long acquire() throws InterruptedIOException {
+        lock.lock();
+        long ticket = nextTicket++;
+        try {
+            while (ticket != servedTicket || inFlight >= (int) window) {
+                slotFreed.await();
+            }
+            inFlight++;
+            inFlightGauge.set(inFlight);
+            return System.nanoTime();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (ticket != servedTicket) {
+                abandoned.add(ticket);
+                ticket = -1;
+            }
+            throw new InterruptedIOException("Interrupted while waiting for the transaction window");
+        } finally {
+            if (ticket >= 0) {
+                //served or given up at its turn, the next ticket may go
+                servedTicket++;
+                while (abandoned.remove(servedTicket)) {
+                    servedTicket++;
+                }
+                slotFreed.signalAll();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * frees the slot of a transaction
+     * @param started value of {@link #acquire}
+     * @param confirmed true when its receipt arrived, its latency then tunes the window
+     */
+    void release(long started, boolean confirmed) {
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightGauge.set(inFlight);
+            if (confirmed) {
+                long latency = System.nanoTime() - started;
+                if (samples > 0 && latency > baseLatency() * latencyFactor) {
+                    decrease(LATENCY);
+                } else {
+                    increase();
+                }
+                latencies[samples++ % LATENCY_SAMPLES] = latency;
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the node rejected a transaction, or did not confirm it in time, which calls for fewer transactions in flight
+     * @param reason POOL_REJECTION, NONCE_ERROR, or LATENCY for a transaction without receipt
+     */
+    void congested(String reason) {
+        lock.lock();
+        try {
+            decrease(reason);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param message error of eth_sendRawTransaction
+     * @return POOL_REJECTION, NONCE_ERROR, or null when the error does not tell about the load of the node
+     */
+    static String reasonOf(String message) {
+        String lower = message == null ? "" : message.toLowerCase();
+        if (lower.contains("nonce")) {
+            return NONCE_ERROR;
+        }
+        if (lower.contains("pool") || lower.contains("underpriced")) {
+            return POOL_REJECTION;
+        }
+        return null;
+    }
+
+    int getWindow() {
+        lock.lock();
+        try {
+            return (int) window;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void increase() {
+        int before = (int) window;
+        window = Math.min(max, window + 1 / window);
+        if ((int) window > before) {
+            changed(INCREASE);
+        }
+    }
+
+    /**
+     * halves the window, unless it was already halved within the base latency
+     */
+    private void decrease(String reason) {
+        long now = System.nanoTime();
+        if (now - lastDecrease < baseLatency() || (int) window == min) {
+            return;
+        }
+        lastDecrease = now;
+        window = Math.max(min, window / 2);
+        changed(reason);
+    }
+
+    private void changed(String reason) {
+        windowGauge.set((int) window);
+        metrics.counter("ethaler_tx_window_changes_total", "Changes of the transaction window, by reason", "reason", reason).inc();
+        if (!INCREASE.equals(reason)) {
+            GenUtil.printLog("Transaction window of " + account + " reduced to " + (int) window + " : " + reason
+                    + ", base latency " + TimeUnit.NANOSECONDS.toMillis(baseLatency()) + " ms");
+        }
+    }
+
+    /**
+     * @return median confirmation latency of the last LATENCY_SAMPLES transactions, in nanoseconds, 0 before any
+     */
+    private long baseLatency() {
+        if (samples == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, Math.min(samples, LATENCY_SAMPLES));
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}//end of class
@@ -0,0 +1,160 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Token amount in network units, a uint256 of the contract. Amounts below 2^63, which is all of them
+ * in practice, are held in a long; only larger ones keep a BigInteger. Small amounts are cached.
+ */
+final class TokenAmount implements Comparable<TokenAmount> {
+    private static final int WORD = 32;
+    private static final TokenAmount[] SMALL = new TokenAmount[1025];
+
+    static {
+        for (int i = 0; i < SMALL.length; i++) {
+            SMALL[i] = new TokenAmount(i, null);
+        }
+    }
+
+    static final TokenAmount ZERO = SMALL[0];
+
+    private final long value;
+    //set only when the amount does not fit in a long
+    private final BigInteger big;
+
+    private TokenAmount(long value, BigInteger big) {
+        this.value = value;
+        this.big = big;
+    }
+
+    /**
+     * @param amount not negative
+     * @return the amount
+     */
+    static TokenAmount of(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount [" + amount + "]");
+        }
+        return amount < SMALL.length ? SMALL[(int) amount] : new TokenAmount(amount, null);
+    }
+
+    /**
+     * @param amount between 0 and 2^256 - 1
+     * @return the amount
+     */
+    static TokenAmount of(BigInteger amount) {
+        if (amount.signum() < 0 || amount.bitLength() > 256) {
+            throw new IllegalArgumentException("Amount out of uint256 range [" + amount + "]");
+        }
+        return amount.bitLength() < Long.SIZE ? of(amount.longValue()) : new TokenAmount(0, amount);
+    }
+
+    /**
+     * @param in ABI encoded bytes
+     * @param offset start of the 32 byte word holding the amount
+     * @return the amount
+     */
+    static TokenAmount read(ByteBuffer in, int offset) {
+        boolean fitsLong = in.get(offset + WORD - Long.BYTES) >= 0;
+        for (int i = offset; fitsLong && i < offset + WORD - Long.BYTES; i++) {
+            fitsLong = in.get(i) == 0;
+        }
+        if (fitsLong) {
+            return of(in.getLong(offset + WORD - Long.BYTES));
+        }
+        return new TokenAmount(0, new BigInteger(1, in.array(), in.arrayOffset() + offset, WORD));
+    }
+
+    /**
+     * writes the amount as a 32 byte ABI word
+     * @param out
+     */
+    void writeTo(ByteBuffer out) {
+        if (big == null) {
+            out.putLong(0).putLong(0).putLong(0).putLong(value);
+            return;
+        }
+        byte[] bytes = big.toByteArray();
+        //toByteArray adds a sign byte when the top bit is set
+        int offset = bytes.length > WORD ? bytes.length - WORD : 0;
+        for (int i = bytes.length - offset; i < WORD; i++) {
+            out.put((byte) 0);
+        }
+        out.put(bytes, offset, bytes.length - offset);
+    }
+
+    /**
+     * @return true when the amount is held in a long, see {@link #longValue()}
+     */
+    boolean fitsLong() {
+        return big == null;
+    }
+
+    /**
+     * @return the amount, only exact when {@link #fitsLong()}
+     */
+    long longValue() {
+        return big == null ? value : big.longValue();
+    }
+
+    BigInteger toBigInteger() {
+        return big == null ? BigInteger.valueOf(value) : big;
+    }
+
+    boolean isZero() {
+        return big == null && value == 0;
+    }
+
+    @Override
+    public int compareTo(TokenAmount other) {
+        if (big == null && other.big == null) {
+            return Long.compare(value, other.value);
+        }
+        //a BigInteger amount is above every long amount
+        if (big == null || other.big == null) {
+            return big == null ? -1 : 1;
+        }
+        return big.compareTo(other.big);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TokenAmount)) {
+            return false;
+        }
+        TokenAmount amount = (TokenAmount) other;
+        return big == null ? amount.big == null && value == amount.value : big.equals(amount.big);
+    }
+
+    @Override
+    public int hashCode() {
+        return big == null ? Long.hashCode(value) : big.hashCode();
+    }
+
+    /**
+     * @return the amount as a JSON number
+     */
+    @JsonValue
+    BigInteger toJson() {
+        return toBigInteger();
+    }
+
+    @Override
+    public String toString() {
+        return big == null ? Long.toString(value) : big.toString();
+    }
+}//end of class
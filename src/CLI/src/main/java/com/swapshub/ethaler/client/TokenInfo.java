@@ -0,0 +1,53 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.math.BigInteger;
+
+/**
+ * Immutable definition of one token of the contract.
+ */
+final class TokenInfo {
+    private final BigInteger id;
+    private final String name;
+    private final int decimals;
+    private final String ttfUrl;
+    private final BigInteger decimalFactor;
+
+    TokenInfo(BigInteger id, String name, int decimals, String ttfUrl) {
+        this.id = id;
+        this.name = name;
+        this.decimals = decimals;
+        this.ttfUrl = ttfUrl;
+        this.decimalFactor = BigInteger.TEN.pow(decimals);
+    }
+
+    BigInteger getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getDecimals() {
+        return decimals;
+    }
+
+    String getTtfUrl() {
+        return ttfUrl;
+    }
+
+    /**
+     * @return 10 to the power of decimals, the factor between display and network amounts
+     */
+    BigInteger getDecimalFactor() {
+        return decimalFactor;
+    }
+}//end of class
@@ -0,0 +1,102 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of the token definitions of the contract, in definition order.
+ * Adding a token gives a new registry, so a registry can be shared between threads freely.
+ */
+final class TokenRegistry {
+    static final TokenRegistry EMPTY = new TokenRegistry(Collections.<TokenInfo>emptyList());
+
+    private final List<TokenInfo> tokens;
+    private final Map<BigInteger, TokenInfo> tokensById;
+
+    private TokenRegistry(List<TokenInfo> tokens) {
+        this.tokens = Collections.unmodifiableList(tokens);
+        Map<BigInteger, TokenInfo> byId = new HashMap<>();
+        for (TokenInfo token : tokens) {
+            byId.put(token.getId(), token);
+        }
+        this.tokensById = byId;
+    }
+
+    /**
+     * @param tokens token definitions, in definition order
+     * @return registry with the given tokens
+     */
+    static TokenRegistry of(List<TokenInfo> tokens) {
+        return new TokenRegistry(new ArrayList<>(tokens));
+    }
+
+    /**
+     * @param token
+     * @return new registry with the given token added
+     */
+    TokenRegistry with(TokenInfo token) {
+        List<TokenInfo> copy = new ArrayList<>(tokens);
+        copy.add(token);
+        return new TokenRegistry(copy);
+    }
+
+    /**
+     * @param tokenId
+     * @return true if the token is defined
+     */
+    boolean contains(BigInteger tokenId) {
+        return tokensById.containsKey(tokenId);
+    }
+
+    /**
+     * @param tokenId
+     * @return token definition, null if not defined
+     */
+    TokenInfo get(BigInteger tokenId) {
+        return tokensById.get(tokenId);
+    }
+
+    List<TokenInfo> getTokens() {
+        return tokens;
+    }
+
+    int size() {
+        return tokens.size();
+    }
+
+    /**
+     * @param tokenId
+     * @param amt
+     * @return converted value for the display based on decimal value of the token
+     */
+    BigInteger toDisplay(BigInteger tokenId, BigInteger amt) {
+        return amt.divide(decimalFactor(tokenId));
+    }
+
+    /**
+     * @param tokenId
+     * @param amt
+     * @return converted value for storing in the network based on the decimal value of the token
+     */
+    BigInteger toNetwork(BigInteger tokenId, BigInteger amt) {
+        return amt.multiply(decimalFactor(tokenId));
+    }
+
+    private BigInteger decimalFactor(BigInteger tokenId) {
+        TokenInfo token = tokensById.get(tokenId);
+        //default value of 1 for unknown tokens
+        return token == null ? BigInteger.ONE : token.getDecimalFactor();
+    }
+}//end of class
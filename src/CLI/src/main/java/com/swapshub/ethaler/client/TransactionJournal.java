@@ -0,0 +1,318 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-ahead journal of the transactions signed by one account, so a client stopped while waiting for a
+ * receipt can tell on restart which transactions landed, see {@link TransactionReconciler}.
+ * The file, &lt;account address&gt;.journal in TX_JOURNAL_DIR, is append-only, one JSON record per line :
+ * <ul>
+ *   <li>signed : nonce, hash, raw transaction, function and business reference, written and forced to disk
+ *   before the transaction is broadcast</li>
+ *   <li>mined : the receipt was read, with its block and status</li>
+ *   <li>rejected : the node refused the transaction, its nonce was not used</li>
+ *   <li>replaced : the nonce was used by another transaction, which never ran this one</li>
+ * </ul>
+ * Only the signed and rejected records are forced : a lost mined record is found again from the receipt,
+ * while a signed record lost after the broadcast would leave a transaction nobody knows of.
+ * A line cut by a crash is skipped when reading. Resolved entries older than TX_JOURNAL_RETENTION_HOURS
+ * are dropped when the journal is opened.
+ * One journal is opened per account and process, shared by all the sessions of the account.
+ */
+final class TransactionJournal implements Closeable {
+    static final String SIGNED = "signed";
+    static final String MINED = "mined";
+    static final String REJECTED = "rejected";
+    static final String REPLACED = "replaced";
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getObjectMapper();
+    //guarded by the class
+    private static final Map<File, TransactionJournal> OPEN = new HashMap<>();
+
+    private final File file;
+    //entries by transaction hash, in signing order. Guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private FileChannel channel;
+    private boolean reconciled;
+
+    private TransactionJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param config TX_JOURNAL_DIR, relative to the start directory, and TX_JOURNAL_RETENTION_HOURS
+     * @param account signing account
+     * @return journal of the account, null when TX_JOURNAL_DIR is not set
+     * @throws IOException when the journal cannot be read or created
+     */
+    static TransactionJournal open(ClientConfig config, AccountAddress account) throws IOException {
+        String directoryName = config.getString("TX_JOURNAL_DIR", "");
+        if (directoryName.isEmpty()) {
+            return null;
+        }
+        File directory = new File(directoryName);
+        if (!directory.isAbsolute() && config.getStartDirectory() != null) {
+            directory = new File(config.getStartDirectory(), directoryName);
+        }
+        long retention = TimeUnit.HOURS.toMillis(config.getLong("TX_JOURNAL_RETENTION_HOURS", 168));
+        return open(new File(directory, account + ".journal"), retention);
+    }
+
+    /**
+     * @param file
+     * @param retentionMillis age after which the resolved entries are dropped
+     * @return journal of the file, the one already open in this process if any
+     * @throws IOException when the journal cannot be read or created
+     */
+    static synchronized TransactionJournal open(File file, long retentionMillis) throws IOException {
+        File key = file.getAbsoluteFile();
+        TransactionJournal journal = OPEN.get(key);
+        if (journal == null) {
+            journal = new TransactionJournal(key);
+            journal.load(retentionMillis);
+            OPEN.put(key, journal);
+        }
+        return journal;
+    }
+
+    /**
+     * reads the file, then rewrites it without the old resolved entries and opens it for appending
+     * @param retentionMillis
+     * @throws IOException
+     */
+    private synchronized void load(long retentionMillis) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        if (file.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    try {
+                        apply(OBJECT_MAPPER.readTree(line));
+                    } catch (IOException ex) {
+                        GenUtil.printLog("Skipped unreadable line " + lineNumber + " of " + file);
+                    }
+                }
+            }
+        }
+        long oldest = System.currentTimeMillis() - retentionMillis;
+        entries.values().removeIf(entry -> entry.isResolved() && entry.signedAt < oldest);
+        File compacted = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Entry entry : entries.values()) {
+                write(out, entry.signedRecord());
+                if (entry.isResolved()) {
+                    write(out, entry.outcomeRecord());
+                }
+            }
+            out.force(true);
+        }
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void apply(JsonNode record) {
+        String type = record.path("type").asText();
+        String hash = record.path("hash").asText();
+        if (SIGNED.equals(type)) {
+            entries.put(hash, new Entry(new BigInteger(record.path("nonce").asText()), hash, record.path("raw").asText(),
+                    record.path("function").asText(null), record.path("reference").asText(null), record.path("time").asLong()));
+        } else if (entries.containsKey(hash)) {
+            entries.get(hash).resolve(type, record.path("detail").asText(null));
+        }
+    }
+
+    /**
+     * records a signed transaction, on disk when the call returns
+     * @param nonce
+     * @param hash
+     * @param raw signed transaction, as broadcast
+     * @param function contract function, may be null
+     * @param reference business reference, may be null
+     * @throws IOException when the record could not be written, the transaction must not be broadcast
+     */
+    synchronized void signed(BigInteger nonce, String hash, String raw, String function, String reference) throws IOException {
+        Entry entry = new Entry(nonce, hash, raw, function, reference, System.currentTimeMillis());
+        write(channel, entry.signedRecord());
+        channel.force(false);
+        entries.put(hash, entry);
+    }
+
+    /**
+     * @param hash
+     * @param blockNumber
+     * @param status status of the receipt
+     * @throws IOException
+     */
+    synchronized void mined(String hash, BigInteger blockNumber, String status) throws IOException {
+        resolve(hash, MINED, "block " + blockNumber + " status " + status, false);
+    }
+
+    /**
+     * @param hash
+     * @param reason error of the node
+     * @throws IOException
+     */
+    synchronized void rejected(String hash, String reason) throws IOException {
+        resolve(hash, REJECTED, reason, true);
+    }
+
+    /**
+     * @param hash
+     * @param reason
+     * @throws IOException
+     */
+    synchronized void replaced(String hash, String reason) throws IOException {
+        resolve(hash, REPLACED, reason, true);
+    }
+
+    private void resolve(String hash, String outcome, String detail, boolean force) throws IOException {
+        Entry entry = entries.get(hash);
+        if (entry == null || entry.isResolved()) {
+            return;
+        }
+        entry.resolve(outcome, detail);
+        write(channel, entry.outcomeRecord());
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    private static void write(FileChannel out, ObjectNode record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((OBJECT_MAPPER.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @return transactions signed with no known outcome, by nonce
+     */
+    synchronized List<Entry> getUnresolved() {
+        List<Entry> unresolved = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isResolved()) {
+                unresolved.add(entry);
+            }
+        }
+        unresolved.sort(Comparator.comparing((Entry entry) -> entry.nonce));
+        return unresolved;
+    }
+
+    /**
+     * @return true the first time only, the journal being reconciled once per process
+     */
+    synchronized boolean startReconciliation() {
+        boolean first = !reconciled;
+        reconciled = true;
+        return first;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (TransactionJournal.class) {
+            OPEN.remove(file);
+        }
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    /**
+     * one signed transaction and its outcome
+     */
+    static final class Entry {
+        final BigInteger nonce;
+        final String hash;
+        final String raw;
+        final String function;
+        final String reference;
+        final long signedAt;
+        private String outcome;
+        private String detail;
+
+        Entry(BigInteger nonce, String hash, String raw, String function, String reference, long signedAt) {
+            this.nonce = nonce;
+            this.hash = hash;
+            this.raw = raw;
+            this.function = function;
+            this.reference = reference;
+            this.signedAt = signedAt;
+        }
+
+        private void resolve(String outcome, String detail) {
+            this.outcome = outcome;
+            this.detail = detail;
+        }
+
+        boolean isResolved() {
+            return outcome != null;
+        }
+
+        /**
+         * @return mined, rejected or replaced, null while unknown
+         */
+        String getOutcome() {
+            return outcome;
+        }
+
+        String getDetail() {
+            return detail;
+        }
+
+        private ObjectNode signedRecord() {
+            ObjectNode record = OBJECT_MAPPER.createObjectNode();
+            record.put("type", SIGNED);
+            record.put("nonce", nonce.toString());
+            record.put("hash", hash);
+            record.put("raw", raw);
+            record.put("function", function);
+            record.put("reference", reference);
+            record.put("time", signedAt);
+            return record;
+        }
+
+        private ObjectNode outcomeRecord() {
+            ObjectNode record = OBJECT_MAPPER.createObjectNode();
+            record.put("type", outcome);
+            record.put("hash", hash);
+            record.put("detail", detail);
+            return record;
+        }
+    }
+}//end of class
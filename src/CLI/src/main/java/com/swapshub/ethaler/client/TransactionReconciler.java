@@ -0,0 +1,139 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Settles the transactions of a {@link TransactionJournal} left without outcome by a previous run, in nonce order :
+ * <ul>
+ *   <li>a transaction with a receipt is marked mined, with its status</li>
+ *   <li>a transaction whose nonce was used by another one (the account nonce on the latest block is above it)
+ *   is marked replaced : it never ran and its operation has to be done again</li>
+ *   <li>any other transaction is broadcast again, as signed, and its receipt is waited for. The node may still
+ *   have it in its pool, which it reports as already known. A transaction the node refuses is looked up again,
+ *   as it may have been mined meanwhile, and marked rejected only when it was neither mined nor replaced</li>
+ * </ul>
+ * A rebroadcast transaction still not mined when the receipt polling gives up stays in the journal for the next run.
+ * A resent transaction keeps its hash and nonce, so it cannot run twice.
+ */
+class TransactionReconciler {
+    private final Web3j web3j;
+    private final AccountAddress account;
+    private final TransactionJournal journal;
+    private final TransactionReceiptProcessor receiptProcessor;
+
+    /**
+     * @param web3j
+     * @param account signing account of the journal
+     * @param journal
+     * @param receiptProcessor waits for the rebroadcast transactions
+     */
+    TransactionReconciler(Web3j web3j, AccountAddress account, TransactionJournal journal,
+                          TransactionReceiptProcessor receiptProcessor) {
+        this.web3j = web3j;
+        this.account = account;
+        this.journal = journal;
+        this.receiptProcessor = receiptProcessor;
+    }
+
+    /**
+     * @return one line per transaction settled or still pending, empty when the journal had none
+     * @throws IOException when the node cannot be reached or the journal cannot be written
+     */
+    List<String> reconcile() throws IOException {
+        List<String> report = new ArrayList<>();
+        List<TransactionJournal.Entry> unresolved = journal.getUnresolved();
+        if (unresolved.isEmpty()) {
+            return report;
+        }
+        BigInteger minedNonce = minedNonce();
+        List<TransactionJournal.Entry> rebroadcast = new ArrayList<>();
+        for (TransactionJournal.Entry entry : unresolved) {
+            EthGetTransactionReceipt receipt = web3j.ethGetTransactionReceipt(entry.hash).send();
+            if (receipt.getTransactionReceipt().isPresent()) {
+                mined(entry, receipt.getTransactionReceipt().get(), report);
+            } else if (entry.nonce.compareTo(minedNonce) < 0) {
+                replaced(entry, report);
+            } else {
+                EthSendTransaction sent = web3j.ethSendRawTransaction(entry.raw).send();
+                if (sent.hasError() && !isKnown(sent.getError().getMessage())) {
+                    refused(entry, sent.getError().getMessage(), report);
+                } else {
+                    rebroadcast.add(entry);
+                }
+            }
+        }
+        for (TransactionJournal.Entry entry : rebroadcast) {
+            try {
+                mined(entry, receiptProcessor.waitForTransactionReceipt(entry.hash), report);
+            } catch (TransactionException ex) {
+                report.add(describe(entry) + " : rebroadcast, still pending : " + ex.getMessage());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * The transaction may have been mined, or its nonce used, since its receipt was looked up, and the node then
+     * refuses it for its nonce like a bad one. The nonce and the receipt are read again, in this order so a
+     * transaction mined in between is not taken as replaced, before the transaction is marked rejected.
+     */
+    private void refused(TransactionJournal.Entry entry, String error, List<String> report) throws IOException {
+        BigInteger minedNonce = minedNonce();
+        Optional<TransactionReceipt> receipt = web3j.ethGetTransactionReceipt(entry.hash).send().getTransactionReceipt();
+        if (receipt.isPresent()) {
+            mined(entry, receipt.get(), report);
+        } else if (entry.nonce.compareTo(minedNonce) < 0) {
+            replaced(entry, report);
+        } else {
+            journal.rejected(entry.hash, error);
+            report.add(describe(entry) + " : not executed, rejected by the node : " + error);
+        }
+    }
+
+    private BigInteger minedNonce() throws IOException {
+        return web3j.ethGetTransactionCount(account.toString(), DefaultBlockParameterName.LATEST).send().getTransactionCount();
+    }
+
+    private void replaced(TransactionJournal.Entry entry, List<String> report) throws IOException {
+        journal.replaced(entry.hash, "nonce used by another transaction");
+        report.add(describe(entry) + " : not executed, its nonce was used by another transaction");
+    }
+
+    private void mined(TransactionJournal.Entry entry, TransactionReceipt receipt, List<String> report) throws IOException {
+        journal.mined(entry.hash, receipt.getBlockNumber(), receipt.getStatus());
+        report.add(describe(entry) + (receipt.isStatusOK() ? " : mined in block " : " : failed in block ")
+                + receipt.getBlockNumber());
+    }
+
+    private static String describe(TransactionJournal.Entry entry) {
+        return entry.reference + " " + entry.function + " nonce " + entry.nonce + " " + entry.hash;
+    }
+
+    /**
+     * @param message error of eth_sendRawTransaction
+     * @return true when the node already has the transaction, which is then not rejected
+     */
+    static boolean isKnown(String message) {
+        return message != null && message.toLowerCase().contains("known");
+    }
+}//end of class
@@ -0,0 +1,259 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lifecycle of one contract transaction as Java Flight Recorder events. Every transaction started by
+ * {@link EThalerService} gets a correlation id, carried by a Transaction event covering the whole call
+ * and by a Transaction Stage event per stage :
+ * <ul>
+ *   <li>encode : ABI encoding in the contract wrapper, until the transaction manager gets the data</li>
+ *   <li>sign : signing of the raw transaction with its nonce</li>
+ *   <li>send : eth_sendRawTransaction until the node answers</li>
+ *   <li>first-seen : node answer until the transaction is returned by eth_getTransactionByHash</li>
+ *   <li>mined : node answer until the receipt is found, with the block number and block timestamp, so
+ *   the receipt polling delay is the end of the stage minus the block timestamp</li>
+ *   <li>receipt-fetched : the eth_getTransactionReceipt request that returned the receipt</li>
+ * </ul>
+ * The stages run on the thread of the transaction, which holds the trace while it runs.
+ * The events cost next to nothing unless a recording is running, e.g. started with
+ * -XX:StartFlightRecording or jcmd &lt;pid&gt; JFR.start; the extra first-seen and block requests are
+ * only made while the stage events are recorded.
+ */
+final class TransactionTrace {
+    static final String ENCODE = "encode";
+    static final String SIGN = "sign";
+    static final String SEND = "send";
+    static final String FIRST_SEEN = "first-seen";
+    static final String MINED = "mined";
+    static final String RECEIPT_FETCHED = "receipt-fetched";
+
+    private static final ThreadLocal<TransactionTrace> CURRENT = new ThreadLocal<>();
+    //business reference of the transactions started by the current thread
+    private static final ThreadLocal<String> CALLER_REFERENCE = new ThreadLocal<>();
+    //distinguishes the ids of processes started at the same time
+    private static final String ID_PREFIX = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000, 0x100000));
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    private final String correlationId;
+    private final String function;
+    private final String reference;
+    private StageEvent encode;
+    private StageEvent send;
+    private String transactionHash;
+
+    private TransactionTrace(String correlationId, String function, String reference) {
+        this.correlationId = correlationId;
+        this.function = function;
+        this.reference = reference;
+    }
+
+    /**
+     * runs the transaction on the current thread with a new correlation id
+     * @param function contract function
+     * @param reference business reference of the transaction, e.g. the script line, null for none
+     * @param transaction encodes, sends and waits for the transaction
+     * @return result of the transaction
+     * @throws Exception failure of the transaction
+     */
+    static <T> T run(String function, String reference, Callable<T> transaction) throws Exception {
+        TransactionTrace trace = new TransactionTrace(ID_PREFIX + "-" + ID_SEQUENCE.incrementAndGet(), function, reference);
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        trace.encode = trace.begin(ENCODE);
+        CURRENT.set(trace);
+        try {
+            T result = transaction.call();
+            event.outcome = "ok";
+            return result;
+        } catch (Exception ex) {
+            event.outcome = ex.getClass().getSimpleName() + " : " + ex.getMessage();
+            throw ex;
+        } finally {
+            CURRENT.remove();
+            event.end();
+            if (event.shouldCommit()) {
+                event.correlationId = trace.correlationId;
+                event.function = trace.function;
+                event.transactionHash = trace.transactionHash;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * starts transactions with a business reference, e.g. the script line they come from
+     * @param reference
+     * @param start starts the transactions, they are given the reference when they run
+     * @return result of start
+     */
+    static <T> T withReference(String reference, Supplier<T> start) {
+        String previous = CALLER_REFERENCE.get();
+        CALLER_REFERENCE.set(reference);
+        try {
+            return start.get();
+        } finally {
+            CALLER_REFERENCE.set(previous);
+        }
+    }
+
+    /**
+     * @return reference of the transactions started by this thread, null when none was given
+     */
+    static String callerReference() {
+        return CALLER_REFERENCE.get();
+    }
+
+    /**
+     * @return trace of the transaction running on this thread, null when the thread is not running
+     * one (deployment, load generator)
+     */
+    static TransactionTrace current() {
+        return CURRENT.get();
+    }
+
+    String getCorrelationId() {
+        return correlationId;
+    }
+
+    String getFunction() {
+        return function;
+    }
+
+    /**
+     * @return business reference given by the caller, the correlation id when none was given
+     */
+    String getReference() {
+        return reference == null ? correlationId : reference;
+    }
+
+    /**
+     * @param stage
+     * @return started event of the stage, to be passed to {@link #end}
+     */
+    StageEvent begin(String stage) {
+        StageEvent event = new StageEvent();
+        event.correlationId = correlationId;
+        event.function = function;
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event started stage, committed when it is recorded
+     */
+    void end(StageEvent event) {
+        event.end();
+        commit(event);
+    }
+
+    /**
+     * @param event ended stage, committed when it is recorded
+     */
+    void commit(StageEvent event) {
+        if (event.shouldCommit()) {
+            event.transactionHash = transactionHash;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return true when the stage events are recorded, to skip the requests only made for them otherwise
+     */
+    boolean isRecorded() {
+        return new StageEvent().isEnabled();
+    }
+
+    /**
+     * the transaction manager got the encoded call
+     */
+    void encoded() {
+        if (encode != null) {
+            end(encode);
+            encode = null;
+        }
+    }
+
+    /**
+     * the raw transaction is signed, sending starts
+     */
+    void signed() {
+        send = begin(SEND);
+    }
+
+    /**
+     * @param transactionHash hash returned by the node, null when the node rejected the transaction
+     * @param error rejection or failure, null when the node accepted the transaction
+     */
+    void sent(String transactionHash, String error) {
+        this.transactionHash = transactionHash;
+        if (send != null) {
+            send.error = error;
+            end(send);
+            send = null;
+        }
+    }
+
+    @Name("com.swapshub.ethaler.Transaction")
+    @Label("Transaction")
+    @Category({"eThaler", "Transactions"})
+    @Description("Contract transaction from encoding until its receipt or failure")
+    @StackTrace(false)
+    static final class TransactionEvent extends Event {
+        @Label("Correlation Id")
+        String correlationId;
+        @Label("Function")
+        String function;
+        @Label("Transaction Hash")
+        String transactionHash;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("com.swapshub.ethaler.TransactionStage")
+    @Label("Transaction Stage")
+    @Category({"eThaler", "Transactions"})
+    @Description("One lifecycle stage of a contract transaction")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        @Label("Correlation Id")
+        String correlationId;
+        @Label("Function")
+        String function;
+        @Label("Stage")
+        String stage;
+        @Label("Transaction Hash")
+        String transactionHash;
+        @Label("Nonce")
+        long nonce = -1;
+        @Label("Polling Attempts")
+        int attempts;
+        @Label("Block Number")
+        long blockNumber = -1;
+        @Label("Block Timestamp")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long blockTimestamp;
+        @Label("Error")
+        String error;
+    }
+}//end of class
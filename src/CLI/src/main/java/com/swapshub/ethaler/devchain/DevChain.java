@@ -0,0 +1,880 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.reactivex.Flowable;
+import org.web3j.crypto.ContractUtils;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process Ethereum node for tests and local runs : a Web3jService answering the JSON-RPC methods the client
+ * uses from memory, so a Web3j built over it works with the contract wrapper, the transaction managers and the
+ * log filters as against Besu, without network or node.
+ * Each transaction is mined at once in its own block, or, without instant mining, waits in the pool for the next
+ * {@link #mineBlock}, which takes the ready transactions in arrival order up to the block gas limit.
+ * {@link #reorg} replaces the latest blocks, as a competing fork does. A contract creation deploys an {@link EThalerModel}, the
+ * Java model of eThaler.sol, whatever the creation code, with the sender as owner : there is no EVM here.
+ * Transactions are decoded and their signature recovered as a node does, nonces and the chain id are checked,
+ * transactions with a future nonce wait for the missing ones, and failed executions are mined with status 0.
+ * eth_call and eth_estimateGas answer a revert with the Besu error, "Execution reverted" with the encoded reason
+ * as data. Gas is metered as described in {@link Execution}, and the gas price is zero.
+ * Requests are served one at a time; the chain is shared by all the threads using it.
+ */
+//the methods of Web3jService take a raw Request, which an implementation cannot parameterize
+@SuppressWarnings("rawtypes")
+public final class DevChain implements Web3jService {
+    public static final long DEFAULT_CHAIN_ID = 2018;
+    public static final long DEFAULT_BLOCK_GAS_LIMIT = 10_000_000L;
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+    private static final String ZERO_HASH = "0x" + repeat('0', 64);
+    private static final String EMPTY_BLOOM = "0x" + repeat('0', 512);
+    private static final int INVALID_PARAMS = -32602;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int SERVER_ERROR = -32000;
+
+    private final ObjectMapper mapper = ObjectMapperFactory.getObjectMapper();
+    //guards the chain, requests come from any number of threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long chainId;
+    private final long blockGasLimit;
+    private final List<Block> blocks = new ArrayList<>();
+    private final boolean instantMining;
+    //next nonce of each account counting the pool, and counting the mined transactions only
+    private final Map<String, BigInteger> nonces = new HashMap<>();
+    private final Map<String, BigInteger> minedNonces = new HashMap<>();
+    private final Map<String, EThalerModel> contracts = new HashMap<>();
+    private final Map<String, String> codes = new HashMap<>();
+    //accepted transactions, mined or in the pool
+    private final Map<String, ChainTransaction> transactions = new HashMap<>();
+    //pool : transactions ready to be mined, in arrival order
+    private final List<ChainTransaction> ready = new ArrayList<>();
+    //transactions waiting for a lower nonce of their sender
+    private final Map<String, TreeMap<BigInteger, ChainTransaction>> queued = new HashMap<>();
+    private final Map<Long, Filter> filters = new HashMap<>();
+    private long nextFilterId = 1;
+    //reorgs so far, part of the block hashes so a replaced block never keeps its hash
+    private int forks;
+
+    /**
+     * chain with the default chain id of the client configuration
+     */
+    public DevChain() {
+        this(DEFAULT_CHAIN_ID, DEFAULT_BLOCK_GAS_LIMIT);
+    }
+
+    /**
+     * @param chainId checked against the EIP-155 signatures
+     * @param blockGasLimit reported by the blocks, the most gas a transaction can use
+     */
+    public DevChain(long chainId, long blockGasLimit) {
+        this(chainId, blockGasLimit, true);
+    }
+
+    /**
+     * @param chainId checked against the EIP-155 signatures
+     * @param blockGasLimit reported by the blocks, the most gas of the transactions of a block
+     * @param instantMining true to mine each transaction in its own block when received, false to keep the
+     *                      transactions in the pool until {@link #mineBlock}
+     */
+    public DevChain(long chainId, long blockGasLimit, boolean instantMining) {
+        this.chainId = chainId;
+        this.blockGasLimit = blockGasLimit;
+        this.instantMining = instantMining;
+        blocks.add(new Block(0, ZERO_HASH, System.currentTimeMillis() / 1000, Collections.emptyList(), 0));
+    }
+
+    public long getChainId() {
+        return chainId;
+    }
+
+    /**
+     * @return number of the last mined block
+     */
+    public long getBlockNumber() {
+        lock.lock();
+        try {
+            return head();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return transactions waiting in the pool, ready or queued behind a missing nonce
+     */
+    public int getPoolSize() {
+        lock.lock();
+        try {
+            int size = ready.size();
+            for (TreeMap<BigInteger, ChainTransaction> waiting : queued.values()) {
+                size += waiting.size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * mines the next block with the ready transactions of the pool, in arrival order, as long as their gas limits
+     * fit in the block gas limit. The block is mined even when the pool is empty, as a Clique or IBFT node does.
+     * @return number of transactions mined
+     */
+    public int mineBlock() {
+        lock.lock();
+        try {
+            List<ChainTransaction> included = new ArrayList<>();
+            long gas = 0;
+            while (!ready.isEmpty() && gas + ready.get(0).transaction.getGasLimit().longValue() <= blockGasLimit) {
+                gas += ready.get(0).transaction.getGasLimit().longValue();
+                included.add(ready.remove(0));
+            }
+            mine(included);
+            return included.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * replaces the latest blocks by a longer fork : an empty block, then the replaced blocks with the same
+     * transactions in the same order, so the state is unchanged but the transactions are one block later,
+     * with new block hashes. The log filters return the logs of the replaced blocks once more, removed,
+     * before the logs of the new blocks.
+     * @param depth blocks replaced, at most the blocks after the genesis block
+     */
+    public void reorg(int depth) {
+        lock.lock();
+        try {
+            long fork = Math.max(0, head() - depth);
+            if (fork == head()) {
+                return;
+            }
+            for (Filter filter : filters.values()) {
+                if (filter.lastBlock > fork && filter.lastBlock != Long.MAX_VALUE) {
+                    if (filter.criteria != null) {
+                        filter.removed.addAll(logsJson(filter.criteria, fork + 1, filter.lastBlock, true));
+                    }
+                    filter.lastBlock = fork;
+                }
+            }
+            List<Block> replaced = new ArrayList<>(blocks.subList((int) fork + 1, blocks.size()));
+            blocks.subList((int) fork + 1, blocks.size()).clear();
+            forks++;
+            append(Collections.emptyList());
+            for (Block block : replaced) {
+                append(block.transactions);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        JsonNode params = mapper.valueToTree(request.getParams());
+        lock.lock();
+        try {
+            return response(request, responseType, mapper.valueToTree(dispatch(request.getMethod(), params)), null);
+        } catch (RpcError ex) {
+            return response(request, responseType, null, ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param request
+     * @param responseType
+     * @param code JSON-RPC error code
+     * @param message
+     * @return error answer to the request, without running it
+     * @throws IOException
+     */
+    <T extends Response> T error(Request request, Class<T> responseType, int code, String message) throws IOException {
+        return response(request, responseType, null, new RpcError(code, message, null));
+    }
+
+    private <T extends Response> T response(Request request, Class<T> responseType, JsonNode result, RpcError rpcError)
+            throws IOException {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", request.getId());
+        if (rpcError == null) {
+            response.set("result", result);
+        } else {
+            ObjectNode error = response.putObject("error");
+            error.put("code", rpcError.code);
+            error.put("message", rpcError.getMessage());
+            if (rpcError.data != null) {
+                error.put("data", rpcError.data);
+            }
+        }
+        return mapper.treeToValue(response, responseType);
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(send(request, responseType));
+        } catch (IOException | RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        throw new UnsupportedOperationException("Pub/Sub methods are not supported by the dev chain, use the polling filters");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Object dispatch(String method, JsonNode params) throws RpcError {
+        switch (method) {
+            case "web3_clientVersion":
+                return "EThalerDevChain/v1.0";
+            case "net_version":
+                return String.valueOf(chainId);
+            case "net_listening":
+            case "eth_mining":
+                return true;
+            case "eth_syncing":
+                return false;
+            case "net_peerCount":
+            case "eth_gasPrice":
+            case "eth_getBalance":
+                return "0x0";
+            case "eth_chainId":
+                return quantity(chainId);
+            case "eth_accounts":
+                return Collections.emptyList();
+            case "eth_blockNumber":
+                return quantity(head());
+            case "eth_getBlockByNumber": {
+                long number = blockNumber(params.path(0));
+                return number > head() ? null : blocks.get((int) number).toJson(params.path(1).asBoolean(), blockGasLimit);
+            }
+            case "eth_getBlockByHash":
+                for (Block block : blocks) {
+                    if (block.hash.equals(params.path(0).asText())) {
+                        return block.toJson(params.path(1).asBoolean(), blockGasLimit);
+                    }
+                }
+                return null;
+            case "eth_getCode":
+                return codes.getOrDefault(address(params.path(0)), "0x");
+            case "eth_getTransactionCount": {
+                String account = address(params.path(0));
+                return Numeric.encodeQuantity("pending".equals(params.path(1).asText())
+                        ? nonce(account) : minedNonces.getOrDefault(account, BigInteger.ZERO));
+            }
+            case "eth_sendRawTransaction":
+                return sendRawTransaction(params.path(0).asText());
+            case "eth_getTransactionByHash": {
+                ChainTransaction transaction = transactions.get(params.path(0).asText().toLowerCase());
+                return transaction == null ? null : transaction.toJson();
+            }
+            case "eth_getTransactionReceipt": {
+                ChainTransaction transaction = transactions.get(params.path(0).asText().toLowerCase());
+                return transaction == null || transaction.block == null ? null : transaction.receiptJson();
+            }
+            case "eth_call":
+                return call(params.path(0));
+            case "eth_estimateGas":
+                return quantity(estimateGas(params.path(0)));
+            case "eth_getLogs":
+                return logsJson(LogCriteria.of(params.path(0), this), 0, head(), false);
+            case "eth_newFilter":
+                return install(new Filter(LogCriteria.of(params.path(0), this), head()));
+            case "eth_newBlockFilter":
+                return install(new Filter(null, head()));
+            case "eth_newPendingTransactionFilter":
+                //the pool is not reported
+                return install(new Filter(null, Long.MAX_VALUE));
+            case "eth_getFilterChanges":
+                return filterChanges(filter(params.path(0)));
+            case "eth_getFilterLogs": {
+                Filter filter = filter(params.path(0));
+                return filter.criteria == null ? Collections.emptyList() : logsJson(filter.criteria, 0, head(), false);
+            }
+            case "eth_uninstallFilter":
+                return filters.remove(filterId(params.path(0))) != null;
+            default:
+                throw new RpcError(METHOD_NOT_FOUND, "Method not found", null);
+        }
+    }
+
+    /* transactions */
+
+    private String sendRawTransaction(String hex) throws RpcError {
+        SignedRawTransaction transaction;
+        String from;
+        try {
+            RawTransaction decoded = TransactionDecoder.decode(hex);
+            if (!(decoded instanceof SignedRawTransaction)) {
+                throw new RpcError(INVALID_PARAMS, "Invalid params", null);
+            }
+            transaction = (SignedRawTransaction) decoded;
+            from = transaction.getFrom().toLowerCase();
+        } catch (SignatureException | RuntimeException ex) {
+            throw new RpcError(INVALID_PARAMS, "Invalid params", null);
+        }
+        Long signedChainId = transaction.getChainId();
+        if (signedChainId != null && signedChainId != chainId) {
+            throw new RpcError(SERVER_ERROR, "Wrong chain id", null);
+        }
+        String hash = Hash.sha3(hex.toLowerCase());
+        TreeMap<BigInteger, ChainTransaction> waiting = queued.computeIfAbsent(from, account -> new TreeMap<>());
+        ChainTransaction known = transactions.get(hash);
+        //once mined, a transaction sent again is refused for its nonce, as Besu does
+        if ((known != null && known.block == null) || waiting.containsKey(transaction.getNonce())) {
+            throw new RpcError(SERVER_ERROR, "Known transaction", null);
+        }
+        BigInteger gasLimit = transaction.getGasLimit();
+        byte[] data = Numeric.hexStringToByteArray(transaction.getData());
+        if (gasLimit.compareTo(BigInteger.valueOf(blockGasLimit)) > 0) {
+            throw new RpcError(SERVER_ERROR, "Exceeds block gas limit", null);
+        }
+        long intrinsic = Execution.TX_GAS + Execution.calldataGas(data) + (isCreation(transaction) ? Execution.CREATE_GAS - Execution.TX_GAS : 0);
+        if (gasLimit.compareTo(BigInteger.valueOf(intrinsic)) < 0) {
+            throw new RpcError(SERVER_ERROR, "Intrinsic gas exceeds gas limit", null);
+        }
+        if (transaction.getNonce().compareTo(minedNonces.getOrDefault(from, BigInteger.ZERO)) < 0) {
+            throw new RpcError(SERVER_ERROR, "Nonce too low", null);
+        }
+        if (transaction.getNonce().compareTo(nonce(from)) < 0) {
+            //same nonce as a transaction of the pool, with the same zero gas price
+            throw new RpcError(SERVER_ERROR, "Replacement transaction underpriced", null);
+        }
+        waiting.put(transaction.getNonce(), new ChainTransaction(hash, from, transaction, data));
+        ChainTransaction next;
+        while ((next = waiting.remove(nonce(from))) != null) {
+            nonces.put(from, next.transaction.getNonce().add(BigInteger.ONE));
+            transactions.put(next.hash, next);
+            if (instantMining) {
+                mine(Collections.singletonList(next));
+            } else {
+                ready.add(next);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * executes the transactions in order and appends their block
+     * @param included transactions of the block
+     */
+    private void mine(List<ChainTransaction> included) {
+        for (ChainTransaction transaction : included) {
+            execute(transaction);
+            minedNonces.put(transaction.from, transaction.transaction.getNonce().add(BigInteger.ONE));
+        }
+        append(included);
+    }
+
+    /**
+     * @param included transactions already executed
+     */
+    private void append(List<ChainTransaction> included) {
+        Block parent = blocks.get(blocks.size() - 1);
+        long timestamp = Math.max(parent.timestamp, System.currentTimeMillis() / 1000);
+        Block block = new Block(blocks.size(), parent.hash, timestamp, included, forks);
+        long cumulativeGasUsed = 0;
+        int logIndex = 0;
+        for (int i = 0; i < included.size(); i++) {
+            ChainTransaction transaction = included.get(i);
+            transaction.block = block;
+            transaction.index = i;
+            cumulativeGasUsed += transaction.gasUsed;
+            transaction.cumulativeGasUsed = cumulativeGasUsed;
+            for (ChainLog log : transaction.logs) {
+                log.logIndex = logIndex++;
+            }
+        }
+        blocks.add(block);
+    }
+
+    /**
+     * runs the transaction on the contract it calls, or deploys a contract, and keeps the outcome for its receipt
+     * @param pending
+     */
+    private void execute(ChainTransaction pending) {
+        SignedRawTransaction transaction = pending.transaction;
+        long gasLimit = transaction.getGasLimit().longValue();
+        Execution execution = null;
+        try {
+            if (isCreation(transaction)) {
+                String address = ContractUtils.generateContractAddress(pending.from, transaction.getNonce()).toLowerCase();
+                EThalerModel model = new EThalerModel(address);
+                execution = model.begin(pending.from, gasLimit, pending.data);
+                model.construct(execution);
+                contracts.put(address, model);
+                codes.put(address, transaction.getData());
+                pending.contractAddress = address;
+            } else {
+                EThalerModel model = contracts.get(transaction.getTo().toLowerCase());
+                if (model == null) {
+                    //no balances are kept, the gas price being zero
+                    pending.gasUsed = Execution.TX_GAS + Execution.calldataGas(pending.data);
+                } else {
+                    execution = model.begin(pending.from, gasLimit, pending.data);
+                    model.call(execution, pending.data);
+                }
+            }
+            if (execution != null) {
+                execution.commit();
+                pending.gasUsed = execution.gasUsed();
+            }
+            pending.success = true;
+        } catch (Revert ex) {
+            pending.gasUsed = execution == null ? gasLimit : execution.gasUsed();
+            pending.revertReason = ex.isOutOfGas() ? null : ex.encodedReason();
+        }
+        if (pending.success && execution != null) {
+            String address = pending.contractAddress != null ? pending.contractAddress : transaction.getTo().toLowerCase();
+            for (Execution.LogEntry entry : execution.logs()) {
+                pending.logs.add(new ChainLog(address, entry, pending));
+            }
+        }
+    }
+
+    private static boolean isCreation(RawTransaction transaction) {
+        String to = transaction.getTo();
+        return to == null || to.isEmpty() || "0x".equals(to);
+    }
+
+    /**
+     * runs a call, or a creation when it has no recipient, on the latest state without keeping its changes
+     * @param call transaction object of eth_call or eth_estimateGas
+     * @param output receives the encoded result of a call
+     * @return the execution, successful
+     * @throws RpcError when the execution reverts
+     */
+    private Execution execute(JsonNode call, String[] output) throws RpcError {
+        String from = call.hasNonNull("from") ? call.get("from").asText().toLowerCase() : ZERO_ADDRESS;
+        String to = call.hasNonNull("to") ? call.get("to").asText().toLowerCase() : null;
+        String input = call.hasNonNull("data") ? call.get("data").asText() : call.path("input").asText("0x");
+        long gasLimit = call.hasNonNull("gas") ? Numeric.decodeQuantity(call.get("gas").asText()).longValue() : blockGasLimit;
+        byte[] data = Numeric.hexStringToByteArray(input);
+        Execution execution;
+        try {
+            if (to == null || to.isEmpty()) {
+                EThalerModel model = new EThalerModel(ZERO_ADDRESS);
+                execution = model.begin(from, gasLimit, data);
+                model.construct(execution);
+                return execution;
+            }
+            EThalerModel model = contracts.get(to);
+            if (model == null) {
+                return new Execution(new HashMap<>(), from, gasLimit, data);
+            }
+            execution = model.begin(from, gasLimit, data);
+            output[0] = model.call(execution, data);
+            return execution;
+        } catch (Revert ex) {
+            if (ex.isOutOfGas()) {
+                throw new RpcError(SERVER_ERROR, "Out of gas", null);
+            }
+            throw new RpcError(SERVER_ERROR, "Execution reverted", ex.encodedReason());
+        }
+    }
+
+    private String call(JsonNode call) throws RpcError {
+        String[] output = {"0x"};
+        execute(call, output);
+        return output[0];
+    }
+
+    private long estimateGas(JsonNode call) throws RpcError {
+        return execute(call, new String[1]).gasUsed();
+    }
+
+    private BigInteger nonce(String account) {
+        return nonces.getOrDefault(account, BigInteger.ZERO);
+    }
+
+    /* logs and filters */
+
+    private long head() {
+        return blocks.size() - 1;
+    }
+
+    long blockNumber(JsonNode param) throws RpcError {
+        String value = param.asText("latest");
+        switch (value) {
+            case "":
+            case "latest":
+            case "pending":
+                return head();
+            case "earliest":
+                return 0;
+            default:
+                try {
+                    return Numeric.decodeQuantity(value).longValue();
+                } catch (RuntimeException ex) {
+                    throw new RpcError(INVALID_PARAMS, "Invalid params", null);
+                }
+        }
+    }
+
+    /**
+     * @param criteria
+     * @param first first block to look at, within the range of the criteria
+     * @param last last block to look at, within the range of the criteria
+     * @param removed true for the logs of blocks being replaced by a reorg
+     * @return matching logs, in chain order
+     */
+    private List<Map<String, Object>> logsJson(LogCriteria criteria, long first, long last, boolean removed) {
+        List<Map<String, Object>> logs = new ArrayList<>();
+        long from = Math.max(criteria.fromBlock, first);
+        long to = Math.min(criteria.toBlock < 0 ? head() : criteria.toBlock, Math.min(last, head()));
+        for (long number = from; number <= to; number++) {
+            for (ChainTransaction transaction : blocks.get((int) number).transactions) {
+                for (ChainLog log : transaction.logs) {
+                    if (criteria.matches(log)) {
+                        logs.add(log.toJson(removed));
+                    }
+                }
+            }
+        }
+        return logs;
+    }
+
+    private String install(Filter filter) {
+        long id = nextFilterId++;
+        filters.put(id, filter);
+        return quantity(id);
+    }
+
+    private Filter filter(JsonNode id) throws RpcError {
+        Filter filter = filters.get(filterId(id));
+        if (filter == null) {
+            throw new RpcError(SERVER_ERROR, "Filter not found", null);
+        }
+        return filter;
+    }
+
+    /**
+     * @param id filter id, which clients may send with leading zeros
+     * @return the id as installed
+     */
+    private static long filterId(JsonNode id) {
+        return Numeric.toBigInt(id.asText()).longValue();
+    }
+
+    private List<?> filterChanges(Filter filter) {
+        long last = filter.lastBlock;
+        if (last >= head()) {
+            return Collections.emptyList();
+        }
+        filter.lastBlock = head();
+        if (filter.criteria != null) {
+            List<Map<String, Object>> logs = new ArrayList<>(filter.removed);
+            filter.removed.clear();
+            logs.addAll(logsJson(filter.criteria, last + 1, head(), false));
+            return logs;
+        }
+        List<String> hashes = new ArrayList<>();
+        for (long number = last + 1; number <= head(); number++) {
+            hashes.add(blocks.get((int) number).hash);
+        }
+        return hashes;
+    }
+
+    private static String address(JsonNode param) {
+        return param.asText().toLowerCase();
+    }
+
+    private static String quantity(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * JSON-RPC error answered to the request
+     */
+    private static final class RpcError extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int code;
+        private final String data;
+
+        RpcError(int code, String message, String data) {
+            super(message, null, false, false);
+            this.code = code;
+            this.data = data;
+        }
+    }
+
+    /**
+     * accepted transaction, in the pool until its block is set, with its receipt once mined
+     */
+    private static final class ChainTransaction {
+        final String hash;
+        final String from;
+        final SignedRawTransaction transaction;
+        final byte[] data;
+        final List<ChainLog> logs = new ArrayList<>();
+        Block block;
+        int index;
+        long cumulativeGasUsed;
+        String contractAddress;
+        long gasUsed;
+        boolean success;
+        //encoded Error(string) of a revert, in the receipt as Besu does with --revert-reason-enabled
+        String revertReason;
+
+        ChainTransaction(String hash, String from, SignedRawTransaction transaction, byte[] data) {
+            this.hash = hash;
+            this.from = from;
+            this.transaction = transaction;
+            this.data = data;
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("hash", hash);
+            json.put("nonce", Numeric.encodeQuantity(transaction.getNonce()));
+            json.put("blockHash", block == null ? null : block.hash);
+            json.put("blockNumber", block == null ? null : quantity(block.number));
+            json.put("transactionIndex", block == null ? null : quantity(index));
+            json.put("from", from);
+            json.put("to", isCreation(transaction) ? null : transaction.getTo().toLowerCase());
+            json.put("value", Numeric.encodeQuantity(transaction.getValue()));
+            json.put("gasPrice", Numeric.encodeQuantity(transaction.getGasPrice()));
+            json.put("gas", Numeric.encodeQuantity(transaction.getGasLimit()));
+            json.put("input", Numeric.prependHexPrefix(transaction.getData()));
+            json.put("r", Numeric.toHexString(transaction.getSignatureData().getR()));
+            json.put("s", Numeric.toHexString(transaction.getSignatureData().getS()));
+            json.put("v", Numeric.toHexStringWithPrefix(Numeric.toBigInt(transaction.getSignatureData().getV())));
+            return json;
+        }
+
+        Map<String, Object> receiptJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("transactionHash", hash);
+            json.put("transactionIndex", quantity(index));
+            json.put("blockHash", block.hash);
+            json.put("blockNumber", quantity(block.number));
+            json.put("from", from);
+            json.put("to", isCreation(transaction) ? null : transaction.getTo().toLowerCase());
+            json.put("cumulativeGasUsed", quantity(cumulativeGasUsed));
+            json.put("gasUsed", quantity(gasUsed));
+            json.put("contractAddress", success ? contractAddress : null);
+            List<Map<String, Object>> logsJson = new ArrayList<>();
+            for (ChainLog log : logs) {
+                logsJson.add(log.toJson(false));
+            }
+            json.put("logs", logsJson);
+            json.put("logsBloom", EMPTY_BLOOM);
+            json.put("status", success ? "0x1" : "0x0");
+            if (revertReason != null) {
+                json.put("revertReason", revertReason);
+            }
+            return json;
+        }
+    }
+
+    /**
+     * log of a mined transaction, positioned by the block of its transaction
+     */
+    private static final class ChainLog {
+        final String address;
+        final List<String> topics;
+        final String data;
+        final ChainTransaction transaction;
+        //index in the block
+        int logIndex;
+
+        ChainLog(String address, Execution.LogEntry entry, ChainTransaction transaction) {
+            this.address = address;
+            this.topics = entry.topics;
+            this.data = entry.data;
+            this.transaction = transaction;
+        }
+
+        /**
+         * @param removed true when the block of the log is replaced by a reorg
+         * @return log as answered by eth_getLogs and the log filters
+         */
+        Map<String, Object> toJson(boolean removed) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("removed", removed);
+            json.put("logIndex", quantity(logIndex));
+            json.put("transactionIndex", quantity(transaction.index));
+            json.put("transactionHash", transaction.hash);
+            json.put("blockHash", transaction.block.hash);
+            json.put("blockNumber", quantity(transaction.block.number));
+            json.put("address", address);
+            json.put("data", data);
+            json.put("topics", topics);
+            return json;
+        }
+    }
+
+    private static final class Block {
+        final long number;
+        final String hash;
+        final String parentHash;
+        final long timestamp;
+        final List<ChainTransaction> transactions;
+
+        /**
+         * @param number
+         * @param parentHash
+         * @param timestamp
+         * @param transactions
+         * @param fork reorgs of the chain so far
+         */
+        Block(long number, String parentHash, long timestamp, List<ChainTransaction> transactions, int fork) {
+            this.number = number;
+            this.parentHash = parentHash;
+            this.timestamp = timestamp;
+            this.transactions = transactions;
+            StringBuilder content = new StringBuilder(parentHash).append(':').append(number).append(':').append(fork);
+            for (ChainTransaction transaction : transactions) {
+                content.append(':').append(transaction.hash);
+            }
+            this.hash = Hash.sha3String(content.toString());
+        }
+
+        Map<String, Object> toJson(boolean fullTransactions, long gasLimit) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("number", quantity(number));
+            json.put("hash", hash);
+            json.put("parentHash", parentHash);
+            json.put("nonce", "0x0000000000000000");
+            json.put("sha3Uncles", ZERO_HASH);
+            json.put("logsBloom", EMPTY_BLOOM);
+            json.put("transactionsRoot", ZERO_HASH);
+            json.put("stateRoot", ZERO_HASH);
+            json.put("receiptsRoot", ZERO_HASH);
+            json.put("miner", ZERO_ADDRESS);
+            json.put("difficulty", "0x0");
+            json.put("totalDifficulty", "0x0");
+            json.put("extraData", "0x");
+            json.put("size", "0x0");
+            json.put("gasLimit", quantity(gasLimit));
+            json.put("gasUsed", quantity(transactions.isEmpty() ? 0 : transactions.get(transactions.size() - 1).cumulativeGasUsed));
+            json.put("timestamp", quantity(timestamp));
+            List<Object> transactionsJson = new ArrayList<>();
+            for (ChainTransaction transaction : transactions) {
+                transactionsJson.add(fullTransactions ? transaction.toJson() : transaction.hash);
+            }
+            json.put("transactions", transactionsJson);
+            json.put("uncles", Collections.emptyList());
+            return json;
+        }
+    }
+
+    /**
+     * installed filter, of logs when it has criteria, otherwise of blocks
+     */
+    private static final class Filter {
+        final LogCriteria criteria;
+        //last block returned by eth_getFilterChanges
+        long lastBlock;
+        //logs of the blocks replaced by a reorg since the last eth_getFilterChanges
+        final List<Map<String, Object>> removed = new ArrayList<>();
+
+        Filter(LogCriteria criteria, long lastBlock) {
+            this.criteria = criteria;
+            this.lastBlock = lastBlock;
+        }
+    }
+
+    /**
+     * block range, addresses and topics of eth_getLogs and eth_newFilter
+     */
+    private static final class LogCriteria {
+        long fromBlock;
+        //-1 for the latest block at the time of the request
+        long toBlock;
+        final Set<String> addresses = new HashSet<>();
+        //one set of accepted values per topic position, null for any value
+        final List<Set<String>> topics = new ArrayList<>();
+
+        static LogCriteria of(JsonNode filter, DevChain chain) throws RpcError {
+            LogCriteria criteria = new LogCriteria();
+            criteria.fromBlock = chain.blockNumber(filter.path("fromBlock"));
+            String toBlock = filter.path("toBlock").asText("latest");
+            criteria.toBlock = "latest".equals(toBlock) || "pending".equals(toBlock) || toBlock.isEmpty()
+                    ? -1 : chain.blockNumber(filter.path("toBlock"));
+            JsonNode address = filter.path("address");
+            if (address.isArray()) {
+                address.forEach(value -> criteria.addresses.add(value.asText().toLowerCase()));
+            } else if (address.isTextual()) {
+                criteria.addresses.add(address.asText().toLowerCase());
+            }
+            for (JsonNode topic : filter.path("topics")) {
+                if (topic.isNull()) {
+                    criteria.topics.add(null);
+                } else {
+                    Set<String> values = new HashSet<>();
+                    if (topic.isArray()) {
+                        topic.forEach(value -> values.add(value.asText().toLowerCase()));
+                    } else {
+                        values.add(topic.asText().toLowerCase());
+                    }
+                    criteria.topics.add(values);
+                }
+            }
+            return criteria;
+        }
+
+        boolean matches(ChainLog log) {
+            if (!addresses.isEmpty() && !addresses.contains(log.address)) {
+                return false;
+            }
+            for (int i = 0; i < topics.size(); i++) {
+                Set<String> values = topics.get(i);
+                if (values != null && (log.topics.size() <= i || !values.contains(log.topics.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}//end of class
@@ -0,0 +1,632 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.Utils;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Bytes4;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint8;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Java model of src/contracts/eThaler.sol and of the ERC1155 functions it inherits, executed by {@link DevChain}
+ * in place of the EVM. Every external function of the contract is decoded from its call data, checks the same
+ * requires with the same messages, changes the same state and emits the same events, so the client cannot
+ * tell it from the deployed contract.
+ * It is the source of truth for the client tests only : eThaler.sol is the contract, and a change to it must be
+ * made here as well. EThalerModelParityTest checks the functions and events of the model against the contract
+ * source and its compiled ABI.
+ * The functions see the storage through an {@link Execution}, which meters the gas and keeps the writes
+ * until the execution succeeds.
+ */
+final class EThalerModel {
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+    private static final Event TRANSFER_SINGLE = new Event("TransferSingle(address,address,address,uint256,uint256)", 3);
+    private static final Event TRANSFER_BATCH = new Event("TransferBatch(address,address,address,uint256[],uint256[])", 3);
+    private static final Event APPROVAL_FOR_ALL = new Event("ApprovalForAll(address,address,bool)", 2);
+    private static final Event TOKEN_DEFINED = new Event("TokenDefined(uint256,string,string)", 1);
+    private static final Event REGISTERED_DEALER = new Event("RegisteredDealer(address,uint256)", 2);
+    private static final Event UNREGISTERED_DEALER = new Event("UnregisteredDealer(address,uint256)", 2);
+    private static final Event TOKEN_PAUSED = new Event("TokenPaused(uint256)", 1);
+    private static final Event TOKEN_RESUMED = new Event("TokenResumed(uint256)", 1);
+    private static final List<Event> EVENTS = Arrays.asList(TRANSFER_SINGLE, TRANSFER_BATCH, APPROVAL_FOR_ALL, TOKEN_DEFINED,
+            REGISTERED_DEALER, UNREGISTERED_DEALER, TOKEN_PAUSED, TOKEN_RESUMED);
+    //ERC165 and ERC1155 interface ids registered by the ERC1155 constructor
+    private static final List<String> INTERFACES = Arrays.asList("0x01ffc9a7", "0xd9b67a26");
+    private static final BigInteger MAX_TOKEN_PAGE = BigInteger.valueOf(100);
+
+    private static final TypeReference<Uint256> UINT256 = new TypeReference<Uint256>() {};
+    private static final TypeReference<Uint8> UINT8 = new TypeReference<Uint8>() {};
+    private static final TypeReference<Address> ADDRESS = new TypeReference<Address>() {};
+    private static final TypeReference<Bool> BOOL = new TypeReference<Bool>() {};
+    private static final TypeReference<Utf8String> STRING = new TypeReference<Utf8String>() {};
+    private static final TypeReference<DynamicBytes> BYTES = new TypeReference<DynamicBytes>() {};
+    private static final TypeReference<Bytes4> BYTES4 = new TypeReference<Bytes4>() {};
+    private static final TypeReference<DynamicArray<Address>> ADDRESS_ARRAY = new TypeReference<DynamicArray<Address>>() {};
+    private static final TypeReference<DynamicArray<Uint256>> UINT256_ARRAY = new TypeReference<DynamicArray<Uint256>>() {};
+
+    private final String address;
+    private final Map<String, Object> storage = new HashMap<>();
+    private final Map<String, Function> functions = new HashMap<>();
+
+    /**
+     * @param address contract address, lower case
+     */
+    EThalerModel(String address) {
+        this.address = address;
+        define("owner()", this::owner);
+        define("isOwner()", this::isOwner);
+        define("supportsInterface(bytes4)", this::supportsInterface, BYTES4);
+        define("getAllTokenIds()", this::getAllTokenIds);
+        define("getTokenDefinitions(uint256,uint256)", this::getTokenDefinitions, UINT256, UINT256);
+        define("getTokenBalances(uint256,uint256)", this::getTokenBalances, UINT256, UINT256);
+        define("addNewTokenDefinition(uint256,string,uint8,string)", this::addNewTokenDefinition, UINT256, STRING, UINT8, STRING);
+        define("mint(uint256,uint256,bytes)", this::mint, UINT256, UINT256, BYTES);
+        define("burn(uint256,uint256)", this::burn, UINT256, UINT256);
+        define("getDecimals(uint256)", this::getDecimals, UINT256);
+        define("getTokenName(uint256)", this::getTokenName, UINT256);
+        define("getTTF_URL(uint256)", this::getTtfUrl, UINT256);
+        define("isPaused(uint256)", this::isPaused, UINT256);
+        define("pause(uint256)", this::pause, UINT256);
+        define("resume(uint256)", this::resume, UINT256);
+        define("isDealerRegistered(address,uint256)", this::isDealerRegistered, ADDRESS, UINT256);
+        define("registerDealer(address,uint256)", this::registerDealer, ADDRESS, UINT256);
+        define("registerDealers(address[],uint256[])", this::registerDealers, ADDRESS_ARRAY, UINT256_ARRAY);
+        define("unregisterDealer(address,uint256)", this::unregisterDealer, ADDRESS, UINT256);
+        define("transfer(address,uint256,uint256)", this::transfer, ADDRESS, UINT256, UINT256);
+        define("balanceOf(address,uint256)", this::balanceOfAccount, ADDRESS, UINT256);
+        define("balanceOf(uint256)", this::balanceOf, UINT256);
+        define("balanceOfBatch(address[],uint256[])", this::balanceOfBatch, ADDRESS_ARRAY, UINT256_ARRAY);
+        define("setApprovalForAll(address,bool)", this::setApprovalForAll, ADDRESS, BOOL);
+        define("isApprovedForAll(address,address)", this::isApprovedForAll, ADDRESS, ADDRESS);
+        define("safeTransferFrom(address,address,uint256,uint256,bytes)", this::safeTransferFrom, ADDRESS, ADDRESS, UINT256, UINT256, BYTES);
+        define("safeBatchTransferFrom(address,address,uint256[],uint256[],bytes)", this::safeBatchTransferFrom,
+                ADDRESS, ADDRESS, UINT256_ARRAY, UINT256_ARRAY, BYTES);
+    }
+
+    private void define(String signature, Handler handler, TypeReference<?>... inputs) {
+        String selector = Hash.sha3String(signature).substring(0, 10);
+        functions.put(selector, new Function(signature, handler, Arrays.asList(inputs)));
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return signature of every function the model runs, e.g. "balanceOf(address,uint256)"
+     */
+    Set<String> getFunctionSignatures() {
+        Set<String> signatures = new TreeSet<>();
+        for (Function function : functions.values()) {
+            signatures.add(function.signature);
+        }
+        return signatures;
+    }
+
+    /**
+     * @return number of indexed parameters by signature, for every event the model emits
+     */
+    static Map<String, Integer> getEvents() {
+        Map<String, Integer> events = new TreeMap<>();
+        for (Event event : EVENTS) {
+            events.put(event.signature, event.indexed);
+        }
+        return events;
+    }
+
+    /**
+     * @param sender msg.sender, lower case
+     * @param gasLimit
+     * @param data call data or creation code, for the intrinsic gas
+     * @return execution over the storage of the contract
+     */
+    Execution begin(String sender, long gasLimit, byte[] data) {
+        return new Execution(storage, sender, gasLimit, data);
+    }
+
+    /**
+     * constructor of the contract, the sender of the creation becomes the owner
+     * @param execution
+     */
+    void construct(Execution execution) {
+        execution.charge(Execution.CREATE_GAS - Execution.TX_GAS);
+        for (String interfaceId : INTERFACES) {
+            execution.store("interface:" + interfaceId, Boolean.TRUE);
+        }
+        execution.store("owner", execution.sender());
+    }
+
+    /**
+     * runs the function selected by the call data
+     * @param execution
+     * @param data call data
+     * @return ABI encoded result, 0x prefixed
+     * @throws Revert when a require fails, the gas runs out or no function has the selector (no fallback)
+     */
+    String call(Execution execution, byte[] data) {
+        String hex = Numeric.toHexString(data);
+        Function function = hex.length() < 10 ? null : functions.get(hex.substring(0, 10));
+        if (function == null) {
+            throw Revert.of(null);
+        }
+        List<Type<?>> args = new ArrayList<>();
+        try {
+            for (Object arg : FunctionReturnDecoder.decode(hex.substring(10), Utils.convert(function.inputs))) {
+                args.add((Type<?>) arg);
+            }
+        } catch (RuntimeException ex) {
+            throw Revert.of(null);
+        }
+        if (args.size() != function.inputs.size()) {
+            throw Revert.of(null);
+        }
+        List<Type<?>> result = function.handler.call(execution, args);
+        //the encoder of web3j 4.5 takes a list of the raw Type
+        return "0x" + FunctionEncoder.encodeConstructor(new ArrayList<>(result));
+    }
+
+    /* ERC1155 */
+
+    private List<Type<?>> balanceOfBatch(Execution ex, List<Type<?>> args) {
+        List<Address> accounts = array(args.get(0));
+        List<Uint256> ids = array(args.get(1));
+        require(accounts.size() == ids.size(), "ERC1155: accounts and IDs must have same lengths");
+        List<Uint256> balances = new ArrayList<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            String account = accounts.get(i).getValue();
+            require(!ZERO_ADDRESS.equals(account), "ERC1155: some address in batch balance query is zero");
+            balances.add(new Uint256(ex.loadUint(balanceKey(ids.get(i).getValue(), account))));
+        }
+        return result(new DynamicArray<>(Uint256.class, balances));
+    }
+
+    private List<Type<?>> setApprovalForAll(Execution ex, List<Type<?>> args) {
+        setApprovalForAll(ex, ex.sender(), address(args.get(0)), ((Bool) args.get(1)).getValue());
+        return result();
+    }
+
+    private void setApprovalForAll(Execution ex, String sender, String operator, boolean approved) {
+        require(!sender.equals(operator), "ERC1155: cannot set approval status for self");
+        ex.store(approvalKey(sender, operator), approved);
+        emit(ex, APPROVAL_FOR_ALL, Arrays.asList(addressTopic(sender), addressTopic(operator)), new Bool(approved));
+    }
+
+    private List<Type<?>> isApprovedForAll(Execution ex, List<Type<?>> args) {
+        return result(new Bool(ex.loadBool(approvalKey(address(args.get(0)), address(args.get(1))))));
+    }
+
+    private List<Type<?>> safeTransferFrom(Execution ex, List<Type<?>> args) {
+        safeTransferFrom(ex, ex.sender(), address(args.get(0)), address(args.get(1)), uint(args.get(2)), uint(args.get(3)));
+        return result();
+    }
+
+    /**
+     * ERC1155 safeTransferFrom as modified in the node_modules copy : the operator (msg.sender) must be approved
+     * by the from account in reverse, isApprovedForAll(operator, from), which registerDealer sets up.
+     */
+    private void safeTransferFrom(Execution ex, String operator, String from, String to, BigInteger id, BigInteger value) {
+        require(!ZERO_ADDRESS.equals(to), "ERC1155: target address must be non-zero");
+        require(from.equals(operator) || ex.loadBool(approvalKey(operator, from)),
+                "ERC1155: need operator approval for 3rd party transfers");
+        move(ex, from, to, id, value, "ERC1155: insufficient balance for transfer");
+        emit(ex, TRANSFER_SINGLE, Arrays.asList(addressTopic(operator), addressTopic(from), addressTopic(to)),
+                new Uint256(id), new Uint256(value));
+        acceptanceCheck(to);
+    }
+
+    private List<Type<?>> safeBatchTransferFrom(Execution ex, List<Type<?>> args) {
+        String operator = ex.sender();
+        String from = address(args.get(0));
+        String to = address(args.get(1));
+        List<Uint256> ids = array(args.get(2));
+        List<Uint256> values = array(args.get(3));
+        require(ids.size() == values.size(), "ERC1155: IDs and values must have same lengths");
+        require(!ZERO_ADDRESS.equals(to), "ERC1155: target address must be non-zero");
+        //unlike safeTransferFrom, the batch transfer of the node_modules copy checks the approval the standard way
+        require(from.equals(operator) || ex.loadBool(approvalKey(from, operator)),
+                "ERC1155: need operator approval for 3rd party transfers");
+        for (int i = 0; i < ids.size(); i++) {
+            move(ex, from, to, ids.get(i).getValue(), values.get(i).getValue(), 
+                    "ERC1155: insufficient balance of some token type for transfer");
+        }
+        emit(ex, TRANSFER_BATCH, Arrays.asList(addressTopic(operator), addressTopic(from), addressTopic(to)),
+                new DynamicArray<>(Uint256.class, ids), new DynamicArray<>(Uint256.class, values));
+        acceptanceCheck(to);
+        return result();
+    }
+
+    private void move(Execution ex, String from, String to, BigInteger id, BigInteger value, String insufficient) {
+        BigInteger fromBalance = ex.loadUint(balanceKey(id, from));
+        require(fromBalance.compareTo(value) >= 0, insufficient);
+        ex.store(balanceKey(id, from), fromBalance.subtract(value));
+        ex.store(balanceKey(id, to), ex.loadUint(balanceKey(id, to)).add(value));
+    }
+
+    /**
+     * the only contract on the chain is this one, which does not implement onERC1155Received
+     */
+    private void acceptanceCheck(String to) {
+        if (address.equals(to)) {
+            throw Revert.of(null);
+        }
+    }
+
+    private List<Type<?>> supportsInterface(Execution ex, List<Type<?>> args) {
+        String interfaceId = Numeric.toHexString(((Bytes4) args.get(0)).getValue());
+        return result(new Bool(ex.loadBool("interface:" + interfaceId)));
+    }
+
+    /* eThaler */
+
+    private List<Type<?>> owner(Execution ex, List<Type<?>> args) {
+        return result(new Address(owner(ex)));
+    }
+
+    private List<Type<?>> isOwner(Execution ex, List<Type<?>> args) {
+        return result(new Bool(ex.sender().equals(owner(ex))));
+    }
+
+    private List<Type<?>> getAllTokenIds(Execution ex, List<Type<?>> args) {
+        return result(new DynamicArray<>(Uint256.class, tokenIds(ex)));
+    }
+
+    private List<Type<?>> getTokenDefinitions(Execution ex, List<Type<?>> args) {
+        BigInteger offset = uint(args.get(0));
+        BigInteger limit = uint(args.get(1));
+        BigInteger total = ex.loadUint("tokenCount");
+        BigInteger count = offset.compareTo(total) < 0 ? total.subtract(offset) : BigInteger.ZERO;
+        count = count.min(limit).min(MAX_TOKEN_PAGE);
+        List<Uint256> ids = new ArrayList<>();
+        List<Utf8String> names = new ArrayList<>();
+        List<Uint8> decimals = new ArrayList<>();
+        List<Utf8String> ttfUrls = new ArrayList<>();
+        for (int idx = 0; idx < count.intValue(); idx++) {
+            BigInteger tokenId = ex.loadUint("tokenId:" + offset.add(BigInteger.valueOf(idx)));
+            ids.add(new Uint256(ex.loadUint(tokenKey("id", tokenId))));
+            names.add(new Utf8String(ex.loadString(tokenKey("name", tokenId))));
+            decimals.add(new Uint8(ex.loadUint(tokenKey("decimals", tokenId))));
+            ttfUrls.add(new Utf8String(ex.loadString(tokenKey("ttfUrl", tokenId))));
+        }
+        return result(new Uint256(total), new DynamicArray<>(Uint256.class, ids), new DynamicArray<>(Utf8String.class, names),
+                new DynamicArray<>(Uint8.class, decimals), new DynamicArray<>(Utf8String.class, ttfUrls));
+    }
+
+    private List<Type<?>> getTokenBalances(Execution ex, List<Type<?>> args) {
+        BigInteger offset = uint(args.get(0));
+        BigInteger limit = uint(args.get(1));
+        BigInteger total = ex.loadUint("tokenCount");
+        BigInteger count = offset.compareTo(total) < 0 ? total.subtract(offset) : BigInteger.ZERO;
+        count = count.min(limit).min(MAX_TOKEN_PAGE);
+        List<Uint256> ids = new ArrayList<>();
+        List<Uint256> balances = new ArrayList<>();
+        for (int idx = 0; idx < count.intValue(); idx++) {
+            BigInteger tokenId = ex.loadUint("tokenId:" + offset.add(BigInteger.valueOf(idx)));
+            ids.add(new Uint256(tokenId));
+            balances.add(new Uint256(ex.loadUint(balanceKey(tokenId, ex.sender()))));
+        }
+        return result(new Uint256(total), new DynamicArray<>(Uint256.class, ids), new DynamicArray<>(Uint256.class, balances));
+    }
+
+    private List<Type<?>> addNewTokenDefinition(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        BigInteger tokenId = uint(args.get(0));
+        String name = ((Utf8String) args.get(1)).getValue();
+        String ttfUrl = ((Utf8String) args.get(3)).getValue();
+        require(!tokenExists(ex, tokenId), "eThaler: tokenId is already defined ");
+        ex.store(tokenKey("id", tokenId), tokenId);
+        ex.store(tokenKey("name", tokenId), name);
+        ex.store(tokenKey("decimals", tokenId), uint(args.get(2)));
+        ex.store(tokenKey("ttfUrl", tokenId), ttfUrl);
+        ex.store(tokenKey("paused", tokenId), Boolean.FALSE);
+        BigInteger count = ex.loadUint("tokenCount");
+        ex.store("tokenId:" + count, tokenId);
+        ex.store("tokenCount", count.add(BigInteger.ONE));
+        ex.store(tokenKey("defined", tokenId), Boolean.TRUE);
+        emit(ex, TOKEN_DEFINED, Collections.singletonList(uintTopic(tokenId)), new Utf8String(name), new Utf8String(ttfUrl));
+        return result();
+    }
+
+    private List<Type<?>> mint(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        BigInteger tokenId = uint(args.get(0));
+        BigInteger amount = uint(args.get(1));
+        require(tokenExists(ex, tokenId), "eThaler: tokenId does not exist");
+        require(!ex.loadBool(tokenKey("paused", tokenId)), "eThaler: Token is paused. Minting is not permitted");
+        String to = ex.sender();
+        ex.store(balanceKey(tokenId, to), ex.loadUint(balanceKey(tokenId, to)).add(amount));
+        emit(ex, TRANSFER_SINGLE, Arrays.asList(addressTopic(to), addressTopic(ZERO_ADDRESS), addressTopic(to)),
+                new Uint256(tokenId), new Uint256(amount));
+        return result();
+    }
+
+    private List<Type<?>> burn(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        BigInteger tokenId = uint(args.get(0));
+        BigInteger amount = uint(args.get(1));
+        require(tokenExists(ex, tokenId), "eThaler: tokenId does not exist");
+        require(!ex.loadBool(tokenKey("paused", tokenId)), "eThaler: Token is paused. Burning is not permitted");
+        String account = ex.sender();
+        BigInteger balance = ex.loadUint(balanceKey(tokenId, account));
+        require(balance.compareTo(amount) >= 0, "ERC1155: attempting to burn more than balance");
+        ex.store(balanceKey(tokenId, account), balance.subtract(amount));
+        emit(ex, TRANSFER_SINGLE, Arrays.asList(addressTopic(account), addressTopic(account), addressTopic(ZERO_ADDRESS)),
+                new Uint256(tokenId), new Uint256(amount));
+        return result();
+    }
+
+    private List<Type<?>> getDecimals(Execution ex, List<Type<?>> args) {
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        return result(new Uint8(ex.loadUint(tokenKey("decimals", tokenId))));
+    }
+
+    private List<Type<?>> getTokenName(Execution ex, List<Type<?>> args) {
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        return result(new Utf8String(ex.loadString(tokenKey("name", tokenId))));
+    }
+
+    private List<Type<?>> getTtfUrl(Execution ex, List<Type<?>> args) {
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        return result(new Utf8String(ex.loadString(tokenKey("ttfUrl", tokenId))));
+    }
+
+    private List<Type<?>> isPaused(Execution ex, List<Type<?>> args) {
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        return result(new Bool(ex.loadBool(tokenKey("paused", tokenId))));
+    }
+
+    private List<Type<?>> pause(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        require(!ex.loadBool(tokenKey("paused", tokenId)), "eThaler: token is already paused");
+        ex.store(tokenKey("paused", tokenId), Boolean.TRUE);
+        emit(ex, TOKEN_PAUSED, Collections.singletonList(uintTopic(tokenId)));
+        return result();
+    }
+
+    private List<Type<?>> resume(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        BigInteger tokenId = existingToken(ex, args.get(0));
+        require(ex.loadBool(tokenKey("paused", tokenId)), "eThaler: token is not in paused state");
+        ex.store(tokenKey("paused", tokenId), Boolean.FALSE);
+        emit(ex, TOKEN_RESUMED, Collections.singletonList(uintTopic(tokenId)));
+        return result();
+    }
+
+    private List<Type<?>> isDealerRegistered(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        return result(new Bool(hasRole(ex, uint(args.get(1)), address(args.get(0)))));
+    }
+
+    private List<Type<?>> registerDealer(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        String account = address(args.get(0));
+        BigInteger tokenId = existingToken(ex, args.get(1));
+        require(!hasRole(ex, tokenId, account), "Roles: account already has role");
+        ex.store(dealerKey(tokenId, account), Boolean.TRUE);
+        //this.setApprovalForAll : an external call, the contract is the sender
+        ex.charge(Execution.CALL_GAS);
+        setApprovalForAll(ex, address, account, true);
+        emit(ex, REGISTERED_DEALER, Arrays.asList(addressTopic(account), uintTopic(tokenId)));
+        return result();
+    }
+
+    private List<Type<?>> registerDealers(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        List<Address> accounts = array(args.get(0));
+        List<Uint256> tokenIds = array(args.get(1));
+        for (Uint256 tokenId : tokenIds) {
+            require(tokenExists(ex, tokenId.getValue()), "eThaler: tokenId does not exist");
+        }
+        for (Address value : accounts) {
+            String account = value.getValue();
+            for (Uint256 tokenId : tokenIds) {
+                if (!hasRole(ex, tokenId.getValue(), account)) {
+                    ex.store(dealerKey(tokenId.getValue(), account), Boolean.TRUE);
+                    emit(ex, REGISTERED_DEALER, Arrays.asList(addressTopic(account), uintTopic(tokenId.getValue())));
+                }
+            }
+            if (!ex.loadBool(approvalKey(address, account))) {
+                ex.charge(Execution.CALL_GAS);
+                setApprovalForAll(ex, address, account, true);
+            }
+        }
+        return result();
+    }
+
+    private List<Type<?>> unregisterDealer(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        String account = address(args.get(0));
+        BigInteger tokenId = existingToken(ex, args.get(1));
+        require(ex.loadUint(balanceKey(tokenId, account)).signum() == 0,
+                "eThaler: unregistration permitted only when there is no balance in the account");
+        require(hasRole(ex, tokenId, account), "Roles: account does not have role");
+        ex.store(dealerKey(tokenId, account), Boolean.FALSE);
+        ex.charge(Execution.CALL_GAS);
+        setApprovalForAll(ex, address, account, false);
+        emit(ex, UNREGISTERED_DEALER, Arrays.asList(addressTopic(account), uintTopic(tokenId)));
+        return result();
+    }
+
+    private List<Type<?>> transfer(Execution ex, List<Type<?>> args) {
+        String to = address(args.get(0));
+        BigInteger tokenId = existingToken(ex, args.get(1));
+        BigInteger value = uint(args.get(2));
+        String sender = ex.sender();
+        require(!ex.loadBool(tokenKey("paused", tokenId)), "eThaler: Token is paused. Transfer is not permitted");
+        require(hasRole(ex, tokenId, sender), "eThaler: sender must be registered first");
+        require(hasRole(ex, tokenId, to), "eThaler: receiver must be registered first");
+        require(!sender.equals(to), "eThaler: sender and receiver cannot be the same");
+        //this.safeTransferFrom : the contract is the operator
+        ex.charge(Execution.CALL_GAS);
+        safeTransferFrom(ex, address, sender, to, tokenId, value);
+        return result();
+    }
+
+    private List<Type<?>> balanceOfAccount(Execution ex, List<Type<?>> args) {
+        onlyOwner(ex);
+        String account = address(args.get(0));
+        require(!ZERO_ADDRESS.equals(account), "ERC1155: balance query for the zero address");
+        return result(new Uint256(ex.loadUint(balanceKey(uint(args.get(1)), account))));
+    }
+
+    private List<Type<?>> balanceOf(Execution ex, List<Type<?>> args) {
+        BigInteger tokenId = uint(args.get(0));
+        require(hasRole(ex, tokenId, ex.sender()), "eThaler: dealer account must be registered first");
+        return result(new Uint256(ex.loadUint(balanceKey(tokenId, ex.sender()))));
+    }
+
+    /* helpers */
+
+    private String owner(Execution ex) {
+        return (String) ex.load("owner");
+    }
+
+    private void onlyOwner(Execution ex) {
+        require(ex.sender().equals(owner(ex)), "You are not the owner.");
+    }
+
+    private static boolean tokenExists(Execution ex, BigInteger tokenId) {
+        return ex.loadBool(tokenKey("defined", tokenId));
+    }
+
+    private static BigInteger existingToken(Execution ex, Type<?> arg) {
+        BigInteger tokenId = uint(arg);
+        require(tokenExists(ex, tokenId), "eThaler: tokenId does not exist");
+        return tokenId;
+    }
+
+    /**
+     * Roles.has, which rejects the zero address
+     */
+    private static boolean hasRole(Execution ex, BigInteger tokenId, String account) {
+        require(!ZERO_ADDRESS.equals(account), "Roles: account is the zero address");
+        return ex.loadBool(dealerKey(tokenId, account));
+    }
+
+    private static List<Uint256> tokenIds(Execution ex) {
+        int count = ex.loadUint("tokenCount").intValue();
+        List<Uint256> ids = new ArrayList<>();
+        for (int idx = 0; idx < count; idx++) {
+            ids.add(new Uint256(ex.loadUint("tokenId:" + idx)));
+        }
+        return ids;
+    }
+
+    private static void require(boolean condition, String reason) {
+        if (!condition) {
+            throw Revert.of(reason);
+        }
+    }
+
+    private static void emit(Execution ex, Event event, List<String> indexed, Type<?>... values) {
+        if (indexed.size() != event.indexed) {
+            throw new IllegalStateException(event.signature + " has " + event.indexed + " indexed parameters");
+        }
+        List<String> topics = new ArrayList<>();
+        topics.add(event.topic);
+        topics.addAll(indexed);
+        ex.log(topics, FunctionEncoder.encodeConstructor(new ArrayList<>(Arrays.asList(values))));
+    }
+
+    private static String addressTopic(String account) {
+        return "0x" + TypeEncoder.encode(new Address(account));
+    }
+
+    private static String uintTopic(BigInteger value) {
+        return "0x" + TypeEncoder.encode(new Uint256(value));
+    }
+
+    private static String tokenKey(String field, BigInteger tokenId) {
+        return field + ":" + tokenId;
+    }
+
+    private static String balanceKey(BigInteger tokenId, String account) {
+        return "balance:" + tokenId + ":" + account;
+    }
+
+    private static String dealerKey(BigInteger tokenId, String account) {
+        return "dealer:" + tokenId + ":" + account;
+    }
+
+    private static String approvalKey(String account, String operator) {
+        return "approval:" + account + ":" + operator;
+    }
+
+    private static String address(Type<?> arg) {
+        return ((Address) arg).getValue();
+    }
+
+    private static BigInteger uint(Type<?> arg) {
+        return (BigInteger) arg.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Type<?>> List<T> array(Type<?> arg) {
+        return ((DynamicArray<T>) arg).getValue();
+    }
+
+    private static List<Type<?>> result(Type<?>... values) {
+        return Arrays.asList(values);
+    }
+
+    private interface Handler {
+        List<Type<?>> call(Execution execution, List<Type<?>> args);
+    }
+
+    private static final class Function {
+        final String signature;
+        final Handler handler;
+        final List<TypeReference<?>> inputs;
+
+        Function(String signature, Handler handler, List<TypeReference<?>> inputs) {
+            this.signature = signature;
+            this.handler = handler;
+            this.inputs = inputs;
+        }
+    }
+
+    private static final class Event {
+        final String signature;
+        final String topic;
+        final int indexed;
+
+        /**
+         * @param signature
+         * @param indexed number of indexed parameters, the first ones for every event of the contract
+         */
+        Event(String signature, int indexed) {
+            this.signature = signature;
+            this.topic = Hash.sha3String(signature);
+            this.indexed = indexed;
+        }
+    }
+}//end of class
@@ -0,0 +1,173 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One call or transaction executed by a contract model : sender, gas meter, storage writes and logs.
+ * The writes are kept apart from the contract storage until {@link #commit}, so a revert, an eth_call or
+ * a gas estimate leaves the storage unchanged.
+ * Gas is metered with the Istanbul costs of the operations that dominate the real execution
+ * (intrinsic and calldata gas, storage reads and writes, logs, calls of the contract to itself),
+ * which is close enough to size gas limits and compare functions, not an exact EVM figure.
+ */
+final class Execution {
+    static final long TX_GAS = 21000;
+    static final long CREATE_GAS = 53000;
+    static final long CALL_GAS = 700;
+    private static final long ZERO_BYTE_GAS = 4;
+    private static final long NONZERO_BYTE_GAS = 16;
+    //dispatch, argument copy and memory of one function
+    private static final long FUNCTION_GAS = 1000;
+    private static final long SLOAD_GAS = 800;
+    private static final long SSTORE_SET_GAS = 20000;
+    private static final long SSTORE_RESET_GAS = 5000;
+    private static final long LOG_GAS = 375;
+    private static final long LOG_TOPIC_GAS = 375;
+    private static final long LOG_DATA_GAS = 8;
+
+    private final Map<String, Object> storage;
+    private final Map<String, Object> writes = new HashMap<>();
+    private final List<LogEntry> logs = new ArrayList<>();
+    private final String sender;
+    private final long gasLimit;
+    private long gasUsed;
+
+    /**
+     * @param storage committed storage of the contract
+     * @param sender account calling the contract, lower case
+     * @param gasLimit
+     * @param data call data, charged as intrinsic gas
+     */
+    Execution(Map<String, Object> storage, String sender, long gasLimit, byte[] data) {
+        this.storage = storage;
+        this.sender = sender;
+        this.gasLimit = gasLimit;
+        charge(TX_GAS + FUNCTION_GAS + calldataGas(data));
+    }
+
+    static long calldataGas(byte[] data) {
+        long gas = 0;
+        for (byte b : data) {
+            gas += b == 0 ? ZERO_BYTE_GAS : NONZERO_BYTE_GAS;
+        }
+        return gas;
+    }
+
+    /**
+     * @return msg.sender, lower case
+     */
+    String sender() {
+        return sender;
+    }
+
+    long gasUsed() {
+        return gasUsed;
+    }
+
+    List<LogEntry> logs() {
+        return logs;
+    }
+
+    /**
+     * @param gas
+     * @throws Revert when the gas limit is reached
+     */
+    void charge(long gas) {
+        gasUsed += gas;
+        if (gasUsed > gasLimit) {
+            gasUsed = gasLimit;
+            throw Revert.outOfGas();
+        }
+    }
+
+    /**
+     * @param key storage slot
+     * @return value, null when never written
+     */
+    Object load(String key) {
+        charge(SLOAD_GAS);
+        return writes.containsKey(key) ? writes.get(key) : storage.get(key);
+    }
+
+    BigInteger loadUint(String key) {
+        Object value = load(key);
+        return value == null ? BigInteger.ZERO : (BigInteger) value;
+    }
+
+    boolean loadBool(String key) {
+        return Boolean.TRUE.equals(load(key));
+    }
+
+    String loadString(String key) {
+        Object value = load(key);
+        return value == null ? "" : (String) value;
+    }
+
+    /**
+     * setting a slot from zero costs more than changing it, strings take a slot per 32 bytes
+     * @param key storage slot
+     * @param value BigInteger, Boolean or String
+     */
+    void store(String key, Object value) {
+        Object current = writes.containsKey(key) ? writes.get(key) : storage.get(key);
+        long words = 1;
+        if (value instanceof String && ((String) value).length() > 31) {
+            words += (((String) value).getBytes(StandardCharsets.UTF_8).length + 31) / 32;
+        }
+        charge(words * (isZero(current) && !isZero(value) ? SSTORE_SET_GAS : SSTORE_RESET_GAS));
+        writes.put(key, value);
+    }
+
+    /**
+     * an event of the contract
+     * @param topics event signature topic, then the indexed values
+     * @param data ABI encoded values, without 0x
+     */
+    void log(List<String> topics, String data) {
+        charge(LOG_GAS + LOG_TOPIC_GAS * topics.size() + LOG_DATA_GAS * (data.length() / 2));
+        logs.add(new LogEntry(topics, "0x" + data));
+    }
+
+    /**
+     * applies the writes to the contract storage
+     */
+    void commit() {
+        for (Map.Entry<String, Object> write : writes.entrySet()) {
+            if (isZero(write.getValue())) {
+                storage.remove(write.getKey());
+            } else {
+                storage.put(write.getKey(), write.getValue());
+            }
+        }
+    }
+
+    private static boolean isZero(Object value) {
+        return value == null || Boolean.FALSE.equals(value) || BigInteger.ZERO.equals(value) || "".equals(value);
+    }
+
+    /**
+     * log emitted by an execution, positioned in the chain once mined
+     */
+    static final class LogEntry {
+        final List<String> topics;
+        final String data;
+
+        LogEntry(List<String> topics, String data) {
+            this.topics = topics;
+            this.data = data;
+        }
+    }
+}//end of class
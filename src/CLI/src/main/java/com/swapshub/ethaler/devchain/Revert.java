@@ -0,0 +1,61 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Utf8String;
+
+import java.util.Collections;
+
+/**
+ * Failure of a contract execution : a failed require, with its reason, or running out of gas.
+ * All the state changes of the execution are dropped.
+ */
+final class Revert extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    //selector of Error(string), the encoding of a require reason
+    static final String ERROR_SELECTOR = "0x08c379a0";
+
+    private final boolean outOfGas;
+
+    private Revert(String reason, boolean outOfGas) {
+        super(reason, null, false, false);
+        this.outOfGas = outOfGas;
+    }
+
+    /**
+     * @param reason require message, null for a revert without reason
+     * @return revert of the execution
+     */
+    static Revert of(String reason) {
+        return new Revert(reason, false);
+    }
+
+    static Revert outOfGas() {
+        return new Revert(null, true);
+    }
+
+    /**
+     * @return true when the gas limit was reached, all the gas is then used
+     */
+    boolean isOutOfGas() {
+        return outOfGas;
+    }
+
+    /**
+     * @return Error(string) encoding of the reason, as returned by the node, 0x without reason
+     */
+    String encodedReason() {
+        if (getMessage() == null) {
+            return "0x";
+        }
+        return ERROR_SELECTOR + FunctionEncoder.encodeConstructor(
+                Collections.singletonList(new Utf8String(getMessage())));
+    }
+}//end of class
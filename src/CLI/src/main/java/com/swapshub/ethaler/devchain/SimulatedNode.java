@@ -0,0 +1,222 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import io.reactivex.Flowable;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated Besu node : a {@link DevChain} mining blocks at the interval of the {@link SimulationProfile}, behind
+ * the latencies, lost responses, nonce errors, reorgs, rate limit and pool size of the profile, to tune and check the
+ * polling, retry and timeout settings of the client against the failures of a production network.
+ * The faults and latencies are drawn from random sequences seeded by the profile, so a single threaded run
+ * meets the same ones every time; concurrent callers share the sequences in the order they reach them.
+ * A lost response is lost after the request ran, as when the connection drops while the node answers :
+ * the transaction of a lost eth_sendRawTransaction is mined although the caller sees a timeout.
+ */
+//the methods of Web3jService take a raw Request, which an implementation cannot parameterize
+@SuppressWarnings("rawtypes")
+public final class SimulatedNode implements Web3jService {
+    private static final String SEND_RAW_TRANSACTION = "eth_sendRawTransaction";
+    private static final int SERVER_ERROR = -32000;
+
+    private final DevChain chain;
+    private final SimulationProfile profile;
+    private final Random faults;
+    private final Random latencies;
+    private final ScheduledExecutorService miner;
+    //runs sendAsync, the latency blocking the calling thread
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong droppedResponses = new AtomicLong();
+    private final AtomicLong nonceErrors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong poolRejections = new AtomicLong();
+    private final AtomicLong reorgs = new AtomicLong();
+    //token bucket of the rate limit. Guarded by this
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    //head block after the last reorg. Guarded by this
+    private long reorgedAt;
+
+    /**
+     * starts the node, mining at the interval of the profile
+     * @param chainId
+     * @param profile
+     */
+    public SimulatedNode(long chainId, SimulationProfile profile) {
+        this.profile = profile;
+        this.chain = new DevChain(chainId, profile.getBlockGasLimit(), profile.getBlockInterval() == 0);
+        this.faults = new Random(profile.getSeed());
+        this.latencies = new Random(profile.getSeed() + 1);
+        this.tokens = profile.getRateBurst();
+        if (profile.getBlockInterval() > 0) {
+            miner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "devchain-miner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            miner.scheduleAtFixedRate(this::mineBlock, profile.getBlockInterval(), profile.getBlockInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            miner = null;
+        }
+    }
+
+    public DevChain getChain() {
+        return chain;
+    }
+
+    public long getDroppedResponses() {
+        return droppedResponses.get();
+    }
+
+    public long getNonceErrors() {
+        return nonceErrors.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getPoolRejections() {
+        return poolRejections.get();
+    }
+
+    public long getReorgs() {
+        return reorgs.get();
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        String method = request.getMethod();
+        if (!acquire()) {
+            rateLimited.incrementAndGet();
+            //what HttpService throws for an HTTP 429 of a gateway
+            throw new ClientConnectionException("Invalid response received: 429; Too Many Requests");
+        }
+        sleep(latency(method));
+        boolean sendTransaction = SEND_RAW_TRANSACTION.equals(method);
+        if (sendTransaction && roll(profile.getNonceErrorRate())) {
+            nonceErrors.incrementAndGet();
+            return chain.error(request, responseType, SERVER_ERROR, "Nonce too low");
+        }
+        if (sendTransaction && profile.getPoolSize() > 0 && chain.getPoolSize() >= profile.getPoolSize()) {
+            poolRejections.incrementAndGet();
+            return chain.error(request, responseType, SERVER_ERROR, "Transaction pool is full");
+        }
+        T response = chain.send(request, responseType);
+        if (sendTransaction && miner == null) {
+            reorgIfDue();
+        }
+        if (roll(profile.getDropRate())) {
+            droppedResponses.incrementAndGet();
+            sleep(profile.getDropTimeout());
+            throw new SocketTimeoutException("timeout");
+        }
+        return response;
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request, responseType);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, asyncExecutor);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return chain.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() {
+        if (miner != null) {
+            miner.shutdownNow();
+        }
+        asyncExecutor.shutdownNow();
+        chain.close();
+    }
+
+    private void mineBlock() {
+        chain.mineBlock();
+        reorgIfDue();
+    }
+
+    /**
+     * replaces the latest blocks once SIM_REORG_INTERVAL blocks were mined since the last reorg
+     */
+    private synchronized void reorgIfDue() {
+        int interval = profile.getReorgInterval();
+        if (interval > 0 && chain.getBlockNumber() - reorgedAt >= interval) {
+            chain.reorg(profile.getReorgDepth());
+            reorgs.incrementAndGet();
+            reorgedAt = chain.getBlockNumber();
+        }
+    }
+
+    /**
+     * @return false when the rate limit is reached
+     */
+    private synchronized boolean acquire() {
+        if (profile.getRateLimit() <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(profile.getRateBurst(), tokens + (now - refilledAt) / 1e9 * profile.getRateLimit());
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private synchronized long latency(String method) {
+        return profile.getLatency(method).next(latencies);
+    }
+
+    /**
+     * @param rate
+     * @return true for the given share of the draws
+     */
+    private synchronized boolean roll(double rate) {
+        return rate > 0 && faults.nextDouble() < rate;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+    }
+}//end of class
@@ -0,0 +1,214 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Behaviour of a {@link SimulatedNode}, read from the SIM_ settings of the client configuration :
+ * <pre>
+ *   SIM_BLOCK_INTERVAL     milliseconds between blocks, 0 to mine each transaction when received (default 0)
+ *   SIM_BLOCK_GAS_LIMIT    gas limit of the blocks (default 10000000)
+ *   SIM_SEED               seed of the random draws, the same seed giving the same faults and latencies (default 1)
+ *   SIM_LATENCY            latency of every request (default 0)
+ *   SIM_LATENCY.method     latency of one JSON-RPC method, e.g. SIM_LATENCY.eth_sendRawTransaction
+ *   SIM_DROP_RATE          share of requests run by the node whose response is lost (default 0)
+ *   SIM_DROP_TIMEOUT       milliseconds before a lost response fails, as a read timeout (default 1000)
+ *   SIM_NONCE_ERROR_RATE   share of eth_sendRawTransaction rejected with "Nonce too low" (default 0)
+ *   SIM_REORG_INTERVAL     blocks between two reorgs, 0 for none (default 0)
+ *   SIM_REORG_DEPTH        blocks replaced by a reorg (default 1)
+ *   SIM_RATE_LIMIT         requests per second, beyond which the node answers HTTP 429, 0 for no limit (default 0)
+ *   SIM_RATE_BURST         requests accepted at once above the rate (default SIM_RATE_LIMIT)
+ *   SIM_POOL_SIZE          transactions the pool holds, beyond which eth_sendRawTransaction is rejected with
+ *                          "Transaction pool is full", 0 for no limit (default 0)
+ * </pre>
+ * A latency is a number of milliseconds, or a distribution : uniform:min-max, exp:mean or lognormal:median:sigma.
+ */
+public final class SimulationProfile {
+    public static final SimulationProfile INSTANT = of(new Properties());
+    private static final String LATENCY = "SIM_LATENCY";
+
+    private final long blockInterval;
+    private final long blockGasLimit;
+    private final long seed;
+    private final Latency latency;
+    private final Map<String, Latency> methodLatencies;
+    private final double dropRate;
+    private final long dropTimeout;
+    private final double nonceErrorRate;
+    private final int reorgInterval;
+    private final int reorgDepth;
+    private final double rateLimit;
+    private final double rateBurst;
+    private final int poolSize;
+
+    private SimulationProfile(Properties properties) {
+        blockInterval = Long.parseLong(get(properties, "SIM_BLOCK_INTERVAL", "0"));
+        blockGasLimit = Long.parseLong(get(properties, "SIM_BLOCK_GAS_LIMIT", String.valueOf(DevChain.DEFAULT_BLOCK_GAS_LIMIT)));
+        seed = Long.parseLong(get(properties, "SIM_SEED", "1"));
+        latency = Latency.parse(get(properties, LATENCY, "0"));
+        Map<String, Latency> latencies = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(LATENCY + ".")) {
+                latencies.put(key.substring(LATENCY.length() + 1), Latency.parse(get(properties, key, "0")));
+            }
+        }
+        methodLatencies = Collections.unmodifiableMap(latencies);
+        dropRate = rate(properties, "SIM_DROP_RATE");
+        dropTimeout = Long.parseLong(get(properties, "SIM_DROP_TIMEOUT", "1000"));
+        nonceErrorRate = rate(properties, "SIM_NONCE_ERROR_RATE");
+        reorgInterval = Integer.parseInt(get(properties, "SIM_REORG_INTERVAL", "0"));
+        reorgDepth = Integer.parseInt(get(properties, "SIM_REORG_DEPTH", "1"));
+        rateLimit = Double.parseDouble(get(properties, "SIM_RATE_LIMIT", "0"));
+        rateBurst = Double.parseDouble(get(properties, "SIM_RATE_BURST", String.valueOf(rateLimit)));
+        poolSize = Integer.parseInt(get(properties, "SIM_POOL_SIZE", "0"));
+    }
+
+    /**
+     * @param properties client configuration, the keys other than SIM_ ones are ignored
+     * @return profile, with the defaults for the missing keys
+     * @throws IllegalArgumentException when a value cannot be read
+     */
+    public static SimulationProfile of(Properties properties) {
+        return new SimulationProfile(properties);
+    }
+
+    private static String get(Properties properties, String key, String defaultVal) {
+        return properties.getProperty(key, defaultVal).trim();
+    }
+
+    private static double rate(Properties properties, String key) {
+        double rate = Double.parseDouble(get(properties, key, "0"));
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException(key + " must be between 0 and 1 : " + rate);
+        }
+        return rate;
+    }
+
+    long getBlockInterval() {
+        return blockInterval;
+    }
+
+    long getBlockGasLimit() {
+        return blockGasLimit;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param method JSON-RPC method
+     * @return latency of the method, the default one when not set for it
+     */
+    Latency getLatency(String method) {
+        return methodLatencies.getOrDefault(method, latency);
+    }
+
+    double getDropRate() {
+        return dropRate;
+    }
+
+    long getDropTimeout() {
+        return dropTimeout;
+    }
+
+    double getNonceErrorRate() {
+        return nonceErrorRate;
+    }
+
+    int getReorgInterval() {
+        return reorgInterval;
+    }
+
+    int getReorgDepth() {
+        return reorgDepth;
+    }
+
+    double getRateLimit() {
+        return rateLimit;
+    }
+
+    double getRateBurst() {
+        return rateBurst;
+    }
+
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * distribution of the time a node takes to answer
+     */
+    abstract static class Latency {
+        /**
+         * @param random
+         * @return latency in milliseconds
+         */
+        abstract long next(Random random);
+
+        /**
+         * @param spec milliseconds, uniform:min-max, exp:mean or lognormal:median:sigma
+         * @return parsed distribution
+         * @throws IllegalArgumentException when the value cannot be read
+         */
+        static Latency parse(String spec) {
+            String[] parts = spec.split(":");
+            try {
+                switch (parts[0]) {
+                    case "uniform": {
+                        String[] bounds = parts[1].split("-");
+                        long min = Long.parseLong(bounds[0].trim());
+                        long max = Long.parseLong(bounds[1].trim());
+                        return new Latency() {
+                            @Override
+                            long next(Random random) {
+                                return min + (long) (random.nextDouble() * (max - min + 1));
+                            }
+                        };
+                    }
+                    case "exp": {
+                        double mean = Double.parseDouble(parts[1]);
+                        return new Latency() {
+                            @Override
+                            long next(Random random) {
+                                return Math.round(-mean * Math.log(1 - random.nextDouble()));
+                            }
+                        };
+                    }
+                    case "lognormal": {
+                        double mu = Math.log(Double.parseDouble(parts[1]));
+                        double sigma = Double.parseDouble(parts[2]);
+                        return new Latency() {
+                            @Override
+                            long next(Random random) {
+                                return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+                            }
+                        };
+                    }
+                    default: {
+                        long fixed = Long.parseLong(spec.trim());
+                        return new Latency() {
+                            @Override
+                            long next(Random random) {
+                                return fixed;
+                            }
+                        };
+                    }
+                }
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid latency : " + spec, ex);
+            }
+        }
+    }
+}//end of class
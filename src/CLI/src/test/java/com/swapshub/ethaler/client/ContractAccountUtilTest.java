@@ -0,0 +1,138 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_B;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The owner and dealer menus of {@link ContractAccountUtil}, typed line by line on the in-process chain.
+ * The menus run until the application exits, so each runs on a daemon thread and the test waits for
+ * the effect of the typed options on the chain. The input never ends, as the end of the input exits the JVM.
+ */
+public class ContractAccountUtilTest {
+    private static final BigInteger COPPER = BigInteger.TEN;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new DevChainFixture();
+        owner = fixture.open(OWNER).getService();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void ownerThenDealerMenus() throws Exception {
+        TypedInput ownerInput = startMenu(fixture.open(OWNER));
+        ownerInput.type(ContractAccountUtil.OWNER_ADD_NEW_TOKEN, COPPER, "Copper", 2, "https://ttf.example/copper");
+        waitFor(() -> await(owner.getAllTokenIds()).contains(COPPER));
+        //display amounts, copper having 2 decimals
+        ownerInput.type(ContractAccountUtil.OWNER_MINT, COPPER, 25);
+        ownerInput.type(ContractAccountUtil.OWNER_REGISTER, COPPER, OWNER.getAddress());
+        ownerInput.type(ContractAccountUtil.OWNER_REGISTER, COPPER, DEALER_A.getAddress());
+        ownerInput.type(ContractAccountUtil.OWNER_REGISTER, COPPER, DEALER_B.getAddress());
+        ownerInput.type(ContractAccountUtil.OWNER_TRANSFER, COPPER, DEALER_A.getAddress(), 5);
+        waitFor(() -> BigInteger.valueOf(500).equals(await(owner.balanceOf(address(DEALER_A), COPPER))));
+        assertEquals(BigInteger.valueOf(2000), await(owner.balanceOf(address(OWNER), COPPER)));
+
+        TypedInput dealerInput = startMenu(fixture.open(DEALER_A));
+        dealerInput.type(ContractAccountUtil.DEALER_TRANSFER, COPPER, DEALER_B.getAddress(), 2);
+        waitFor(() -> BigInteger.valueOf(200).equals(await(owner.balanceOf(address(DEALER_B), COPPER))));
+        assertEquals(BigInteger.valueOf(300), await(owner.balanceOf(address(DEALER_A), COPPER)));
+    }
+
+    /**
+     * @param session
+     * @return input of the menu of the session, started on a daemon thread
+     */
+    private static TypedInput startMenu(EThalerSession session) {
+        TypedInput input = new TypedInput();
+        Thread menu = new Thread(() -> new ContractAccountUtil(new Scanner(input, "UTF-8")).startApplication(session), "menu");
+        menu.setDaemon(true);
+        menu.start();
+        return input;
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.call()) {
+            assertTrue("timed out waiting for the menu", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * console input typed by the test : reads block until a line is typed, and never reach the end
+     */
+    private static final class TypedInput extends InputStream {
+        private final LinkedBlockingQueue<Byte> bytes = new LinkedBlockingQueue<>();
+
+        /**
+         * @param values typed one per line
+         */
+        void type(Object... values) {
+            for (Object value : values) {
+                for (byte b : (value + "\n").getBytes(StandardCharsets.UTF_8)) {
+                    bytes.add(b);
+                }
+            }
+        }
+
+        @Override
+        public int read() {
+            try {
+                return bytes.take() & 0xff;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int first = read();
+            if (first < 0) {
+                return -1;
+            }
+            b[off] = (byte) first;
+            int count = 1;
+            Byte next;
+            while (count < len && (next = bytes.poll()) != null) {
+                b[off + count++] = next;
+            }
+            return count;
+        }
+    }
+}//end of class
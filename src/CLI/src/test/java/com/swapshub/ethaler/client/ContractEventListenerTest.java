@@ -0,0 +1,116 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Contract events through {@link ContractEventListener} and the JSON lines output of the {@link EventPipeline}.
+ */
+public class ContractEventListenerTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private File jsonl;
+    private DevChainFixture fixture;
+    private EventPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        jsonl = File.createTempFile("ethaler-events", ".jsonl");
+        Properties properties = new Properties();
+        properties.setProperty("EVENT_JSONL_FILE", jsonl.getAbsolutePath());
+        properties.setProperty("EVENT_CONSOLE_MAX_PER_BATCH", "0");
+        fixture = new DevChainFixture(properties);
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        fixture.close();
+        jsonl.delete();
+    }
+
+    @Test
+    public void eventsReachTheOutputAndTheDealerRegistry() throws Exception {
+        EThalerSession session = fixture.open(OWNER);
+        EThalerService owner = session.getService();
+        pipeline = EventPipeline.start(fixture.getConfig(), fixture.getMetrics(), fixture.getExecutor(), true);
+        new ContractEventListener(session, pipeline).startListeningEthEvents(fixture.getWeb3j());
+
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.mint(GOLD, BigInteger.valueOf(500)));
+        //read once, so the listener applies the registrations of the token as they arrive
+        assertTrue(await(session.getDealers().refresh(owner, GOLD)).isEmpty());
+        await(owner.registerDealer(address(OWNER), GOLD));
+        await(owner.registerDealer(address(DEALER_A), GOLD));
+        await(owner.transfer(address(DEALER_A), GOLD, BigInteger.valueOf(120)));
+
+        List<JsonNode> events = awaitEvents(5);
+        assertEquals("TokenDefined", events.get(0).get("event").asText());
+        assertEquals("Gold", events.get(0).get("name").asText());
+        assertEquals(GOLD.intValue(), events.get(0).get("tokenId").asInt());
+        assertEquals("https://ttf.example/gold", events.get(0).get("ttfUrl").asText());
+        //the mint
+        assertEquals("TransferSingle", events.get(1).get("event").asText());
+        assertEquals(500, events.get(1).get("value").asInt());
+        assertEquals("RegisteredDealer", events.get(2).get("event").asText());
+        assertEquals("RegisteredDealer", events.get(3).get("event").asText());
+        JsonNode transfer = events.get(4);
+        assertEquals("TransferSingle", transfer.get("event").asText());
+        assertEquals(DEALER_A.getAddress(), transfer.get("to").asText());
+        assertEquals(120, transfer.get("value").asInt());
+        assertTrue(transfer.get("blockNumber").asLong() > events.get(3).get("blockNumber").asLong());
+
+        assertTrue(await(session.getDealers().refresh(owner, GOLD)).contains(address(DEALER_A)));
+    }
+
+    /**
+     * @param count
+     * @return the first events of the JSON lines file, once it has that many
+     * @throws Exception
+     */
+    private List<JsonNode> awaitEvents(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        List<JsonNode> events = new ArrayList<>();
+        while (System.currentTimeMillis() < deadline) {
+            events.clear();
+            for (String line : Files.readAllLines(jsonl.toPath(), StandardCharsets.UTF_8)) {
+                events.add(objectMapper.readTree(line));
+            }
+            if (events.size() >= count) {
+                return events;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("expected " + count + " events, the output has " + events.size());
+    }
+}//end of class
@@ -0,0 +1,163 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_B;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static com.swapshub.ethaler.client.EThalerService.unwrap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pre-flight checks of the transactions, on the mirrored state and with the dry run fallback.
+ */
+public class ContractStateMirrorTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+
+    /**
+     * deploys with GOLD defined, 1000 minted to the owner, the owner and DEALER_A registered
+     * @param mode PREFLIGHT
+     * @param maxAge PREFLIGHT_MAX_AGE
+     */
+    private void start(String mode, long maxAge) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("PREFLIGHT", mode);
+        properties.setProperty("PREFLIGHT_MAX_AGE", String.valueOf(maxAge));
+        fixture = new DevChainFixture(properties);
+        owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        for (Credentials dealer : Arrays.asList(OWNER, DEALER_A)) {
+            await(owner.registerDealer(address(dealer), GOLD));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void refusesDoomedTransfersWithoutCalls() throws Exception {
+        start("mirror", 60_000);
+        await(owner.transfer(address(DEALER_A), GOLD, BigInteger.TEN));
+        long blocks = fixture.getChain().getBlockNumber();
+        long calls = countCalls();
+
+        assertRefused(owner.transfer(address(DEALER_B), GOLD, BigInteger.ONE), "eThaler: receiver must be registered first");
+        assertRefused(owner.transfer(address(OWNER), GOLD, BigInteger.ONE), "eThaler: sender and receiver cannot be the same");
+        assertRefused(owner.transfer(address(DEALER_A), GOLD, BigInteger.valueOf(991)), "ERC1155: insufficient balance for transfer");
+        assertRefused(owner.transfer(address(DEALER_A), BigInteger.TEN, BigInteger.ONE), "eThaler: tokenId does not exist");
+        assertRefused(owner.resume(GOLD), "eThaler: token is not in paused state");
+
+        assertEquals(blocks, fixture.getChain().getBlockNumber());
+        assertEquals(calls, countCalls());
+        assertEquals(5, rejections("mirror"));
+        assertEquals(0, fixture.getMetrics().counter("ethaler_preflight_dry_runs_total", "").get());
+    }
+
+    @Test
+    public void reservesTheBalanceOfConcurrentTransfers() throws Exception {
+        start("mirror", 60_000);
+        List<CompletableFuture<TransactionReceipt>> transfers = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            transfers.add(owner.transfer(address(DEALER_A), GOLD, BigInteger.valueOf(50)));
+        }
+        int refused = 0;
+        for (CompletableFuture<TransactionReceipt> transfer : transfers) {
+            try {
+                assertTrue(await(transfer).isStatusOK());
+            } catch (IllegalStateException ex) {
+                refused++;
+            }
+        }
+        assertEquals(1, refused);
+        assertEquals(BigInteger.valueOf(1000), await(fixture.open(DEALER_A).getService().balanceOf(GOLD)));
+        //mined and released, the balance is spent
+        assertRefused(owner.transfer(address(DEALER_A), GOLD, BigInteger.ONE), "ERC1155: insufficient balance for transfer");
+    }
+
+    @Test
+    public void followsTheChangesOfOtherAccounts() throws Exception {
+        start("mirror", 1);
+        EThalerService dealer = fixture.open(DEALER_A).getService();
+        await(owner.transfer(address(DEALER_A), GOLD, BigInteger.valueOf(100)));
+        await(dealer.transfer(address(OWNER), GOLD, BigInteger.TEN));
+        await(owner.pause(GOLD));
+        Thread.sleep(5);
+        assertRefused(dealer.transfer(address(OWNER), GOLD, BigInteger.TEN), "eThaler: Token is paused. Transfer is not permitted");
+        await(owner.resume(GOLD));
+        Thread.sleep(5);
+        await(dealer.transfer(address(OWNER), GOLD, BigInteger.valueOf(90)));
+        assertRefused(dealer.transfer(address(OWNER), GOLD, BigInteger.ONE), "ERC1155: insufficient balance for transfer");
+        assertEquals(0, fixture.getMetrics().counter("ethaler_preflight_dry_runs_total", "").get());
+    }
+
+    @Test
+    public void dryRunsWhenNotMirroring() throws Exception {
+        start("call", 0);
+        long blocks = fixture.getChain().getBlockNumber();
+        long dryRuns = fixture.getMetrics().counter("ethaler_preflight_dry_runs_total", "").get();
+        assertRefused(owner.transfer(address(DEALER_B), GOLD, BigInteger.ONE), "eThaler: receiver must be registered first");
+        assertEquals(blocks, fixture.getChain().getBlockNumber());
+        assertEquals(1, rejections("call"));
+        await(owner.transfer(address(DEALER_A), GOLD, BigInteger.ONE));
+        assertEquals(dryRuns + 2, fixture.getMetrics().counter("ethaler_preflight_dry_runs_total", "").get());
+    }
+
+    @Test
+    public void failingRequireMinesWithStatusZeroWhenOff() throws Exception {
+        start("off", 0);
+        try {
+            await(owner.transfer(address(DEALER_B), GOLD, BigInteger.ONE));
+            fail("a transfer to an unregistered dealer must fail");
+        } catch (TransactionException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("status: 0x0"));
+        }
+    }
+
+    private static void assertRefused(CompletableFuture<?> operation, String reason) throws Exception {
+        try {
+            operation.get();
+            fail("the operation must be refused : " + reason);
+        } catch (Exception ex) {
+            Exception cause = unwrap(ex);
+            assertTrue(cause.toString(), cause instanceof IllegalStateException);
+            assertEquals(reason, cause.getMessage());
+        }
+    }
+
+    private long rejections(String source) {
+        return fixture.getMetrics().counter("ethaler_preflight_rejections_total", "", "source", source).get();
+    }
+
+    private long countCalls() {
+        return fixture.getMetrics().timer("ethaler_rpc_request_seconds", "", "method", "eth_call").count();
+    }
+}//end of class
@@ -0,0 +1,115 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.devchain.DevChain;
+import com.swapshub.ethaler.devchain.SimulatedNode;
+import com.swapshub.ethaler.devchain.SimulationProfile;
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.tx.gas.StaticGasProvider;
+
+import java.math.BigInteger;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process chain with eThaler deployed by {@link #OWNER}, and the client objects to open sessions on it :
+ * the configuration, metrics, executor and a Web3j going through the metered service, as in the application.
+ * The client talks to a {@link SimulatedNode} set up by the SIM_ values of the configuration, mining at once
+ * and without faults by default; the contract is deployed on the chain directly, away from the faults.
+ * The accounts are the prefunded accounts of the Besu dev network.
+ */
+final class DevChainFixture implements AutoCloseable {
+    static final Credentials OWNER = Credentials.create("8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+    static final Credentials DEALER_A = Credentials.create("c87509a1c067bbde78beb793e6fa76530b6382a4c0241e5e4a9ec0a0f44dc0d3");
+    static final Credentials DEALER_B = Credentials.create("ae6ae8e5ccbfb04590405997ee2d52d2b330726137b875053c36d94e974d162f");
+    //receipt and log filter polling, mining being instant
+    private static final long POLLING_INTERVAL = 10;
+    private static final int POLLING_ATTEMPTS = 500;
+    private static final BigInteger DEPLOY_GAS = BigInteger.valueOf(6_000_000);
+
+    private final SimulatedNode node;
+    private final DevChain chain;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final Web3j web3j;
+    private final ClientConfig config;
+    private final ChainExecutor executor;
+
+    DevChainFixture() throws Exception {
+        this(new Properties());
+    }
+
+    /**
+     * @param properties configuration values added to the ones of the fixture, the SIM_ ones set up the node
+     * @throws Exception when the deployment fails
+     */
+    DevChainFixture(Properties properties) throws Exception {
+        node = new SimulatedNode(DevChain.DEFAULT_CHAIN_ID, SimulationProfile.of(properties));
+        chain = node.getChain();
+        web3j = Web3j.build(new MeteredWeb3jService(node, metrics), POLLING_INTERVAL, Executors.newSingleThreadScheduledExecutor());
+        Web3j direct = Web3j.build(chain, POLLING_INTERVAL, Executors.newSingleThreadScheduledExecutor());
+        EThalerTransactionManager deployer = new EThalerTransactionManager(direct, OWNER, chain.getChainId(),
+                POLLING_ATTEMPTS, POLLING_INTERVAL, new ClientMetrics());
+        EThaler contract = EThaler.deploy(direct, deployer, new StaticGasProvider(BigInteger.ZERO, DEPLOY_GAS)).send();
+        direct.shutdown();
+        Properties values = new Properties();
+        values.setProperty("CHAIN_ID", String.valueOf(chain.getChainId()));
+        values.setProperty("ETHALER_CONTRACT_ADDR", contract.getContractAddress());
+        values.setProperty("POLLING_INTERVAL", String.valueOf(POLLING_INTERVAL));
+        values.setProperty("POLLING_ATTEMPTS", String.valueOf(POLLING_ATTEMPTS));
+        values.putAll(properties);
+        config = ClientConfig.of(values);
+        executor = ChainExecutor.create(config);
+    }
+
+    /**
+     * @param credentials
+     * @return session of the account on the deployed contract
+     * @throws Exception
+     */
+    EThalerSession open(Credentials credentials) throws Exception {
+        return EThalerSession.open(config, web3j, executor, metrics, credentials);
+    }
+
+    SimulatedNode getNode() {
+        return node;
+    }
+
+    DevChain getChain() {
+        return chain;
+    }
+
+    Web3j getWeb3j() {
+        return web3j;
+    }
+
+    ClientConfig getConfig() {
+        return config;
+    }
+
+    ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    ChainExecutor getExecutor() {
+        return executor;
+    }
+
+    static AccountAddress address(Credentials credentials) {
+        return AccountAddress.of(credentials.getAddress());
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+        web3j.shutdown();
+    }
+}//end of class
@@ -0,0 +1,185 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.exceptions.ContractCallException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_B;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Contract functions through {@link EThalerService} and the generated wrapper, on the in-process chain.
+ */
+public class EThalerServiceTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+    private static final BigInteger SILVER = BigInteger.valueOf(2);
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new DevChainFixture();
+        owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.addNewTokenDefinition(new TokenInfo(SILVER, "Silver", 4, "https://ttf.example/silver")));
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void sessionReadsOwnerAndTokens() throws Exception {
+        EThalerSession ownerSession = fixture.open(OWNER);
+        EThalerSession dealerSession = fixture.open(DEALER_A);
+        assertTrue(ownerSession.isOwner());
+        assertFalse(dealerSession.isOwner());
+        assertEquals(2, dealerSession.getTokens().size());
+        assertEquals("Silver", dealerSession.getTokens().get(SILVER).getName());
+        assertEquals(4, dealerSession.getTokens().get(SILVER).getDecimals());
+        assertEquals(OWNER.getAddress(), await(owner.owner()));
+    }
+
+    @Test
+    public void mintRegisterAndTransfer() throws Exception {
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        for (Credentials dealer : Arrays.asList(OWNER, DEALER_A, DEALER_B)) {
+            await(owner.registerDealer(address(dealer), GOLD));
+        }
+        TransactionReceipt receipt = await(owner.transfer(address(DEALER_A), GOLD, BigInteger.valueOf(300)));
+        List<EThaler.TransferSingleEventResponse> events = owner.getContract().getTransferSingleEvents(receipt);
+        assertEquals(1, events.size());
+        assertEquals(OWNER.getAddress(), events.get(0).from);
+        assertEquals(DEALER_A.getAddress(), events.get(0).to);
+        assertEquals(BigInteger.valueOf(300), events.get(0).value);
+
+        EThalerService dealer = fixture.open(DEALER_A).getService();
+        await(dealer.transfer(address(DEALER_B), GOLD, BigInteger.valueOf(100)));
+        assertEquals(BigInteger.valueOf(200), await(dealer.balanceOf(GOLD)));
+        Map<BigInteger, BigInteger> balances = new LinkedHashMap<>();
+        balances.put(GOLD, BigInteger.valueOf(200));
+        balances.put(SILVER, BigInteger.ZERO);
+        assertEquals(balances, await(dealer.getTokenBalances()));
+        assertEquals(Arrays.asList(BigInteger.valueOf(700), BigInteger.valueOf(200), BigInteger.valueOf(100)),
+                await(owner.balanceOfBatch(Arrays.asList(address(OWNER), address(DEALER_A), address(DEALER_B)),
+                        Arrays.asList(GOLD, GOLD, GOLD))));
+    }
+
+    @Test
+    public void failingRequireIsRefusedBeforeSigning() throws Exception {
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        await(owner.pause(GOLD));
+        long blocks = fixture.getChain().getBlockNumber();
+        try {
+            await(owner.mint(GOLD, BigInteger.ONE));
+            fail("minting a paused token must fail");
+        } catch (IllegalStateException ex) {
+            assertEquals("eThaler: Token is paused. Minting is not permitted", ex.getMessage());
+        }
+        assertEquals(blocks, fixture.getChain().getBlockNumber());
+        assertTrue(await(owner.isPaused(GOLD)));
+        await(owner.resume(GOLD));
+        await(owner.mint(GOLD, BigInteger.ONE));
+        assertEquals(BigInteger.valueOf(1001), await(owner.balanceOf(address(OWNER), GOLD)));
+    }
+
+    @Test(expected = ContractCallException.class)
+    public void ownerOnlyCallRevertsForDealer() throws Exception {
+        await(fixture.open(DEALER_A).getService().isDealerRegistered(address(DEALER_B), GOLD));
+    }
+
+    @Test
+    public void tokenDefinitionsAndBalancesArePaged() throws Exception {
+        List<CompletableFuture<TransactionReceipt>> added = new ArrayList<>();
+        for (int id = 3; id <= 150; id++) {
+            added.add(owner.addNewTokenDefinition(new TokenInfo(BigInteger.valueOf(id), "Token " + id, id % 5, "https://ttf.example/" + id)));
+        }
+        CompletableFuture.allOf(added.toArray(new CompletableFuture<?>[0])).get();
+        TokenRegistry tokens = fixture.open(DEALER_A).getTokens();
+        assertEquals(150, tokens.size());
+        //the definitions are mined in the order the node received them, not in the order of the ids
+        EThalerAbi.TokenPage page = await(owner.getTokenDefinitions(100, 100));
+        assertEquals(150, page.total);
+        assertEquals(50, page.tokens.size());
+        assertEquals(tokens.getTokens().get(100).getId(), page.tokens.get(0).getId());
+        assertEquals("Token 150", tokens.get(BigInteger.valueOf(150)).getName());
+        assertEquals(4, tokens.get(BigInteger.valueOf(149)).getDecimals());
+        EThalerAbi.BalancePage balances = await(owner.getTokenBalances(100, 100));
+        assertEquals(150, balances.total);
+        assertEquals(50, balances.balances.size());
+        List<BigInteger> ids = new ArrayList<>();
+        for (TokenInfo token : tokens.getTokens()) {
+            ids.add(token.getId());
+        }
+        assertEquals(ids, new ArrayList<>(await(owner.getTokenBalances()).keySet()));
+    }
+
+    @Test
+    public void bytecodeCheckFindsTheContractFunctions() {
+        List<String> missing = EThalerAbi.missingFrom(EThaler.BINARY);
+        assertFalse(missing.contains("transfer(address,uint256,uint256)"));
+        //selector 0x00fdd58e, pushed as three bytes
+        assertFalse(missing.contains("balanceOf(address,uint256)"));
+        assertFalse(missing.contains("TransferSingle(address,address,address,uint256,uint256)"));
+        assertTrue(EThalerAbi.missingFrom("0x6080604052").contains("getTokenDefinitions(uint256,uint256)"));
+    }
+
+    @Test
+    public void bulkRegistrationFeedsTheDealerRegistry() throws Exception {
+        List<AccountAddress> accounts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            accounts.add(AccountAddress.of(Keys.getAddress(Keys.createEcKeyPair())));
+        }
+        try {
+            await(owner.registerDealers(accounts, Arrays.asList(GOLD, SILVER), BigInteger.valueOf(100000)));
+            fail("a gas limit below the registrations must fail");
+        } catch (TransactionException ex) {
+            assertTrue(ex.getMessage().contains("status: 0x0"));
+        }
+        TransactionReceipt receipt = await(owner.registerDealers(accounts, Arrays.asList(GOLD, SILVER), BigInteger.valueOf(3_000_000)));
+        assertTrue(receipt.getGasUsed().longValue() < 3_000_000);
+        //registrations already made are skipped
+        await(owner.registerDealers(accounts.subList(0, 5), Collections.singletonList(GOLD), BigInteger.valueOf(500000)));
+        await(owner.unregisterDealer(accounts.get(3), SILVER));
+
+        DealerRegistry registry = new DealerRegistry();
+        assertEquals(accounts, new ArrayList<>(await(registry.refresh(owner, GOLD))));
+        List<AccountAddress> silverDealers = new ArrayList<>(accounts);
+        silverDealers.remove(3);
+        assertEquals(silverDealers, new ArrayList<>(await(registry.refresh(owner, SILVER))));
+        assertTrue(await(owner.isDealerRegistered(accounts.get(3), GOLD)));
+        assertFalse(await(owner.isDealerRegistered(accounts.get(3), SILVER)));
+    }
+}//end of class
@@ -0,0 +1,106 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Gas limits estimated per function and argument size, and the chunks of the bulk registration.
+ */
+public class GasEstimatorTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+    private static final BigInteger SILVER = BigInteger.valueOf(2);
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+
+    private void start(Properties properties) throws Exception {
+        fixture = new DevChainFixture(properties);
+        owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.addNewTokenDefinition(new TokenInfo(SILVER, "Silver", 4, "https://ttf.example/silver")));
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void limitsFollowTheEstimates() throws Exception {
+        start(new Properties());
+        TransactionReceipt paused = await(owner.pause(GOLD));
+        BigInteger limit = gasLimit(paused);
+        assertTrue(limit.compareTo(paused.getGasUsed()) > 0);
+        assertTrue(limit.toString(), limit.compareTo(GasEstimator.DEFAULT_GAS_LIMIT) < 0);
+        long estimates = countEstimates();
+        //same function and size, from the cache
+        assertEquals(limit, gasLimit(await(owner.pause(SILVER))));
+        assertEquals(estimates, countEstimates());
+        //another function
+        await(owner.resume(GOLD));
+        assertEquals(estimates + 1, countEstimates());
+    }
+
+    @Test
+    public void fixedLimitIsNotEstimated() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("GAS_LIMIT", "300000");
+        start(properties);
+        assertEquals(BigInteger.valueOf(300000), gasLimit(await(owner.pause(GOLD))));
+        assertEquals(0, countEstimates());
+    }
+
+    @Test
+    public void bulkRegistrationFillsTheBlocks() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("SIM_BLOCK_GAS_LIMIT", "6000000");
+        start(properties);
+        List<AccountAddress> accounts = new ArrayList<>();
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            accounts.add(AccountAddress.of(Keys.getAddress(Keys.createEcKeyPair())));
+            file.append(accounts.get(i)).append('\n');
+        }
+        long blocks = fixture.getChain().getBlockNumber();
+        BulkRegistration registration = new BulkRegistration(fixture.open(OWNER), Collections.singletonMap("tokens", "1,2"));
+        assertEquals(0, registration.run(new BufferedReader(new StringReader(file.toString()))));
+        long transactions = fixture.getChain().getBlockNumber() - blocks;
+        //up to 4.8 million gas per chunk, the fixed upper bounds gave 49 accounts and 5 chunks
+        assertTrue(String.valueOf(transactions), transactions >= 3 && transactions < 5);
+        assertEquals(accounts, new ArrayList<>(await(new DealerRegistry().refresh(owner, SILVER))));
+    }
+
+    private BigInteger gasLimit(TransactionReceipt receipt) throws Exception {
+        Transaction transaction = fixture.getWeb3j().ethGetTransactionByHash(receipt.getTransactionHash()).send()
+                .getTransaction().get();
+        return transaction.getGas();
+    }
+
+    private long countEstimates() {
+        return fixture.getMetrics().timer("ethaler_rpc_request_seconds", "", "method", "eth_estimateGas").count();
+    }
+}//end of class
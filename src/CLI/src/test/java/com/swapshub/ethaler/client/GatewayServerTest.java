@@ -0,0 +1,90 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Status codes of the gateway for bad bodies, commands not permitted and operations refused before signing.
+ */
+public class GatewayServerTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private DevChainFixture fixture;
+    private GatewayServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new DevChainFixture();
+        EThalerSession owner = fixture.open(OWNER);
+        await(owner.getService().addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new GatewayServer(Arrays.asList(fixture.open(OWNER), fixture.open(DEALER_A)), new CommandProcessor(), 10);
+        server.start("127.0.0.1", port);
+        url = "http://127.0.0.1:" + port;
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        fixture.close();
+    }
+
+    @Test
+    public void bodyMustBeAnObject() throws Exception {
+        for (String body : new String[]{"", "null", "[1,2]", "12", "{\"tokenId\""}) {
+            HttpResponse<String> response = post("/mint", body);
+            assertEquals(body, 400, response.statusCode());
+            assertTrue(response.body(), response.body().contains("Request body is not a JSON object"));
+        }
+        assertEquals(200, post("/mint", "{\"tokenId\":1,\"amount\":10}").statusCode());
+    }
+
+    @Test
+    public void refusalsAreConflictsAndPermissionsForbidden() throws Exception {
+        String dealer = DevChainFixture.address(DEALER_A).toString();
+        //balance too low
+        HttpResponse<String> response = post("/burn", "{\"tokenId\":1,\"amount\":10}");
+        assertEquals(response.body(), 409, response.statusCode());
+        assertEquals(200, post("/pause", "{\"tokenId\":1}").statusCode());
+        response = post("/mint", "{\"tokenId\":1,\"amount\":10}");
+        assertEquals(response.body(), 409, response.statusCode());
+        assertTrue(response.body(), response.body().contains("Token is paused"));
+        //the dealer is not the owner
+        response = post("/resume", "{\"tokenId\":1,\"from\":\"" + dealer + "\"}");
+        assertEquals(response.body(), 403, response.statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}//end of class
@@ -0,0 +1,103 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.exceptions.TransactionException;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_B;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reasons of mined failed transactions, without the pre-flight checks refusing them first.
+ */
+public class RevertDiagnosisTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("PREFLIGHT", "off");
+        fixture = new DevChainFixture(properties);
+        owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        await(owner.registerDealer(address(OWNER), GOLD));
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void repeatedFailuresAreReplayedOnce() throws Exception {
+        long calls = countCalls();
+        assertFails(owner.transfer(address(DEALER_B), GOLD, BigInteger.ONE), "eThaler: receiver must be registered first");
+        assertEquals(calls + 1, countCalls());
+        //same call shape, another amount
+        assertFails(owner.transfer(address(DEALER_B), GOLD, BigInteger.TEN), "eThaler: receiver must be registered first");
+        assertEquals(calls + 1, countCalls());
+        assertEquals(1, diagnoses("cache"));
+        //another receiver is another shape
+        assertFails(owner.transfer(address(DEALER_A), GOLD, BigInteger.ONE), "eThaler: receiver must be registered first");
+        assertEquals(calls + 2, countCalls());
+    }
+
+    @Test
+    public void wrapperTransactionsAreDiagnosed() throws Exception {
+        assertFails(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")),
+                "eThaler: tokenId is already defined");
+        assertFails(fixture.open(DEALER_A).getService().registerDealer(address(DEALER_A), GOLD), "You are not the owner.");
+    }
+
+    @Test
+    public void exhaustedGasIsNotReplayed() throws Exception {
+        long calls = countCalls();
+        assertFails(owner.registerDealers(Arrays.asList(address(DEALER_A), address(DEALER_B)), Arrays.asList(GOLD),
+                BigInteger.valueOf(30000)), "out of gas");
+        assertEquals(calls, countCalls());
+        assertEquals(1, diagnoses("gas"));
+    }
+
+    private static void assertFails(CompletableFuture<?> operation, String reason) throws Exception {
+        try {
+            await(operation);
+            fail("the transaction must fail : " + reason);
+        } catch (TransactionException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("status: 0x0"));
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Reason : " + reason));
+            assertTrue(ex.getTransactionHash().isPresent());
+        }
+    }
+
+    private long diagnoses(String source) {
+        return fixture.getMetrics().counter("ethaler_revert_diagnoses_total", "", "source", source).get();
+    }
+
+    private long countCalls() {
+        return fixture.getMetrics().timer("ethaler_rpc_request_seconds", "", "method", "eth_call").count();
+    }
+}//end of class
@@ -0,0 +1,133 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_B;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records the replay benchmark session over HTTP in front of the in-process chain, then replays it without the chain.
+ */
+public class RpcReplayServiceTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+    private static final ObjectMapper MAPPER = ObjectMapperFactory.getObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DevChainFixture fixture;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new DevChainFixture();
+        EThalerService owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        for (Credentials dealer : Arrays.asList(OWNER, DEALER_A, DEALER_B)) {
+            await(owner.registerDealer(address(dealer), GOLD));
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body;
+            try {
+                Request<?, ?> request = MAPPER.readValue(exchange.getRequestBody(), Request.class);
+                Answer answer = fixture.getChain().send(request, Answer.class);
+                ObjectNode json = MAPPER.createObjectNode();
+                json.put("jsonrpc", "2.0");
+                json.put("id", answer.getId());
+                if (answer.hasError()) {
+                    json.set("error", MAPPER.valueToTree(answer.getError()));
+                } else {
+                    json.set("result", answer.getResult());
+                }
+                body = MAPPER.writeValueAsBytes(json);
+            } catch (Exception ex) {
+                body = ex.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        fixture.close();
+    }
+
+    @Test
+    public void replaysRecordedSession() throws Exception {
+        File file = folder.newFile("session.rpc.gz");
+        ReplayBenchmark benchmark = new ReplayBenchmark(fixture.getConfig(), fixture.getExecutor(), fixture.getMetrics(),
+                Collections.singletonMap("transfers", "5"));
+        RpcRecording.Recorder recorder = new RpcRecording.Recorder(file);
+        HttpService http = new HttpService("http://127.0.0.1:" + server.getAddress().getPort(),
+                new OkHttpClient.Builder().addInterceptor(recorder).build(), false);
+        Web3j recorded = Web3j.build(http);
+        benchmark.runSession(recorded, OWNER);
+        recorded.shutdown();
+        recorder.close();
+        assertEquals(BigInteger.valueOf(995), await(fixture.open(OWNER).getService().getTokenBalances()).get(GOLD));
+
+        List<RpcRecording.Exchange> recording = RpcRecording.read(file);
+        assertEquals(recorder.getRecorded(), recording.size());
+        long blocks = fixture.getChain().getBlockNumber();
+        for (int i = 0; i < 2; i++) {
+            RpcReplayService replay = new RpcReplayService(recording, false);
+            Web3j web3j = Web3j.build(replay);
+            benchmark.runSession(web3j, OWNER);
+            web3j.shutdown();
+            assertEquals(0, replay.getUnmatched());
+            assertTrue(replay.getServed() >= recording.size());
+        }
+        assertEquals(blocks, fixture.getChain().getBlockNumber());
+    }
+
+    /**
+     * answer of the chain, its result kept as JSON
+     */
+    public static class Answer extends Response<JsonNode> {
+    }
+}//end of class
@@ -0,0 +1,140 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.devchain.SimulatedNode;
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The client on a {@link SimulatedNode} with block times and faults.
+ */
+public class SimulatedNodeTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    private DevChainFixture fixture;
+
+    @After
+    public void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    private EThalerService open(String... settings) throws Exception {
+        Properties properties = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            properties.setProperty(settings[i], settings[i + 1]);
+        }
+        fixture = new DevChainFixture(properties);
+        EThalerService owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        return owner;
+    }
+
+    @Test
+    public void blockIntervalMinesTransactionsTogether() throws Exception {
+        EThalerService owner = open("SIM_BLOCK_INTERVAL", "100");
+        List<CompletableFuture<TransactionReceipt>> minted = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            minted.add(owner.mint(GOLD, BigInteger.TEN));
+        }
+        Set<BigInteger> blocks = new HashSet<>();
+        for (CompletableFuture<TransactionReceipt> receipt : minted) {
+            blocks.add(await(receipt).getBlockNumber());
+        }
+        assertTrue("blocks : " + blocks, blocks.size() < minted.size());
+        assertEquals(BigInteger.valueOf(100), await(owner.balanceOf(address(OWNER), GOLD)));
+    }
+
+    @Test
+    public void rejectedNoncesLoseNoTransaction() throws Exception {
+        EThalerService owner = open("SIM_NONCE_ERROR_RATE", "0.3", "SIM_SEED", "7");
+        long minted = 0;
+        for (int i = 1; i <= 20; i++) {
+            try {
+                await(owner.mint(GOLD, BigInteger.valueOf(i)));
+                minted += i;
+            } catch (Exception ex) {
+                //rejected twice in a row : the transaction manager sends once more only
+                assertTrue(ex.getMessage(), ex.getMessage().contains("Nonce too low"));
+            }
+        }
+        assertTrue(fixture.getNode().getNonceErrors() > 0);
+        assertTrue(minted > 0);
+        assertEquals(BigInteger.valueOf(minted), await(owner.balanceOf(address(OWNER), GOLD)));
+    }
+
+    @Test
+    public void reorgMovesReceiptsAndRemovesLogs() throws Exception {
+        EThalerService owner = open();
+        BigInteger filterId = fixture.getWeb3j().ethNewFilter(new EthFilter(DefaultBlockParameterName.LATEST,
+                DefaultBlockParameterName.LATEST, fixture.getConfig().getContractAddress())).send().getFilterId();
+        TransactionReceipt receipt = await(owner.mint(GOLD, BigInteger.TEN));
+        assertEquals(1, logs(filterId).size());
+
+        fixture.getChain().reorg(1);
+        List<Log> changes = logs(filterId);
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(0).isRemoved());
+        assertEquals(receipt.getBlockHash(), changes.get(0).getBlockHash());
+        assertFalse(changes.get(1).isRemoved());
+        assertEquals(receipt.getBlockNumber().add(BigInteger.ONE), changes.get(1).getBlockNumber());
+        TransactionReceipt moved = fixture.getWeb3j().ethGetTransactionReceipt(receipt.getTransactionHash()).send()
+                .getTransactionReceipt().get();
+        assertNotEquals(receipt.getBlockHash(), moved.getBlockHash());
+        assertEquals(BigInteger.TEN, await(owner.balanceOf(address(OWNER), GOLD)));
+    }
+
+    @Test
+    public void rateLimitAnswersTooManyRequests() throws Exception {
+        open("SIM_RATE_LIMIT", "1", "SIM_RATE_BURST", "50");
+        try {
+            for (int i = 0; i < 50; i++) {
+                fixture.getWeb3j().ethBlockNumber().send();
+            }
+            fail("the burst is used by the setup already");
+        } catch (ClientConnectionException ex) {
+            assertTrue(ex.getMessage().contains("429"));
+        }
+        assertTrue(fixture.getNode().getRateLimited() > 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Log> logs(BigInteger filterId) throws Exception {
+        List<Log> logs = new ArrayList<>();
+        for (EthLog.LogResult<?> result : fixture.getWeb3j().ethGetFilterChanges(filterId).send().getLogs()) {
+            logs.add(((EthLog.LogResult<Log>) result).get());
+        }
+        return logs;
+    }
+}//end of class
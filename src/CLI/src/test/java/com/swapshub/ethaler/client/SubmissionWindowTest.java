@@ -0,0 +1,194 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * AIMD tuning of the in-flight window, alone and against the pool limit and block interval of the simulated node.
+ */
+public class SubmissionWindowTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+    private static final AccountAddress ACCOUNT = DevChainFixture.address(OWNER);
+
+    private final ClientMetrics metrics = new ClientMetrics();
+    private DevChainFixture fixture;
+
+    @After
+    public void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void growsByOnePerWindowConfirmed() throws Exception {
+        //no latency is slow enough to shrink it
+        SubmissionWindow window = new SubmissionWindow(2, 1, 4, 1e9, metrics, ACCOUNT);
+        //each confirmation adds 1/window : 2.5, 2.9, 3.24, then 3.55, 3.83, 4.1
+        confirm(window, 2);
+        assertEquals(2, window.getWindow());
+        confirm(window, 1);
+        assertEquals(3, window.getWindow());
+        confirm(window, 2);
+        assertEquals(3, window.getWindow());
+        confirm(window, 1);
+        assertEquals(4, window.getWindow());
+        confirm(window, 20);
+        assertEquals(4, window.getWindow());
+        assertEquals(2, changes(SubmissionWindow.INCREASE));
+        assertEquals(4, windowGauge());
+    }
+
+    @Test
+    public void halvesOncePerBaseLatency() throws Exception {
+        SubmissionWindow window = new SubmissionWindow(16, 1, 64, 1e9, metrics, ACCOUNT);
+        long started = window.acquire();
+        Thread.sleep(200);
+        window.release(started, true);
+        window.congested(SubmissionWindow.POOL_REJECTION);
+        assertEquals(8, window.getWindow());
+        //the same congestion, seen by the other transactions in flight
+        window.congested(SubmissionWindow.POOL_REJECTION);
+        window.congested(SubmissionWindow.NONCE_ERROR);
+        assertEquals(8, window.getWindow());
+        Thread.sleep(250);
+        window.congested(SubmissionWindow.NONCE_ERROR);
+        assertEquals(4, window.getWindow());
+        assertEquals(1, changes(SubmissionWindow.POOL_REJECTION));
+        assertEquals(1, changes(SubmissionWindow.NONCE_ERROR));
+        assertEquals(SubmissionWindow.POOL_REJECTION, SubmissionWindow.reasonOf("Transaction pool is full"));
+        assertEquals(SubmissionWindow.NONCE_ERROR, SubmissionWindow.reasonOf("Nonce too low"));
+        assertEquals(null, SubmissionWindow.reasonOf("Execution reverted"));
+    }
+
+    @Test
+    public void slowConfirmationShrinksTheWindow() throws Exception {
+        SubmissionWindow window = new SubmissionWindow(8, 1, 64, 3, metrics, ACCOUNT);
+        long started = window.acquire();
+        Thread.sleep(20);
+        window.release(started, true);
+        started = window.acquire();
+        Thread.sleep(200);
+        window.release(started, true);
+        assertEquals(4, window.getWindow());
+        assertEquals(1, changes(SubmissionWindow.LATENCY));
+    }
+
+    @Test
+    public void windowKeepsThePoolFromFilling() throws Exception {
+        List<CompletableFuture<TransactionReceipt>> mints = mint(start("4"), 20);
+        for (CompletableFuture<TransactionReceipt> mint : mints) {
+            assertTrue(await(mint).isStatusOK());
+        }
+        assertEquals(0, fixture.getNode().getPoolRejections());
+        assertTrue(windowGauge() <= 4);
+    }
+
+    @Test
+    public void poolRejectionsShrinkTheWindow() throws Exception {
+        int rejected = 0;
+        for (CompletableFuture<TransactionReceipt> mint : mint(start("64"), 40)) {
+            try {
+                await(mint);
+            } catch (RuntimeException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("Transaction pool is full"));
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0);
+        assertEquals(rejected, fixture.getNode().getPoolRejections());
+        assertTrue(changes(SubmissionWindow.POOL_REJECTION) > 0);
+        assertTrue(windowGauge() < 16);
+    }
+
+    @Test
+    public void receiptTimeoutShrinksTheWindow() throws Exception {
+        Properties properties = new Properties();
+        //a block every 500 ms, receipts polled for about 60 ms
+        properties.setProperty("SIM_BLOCK_INTERVAL", "500");
+        properties.setProperty("POLLING_ATTEMPTS", "3");
+        properties.setProperty("POLLING_INTERVAL", "20");
+        properties.setProperty("PREFLIGHT", "off");
+        properties.setProperty("GAS_LIMIT", "300000");
+        fixture = new DevChainFixture(properties);
+        EThalerService owner = fixture.open(OWNER).getService();
+        //sent right after a block, so the next one comes after the last polling attempt
+        long block = fixture.getChain().getBlockNumber();
+        while (fixture.getChain().getBlockNumber() == block) {
+            Thread.sleep(5);
+        }
+        try {
+            await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+            fail("the receipt cannot arrive within the polling attempts");
+        } catch (TransactionException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("receipt was not generated"));
+        }
+        assertEquals(1, changes(SubmissionWindow.LATENCY));
+        assertEquals(8, windowGauge());
+    }
+
+    /**
+     * @param windowMax TX_WINDOW_MAX, with the window starting at 16
+     * @return owner service on a node mining every 100 ms, whose pool holds 5 transactions
+     */
+    private EThalerService start(String windowMax) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("SIM_BLOCK_INTERVAL", "100");
+        properties.setProperty("SIM_POOL_SIZE", "5");
+        properties.setProperty("PREFLIGHT", "off");
+        properties.setProperty("GAS_LIMIT", "300000");
+        properties.setProperty("TX_WINDOW_MAX", windowMax);
+        fixture = new DevChainFixture(properties);
+        EThalerService owner = fixture.open(OWNER).getService();
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        return owner;
+    }
+
+    private List<CompletableFuture<TransactionReceipt>> mint(EThalerService owner, int count) {
+        List<CompletableFuture<TransactionReceipt>> mints = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            mints.add(owner.mint(GOLD, BigInteger.TEN));
+        }
+        return mints;
+    }
+
+    private static void confirm(SubmissionWindow window, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            window.release(window.acquire(), true);
+        }
+    }
+
+    private long changes(String reason) {
+        return metrics().counter("ethaler_tx_window_changes_total", "", "reason", reason).get();
+    }
+
+    private long windowGauge() {
+        return metrics().gauge("ethaler_tx_window", "", "account", ACCOUNT.toString()).get();
+    }
+
+    private ClientMetrics metrics() {
+        return fixture != null ? fixture.getMetrics() : metrics;
+    }
+}//end of class
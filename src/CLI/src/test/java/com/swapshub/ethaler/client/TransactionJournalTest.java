@@ -0,0 +1,195 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.client;
+
+import com.swapshub.ethaler.devchain.SimulatedNode;
+import io.reactivex.Flowable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static com.swapshub.ethaler.client.DevChainFixture.DEALER_A;
+import static com.swapshub.ethaler.client.DevChainFixture.OWNER;
+import static com.swapshub.ethaler.client.DevChainFixture.address;
+import static com.swapshub.ethaler.client.EThalerService.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Journaling of the session transactions and reconciliation of the ones a stopped run left without outcome.
+ */
+public class TransactionJournalTest {
+    private static final BigInteger GOLD = BigInteger.ONE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DevChainFixture fixture;
+    private EThalerService owner;
+    private TransactionJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("TX_JOURNAL_DIR", folder.getRoot().getPath());
+        fixture = new DevChainFixture(properties);
+        owner = fixture.open(OWNER).getService();
+        journal = TransactionJournal.open(fixture.getConfig(), address(OWNER));
+        await(owner.addNewTokenDefinition(new TokenInfo(GOLD, "Gold", 2, "https://ttf.example/gold")));
+        await(owner.mint(GOLD, BigInteger.valueOf(1000)));
+        await(owner.registerDealer(address(OWNER), GOLD));
+        await(owner.registerDealer(address(DEALER_A), GOLD));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        fixture.close();
+    }
+
+    @Test
+    public void journalsBeforeBroadcastAndRecordsReceipts() throws Exception {
+        String lines = new String(Files.readAllBytes(journal.getFile().toPath()), StandardCharsets.UTF_8);
+        assertEquals(4, count(lines, "\"type\":\"signed\""));
+        assertEquals(4, count(lines, "\"type\":\"mined\""));
+        assertTrue(journal.getUnresolved().isEmpty());
+    }
+
+    @Test
+    public void reconcilesTransactionsOfStoppedRun() throws Exception {
+        BigInteger nonce = fixture.getWeb3j().ethGetTransactionCount(OWNER.getAddress(), DefaultBlockParameterName.PENDING)
+                .send().getTransactionCount();
+        //signed and journaled, then the client stopped before the broadcast
+        String unsent = sign(nonce, EThalerAbi.encodeTransfer(address(DEALER_A), GOLD, TokenAmount.of(BigInteger.TEN)));
+        journal.signed(nonce, Hash.sha3(unsent), unsent, "transfer", "payments.txt line 7");
+        //signed with a nonce another transaction used, it never ran
+        String stale = sign(nonce.subtract(BigInteger.ONE), EThalerAbi.encodeTransfer(address(DEALER_A), GOLD, TokenAmount.of(BigInteger.ONE)));
+        journal.signed(nonce.subtract(BigInteger.ONE), Hash.sha3(stale), stale, "transfer", "payments.txt line 8");
+        File file = journal.getFile();
+        journal.close();
+        Files.write(file.toPath(), "{\"type\":\"sig".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = TransactionJournal.open(fixture.getConfig(), address(OWNER));
+        assertEquals(2, journal.getUnresolved().size());
+        List<String> report = new TransactionReconciler(fixture.getWeb3j(), address(OWNER), journal,
+                new MeteredReceiptProcessor(fixture.getWeb3j(), 50, 10, fixture.getMetrics())).reconcile();
+
+        assertEquals(2, report.size());
+        assertTrue(report.get(0), report.get(0).startsWith("payments.txt line 8") && report.get(0).contains("not executed"));
+        assertTrue(report.get(1), report.get(1).startsWith("payments.txt line 7") && report.get(1).contains("mined in block"));
+        assertTrue(journal.getUnresolved().isEmpty());
+        assertEquals(BigInteger.TEN, await(fixture.open(DEALER_A).getService().balanceOf(GOLD)));
+        //a second run finds nothing to do
+        assertTrue(new TransactionReconciler(fixture.getWeb3j(), address(OWNER), journal, null).reconcile().isEmpty());
+    }
+
+    @Test
+    public void transactionMinedBeforeItsRebroadcastIsSettledAsMined() throws Exception {
+        BigInteger nonce = fixture.getWeb3j().ethGetTransactionCount(OWNER.getAddress(), DefaultBlockParameterName.PENDING)
+                .send().getTransactionCount();
+        String unsent = sign(nonce, EThalerAbi.encodeTransfer(address(DEALER_A), GOLD, TokenAmount.of(BigInteger.TEN)));
+        String hash = Hash.sha3(unsent);
+        journal.signed(nonce, hash, unsent, "transfer", "payments.txt line 9");
+        //another client broadcasts the transaction right after the reconciler found no receipt for it,
+        //so the rebroadcast is refused with "Nonce too low"
+        Web3j web3j = Web3j.build(new MinedAfterLookup(fixture.getNode(), hash, unsent), 10,
+                Executors.newSingleThreadScheduledExecutor());
+        List<String> report = new TransactionReconciler(web3j, address(OWNER), journal,
+                new MeteredReceiptProcessor(web3j, 50, 10, fixture.getMetrics())).reconcile();
+        web3j.shutdown();
+
+        assertEquals(1, report.size());
+        assertTrue(report.get(0), report.get(0).startsWith("payments.txt line 9") && report.get(0).contains("mined in block"));
+        assertTrue(journal.getUnresolved().isEmpty());
+        assertEquals(BigInteger.TEN, await(fixture.open(DEALER_A).getService().balanceOf(GOLD)));
+    }
+
+    private String sign(BigInteger nonce, String data) {
+        RawTransaction transaction = RawTransaction.createTransaction(nonce, BigInteger.ZERO, BigInteger.valueOf(430000),
+                fixture.getConfig().getContractAddress(), BigInteger.ZERO, data);
+        return Numeric.toHexString(TransactionEncoder.signMessage(transaction, fixture.getChain().getChainId(), OWNER));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * the node, which mines a transaction once its receipt was first looked up and found missing
+     */
+    //the methods of Web3jService take a raw Request, which an implementation cannot parameterize
+    @SuppressWarnings("rawtypes")
+    private static final class MinedAfterLookup implements Web3jService {
+        private final SimulatedNode node;
+        private final String hash;
+        private final String raw;
+        private boolean mined;
+
+        MinedAfterLookup(SimulatedNode node, String hash, String raw) {
+            this.node = node;
+            this.hash = hash;
+            this.raw = raw;
+        }
+
+        @Override
+        public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+            T response = node.send(request, responseType);
+            if (!mined && "eth_getTransactionReceipt".equals(request.getMethod()) && hash.equals(request.getParams().get(0))) {
+                mined = true;
+                node.send(new Request<>("eth_sendRawTransaction", Collections.singletonList(raw), node, EthSendTransaction.class),
+                        EthSendTransaction.class);
+            }
+            return response;
+        }
+
+        @Override
+        public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+            return node.sendAsync(request, responseType);
+        }
+
+        @Override
+        public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+            return node.subscribe(request, unsubscribeMethod, responseType);
+        }
+
+        @Override
+        public void close() {
+            //the node belongs to the fixture
+        }
+    }
+}//end of class
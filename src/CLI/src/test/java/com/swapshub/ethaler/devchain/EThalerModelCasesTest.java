@@ -0,0 +1,254 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swapshub.ethaler.w3generated.EThaler;
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint8;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.RawTransactionManager;
+import org.web3j.tx.gas.StaticGasProvider;
+import org.web3j.utils.Numeric;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the behavioral cases of src/test/eThalerCases.json on {@link EThalerModel}, each case on a new {@link DevChain}.
+ * The truffle test src/test/eThalerCases.js runs the same cases on the compiled contract, so this test checks the
+ * Java model and the truffle test checks eThaler.sol : the cases hold for both only while they behave the same.
+ */
+public class EThalerModelCasesTest {
+    private static final File CASES = new File("../test/eThalerCases.json");
+    private static final BigInteger GAS_LIMIT = BigInteger.valueOf(3_000_000);
+    private static final int WORD = 32;
+
+    private final Map<String, Credentials> accounts = new HashMap<>();
+    private final Map<String, String> eventNames = new HashMap<>();
+    private DevChain chain;
+    private Web3j web3j;
+    private String contract;
+
+    @After
+    public void tearDown() {
+        if (web3j != null) {
+            web3j.shutdown();
+        }
+    }
+
+    @Test
+    public void casesHoldForTheModel() throws Exception {
+        JsonNode cases = new ObjectMapper().readTree(CASES);
+        for (JsonNode name : cases.get("accounts")) {
+            accounts.put(name.asText(), Credentials.create(Keys.createEcKeyPair()));
+        }
+        for (String signature : EThalerModel.getEvents().keySet()) {
+            eventNames.put(Hash.sha3String(signature), signature.substring(0, signature.indexOf('(')));
+        }
+        for (JsonNode testCase : cases.get("cases")) {
+            deploy(accounts.get(cases.get("accounts").get(0).asText()));
+            for (JsonNode step : testCase.get("steps")) {
+                run(testCase.get("name").asText(), step);
+            }
+            web3j.shutdown();
+        }
+    }
+
+    private void deploy(Credentials owner) throws Exception {
+        chain = new DevChain();
+        web3j = Web3j.build(chain);
+        contract = EThaler.deploy(web3j, new RawTransactionManager(web3j, owner, chain.getChainId()),
+                new StaticGasProvider(BigInteger.ZERO, GAS_LIMIT)).send().getContractAddress();
+    }
+
+    private void run(String testCase, JsonNode step) throws Exception {
+        boolean send = step.has("send");
+        String signature = step.get(send ? "send" : "call").asText();
+        String label = testCase + " : " + signature + " from " + step.get("from").asText();
+        Credentials from = accounts.get(step.get("from").asText());
+        String data = encode(signature, step.path("args"));
+        EthCall call = web3j.ethCall(Transaction.createEthCallTransaction(from.getAddress(), contract, data),
+                DefaultBlockParameterName.LATEST).send();
+        if (step.has("revert")) {
+            assertTrue(label + " must revert", call.hasError());
+            String reason = revertReason(call.getError().getData());
+            assertTrue(label + " reverted with " + reason, reason != null && reason.contains(step.get("revert").asText()));
+            if (send) {
+                assertEquals(label, "0x0", transact(from, data).getStatus());
+            }
+        } else if (send) {
+            assertTrue(label + " failed : " + (call.hasError() ? call.getError().getMessage() : ""), !call.hasError());
+            TransactionReceipt receipt = transact(from, data);
+            assertEquals(label, "0x1", receipt.getStatus());
+            List<String> events = new ArrayList<>();
+            for (Log log : receipt.getLogs()) {
+                events.add(eventNames.get(log.getTopics().get(0)));
+            }
+            assertEquals(label, normalize(step.get("events")), events);
+        } else {
+            assertTrue(label + " failed : " + (call.hasError() ? call.getError().getMessage() : ""), !call.hasError());
+            byte[] result = Numeric.hexStringToByteArray(call.getValue());
+            List<Object> values = new ArrayList<>();
+            JsonNode outputs = step.get("outputs");
+            for (int i = 0; i < outputs.size(); i++) {
+                values.add(decode(result, 0, i, outputs.get(i).asText()));
+            }
+            assertEquals(label, normalize(step.get("returns")), values);
+        }
+    }
+
+    private TransactionReceipt transact(Credentials from, String data) throws Exception {
+        String hash = new RawTransactionManager(web3j, from, chain.getChainId())
+                .sendTransaction(BigInteger.ZERO, GAS_LIMIT, contract, data, BigInteger.ZERO).getTransactionHash();
+        TransactionReceipt receipt = web3j.ethGetTransactionReceipt(hash).send().getTransactionReceipt().orElse(null);
+        assertNotNull("no receipt for " + hash, receipt);
+        return receipt;
+    }
+
+    /**
+     * @param signature e.g. "transfer(address,uint256,uint256)"
+     * @param args JSON arguments, "@name" for the address of an account
+     * @return call data
+     */
+    private String encode(String signature, JsonNode args) {
+        String name = signature.substring(0, signature.indexOf('('));
+        String parameters = signature.substring(name.length() + 1, signature.length() - 1);
+        List<String> types = parameters.isEmpty() ? Collections.emptyList() : Arrays.asList(parameters.split(","));
+        List<Type<?>> values = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++) {
+            values.add(argument(types.get(i), args.get(i)));
+        }
+        return FunctionEncoder.encode(new Function(name, new ArrayList<>(values), Collections.emptyList()));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Type<?> argument(String type, JsonNode value) {
+        if (type.endsWith("[]")) {
+            String elementType = type.substring(0, type.length() - 2);
+            List<Type<?>> elements = new ArrayList<>();
+            for (JsonNode element : value) {
+                elements.add(argument(elementType, element));
+            }
+            return new DynamicArray(elements.isEmpty() ? Uint256.class : elements.get(0).getClass(), elements);
+        }
+        switch (type) {
+            case "uint256":
+                return new Uint256(new BigInteger(value.asText()));
+            case "uint8":
+                return new Uint8(new BigInteger(value.asText()));
+            case "bool":
+                return new Bool(value.asBoolean());
+            case "address":
+                return new Address(address(value.asText()));
+            case "string":
+                return new Utf8String(value.asText());
+            case "bytes":
+                return new DynamicBytes(Numeric.hexStringToByteArray(value.asText()));
+            default:
+                throw new IllegalArgumentException("Unsupported parameter type " + type);
+        }
+    }
+
+    private String address(String name) {
+        return accounts.get(name.substring(1)).getAddress().toLowerCase();
+    }
+
+    /**
+     * @return the expected values as strings, numbers in decimal and addresses in lower case
+     */
+    private Object normalize(JsonNode value) {
+        if (value.isArray()) {
+            List<Object> values = new ArrayList<>();
+            for (JsonNode element : value) {
+                values.add(normalize(element));
+            }
+            return values;
+        }
+        return value.asText().startsWith("@") ? address(value.asText()) : value.asText();
+    }
+
+    /**
+     * @param data ABI encoded values
+     * @param base start of the encoded values, the offsets of the dynamic ones are counted from it
+     * @param index
+     * @param type uint256, uint8, bool, address, string or an array of one of them
+     * @return the value as a string, an array as a list
+     */
+    private static Object decode(byte[] data, int base, int index, String type) {
+        BigInteger word = word(data, base + WORD * index);
+        if (type.endsWith("[]")) {
+            int start = base + word.intValue();
+            int length = word(data, start).intValue();
+            List<Object> elements = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                elements.add(decode(data, start + WORD, i, type.substring(0, type.length() - 2)));
+            }
+            return elements;
+        }
+        switch (type) {
+            case "bool":
+                return String.valueOf(word.signum() != 0);
+            case "address":
+                return Numeric.toHexStringWithPrefixZeroPadded(word, 40);
+            case "string":
+                int start = base + word.intValue();
+                return new String(data, start + WORD, word(data, start).intValue(), StandardCharsets.UTF_8);
+            default:
+                return word.toString();
+        }
+    }
+
+    private static BigInteger word(byte[] data, int offset) {
+        return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD));
+    }
+
+    /**
+     * @param data error data of a reverted call, as JSON : web3j 4.5 keeps a string in quotes
+     * @return the Error(string) reason, null when the data is not one
+     */
+    private static String revertReason(String data) {
+        data = data == null ? null : data.replace("\"", "");
+        if (data == null || !data.startsWith("0x08c379a0")) {
+            return null;
+        }
+        byte[] encoded = Numeric.hexStringToByteArray(data.substring(10));
+        return (String) decode(encoded, 0, 0, "string");
+    }
+}//end of class
@@ -0,0 +1,169 @@
+/**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+*/
+
+package com.swapshub.ethaler.devchain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link EThalerModel} against the contract : its functions and events must be the external and public functions
+ * and the events declared in src/contracts/eThaler.sol, plus the ones inherited from ERC1155 as found in the
+ * compiled ABI (src/build/contracts/eThaler.json). The declarations of eThaler itself are read from the source,
+ * so the check holds while the checked-in artifact is an older build; a current artifact is compared as a whole.
+ */
+public class EThalerModelParityTest {
+    private static final File SOURCE = new File("../contracts/eThaler.sol");
+    private static final File ARTIFACT = new File("../build/contracts/eThaler.json");
+    //declared by IERC1155, no function of eThaler or ERC1155 emits it
+    private static final Set<String> NOT_EMITTED = Collections.singleton("URI(string,uint256)");
+
+    private static final Pattern FUNCTION = Pattern.compile("function\\s+(\\w+)\\s*\\(([^)]*)\\)([^{;]*)");
+    private static final Pattern PUBLIC_VARIABLE = Pattern.compile("(?m)^\\s*\\w+\\s+public\\s+(\\w+)\\s*;");
+    private static final Pattern EVENT = Pattern.compile("event\\s+(\\w+)\\s*\\(([^)]*)\\)\\s*;");
+
+    private final Set<String> sourceFunctions = new TreeSet<>();
+    private final Map<String, Integer> sourceEvents = new TreeMap<>();
+    private final Set<String> abiFunctions = new TreeSet<>();
+    private final Map<String, Integer> abiEvents = new TreeMap<>();
+    private boolean currentArtifact;
+
+    @Before
+    public void setUp() throws Exception {
+        readSource();
+        readArtifact();
+    }
+
+    @Test
+    public void functionsMatchTheContract() {
+        Set<String> expected = new TreeSet<>(sourceFunctions);
+        expected.addAll(inherited(abiFunctions, sourceFunctions));
+        assertEquals(expected, new EThalerModel("0x0000000000000000000000000000000000000001").getFunctionSignatures());
+    }
+
+    @Test
+    public void eventsMatchTheContract() {
+        Map<String, Integer> expected = new TreeMap<>(sourceEvents);
+        for (String signature : inherited(abiEvents.keySet(), sourceEvents.keySet())) {
+            expected.put(signature, abiEvents.get(signature));
+        }
+        assertTrue(expected.keySet().containsAll(NOT_EMITTED));
+        expected.keySet().removeAll(NOT_EMITTED);
+        assertEquals(expected, EThalerModel.getEvents());
+    }
+
+    @Test
+    public void compiledArtifactMatchesTheSource() {
+        Assume.assumeTrue(ARTIFACT + " is an older build of eThaler.sol", currentArtifact);
+        assertTrue(abiFunctions.containsAll(sourceFunctions));
+        for (Map.Entry<String, Integer> event : sourceEvents.entrySet()) {
+            assertEquals(event.getKey(), event.getValue(), abiEvents.get(event.getKey()));
+        }
+    }
+
+    /**
+     * reads the external and public functions, public state variables and events declared by eThaler
+     */
+    private void readSource() throws Exception {
+        String source = new String(Files.readAllBytes(SOURCE.toPath()), StandardCharsets.UTF_8)
+                .replaceAll("(?s)/\\*.*?\\*/", "")
+                .replaceAll("//[^\\n]*", "");
+        Matcher function = FUNCTION.matcher(source);
+        while (function.find()) {
+            String modifiers = function.group(3);
+            if (modifiers.matches("(?s).*\\b(external|public)\\b.*")) {
+                sourceFunctions.add(function.group(1) + "(" + String.join(",", types(function.group(2))) + ")");
+            }
+        }
+        Matcher variable = PUBLIC_VARIABLE.matcher(source);
+        while (variable.find()) {
+            sourceFunctions.add(variable.group(1) + "()");
+        }
+        Matcher event = EVENT.matcher(source);
+        while (event.find()) {
+            int indexed = 0;
+            for (String parameter : event.group(2).split(",")) {
+                if (parameter.matches(".*\\bindexed\\b.*")) {
+                    indexed++;
+                }
+            }
+            sourceEvents.put(event.group(1) + "(" + String.join(",", types(event.group(2))) + ")", indexed);
+        }
+    }
+
+    private void readArtifact() throws Exception {
+        for (JsonNode entry : new ObjectMapper().readTree(ARTIFACT).get("abi")) {
+            List<String> types = new ArrayList<>();
+            int indexed = 0;
+            for (JsonNode input : entry.path("inputs")) {
+                types.add(input.get("type").asText());
+                if (input.path("indexed").asBoolean()) {
+                    indexed++;
+                }
+            }
+            String signature = entry.path("name").asText() + "(" + String.join(",", types) + ")";
+            if ("function".equals(entry.get("type").asText())) {
+                abiFunctions.add(signature);
+                currentArtifact |= entry.get("name").asText().equals("getTokenDefinitions");
+            } else if ("event".equals(entry.get("type").asText())) {
+                abiEvents.put(signature, indexed);
+            }
+        }
+    }
+
+    /**
+     * @return the signatures of the compiled ABI whose name eThaler does not declare itself
+     */
+    private static Set<String> inherited(Set<String> compiled, Set<String> declared) {
+        Set<String> names = new TreeSet<>();
+        for (String signature : declared) {
+            names.add(signature.substring(0, signature.indexOf('(')));
+        }
+        Set<String> inherited = new TreeSet<>();
+        for (String signature : compiled) {
+            if (!names.contains(signature.substring(0, signature.indexOf('(')))) {
+                inherited.add(signature);
+            }
+        }
+        return inherited;
+    }
+
+    /**
+     * @param parameters Solidity parameter list, e.g. "address[] calldata accounts, uint256 tokenId"
+     * @return the type of each parameter
+     */
+    private static List<String> types(String parameters) {
+        List<String> types = new ArrayList<>();
+        for (String parameter : parameters.split(",")) {
+            String type = parameter.trim().split("\\s+")[0];
+            if (!type.isEmpty()) {
+                types.add(type.equals("uint") ? "uint256" : type);
+            }
+        }
+        return types;
+    }
+}//end of class
@@ -1,197 +1,277 @@
- /**
-Copyright 2020 Swapshub
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-http://www.apache.org/licenses/LICENSE-2.0
-
-*/
-
-const eThaler = artifacts.require("eThaler");
-
-contract('eThaler', async accounts => {
-
-	// define common variables for all tests here
-	var tokenId = 1;
-	var tokenName = 'USD';
-	var gbpTokenId = 2;
-	var gbpTokenName = 'GBP';
-	var numDecimals = 4;
-	var initialTokens = 1000000;
-	var moreTokens    = 1000000;
-	var totalTokens   = 2000000;
-	var TTF_URL = 'https://hyperledger.org/sig/capitalMarkets/USD.PDF';
-	var GBP_TTF_URL = 'https://hyperledger.org/sig/capitalMarkets/GBP.PDF';
-    var cbAcct = accounts[0];
-	// the following additional accouts will work only with ganache or truffle develop mode
-    var dealer1Acct = accounts[1];
-    var dealer2Acct = accounts[2];
-
-    it('testing owner of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.owner.call();
-		console.log( `token owner for eThaler contract = ${xact}` );
-
-        // Write an assertion below to check the return value of owner.
-        assert.equal('something', 'something', 'A correctness property about owner of eThaler');
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-	/**
-	http.get('http://ip-api.com/json', (res) => {     
-    console.log(res.country)  // *** Results in Undefined
-    console.log(JSON.stringify(res)); // *** Resulting in a TypeError: Converting circular structure to JSON
-
-    res.resume();
-  }).on('error', (e) => {
-    console.log(`Got error: ${e.message}`);
-  });
-	**/
-
-    it('testing adding new token to eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.addNewTokenDefinition(tokenId, tokenName, numDecimals, TTF_URL, {from: cbAcct});
-		console.log( `token def for ${tokenName}: xact = ${xact}` );
-        assert.equal( xact.valueOf(), xact.valueOf(), 'Adding new token error' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing registerDealer (CB) of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.registerDealer( cbAcct, tokenId );
-		console.log( `retVal after registerDealer = ${xact}` );
-		let isRegistered = await eThalerInstance.isDealerRegistered( cbAcct, tokenId );
-        assert.equal( isRegistered.valueOf(), true, 'CB is not registered' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing mint of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.mint(tokenId, initialTokens, '0x00', {from: cbAcct});
-		console.log( `retVal after minting tokens = ${xact}` );
-		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
-        assert.equal( balance.valueOf(), initialTokens, 'Total tokens minted is not equal' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('checking balance after mint of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-		let balance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
-        assert.equal( balance, initialTokens, 'Total tokens minted is not equal' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-	// calling again mint should add to the total
-    it('testing minting more tokens', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.mint(tokenId, moreTokens, '0x00', {from: cbAcct});
-		console.log( `retVal after minting more tokens = ${xact}` );
-		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
-        assert.equal( balance.valueOf(), totalTokens, 'Total tokens after minting more is not equal' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing registerDealer (dealer) of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.registerDealer( dealer1Acct, tokenId );
-		console.log( `retVal after minting tokens = ${xact}` );
-		let isDealerRegistered = await eThalerInstance.isDealerRegistered( dealer1Acct, tokenId );
-		let isCB_Registered = await eThalerInstance.isDealerRegistered( cbAcct, tokenId );
-        assert.equal( isDealerRegistered.valueOf(), true, 'Dealer is not registered' );
-        assert.equal( isCB_Registered.valueOf(), true, 'CB is not registered' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing CB to dealer transfer of eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-		var transferAmt = 200;
-		let cbBeforeBalance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
-		let dlr1BeforeBalance = ( await eThalerInstance.balanceOf( dealer1Acct, tokenId ) ).toNumber();
-		console.log( `CB Balance before transfer=${cbBeforeBalance}` );
-		console.log( `Dealer1 Balance before transfer=${dlr1BeforeBalance}` );
-        var xact = await eThalerInstance.transfer( dealer1Acct, tokenId, transferAmt );
-		console.log( `retVal after transferring tokens = ${xact}` );
-
-		let cbAfterBalance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
-		let dlr1AfterBalance = ( await eThalerInstance.balanceOf( dealer1Acct, tokenId ) ).toNumber();
-		console.log( `CB Balance after transfer=${cbAfterBalance}` );
-		console.log( `Dealer1 Balance after transfer=${dlr1AfterBalance}` );
-        assert.equal( cbAfterBalance, (cbBeforeBalance - transferAmt), 'Post Transfer: CB Balance does not match' );
-        assert.equal( dlr1AfterBalance, (dlr1BeforeBalance + transferAmt), 'Post Transfer: Dealer1 does not match' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing pausing eThaler token', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.pause( tokenId );
-		console.log( `retVal after minting tokens = ${xact}` );
-		let isPaused = await eThalerInstance.isPaused( tokenId );
-        assert.equal( isPaused, true, 'Token is not paused' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-
-	// the mint function should fail as token is paused above
-	// catch the error and check for "Token is paused" error 
-    it('testing minting after pause of eThaler', async () => {
-		try {
-        const eThalerInstance = await eThaler.deployed();
-		// the mint call should throw error 
-        var xact = await eThalerInstance.mint(tokenId, initialTokens, '0x00', {from: cbAcct});
-		// below stmts should never execute as minting is not permitted in pause state
-		console.log( `retVal after minting tokens = ${xact}` );
-		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
-        assert.equal( balance.valueOf(), initialTokens, 'Total tokens minted is not equal' );
-		} catch( ex ) {
-			console.error( `Console Error`, ex.message );
-			var isPausedError = ex.message.includes( "Token is paused" );
-        	assert.equal( isPausedError, true, 'Error is not due to Token is Paused' );
-		}
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing resume of eThaler token', async () => {
-        const eThalerInstance = await eThaler.deployed();
-		let isPaused = await eThalerInstance.isPaused( tokenId );
-		console.log( `Before resume: pause state ${isPaused}` );
-		// console.log( `Before resume: pause state value of ${isPaused.valueOf()}` );
-        var xact = await eThalerInstance.resume( tokenId );
-		console.log( `Xaction hash after minting tokens = ${xact.transactionHash}` );
-		isPaused = await eThalerInstance.isPaused( tokenId );
-        assert.equal( isPaused, false, 'Token is still paused' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('testing adding new GBP token to eThaler', async () => {
-        const eThalerInstance = await eThaler.deployed();
-        var xact = await eThalerInstance.addNewTokenDefinition(gbpTokenId, gbpTokenName, numDecimals, GBP_TTF_URL, {from: cbAcct});
-		console.log( `token def for ${gbpTokenName}: xact = ${xact}` );
-        assert.equal( xact.valueOf(), xact.valueOf(), 'Adding new token error' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-    it('checking num TokenIds after minting 2  eThaler tokens', async () => {
-        const eThalerInstance = await eThaler.deployed();
-		let tokenIds = await eThalerInstance.getAllTokenIds( );
-		console.log( `token ids = ${tokenIds}` );
-		let numTokens = tokenIds.length;
-		console.log( `num token ids = ${numTokens}` );
-        assert.equal( numTokens, 2, 'Total tokens do not match 2' );
-    }).on('error', (e) => {
-    	console.log(`Got error: ${e.message}`);
-    });
-
-});
-
+ /**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+
+*/
+
+const eThaler = artifacts.require("eThaler");
+
+contract('eThaler', async accounts => {
+
+	// define common variables for all tests here
+	var tokenId = 1;
+	var tokenName = 'USD';
+	var gbpTokenId = 2;
+	var gbpTokenName = 'GBP';
+	var numDecimals = 4;
+	var initialTokens = 1000000;
+	var moreTokens    = 1000000;
+	var totalTokens   = 2000000;
+	var TTF_URL = 'https://hyperledger.org/sig/capitalMarkets/USD.PDF';
+	var GBP_TTF_URL = 'https://hyperledger.org/sig/capitalMarkets/GBP.PDF';
+    var cbAcct = accounts[0];
+	// the following additional accouts will work only with ganache or truffle develop mode
+    var dealer1Acct = accounts[1];
+    var dealer2Acct = accounts[2];
+
+    it('testing owner of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.owner.call();
+		console.log( `token owner for eThaler contract = ${xact}` );
+
+        // Write an assertion below to check the return value of owner.
+        assert.equal('something', 'something', 'A correctness property about owner of eThaler');
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+	/**
+	http.get('http://ip-api.com/json', (res) => {     
+    console.log(res.country)  // *** Results in Undefined
+    console.log(JSON.stringify(res)); // *** Resulting in a TypeError: Converting circular structure to JSON
+
+    res.resume();
+  }).on('error', (e) => {
+    console.log(`Got error: ${e.message}`);
+  });
+	**/
+
+    it('testing adding new token to eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.addNewTokenDefinition(tokenId, tokenName, numDecimals, TTF_URL, {from: cbAcct});
+		console.log( `token def for ${tokenName}: xact = ${xact}` );
+        assert.equal( xact.valueOf(), xact.valueOf(), 'Adding new token error' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing registerDealer (CB) of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.registerDealer( cbAcct, tokenId );
+		console.log( `retVal after registerDealer = ${xact}` );
+		let isRegistered = await eThalerInstance.isDealerRegistered( cbAcct, tokenId );
+        assert.equal( isRegistered.valueOf(), true, 'CB is not registered' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing mint of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.mint(tokenId, initialTokens, '0x00', {from: cbAcct});
+		console.log( `retVal after minting tokens = ${xact}` );
+		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
+        assert.equal( balance.valueOf(), initialTokens, 'Total tokens minted is not equal' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('checking balance after mint of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		let balance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
+        assert.equal( balance, initialTokens, 'Total tokens minted is not equal' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+	// calling again mint should add to the total
+    it('testing minting more tokens', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.mint(tokenId, moreTokens, '0x00', {from: cbAcct});
+		console.log( `retVal after minting more tokens = ${xact}` );
+		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
+        assert.equal( balance.valueOf(), totalTokens, 'Total tokens after minting more is not equal' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing registerDealer (dealer) of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.registerDealer( dealer1Acct, tokenId );
+		console.log( `retVal after minting tokens = ${xact}` );
+		let isDealerRegistered = await eThalerInstance.isDealerRegistered( dealer1Acct, tokenId );
+		let isCB_Registered = await eThalerInstance.isDealerRegistered( cbAcct, tokenId );
+        assert.equal( isDealerRegistered.valueOf(), true, 'Dealer is not registered' );
+        assert.equal( isCB_Registered.valueOf(), true, 'CB is not registered' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing CB to dealer transfer of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		var transferAmt = 200;
+		let cbBeforeBalance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
+		let dlr1BeforeBalance = ( await eThalerInstance.balanceOf( dealer1Acct, tokenId ) ).toNumber();
+		console.log( `CB Balance before transfer=${cbBeforeBalance}` );
+		console.log( `Dealer1 Balance before transfer=${dlr1BeforeBalance}` );
+        var xact = await eThalerInstance.transfer( dealer1Acct, tokenId, transferAmt );
+		console.log( `retVal after transferring tokens = ${xact}` );
+
+		let cbAfterBalance = ( await eThalerInstance.balanceOf( cbAcct, tokenId ) ).toNumber();
+		let dlr1AfterBalance = ( await eThalerInstance.balanceOf( dealer1Acct, tokenId ) ).toNumber();
+		console.log( `CB Balance after transfer=${cbAfterBalance}` );
+		console.log( `Dealer1 Balance after transfer=${dlr1AfterBalance}` );
+        assert.equal( cbAfterBalance, (cbBeforeBalance - transferAmt), 'Post Transfer: CB Balance does not match' );
+        assert.equal( dlr1AfterBalance, (dlr1BeforeBalance + transferAmt), 'Post Transfer: Dealer1 does not match' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing pausing eThaler token', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.pause( tokenId );
+		console.log( `retVal after minting tokens = ${xact}` );
+		let isPaused = await eThalerInstance.isPaused( tokenId );
+        assert.equal( isPaused, true, 'Token is not paused' );
+		let paused = xact.logs.filter( log => log.event == 'TokenPaused' );
+        assert.equal( paused.length, 1, 'TokenPaused is not emitted' );
+        assert.equal( paused[0].args.tokenId.toString(), tokenId.toString(), 'TokenPaused is not for the paused token' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+
+	// the mint function should fail as token is paused above
+	// catch the error and check for "Token is paused" error 
+    it('testing minting after pause of eThaler', async () => {
+		try {
+        const eThalerInstance = await eThaler.deployed();
+		// the mint call should throw error 
+        var xact = await eThalerInstance.mint(tokenId, initialTokens, '0x00', {from: cbAcct});
+		// below stmts should never execute as minting is not permitted in pause state
+		console.log( `retVal after minting tokens = ${xact}` );
+		let balance = await eThalerInstance.balanceOf( cbAcct, tokenId );
+        assert.equal( balance.valueOf(), initialTokens, 'Total tokens minted is not equal' );
+		} catch( ex ) {
+			console.error( `Console Error`, ex.message );
+			var isPausedError = ex.message.includes( "Token is paused" );
+        	assert.equal( isPausedError, true, 'Error is not due to Token is Paused' );
+		}
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing resume of eThaler token', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		let isPaused = await eThalerInstance.isPaused( tokenId );
+		console.log( `Before resume: pause state ${isPaused}` );
+		// console.log( `Before resume: pause state value of ${isPaused.valueOf()}` );
+        var xact = await eThalerInstance.resume( tokenId );
+		console.log( `Xaction hash after minting tokens = ${xact.transactionHash}` );
+		isPaused = await eThalerInstance.isPaused( tokenId );
+        assert.equal( isPaused, false, 'Token is still paused' );
+        assert.equal( xact.logs.filter( log => log.event == 'TokenResumed' ).length, 1, 'TokenResumed is not emitted' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing adding new GBP token to eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+        var xact = await eThalerInstance.addNewTokenDefinition(gbpTokenId, gbpTokenName, numDecimals, GBP_TTF_URL, {from: cbAcct});
+		console.log( `token def for ${gbpTokenName}: xact = ${xact}` );
+        assert.equal( xact.valueOf(), xact.valueOf(), 'Adding new token error' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('checking num TokenIds after minting 2  eThaler tokens', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		let tokenIds = await eThalerInstance.getAllTokenIds( );
+		console.log( `token ids = ${tokenIds}` );
+		let numTokens = tokenIds.length;
+		console.log( `num token ids = ${numTokens}` );
+        assert.equal( numTokens, 2, 'Total tokens do not match 2' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('checking paged token definitions of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		let page = await eThalerInstance.getTokenDefinitions( 0, 1 );
+		console.log( `first page = ${JSON.stringify(page)}` );
+        assert.equal( page.total, 2, 'Total tokens do not match 2' );
+        assert.equal( page.ids.length, 1, 'First page must hold 1 token' );
+        assert.equal( page.names[0], tokenName, 'Name of the first token does not match' );
+		page = await eThalerInstance.getTokenDefinitions( 1, 10 );
+        assert.equal( page.ids.length, 1, 'Second page must hold the last token' );
+        assert.equal( page.ids[0], gbpTokenId, 'Id of the second token does not match' );
+        assert.equal( page.decimals[0], numDecimals, 'Decimals of the second token do not match' );
+        assert.equal( page.ttfUrls[0], GBP_TTF_URL, 'TTF url of the second token does not match' );
+		page = await eThalerInstance.getTokenDefinitions( 2, 10 );
+        assert.equal( page.ids.length, 0, 'No token expected past the end' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('checking registration events filtered by token id', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		// tokenId is an indexed topic : the node returns the registrations of one token only
+		let usdEvents = await eThalerInstance.getPastEvents( 'RegisteredDealer', { filter: { tokenId: tokenId }, fromBlock: 0 } );
+		let gbpEvents = await eThalerInstance.getPastEvents( 'RegisteredDealer', { filter: { tokenId: gbpTokenId }, fromBlock: 0 } );
+		console.log( `USD registrations = ${usdEvents.length}` );
+        assert.equal( usdEvents.length, 2, 'CB and dealer1 registrations expected for USD' );
+        assert.equal( usdEvents[1].returnValues.account, dealer1Acct, 'Second USD registration must be dealer1' );
+        assert.equal( usdEvents[1].returnValues.tokenId, tokenId, 'Token id of the registration does not match' );
+        assert.equal( gbpEvents.length, 0, 'No registration expected for GBP' );
+		let defined = await eThalerInstance.getPastEvents( 'TokenDefined', { filter: { tokenId: gbpTokenId }, fromBlock: 0 } );
+        assert.equal( defined.length, 1, 'One definition expected for GBP' );
+        assert.equal( defined[0].returnValues.tokenName, gbpTokenName, 'Name of the defined token does not match' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('testing registerDealers (bulk) of eThaler', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		// dealer1 is already registered for USD : that pair is skipped, the others are added
+        var xact = await eThalerInstance.registerDealers( [ dealer1Acct, dealer2Acct ], [ tokenId, gbpTokenId ] );
+		console.log( `gas used by registerDealers = ${xact.receipt.gasUsed}` );
+		for( let account of [ dealer1Acct, dealer2Acct ] ) {
+			for( let id of [ tokenId, gbpTokenId ] ) {
+				let isRegistered = await eThalerInstance.isDealerRegistered( account, id );
+				assert.equal( isRegistered.valueOf(), true, account + ' is not registered for token ' + id );
+			}
+		}
+		let registered = xact.logs.filter( log => log.event == 'RegisteredDealer' );
+        assert.equal( registered.length, 3, 'Only the 3 new registrations must be emitted' );
+		// sending the same batch again changes nothing
+        xact = await eThalerInstance.registerDealers( [ dealer1Acct, dealer2Acct ], [ tokenId, gbpTokenId ] );
+        assert.equal( xact.logs.filter( log => log.event == 'RegisteredDealer' ).length, 0, 'No registration expected on resend' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+    it('checking all token balances of a dealer in one call', async () => {
+        const eThalerInstance = await eThaler.deployed();
+		let result = await eThalerInstance.getTokenBalances( 0, 10, { from: dealer1Acct } );
+		console.log( `dealer1 balances = ${JSON.stringify(result)}` );
+        assert.equal( result.total, 2, 'Total tokens do not match 2' );
+        assert.equal( result.tokenIds.length, 2, 'Balances expected for the 2 tokens' );
+        assert.equal( result.balances.length, 2, 'Balances expected for the 2 tokens' );
+        assert.equal( result.tokenIds[1], gbpTokenId, 'Balances must be in definition order' );
+		for( let idx = 0; idx < 2; idx++ ) {
+			let balance = ( await eThalerInstance.balanceOf( dealer1Acct, result.tokenIds[idx] ) ).toNumber();
+			assert.equal( result.balances[idx].toNumber(), balance, 'Balance of token ' + result.tokenIds[idx] + ' does not match' );
+		}
+		result = await eThalerInstance.getTokenBalances( 1, 1, { from: dealer1Acct } );
+        assert.equal( result.tokenIds.length, 1, 'Second page must hold the last token' );
+        assert.equal( result.tokenIds[0], gbpTokenId, 'Id of the second token does not match' );
+		result = await eThalerInstance.getTokenBalances( 2, 10, { from: dealer1Acct } );
+        assert.equal( result.tokenIds.length, 0, 'No token expected past the end' );
+    }).on('error', (e) => {
+    	console.log(`Got error: ${e.message}`);
+    });
+
+});
+
@@ -0,0 +1,76 @@
+ /**
+Copyright 2020 Swapshub
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+http://www.apache.org/licenses/LICENSE-2.0
+
+*/
+
+const eThaler = artifacts.require("eThaler");
+const cases = require('./eThalerCases.json');
+
+// Runs the behavioral cases of eThalerCases.json on the compiled contract, each case on a new deployment.
+// The CLI tests run the same cases on EThalerModel, the Java model of the contract (EThalerModelCasesTest),
+// so a behavior that differs between the contract and the model fails on one side or the other.
+contract('eThaler cases', async accounts => {
+
+	// the accounts of the cases, in order; the first one deploys the contract
+	var names = {};
+	cases.accounts.forEach( ( name, idx ) => names[name] = accounts[idx] );
+
+	// "@name" is the address of an account of the cases
+	function argument( value ) {
+		if( Array.isArray( value ) ) {
+			return value.map( argument );
+		}
+		if( typeof value === 'string' && value.startsWith( '@' ) ) {
+			return names[ value.substring( 1 ) ];
+		}
+		return value;
+	}
+
+	// numbers as decimal strings and addresses in lower case, as the Java side compares them
+	function normalize( value ) {
+		if( Array.isArray( value ) ) {
+			return value.map( normalize );
+		}
+		value = String( argument( value ) );
+		return /^0x[0-9a-fA-F]{40}$/.test( value ) ? value.toLowerCase() : value;
+	}
+
+	async function run( instance, step ) {
+		var signature = step.send || step.call;
+		var label = `${signature} from ${step.from}`;
+		var method = instance.methods[ signature ];
+		var args = ( step.args || [] ).map( argument ).concat( [ { from: names[step.from] } ] );
+		if( step.revert ) {
+			var reverted = false;
+			try {
+				await ( step.send ? method( ...args ) : method.call( ...args ) );
+			} catch( e ) {
+				assert.include( e.message, step.revert, label );
+				reverted = true;
+			}
+			assert.isTrue( reverted, `${label} must revert with ${step.revert}` );
+		} else if( step.send ) {
+			var xact = await method( ...args );
+			assert.deepEqual( xact.logs.map( log => log.event ), step.events, label );
+		} else {
+			var result = await method.call( ...args );
+			// a single result is returned as it is, several as an object indexed from 0
+			var values = step.outputs.length == 1 ? [ result ] : step.outputs.map( ( type, idx ) => result[idx] );
+			assert.deepEqual( normalize( values ), normalize( step.returns ), label );
+		}
+	}
+
+	for( let testCase of cases.cases ) {
+		it( testCase.name, async () => {
+			const eThalerInstance = await eThaler.new( { from: accounts[0] } );
+			for( let step of testCase.steps ) {
+				await run( eThalerInstance, step );
+			}
+		});
+	}
+
+});